@@ -0,0 +1,57 @@
+package com.flowparser.benchmark;
+
+import com.flowparser.model.FlowLogEntry;
+import com.flowparser.parser.FlowLogParser;
+import com.flowparser.parser.LookupTableParser;
+import com.flowparser.util.SampleDataGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates reproducible benchmark inputs with {@link SampleDataGenerator}.
+ */
+final class BenchmarkData {
+    private static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Returns generated flow log text as bytes.
+     */
+    static byte[] flowLogs(int records) {
+        SampleDataGenerator.setSeed(SEED);
+        return SampleDataGenerator.generateFlowLogs(records).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns generated flow log entries, parsed by the regular parser.
+     */
+    static List<FlowLogEntry> entries(int records) throws IOException {
+        List<FlowLogEntry> entries = new ArrayList<>(records);
+        new FlowLogParser().parseFlowLogs(new ByteArrayInputStream(flowLogs(records)), entries::add);
+        return entries;
+    }
+
+    /**
+     * Returns a lookup table with the given number of random mappings, parsed by the
+     * regular lookup table parser.
+     */
+    static Map<String, String> lookupTable(int randomMappings) throws IOException {
+        SampleDataGenerator.setSeed(SEED);
+        Path file = Files.createTempFile("benchmark-lookup", ".csv");
+        try {
+            Files.write(file, SampleDataGenerator.generateLookupTableLines(randomMappings));
+            return new LookupTableParser().parseLookupTable(file.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
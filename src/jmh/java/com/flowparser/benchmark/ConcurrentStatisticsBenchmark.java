@@ -0,0 +1,111 @@
+package com.flowparser.benchmark;
+
+import com.flowparser.model.ConcurrentStatistics;
+import com.flowparser.model.FlowLogEntry;
+import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.CompiledLookupTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate stage under contention: all benchmark threads add batches of records to
+ * one shared aggregate, either to per-thread shards of {@link ConcurrentStatistics}
+ * or to a single {@link Statistics} behind a lock. Run with several thread counts,
+ * e.g. {@code -t 1}, {@code -t 8} and {@code -t 32}; with shards the throughput per
+ * thread should stay flat up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentStatisticsBenchmark {
+    private static final int RECORDS = 100_000;
+
+    @Param({"256"})
+    public int batchSize;
+
+    private int[] tagIds;
+    private int[] ports;
+    private int[] protocols;
+    private ConcurrentStatistics sharded;
+    private Statistics locked;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CompiledLookupTable lookupTable = CompiledLookupTable.compile(BenchmarkData.lookupTable(1000), new TagDictionary());
+        List<FlowLogEntry> entries = BenchmarkData.entries(RECORDS);
+
+        // Pre-match so that only the counter updates are measured
+        tagIds = new int[entries.size()];
+        ports = new int[entries.size()];
+        protocols = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            FlowLogEntry entry = entries.get(i);
+            int tagId = lookupTable.match(entry.getDstPort(), entry.getProtocol());
+            tagIds[i] = tagId == CompiledLookupTable.NO_TAG ? TagDictionary.UNTAGGED_ID : tagId;
+            ports[i] = entry.getDstPort();
+            protocols[i] = entry.getProtocol();
+        }
+        sharded = new ConcurrentStatistics(lookupTable.getTagDictionary());
+        locked = new Statistics(lookupTable.getTagDictionary());
+    }
+
+    /**
+     * Position of each benchmark thread in the records.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int advance(int batchSize, int records) {
+            int from = next;
+            next = from + 2 * batchSize > records ? 0 : from + batchSize;
+            return from;
+        }
+    }
+
+    /**
+     * Adds one batch to the calling thread's shard.
+     */
+    @Benchmark
+    public ConcurrentStatistics sharded(Cursor cursor) {
+        int from = cursor.advance(batchSize, tagIds.length);
+        int to = from + batchSize;
+        sharded.update(statistics -> {
+            statistics.addTags(tagIds, from, to);
+            statistics.addPortProtocols(ports, protocols, from, to);
+        });
+        return sharded;
+    }
+
+    /**
+     * Adds one batch to a single statistics object, holding its lock.
+     */
+    @Benchmark
+    public Statistics locked(Cursor cursor) {
+        int from = cursor.advance(batchSize, tagIds.length);
+        int to = from + batchSize;
+        synchronized (locked) {
+            locked.addTags(tagIds, from, to);
+            locked.addPortProtocols(ports, protocols, from, to);
+        }
+        return locked;
+    }
+}
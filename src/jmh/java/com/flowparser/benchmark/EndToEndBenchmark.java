@@ -0,0 +1,70 @@
+package com.flowparser.benchmark;
+
+import com.flowparser.model.Statistics;
+import com.flowparser.processor.FlowLogProcessor;
+import com.flowparser.writer.StatisticsWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end: reading a flow log file, tagging, aggregating and writing the
+ * output, as the command line does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    @Param({"10000", "1000000"})
+    public int records;
+
+    @Param({"50", "10000"})
+    public int mappings;
+
+    private final StatisticsWriter writer = new StatisticsWriter();
+    private FlowLogProcessor processor;
+    private Path input;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        processor = new FlowLogProcessor(BenchmarkData.lookupTable(mappings));
+        input = Files.createTempFile("benchmark-flowlogs", ".log");
+        Files.write(input, BenchmarkData.flowLogs(records));
+        output = Files.createTempFile("benchmark-output", ".csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+    }
+
+    /**
+     * Processes the input file and writes the output file.
+     */
+    @Benchmark
+    public Statistics processFile() throws IOException {
+        Statistics statistics = processor.processFlowLogs(input.toString());
+        writer.writeStatistics(statistics, output.toString());
+        return statistics;
+    }
+}
@@ -0,0 +1,121 @@
+package com.flowparser.benchmark;
+
+import com.flowparser.model.FlowLogEntry;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.AddressRule;
+import com.flowparser.parser.CompiledLookupTable;
+import com.flowparser.util.Ipv4;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tag stage: matching (dstport, protocol) against lookup tables of several sizes,
+ * with the compiled table and with the string-keyed map it replaced, and matching
+ * (dstaddr, dstport, protocol) against as many address rules.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchBenchmark {
+    private static final int ENTRY_POOL = 4096;
+
+    @Param({"50", "1000", "10000"})
+    public int mappings;
+
+    private Map<String, String> lookupTable;
+    private CompiledLookupTable compiledTable;
+    private CompiledLookupTable addressTable;
+    private FlowLogEntry[] entries;
+    private int[] dstPorts;
+    private int[] protocols;
+    private long[] dstIpv4s;
+    private int[] tagIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        lookupTable = BenchmarkData.lookupTable(mappings);
+        compiledTable = CompiledLookupTable.compile(lookupTable, new TagDictionary());
+        List<FlowLogEntry> generated = BenchmarkData.entries(ENTRY_POOL);
+        entries = generated.toArray(new FlowLogEntry[0]);
+        dstPorts = generated.stream().mapToInt(FlowLogEntry::getDstPort).toArray();
+        protocols = generated.stream().mapToInt(FlowLogEntry::getProtocol).toArray();
+        dstIpv4s = generated.stream().mapToLong(entry -> Ipv4.parse(entry.getDstAddr())).toArray();
+        tagIds = new int[ENTRY_POOL];
+
+        // Networks of /8 to /32 around the generated addresses, each with a port range
+        Random random = new Random(42);
+        List<AddressRule> rules = new ArrayList<>();
+        for (int i = 0; i < mappings; i++) {
+            long address = dstIpv4s[random.nextInt(ENTRY_POOL)];
+            int fromPort = random.nextInt(0x10000);
+            rules.add(new AddressRule((int) Math.max(address, 0), 8 + random.nextInt(25), fromPort,
+                    Math.min(0xFFFF, fromPort + random.nextInt(1024)), random.nextBoolean() ? 6 : 17, "tag" + i));
+        }
+        addressTable = CompiledLookupTable.compile(Map.of(), rules, new TagDictionary());
+    }
+
+    private FlowLogEntry nextEntry() {
+        int entry = next;
+        next = entry + 1 == entries.length ? 0 : entry + 1;
+        return entries[entry];
+    }
+
+    /**
+     * Looks up one entry in the compiled table.
+     */
+    @Benchmark
+    public int compiledMatch() {
+        FlowLogEntry entry = nextEntry();
+        return compiledTable.match(entry.getDstPort(), entry.getProtocol());
+    }
+
+    /**
+     * Looks up one entry by its "dstport,protocol" string key.
+     */
+    @Benchmark
+    public String stringKeyMatch() {
+        return lookupTable.get(nextEntry().getLookupKey());
+    }
+
+    /**
+     * Looks up a whole column batch of entries in the compiled table per operation.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ENTRY_POOL)
+    public int[] compiledMatchAll() {
+        compiledTable.matchAll(dstPorts, protocols, tagIds, 0, ENTRY_POOL);
+        return tagIds;
+    }
+
+    /**
+     * Looks up a whole column batch of entries in the address rule trie per operation.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ENTRY_POOL)
+    public int[] addressMatchAll() {
+        addressTable.matchAll(dstPorts, protocols, dstIpv4s, tagIds, 0, ENTRY_POOL);
+        return tagIds;
+    }
+}
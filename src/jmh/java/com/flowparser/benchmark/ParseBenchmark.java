@@ -0,0 +1,105 @@
+package com.flowparser.benchmark;
+
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.model.FlowField;
+import com.flowparser.model.FlowLogEntry;
+import com.flowparser.parser.FlowLogFormat;
+import com.flowparser.parser.FlowLogParser;
+import com.flowparser.parser.ParseErrorLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse stage: turning flow log bytes into entries, per line and for a whole input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    private static final int LINE_POOL = 4096;
+
+    @Param({"10000", "100000"})
+    public int records;
+
+    private final FlowLogParser parser = new FlowLogParser();
+    // Decodes only what tagging and counting use, like the processor does
+    private final FlowLogParser projectedParser = new FlowLogParser(FlowMetrics.NOOP,
+            new ParseErrorLog("flow log", System.err), FlowLogFormat.DEFAULT,
+            EnumSet.of(FlowField.DSTPORT, FlowField.PROTOCOL));
+    private byte[] data;
+    private int[] lineStarts;
+    private int[] lineEnds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = BenchmarkData.flowLogs(records);
+
+        // Line offsets for the per-line benchmark
+        List<int[]> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length && lines.size() < LINE_POOL; i++) {
+            if (data[i] == '\n') {
+                lines.add(new int[]{start, i});
+                start = i + 1;
+            }
+        }
+        lineStarts = lines.stream().mapToInt(line -> line[0]).toArray();
+        lineEnds = lines.stream().mapToInt(line -> line[1]).toArray();
+    }
+
+    /**
+     * Parses one line per operation.
+     */
+    @Benchmark
+    public FlowLogEntry parseLine() {
+        int line = next;
+        next = line + 1 == lineStarts.length ? 0 : line + 1;
+        return parser.parseLine(data, lineStarts[line], lineEnds[line]);
+    }
+
+    /**
+     * Parses the whole input per operation.
+     */
+    @Benchmark
+    public void parseStream(Blackhole blackhole) throws IOException {
+        parser.parseFlowLogs(new ByteArrayInputStream(data), blackhole::consume);
+    }
+
+    /**
+     * Parses the whole input per operation, decoding only the port and protocol.
+     */
+    @Benchmark
+    public void parseStreamProjected(Blackhole blackhole) throws IOException {
+        projectedParser.parseFlowLogs(new ByteArrayInputStream(data), blackhole::consume);
+    }
+
+    /**
+     * Parses the whole input per operation into column batches, decoding only the port and protocol.
+     */
+    @Benchmark
+    public void parseBatchesProjected(Blackhole blackhole) throws IOException {
+        projectedParser.parseFlowLogBatches(new ByteArrayInputStream(data), blackhole::consume);
+    }
+}
@@ -0,0 +1,73 @@
+package com.flowparser.benchmark;
+
+import com.flowparser.model.FlowLogEntry;
+import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.CompiledLookupTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregate stage: incrementing the tag and port/protocol counters for one entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsBenchmark {
+    @Param({"1000", "100000"})
+    public int records;
+
+    private Statistics statistics;
+    private int[] tagIds;
+    private int[] ports;
+    private int[] protocols;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        CompiledLookupTable lookupTable = CompiledLookupTable.compile(BenchmarkData.lookupTable(1000), new TagDictionary());
+        List<FlowLogEntry> entries = BenchmarkData.entries(records);
+
+        // Pre-match so that only the counter updates are measured
+        tagIds = new int[entries.size()];
+        ports = new int[entries.size()];
+        protocols = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            FlowLogEntry entry = entries.get(i);
+            int tagId = lookupTable.match(entry.getDstPort(), entry.getProtocol());
+            tagIds[i] = tagId == CompiledLookupTable.NO_TAG ? TagDictionary.UNTAGGED_ID : tagId;
+            ports[i] = entry.getDstPort();
+            protocols[i] = entry.getProtocol();
+        }
+        statistics = new Statistics(lookupTable.getTagDictionary());
+    }
+
+    /**
+     * Records one entry.
+     */
+    @Benchmark
+    public Statistics increment() {
+        int entry = next;
+        next = entry + 1 == tagIds.length ? 0 : entry + 1;
+        statistics.addTag(tagIds[entry]);
+        statistics.addPortProtocol(ports[entry], protocols[entry]);
+        return statistics;
+    }
+}
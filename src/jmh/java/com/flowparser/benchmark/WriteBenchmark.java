@@ -0,0 +1,63 @@
+package com.flowparser.benchmark;
+
+import com.flowparser.model.Statistics;
+import com.flowparser.processor.FlowLogProcessor;
+import com.flowparser.writer.StatisticsWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write stage: writing the statistics of inputs of several sizes to the output file.
+ * Larger inputs have more distinct port/protocol combinations to sort and write.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+    @Param({"1000", "100000"})
+    public int records;
+
+    private final StatisticsWriter writer = new StatisticsWriter();
+    private Statistics statistics;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        FlowLogProcessor processor = new FlowLogProcessor(BenchmarkData.lookupTable(1000));
+        statistics = processor.processFlowLogs(new ByteArrayInputStream(BenchmarkData.flowLogs(records)));
+        output = Files.createTempFile("benchmark-output", ".csv");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    /**
+     * Writes the statistics once.
+     */
+    @Benchmark
+    public void write() throws IOException {
+        writer.writeStatistics(statistics, output.toString());
+    }
+}
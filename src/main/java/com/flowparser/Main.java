@@ -1,46 +1,334 @@
 package com.flowparser;
 
+import com.flowparser.io.CompressedInputs;
+import com.flowparser.metrics.StripedFlowMetrics;
+import com.flowparser.model.Breakdown;
+import com.flowparser.model.FlowField;
 import com.flowparser.model.Statistics;
+import com.flowparser.parser.CompiledLookupTable;
+import com.flowparser.parser.CompiledRuleSet;
+import com.flowparser.parser.FlowLogFormat;
 import com.flowparser.parser.LookupTableParser;
+import com.flowparser.parser.ParseErrorLog;
+import com.flowparser.parser.ReloadingLookupTable;
+import com.flowparser.processor.BatchFileProcessor;
 import com.flowparser.processor.FlowLogProcessor;
+import com.flowparser.processor.StreamingFlowLogProcessor;
+import com.flowparser.processor.VirtualThreadFileProcessor;
+import com.flowparser.processor.WindowedFlowLogProcessor;
+import com.flowparser.util.HyperLogLog;
 import com.flowparser.writer.StatisticsWriter;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import javax.management.JMException;
 
 /**
  * Main class for the Flow Log Parser application.
  * This application parses flow logs and tags them based on a lookup table.
  */
 public class Main {
-    private static final String USAGE = "Usage: java -jar flow-log-parser.jar <flow_log_file> <lookup_table_file> <output_file>";
+    private static final String USAGE = "Usage: java -jar flow-log-parser.jar <flow_log_file> <lookup_table_file> <output_file> [options]\n" +
+            "The flow log file may also be a directory or a quoted glob such as 'logs/*/*.log'.\n" +
+            "Options:\n" +
+            "  --threads <n>              Process the flow log file with n threads (memory-mapped chunks;\n" +
+            "                             default: 1), or n files at a time for a directory or glob\n" +
+            "                             (default: all cores). --fork-join also defaults to all cores.\n" +
+            "                             Standard input and compressed files are parsed in a pipeline\n" +
+            "                             with n workers\n" +
+            "  --fork-join                Process a single flow log file on a work-stealing fork/join pool\n" +
+            "                             of --threads workers, splitting it in halves at line boundaries\n" +
+            "  --virtual-threads          For a directory or glob, read each file on its own virtual thread\n" +
+            "                             and parse on --threads platform threads (needs Java 21)\n" +
+            "  --max-open-files <n>       With --virtual-threads, files open at the same time (default: 256)\n" +
+            "  --snapshot-records <n>     Stream the input and rewrite the output every n records\n" +
+            "  --snapshot-seconds <n>     Stream the input and rewrite the output every n seconds\n" +
+            "  --metrics <file>           Write a JSON summary of counts and stage timings to the file\n" +
+            "  --format <fields>          Field order of the flow log records, e.g. '${version} ${vpc-id}\n" +
+            "                             ${dstport} ${protocol}' (default: the version 2 format). Files\n" +
+            "                             that start with a header line use the fields of the header\n" +
+            "  --max-error-ratio <r>      Abort when more than this share (0 to 1) of flow log lines\n" +
+            "                             cannot be parsed (default: never abort)\n" +
+            "  --rules <file>             Also count the tags of a multi-tag rule file, whose header names\n" +
+            "                             the columns, e.g. 'srcaddr,dstport,protocol,action,tag'. Every\n" +
+            "                             matching rule adds its tag to a record\n" +
+            "  --reload-lookup            Watch the lookup table file and reload it in the background when\n" +
+            "                             it changes, e.g. while streaming from standard input\n" +
+            "  --cache                    Keep a binary cache of the parsed records next to each flow log\n" +
+            "                             file (<file>.flowcache) and read it instead of the text while\n" +
+            "                             the file's size and modification time are unchanged\n" +
+            "  --top-addresses            Also write the source and destination addresses with the most bytes\n" +
+            "  --distinct-counts          Also write the estimated number of distinct source addresses,\n" +
+            "                             destination addresses and interfaces per tag\n" +
+            "  --distinct-precision <p>   Precision (4 to 18) of the per-tag distinct address and interface\n" +
+            "                             counts; each step up halves the error and doubles memory\n" +
+            "                             (default: 12, about 1.6% error)\n" +
+            "  --window-seconds <n>       Stream the input and write the tag and port/protocol counts of\n" +
+            "                             each n second window of record start times as it closes\n" +
+            "  --allowed-lateness-seconds <n>\n" +
+            "                             Keep windows open until records start n seconds after their\n" +
+            "                             end, counting records that arrive out of order (default: 0)\n" +
+            "Use - as the flow log file to read from standard input (streaming, unless --threads is given).\n" +
+            "Gzip-compressed input is detected and decompressed automatically.";
+    private static final String STDIN = "-";
 
     public static void main(String[] args) {
-        if (args.length != 3) {
+        List<String> positional = new ArrayList<>();
+        int threads = 0;
+        long snapshotRecords = 0;
+        long snapshotSeconds = 0;
+        String metricsFile = null;
+        double maxErrorRatio = 1.0;
+        FlowLogFormat format = FlowLogFormat.DEFAULT;
+        boolean useCache = false;
+        int distinctPrecision = 0;
+        long windowSeconds = 0;
+        long allowedLatenessSeconds = 0;
+        String rulesFile = null;
+        boolean reloadLookup = false;
+        boolean forkJoin = false;
+        boolean virtualThreads = false;
+        int maxOpenFiles = 0;
+        Set<Breakdown> breakdowns = EnumSet.noneOf(Breakdown.class);
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--threads")) {
+                    threads = (int) parsePositive(arg, optionValue(args, ++i, arg), Integer.MAX_VALUE);
+                } else if (arg.equals("--snapshot-records")) {
+                    snapshotRecords = parsePositive(arg, optionValue(args, ++i, arg), Long.MAX_VALUE);
+                } else if (arg.equals("--snapshot-seconds")) {
+                    snapshotSeconds = parsePositive(arg, optionValue(args, ++i, arg), Long.MAX_VALUE / 1_000_000_000L);
+                } else if (arg.equals("--metrics")) {
+                    metricsFile = optionValue(args, ++i, arg);
+                } else if (arg.equals("--format")) {
+                    format = FlowLogFormat.parse(optionValue(args, ++i, arg));
+                    if (!format.contains(FlowField.DSTPORT) || !format.contains(FlowField.PROTOCOL)) {
+                        throw new IllegalArgumentException("Flow log format must include dstport and protocol: " + format);
+                    }
+                } else if (arg.equals("--max-error-ratio")) {
+                    maxErrorRatio = parseRatio(arg, optionValue(args, ++i, arg));
+                } else if (arg.equals("--distinct-precision")) {
+                    distinctPrecision = (int) parsePositive(arg, optionValue(args, ++i, arg), HyperLogLog.MAX_PRECISION);
+                    HyperLogLog.checkPrecision(distinctPrecision);
+                } else if (arg.equals("--window-seconds")) {
+                    windowSeconds = parsePositive(arg, optionValue(args, ++i, arg), Long.MAX_VALUE / 2);
+                } else if (arg.equals("--allowed-lateness-seconds")) {
+                    allowedLatenessSeconds = parseRange(arg, optionValue(args, ++i, arg), 0, Long.MAX_VALUE / 2);
+                } else if (arg.equals("--rules")) {
+                    rulesFile = optionValue(args, ++i, arg);
+                } else if (arg.equals("--reload-lookup")) {
+                    reloadLookup = true;
+                } else if (arg.equals("--fork-join")) {
+                    forkJoin = true;
+                } else if (arg.equals("--virtual-threads")) {
+                    virtualThreads = true;
+                } else if (arg.equals("--max-open-files")) {
+                    maxOpenFiles = (int) parsePositive(arg, optionValue(args, ++i, arg), Integer.MAX_VALUE);
+                } else if (arg.equals("--cache")) {
+                    useCache = true;
+                } else if (arg.equals("--top-addresses")) {
+                    breakdowns.add(Breakdown.TOP_ADDRESSES);
+                } else if (arg.equals("--distinct-counts")) {
+                    breakdowns.add(Breakdown.DISTINCT_COUNTS);
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else {
+                    positional.add(arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
             System.out.println(USAGE);
             return;
         }
 
-        String flowLogFile = args[0];
-        String lookupTableFile = args[1];
-        String outputFile = args[2];
+        if (positional.size() != 3) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        String flowLogFile = positional.get(0);
+        String lookupTableFile = positional.get(1);
+        String outputFile = positional.get(2);
+
+        boolean stdin = flowLogFile.equals(STDIN);
+        boolean snapshots = snapshotRecords > 0 || snapshotSeconds > 0;
+        boolean windowed = windowSeconds > 0;
+        if (windowed && snapshots) {
+            System.out.println("--window-seconds cannot be combined with --snapshot-records or --snapshot-seconds");
+            System.out.println(USAGE);
+            return;
+        }
+        if (windowed && !format.contains(FlowField.START)) {
+            System.out.println("Flow log format must include start for --window-seconds: " + format);
+            System.out.println(USAGE);
+            return;
+        }
+        if (windowed && !breakdowns.isEmpty()) {
+            System.out.println("--top-addresses and --distinct-counts cannot be combined with --window-seconds");
+            System.out.println(USAGE);
+            return;
+        }
+        if (distinctPrecision > 0 && !breakdowns.contains(Breakdown.DISTINCT_COUNTS)) {
+            System.out.println("--distinct-precision requires --distinct-counts");
+            System.out.println(USAGE);
+            return;
+        }
+        if (distinctPrecision == 0) {
+            distinctPrecision = HyperLogLog.DEFAULT_PRECISION;
+        }
+        if (maxOpenFiles > 0 && !virtualThreads) {
+            System.out.println("--max-open-files requires --virtual-threads");
+            System.out.println(USAGE);
+            return;
+        }
+        if (virtualThreads && !VirtualThreadFileProcessor.isSupported()) {
+            System.out.println("--virtual-threads requires Java 21 or later");
+            return;
+        }
+        if (virtualThreads && useCache) {
+            System.out.println("--virtual-threads cannot be combined with --cache");
+            System.out.println(USAGE);
+            return;
+        }
+        if (forkJoin && useCache) {
+            System.out.println("--fork-join cannot be combined with --cache");
+            System.out.println(USAGE);
+            return;
+        }
+        // Standard input with several threads and no snapshots goes through the pipeline
+        boolean streaming = snapshots || (stdin && threads <= 1);
+        boolean batch = !stdin && !streaming && !windowed && BatchFileProcessor.isBatchInput(flowLogFile);
+        if (useCache && (stdin || streaming || windowed)) {
+            System.out.println("--cache requires a flow log file, directory or glob, without snapshots or windows");
+            System.out.println(USAGE);
+            return;
+        }
+        if (virtualThreads && !batch) {
+            System.out.println("--virtual-threads requires a directory or glob, without snapshots or windows");
+            System.out.println(USAGE);
+            return;
+        }
+        if (forkJoin && (stdin || streaming || windowed || batch)) {
+            System.out.println("--fork-join requires a single flow log file, without snapshots or windows");
+            System.out.println(USAGE);
+            return;
+        }
 
+        ReloadingLookupTable reloadingLookupTable = null;
         try {
             // Check if files exist
-            validateFileExists(flowLogFile);
+            if (!stdin && !batch) {
+                validateFileExists(flowLogFile);
+            }
             validateFileExists(lookupTableFile);
+            if (rulesFile != null) {
+                validateFileExists(rulesFile);
+            }
+
+            // Collect metrics, visible over JMX while running
+            StripedFlowMetrics metrics = new StripedFlowMetrics();
+            registerMetrics(metrics);
 
-            // Load the lookup table
-            Map<String, String> lookupTable = new LookupTableParser().parseLookupTable(lookupTableFile);
+            // Load and compile the lookup table, watching it for changes if requested
+            CompiledLookupTable lookupTable;
+            if (reloadLookup) {
+                reloadingLookupTable = new ReloadingLookupTable(lookupTableFile);
+                lookupTable = reloadingLookupTable.get();
+            } else {
+                lookupTable = new LookupTableParser().compileLookupTable(lookupTableFile);
+            }
+            if (lookupTable.hasAddressRules() && !format.contains(FlowField.DSTADDR)) {
+                System.err.println("Warning: The flow log format has no dstaddr field, so only address rules for * can match");
+            }
+            // Count bad lines by reason, printing only the first few and periodic summaries
+            ParseErrorLog errors = new ParseErrorLog("flow log", System.err, ParseErrorLog.DEFAULT_SAMPLE_SIZE,
+                    ParseErrorLog.DEFAULT_SUMMARY_INTERVAL_MILLIS, maxErrorRatio);
+            // Compile the multi-tag rules, sharing the lookup table's tag ids
+            CompiledRuleSet rules = rulesFile == null ? null
+                    : CompiledRuleSet.compile(new LookupTableParser().parseTagRules(rulesFile), lookupTable.getTagDictionary());
+            FlowLogProcessor processor = reloadingLookupTable != null
+                    ? new FlowLogProcessor(reloadingLookupTable, metrics, errors, format, distinctPrecision, rules,
+                            breakdowns)
+                    : new FlowLogProcessor(lookupTable, metrics, errors, format, distinctPrecision, rules, breakdowns);
+            StatisticsWriter writer = new StatisticsWriter(metrics);
 
-            // Process the flow logs
-            FlowLogProcessor processor = new FlowLogProcessor(lookupTable);
-            Statistics statistics = processor.processFlowLogs(flowLogFile);
+            if (windowed) {
+                // Process the stream, appending the counts of each window as it closes
+                WindowedFlowLogProcessor windowedProcessor = new WindowedFlowLogProcessor(
+                        processor, writer, outputFile, windowSeconds, allowedLatenessSeconds);
+                WindowedFlowLogProcessor.Summary summary;
+                if (stdin) {
+                    summary = windowedProcessor.process(CompressedInputs.decompress(System.in));
+                } else {
+                    try (InputStream in = CompressedInputs.open(Paths.get(flowLogFile), 1)) {
+                        summary = windowedProcessor.process(in);
+                    }
+                }
+                if (summary.getLateRecords() > 0) {
+                    System.err.println("Warning: Dropped " + summary.getLateRecords()
+                            + " records that arrived after their window was written");
+                }
+            } else if (streaming) {
+                // Process the stream, writing snapshots to the output file as it goes
+                StreamingFlowLogProcessor streamingProcessor = new StreamingFlowLogProcessor(
+                        processor, writer, outputFile, snapshotRecords, snapshotSeconds * 1000);
+                if (stdin) {
+                    streamingProcessor.process(CompressedInputs.decompress(System.in));
+                } else {
+                    try (InputStream in = CompressedInputs.open(Paths.get(flowLogFile), 1)) {
+                        streamingProcessor.process(in);
+                    }
+                }
+            } else if (stdin) {
+                // Read standard input on this thread and parse it on the worker threads
+                Statistics statistics = processor.processFlowLogs(CompressedInputs.decompress(System.in), threads);
+                writeStatistics(writer, statistics, outputFile, errors);
+            } else if (batch) {
+                // Process all matching files on a pool of workers, largest first
+                List<Path> files = BatchFileProcessor.resolveInputs(flowLogFile);
+                if (files.isEmpty()) {
+                    throw new IOException("No flow log files found: " + flowLogFile);
+                }
+                int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+                int openFiles = maxOpenFiles > 0 ? maxOpenFiles : VirtualThreadFileProcessor.DEFAULT_MAX_OPEN_FILES;
+                Statistics statistics = virtualThreads
+                        ? new VirtualThreadFileProcessor(processor, openFiles, workers).process(files)
+                        : new BatchFileProcessor(processor, workers, useCache).process(files);
+                writeStatistics(writer, statistics, outputFile, errors);
+            } else {
+                // Process the flow logs, through the cache or a fork/join pool if requested
+                Statistics statistics;
+                if (useCache) {
+                    statistics = processor.processFlowLogsCached(flowLogFile, Math.max(1, threads));
+                } else if (forkJoin) {
+                    int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+                    statistics = processor.processFlowLogsForkJoin(flowLogFile, workers);
+                } else {
+                    statistics = processor.processFlowLogs(flowLogFile, Math.max(1, threads));
+                }
 
-            // Write statistics to output file
-            StatisticsWriter writer = new StatisticsWriter();
-            writer.writeStatistics(statistics, outputFile);
+                // Write statistics to output file
+                writeStatistics(writer, statistics, outputFile, errors);
+            }
+
+            metrics.finish();
+            errors.finish();
+            if (metricsFile != null) {
+                Files.writeString(Paths.get(metricsFile), metrics.snapshot().toJson() + System.lineSeparator(),
+                        StandardCharsets.UTF_8);
+            }
 
             System.out.println("Processing completed successfully.");
             System.out.println("Output written to: " + outputFile);
@@ -50,6 +338,72 @@ public class Main {
         } catch (Exception e) {
             System.err.println("Unexpected error: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            closeQuietly(reloadingLookupTable);
+        }
+    }
+
+    /**
+     * Writes the final statistics, unless the share of lines that failed to parse is
+     * over the limit; then the output file is left as it is.
+     */
+    private static void writeStatistics(StatisticsWriter writer, Statistics statistics, String outputFile,
+                                        ParseErrorLog errors) throws IOException {
+        errors.checkErrorRatio(true);
+        writer.writeStatistics(statistics, outputFile);
+    }
+
+    private static void closeQuietly(ReloadingLookupTable lookupTable) {
+        if (lookupTable == null) {
+            return;
+        }
+        try {
+            lookupTable.close();
+        } catch (IOException e) {
+            System.err.println("Warning: Failed to stop watching the lookup table: " + e.getMessage());
+        }
+    }
+
+    private static void registerMetrics(StripedFlowMetrics metrics) {
+        try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            System.err.println("Warning: Failed to register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    private static String optionValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for option: " + option);
+        }
+        return args[index];
+    }
+
+    private static long parsePositive(String option, String value, long max) {
+        return parseRange(option, value, 1, max);
+    }
+
+    private static long parseRange(String option, String value, long min, long max) {
+        try {
+            long result = Long.parseLong(value);
+            if (result < min || result > max) {
+                throw new IllegalArgumentException("Value for " + option + " must be between " + min + " and " + max + ": " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+    }
+
+    private static double parseRatio(String option, String value) {
+        try {
+            double result = Double.parseDouble(value);
+            if (!(result >= 0 && result < 1)) {
+                throw new IllegalArgumentException("Value for " + option + " must be at least 0 and below 1: " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
         }
     }
 
@@ -59,4 +413,4 @@ public class Main {
             throw new IOException("File not found: " + filePath);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+package com.flowparser.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a source stream on a background thread and hands the data over in
+ * blocks, so that producing the bytes (e.g. inflating gzip) overlaps with
+ * consuming them (parsing).
+ */
+final class AsyncInputStream extends InputStream {
+    private final InputStream source;
+    private final BlockHandoff handoff;
+    private final Thread producer;
+
+    private BlockHandoff.Block current;
+    private int position;
+    private boolean finished;
+
+    /**
+     * Starts reading the source on a new daemon thread.
+     *
+     * @param source Stream to read in the background; closed together with this stream
+     * @param blockSize Size of the blocks handed over
+     * @param depth Number of blocks that may be buffered
+     * @param threadName Name of the background thread
+     */
+    AsyncInputStream(InputStream source, int blockSize, int depth, String threadName) {
+        this.source = source;
+        this.handoff = new BlockHandoff(depth);
+        this.producer = new Thread(() -> produce(blockSize), threadName);
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void produce(int blockSize) {
+        try {
+            try {
+                while (true) {
+                    byte[] block = new byte[blockSize];
+                    int length = 0;
+                    int read = 0;
+                    while (length < blockSize && (read = source.read(block, length, blockSize - length)) != -1) {
+                        length += read;
+                    }
+                    if (length > 0) {
+                        handoff.put(block, length);
+                    }
+                    if (read == -1) {
+                        handoff.signal(BlockHandoff.END);
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                handoff.fail(e);
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (current == null || position == current.length) {
+            if (finished) {
+                return -1;
+            }
+            current = handoff.take();
+            position = 0;
+            if (current.error != null) {
+                finished = true;
+                throw current.error;
+            }
+            if (current == BlockHandoff.END) {
+                finished = true;
+                return -1;
+            }
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        producer.interrupt();
+        source.close();
+    }
+}
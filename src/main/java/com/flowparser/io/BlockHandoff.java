@@ -0,0 +1,60 @@
+package com.flowparser.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded queue that passes blocks of decompressed bytes from a producer thread
+ * to the thread that parses them. The producer blocks when the queue is full,
+ * which bounds memory use to the queue depth times the block size.
+ */
+final class BlockHandoff {
+    /**
+     * A block of bytes, or a signal that ends the stream.
+     */
+    static final class Block {
+        final byte[] data;
+        final int length;
+        final IOException error;
+
+        Block(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+
+    // End of the producer's output
+    static final Block END = new Block(new byte[0], 0, null);
+    // The producer ran past the end of its input range (used by the parallel gzip reader)
+    static final Block OVERRUN = new Block(new byte[0], 0, null);
+
+    private final BlockingQueue<Block> queue;
+
+    BlockHandoff(int depth) {
+        this.queue = new ArrayBlockingQueue<>(depth);
+    }
+
+    void put(byte[] data, int length) throws InterruptedException {
+        queue.put(new Block(data, length, null));
+    }
+
+    void signal(Block signal) throws InterruptedException {
+        queue.put(signal);
+    }
+
+    void fail(IOException error) throws InterruptedException {
+        queue.put(new Block(null, 0, error));
+    }
+
+    Block take() throws InterruptedIOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.flowparser.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens flow log input that may be compressed, recognising the format by its
+ * magic bytes rather than the file name.
+ *
+ * Gzip input is inflated on a background thread and handed to the reader in
+ * blocks, so decompression overlaps with parsing. Files with several gzip members
+ * can additionally be inflated one member per thread. Zstandard input is
+ * recognised but not supported, since the JDK has no decoder for it.
+ */
+public final class CompressedInputs {
+    /**
+     * Compression formats recognised by their magic bytes.
+     */
+    public enum Compression {
+        NONE,
+        GZIP,
+        ZSTD
+    }
+
+    // Size of the decompressed blocks passed to the parsing thread
+    private static final int BLOCK_SIZE = 256 * 1024;
+    // Blocks buffered ahead of the parser per decompressing thread
+    private static final int QUEUE_DEPTH = 4;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final int MAGIC_SIZE = 4;
+
+    private CompressedInputs() {
+    }
+
+    /**
+     * Detects the compression of a file from its first bytes.
+     *
+     * @param path The file to inspect
+     * @return The detected compression, {@link Compression#NONE} for plain text
+     * @throws IOException If the file cannot be read
+     */
+    public static Compression detect(Path path) throws IOException {
+        byte[] magic = new byte[MAGIC_SIZE];
+        int length = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while (length < magic.length && (read = in.read(magic, length, magic.length - length)) != -1) {
+                length += read;
+            }
+        }
+        return detect(magic, length);
+    }
+
+    /**
+     * Detects the compression from the leading bytes of the data.
+     *
+     * @param magic Leading bytes of the data
+     * @param length Number of valid bytes in the array
+     * @return The detected compression, {@link Compression#NONE} for plain text
+     */
+    public static Compression detect(byte[] magic, int length) {
+        if (length >= 2 && magic[0] == (byte) 0x1f && magic[1] == (byte) 0x8b) {
+            return Compression.GZIP;
+        }
+        if (length >= 4 && magic[0] == (byte) 0x28 && magic[1] == (byte) 0xb5
+                && magic[2] == (byte) 0x2f && magic[3] == (byte) 0xfd) {
+            return Compression.ZSTD;
+        }
+        return Compression.NONE;
+    }
+
+    /**
+     * Opens a file for reading its decompressed content.
+     *
+     * @param path The file to open
+     * @param threads Number of threads that may inflate gzip members in parallel
+     * @return Stream with the decompressed bytes, or the plain file content
+     * @throws IOException If the file cannot be opened or uses an unsupported compression
+     */
+    public static InputStream open(Path path, int threads) throws IOException {
+        switch (detect(path)) {
+            case GZIP:
+                if (threads > 1) {
+                    return new ParallelGzipInputStream(path, threads, BLOCK_SIZE, QUEUE_DEPTH);
+                }
+                return new AsyncInputStream(new GZIPInputStream(Files.newInputStream(path), GZIP_BUFFER_SIZE),
+                        BLOCK_SIZE, QUEUE_DEPTH, "flow-log-gunzip");
+            case ZSTD:
+                throw unsupported(path.toString());
+            default:
+                return Files.newInputStream(path);
+        }
+    }
+
+    /**
+     * Wraps a stream, such as standard input, so that compressed data is inflated
+     * transparently on a background thread. Closing the result closes the source.
+     *
+     * @param in Stream with plain or compressed data
+     * @return Stream with the decompressed bytes
+     * @throws IOException If the stream cannot be read or uses an unsupported compression
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in, GZIP_BUFFER_SIZE);
+        byte[] magic = new byte[MAGIC_SIZE];
+        buffered.mark(MAGIC_SIZE);
+        int length = 0;
+        int read;
+        while (length < magic.length && (read = buffered.read(magic, length, magic.length - length)) != -1) {
+            length += read;
+        }
+        buffered.reset();
+
+        switch (detect(magic, length)) {
+            case GZIP:
+                return new AsyncInputStream(new GZIPInputStream(buffered, GZIP_BUFFER_SIZE),
+                        BLOCK_SIZE, QUEUE_DEPTH, "flow-log-gunzip");
+            case ZSTD:
+                throw unsupported("input stream");
+            default:
+                return buffered;
+        }
+    }
+
+    private static IOException unsupported(String source) {
+        return new IOException("Zstandard compressed flow logs are not supported: " + source
+                + " (decompress with zstd -d first)");
+    }
+}
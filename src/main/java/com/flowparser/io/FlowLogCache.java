@@ -0,0 +1,534 @@
+package com.flowparser.io;
+
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.metrics.Stage;
+import com.flowparser.model.FlowField;
+import com.flowparser.model.FlowLogBatch;
+import com.flowparser.util.Hashing;
+import com.flowparser.util.Ipv4;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Binary columnar cache of the parsed records of a flow log file, kept in a
+ * sidecar file next to it, so that later runs (e.g. against a revised lookup
+ * table) can skip text parsing.
+ *
+ * The cache is a sequence of row groups, one per {@link FlowLogBatch}. Each group
+ * starts with the strings it adds to a dictionary shared by all text fields, followed
+ * by one fixed-width column per entry field: 4-byte ints, 8-byte times and volumes, and 4-byte
+ * dictionary ids for addresses, ENIs and the other text fields. Reading maps the
+ * file and copies only the requested columns into a batch; the others are skipped
+ * by their known width.
+ *
+ * The header records the size and modification time of the source file and the
+ * configured log format; a cache that does not match them is stale. A cache is
+ * written to a temporary file and moved into place once complete, so a cache that
+ * exists is never partial. Only records that parsed are cached, so parse warnings
+ * are not repeated when reading from the cache.
+ */
+public final class FlowLogCache {
+    public static final String SUFFIX = ".flowcache";
+
+    private static final long MAGIC = 0x464C4F5743414348L; // "FLOWCACH"
+    private static final int LAYOUT_VERSION = 2;
+    private static final int END_OF_GROUPS = -1;
+    private static final int NO_STRING = -1;
+    private static final int GROUP_HEADER_SIZE = 8;
+    // Trailer: end marker and record count
+    private static final int TRAILER_SIZE = 12;
+    private static final long MAX_WINDOW_SIZE = 1L << 30;
+    private static final List<FlowField> COLUMNS = entryFields();
+
+    private FlowLogCache() {
+    }
+
+    /**
+     * Returns the path of the cache for a flow log file: the file name with
+     * {@value #SUFFIX} appended, in the same directory.
+     */
+    public static Path sidecarFor(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Returns true if the file is a cache rather than a flow log, judging by its name.
+     */
+    public static boolean isCacheFile(Path file) {
+        return file.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    /**
+     * Checks whether a complete cache exists for the current version of the source.
+     *
+     * @param cache The cache file
+     * @param source The flow log file it was written for
+     * @param formatKey Identifies the log format the records were parsed with
+     * @return Whether the cache can be read instead of the source
+     * @throws IOException If the source cannot be inspected
+     */
+    public static boolean isValid(Path cache, Path source, String formatKey) throws IOException {
+        if (!Files.isRegularFile(cache)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            byte[] expected = header(source, formatKey);
+            long size = channel.size();
+            if (size < expected.length + TRAILER_SIZE) {
+                return false;
+            }
+            ByteBuffer actual = ByteBuffer.allocate(expected.length);
+            readFully(channel, actual, 0);
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, trailer, size - TRAILER_SIZE);
+            return actual.flip().equals(ByteBuffer.wrap(expected)) && trailer.getInt(0) == END_OF_GROUPS;
+        }
+    }
+
+    /**
+     * Starts writing a cache for a source file. The size and modification time are
+     * taken now, so a source that changes while it is parsed leaves a stale cache.
+     *
+     * @param cache The cache file to write
+     * @param source The flow log file
+     * @param formatKey Identifies the log format the records are parsed with
+     * @return A writer; call {@link Writer#commit()} once all records have been appended
+     * @throws IOException If the temporary file cannot be created
+     */
+    public static Writer create(Path cache, Path source, String formatKey) throws IOException {
+        return new Writer(cache, header(source, formatKey));
+    }
+
+    /**
+     * Reads the records of a cache.
+     *
+     * @param cache The cache file
+     * @param fields Entry fields to fill in the batches, or null for all
+     * @param metrics Receiver of bytes, records and read time
+     * @param consumer Called with each batch of records; the batch is reused
+     * @return The number of records read
+     * @throws IOException If the cache cannot be read or is corrupt
+     */
+    public static long read(Path cache, Set<FlowField> fields, FlowMetrics metrics,
+                            Consumer<FlowLogBatch> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            Window window = new Window(channel);
+            long position = headerLength(window);
+            Dictionary strings = new Dictionary();
+            FlowLogBatch batch = new FlowLogBatch();
+            int[] ids = new int[batch.capacity()];
+            long records = 0;
+
+            while (true) {
+                long readStart = System.nanoTime();
+                ByteBuffer group = window.map(position, GROUP_HEADER_SIZE);
+                int rows = group.getInt();
+                if (rows == END_OF_GROUPS) {
+                    return records;
+                }
+                int groupSize = group.getInt();
+                group = window.map(position, groupSize);
+                group.position(GROUP_HEADER_SIZE);
+
+                // Strings added to the dictionary by this group
+                int newStrings = group.getInt();
+                for (int i = 0; i < newStrings; i++) {
+                    byte[] bytes = new byte[group.getInt()];
+                    group.get(bytes);
+                    strings.add(new String(bytes, StandardCharsets.UTF_8));
+                }
+
+                if (rows > batch.capacity()) {
+                    batch = new FlowLogBatch(rows);
+                    ids = new int[rows];
+                }
+                for (FlowField field : COLUMNS) {
+                    int width = width(field);
+                    if (fields == null || fields.contains(field)) {
+                        readColumn(group, field, batch, rows, strings, ids);
+                    } else {
+                        group.position(group.position() + rows * width);
+                    }
+                }
+                batch.setSize(rows);
+                metrics.stageNanos(Stage.READ, System.nanoTime() - readStart);
+                metrics.bytesRead(groupSize);
+                metrics.linesRead(rows);
+
+                records += rows;
+                position += groupSize;
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    private static void readColumn(ByteBuffer group, FlowField field, FlowLogBatch batch, int rows,
+                                   Dictionary strings, int[] ids) throws IOException {
+        if (isLong(field)) {
+            group.asLongBuffer().get(longColumn(batch, field), 0, rows);
+        } else if (isText(field)) {
+            group.asIntBuffer().get(ids, 0, rows);
+            String[] column = textColumn(batch, field);
+            for (int i = 0; i < rows; i++) {
+                int id = ids[i];
+                if (id < NO_STRING || id >= strings.size()) {
+                    throw new IOException("Corrupt flow log cache: unknown string id " + id);
+                }
+                column[i] = id == NO_STRING ? null : strings.get(id);
+            }
+            long[] packed = field == FlowField.SRCADDR ? batch.srcIpv4s()
+                    : field == FlowField.DSTADDR ? batch.dstIpv4s() : null;
+            if (packed != null) {
+                for (int i = 0; i < rows; i++) {
+                    packed[i] = ids[i] == NO_STRING ? Ipv4.NONE : strings.ipv4(ids[i]);
+                }
+            }
+            long[] hashes = field == FlowField.SRCADDR ? batch.srcAddrHashes()
+                    : field == FlowField.DSTADDR ? batch.dstAddrHashes()
+                    : field == FlowField.INTERFACE_ID ? batch.interfaceIdHashes()
+                    : field == FlowField.ACTION ? batch.actionHashes() : null;
+            if (hashes != null) {
+                for (int i = 0; i < rows; i++) {
+                    hashes[i] = ids[i] == NO_STRING ? Hashing.NO_HASH : strings.hash(ids[i]);
+                }
+            }
+        } else {
+            group.asIntBuffer().get(intColumn(batch, field), 0, rows);
+        }
+        group.position(group.position() + rows * width(field));
+    }
+
+    /**
+     * Strings read from a cache, with each one's packed IPv4 value and hash computed once.
+     */
+    private static final class Dictionary {
+        private final List<String> strings = new ArrayList<>();
+        private long[] ipv4s = new long[64];
+        private long[] hashes = new long[64];
+
+        void add(String value) {
+            if (strings.size() == ipv4s.length) {
+                ipv4s = Arrays.copyOf(ipv4s, ipv4s.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            ipv4s[strings.size()] = Ipv4.parse(value);
+            hashes[strings.size()] = Hashing.hash(value);
+            strings.add(value);
+        }
+
+        long hash(int id) {
+            return hashes[id];
+        }
+
+        String get(int id) {
+            return strings.get(id);
+        }
+
+        long ipv4(int id) {
+            return ipv4s[id];
+        }
+
+        int size() {
+            return strings.size();
+        }
+    }
+
+    /**
+     * Writes a cache. Appending is thread-safe, so parallel workers can share a writer;
+     * each appended batch becomes one row group.
+     */
+    public static final class Writer implements Closeable {
+        private final Path cache;
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> newStrings = new ArrayList<>();
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        private int[] ids = new int[FlowLogBatch.DEFAULT_CAPACITY];
+        private long records;
+        private boolean committed;
+
+        private Writer(Path cache, byte[] header) throws IOException {
+            this.cache = cache;
+            Path directory = cache.toAbsolutePath().getParent();
+            this.tempFile = Files.createTempFile(directory, cache.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.WRITE);
+            write(ByteBuffer.wrap(header));
+        }
+
+        /**
+         * Appends the records of a batch.
+         *
+         * @param batch The records; every entry field column is stored
+         * @throws IOException If the cache cannot be written
+         */
+        public synchronized void append(FlowLogBatch batch) throws IOException {
+            int rows = batch.size();
+            if (rows == 0) {
+                return;
+            }
+            if (ids.length < rows) {
+                ids = new int[rows];
+            }
+
+            // Assign dictionary ids first, so the new strings can precede the columns
+            newStrings.clear();
+            int stringBytes = 0;
+            for (FlowField field : COLUMNS) {
+                if (isText(field)) {
+                    for (String value : textColumn(batch, field)) {
+                        stringBytes += intern(value);
+                    }
+                }
+            }
+            int columnBytes = 0;
+            for (FlowField field : COLUMNS) {
+                columnBytes += rows * width(field);
+            }
+            int groupSize = GROUP_HEADER_SIZE + 4 + newStrings.size() * 4 + stringBytes + columnBytes;
+
+            ByteBuffer out = buffer(groupSize);
+            out.putInt(rows).putInt(groupSize).putInt(newStrings.size());
+            for (String value : newStrings) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length).put(bytes);
+            }
+            for (FlowField field : COLUMNS) {
+                if (isLong(field)) {
+                    out.asLongBuffer().put(longColumn(batch, field), 0, rows);
+                } else if (isText(field)) {
+                    String[] column = textColumn(batch, field);
+                    for (int i = 0; i < rows; i++) {
+                        ids[i] = column[i] == null ? NO_STRING : dictionary.get(column[i]);
+                    }
+                    out.asIntBuffer().put(ids, 0, rows);
+                } else {
+                    out.asIntBuffer().put(intColumn(batch, field), 0, rows);
+                }
+                out.position(out.position() + rows * width(field));
+            }
+            out.flip();
+            write(out);
+            records += rows;
+        }
+
+        /**
+         * Finishes the cache and moves it into place.
+         *
+         * @throws IOException If the cache cannot be written
+         */
+        public synchronized void commit() throws IOException {
+            ByteBuffer trailer = buffer(TRAILER_SIZE);
+            trailer.putInt(END_OF_GROUPS).putLong(records).flip();
+            write(trailer);
+            channel.close();
+            try {
+                Files.move(tempFile, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, cache, StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        }
+
+        /**
+         * Discards the cache unless it was committed.
+         */
+        @Override
+        public synchronized void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+
+        /**
+         * Adds a string to the dictionary if it is new.
+         *
+         * @return The number of bytes the string adds to the row group
+         */
+        private int intern(String value) {
+            if (value == null || dictionary.containsKey(value)) {
+                return 0;
+            }
+            dictionary.put(value, dictionary.size());
+            newStrings.add(value);
+            return value.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        private ByteBuffer buffer(int size) {
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            buffer.clear();
+            return buffer;
+        }
+
+        private void write(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        }
+    }
+
+    /**
+     * Maps the cache in windows of up to 1 GB, since a single mapping is limited to 2 GB.
+     */
+    private static final class Window {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer mapped;
+        private long base;
+
+        Window(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        /**
+         * Returns a little-endian buffer whose position 0 is the given file position.
+         */
+        ByteBuffer map(long position, int length) throws IOException {
+            if (position < 0 || length < 0 || position + length > size) {
+                throw new IOException("Corrupt flow log cache: data past the end of the file");
+            }
+            if (mapped == null || position < base || position + length > base + mapped.capacity()) {
+                base = position;
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.max(length, Math.min(MAX_WINDOW_SIZE, size - position)));
+            }
+            ByteBuffer view = mapped.duplicate();
+            view.position((int) (position - base));
+            return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private static byte[] header(Path source, String formatKey) throws IOException {
+        byte[] format = formatKey.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(8 + 4 + 8 + 8 + 4 + format.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(MAGIC).putInt(LAYOUT_VERSION)
+                .putLong(Files.size(source))
+                .putLong(Files.getLastModifiedTime(source).toMillis())
+                .putInt(format.length).put(format);
+        return header.array();
+    }
+
+    /**
+     * Returns the length of the header at the start of a cache.
+     */
+    private static long headerLength(Window window) throws IOException {
+        ByteBuffer header = window.map(0, 32);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != LAYOUT_VERSION) {
+            throw new IOException("Not a flow log cache or unsupported layout");
+        }
+        return 32 + header.getInt(28);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of flow log cache");
+            }
+        }
+    }
+
+    private static List<FlowField> entryFields() {
+        List<FlowField> fields = new ArrayList<>();
+        for (FlowField field : FlowField.values()) {
+            if (field.isEntryField()) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private static int width(FlowField field) {
+        return isLong(field) ? 8 : 4;
+    }
+
+    private static boolean isLong(FlowField field) {
+        return field == FlowField.PACKETS || field == FlowField.BYTES
+                || field == FlowField.START || field == FlowField.END;
+    }
+
+    private static boolean isText(FlowField field) {
+        switch (field) {
+            case ACCOUNT_ID:
+            case INTERFACE_ID:
+            case SRCADDR:
+            case DSTADDR:
+            case ACTION:
+            case LOG_STATUS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String[] textColumn(FlowLogBatch batch, FlowField field) {
+        switch (field) {
+            case ACCOUNT_ID:
+                return batch.accountIds();
+            case INTERFACE_ID:
+                return batch.interfaceIds();
+            case SRCADDR:
+                return batch.srcAddrs();
+            case DSTADDR:
+                return batch.dstAddrs();
+            case ACTION:
+                return batch.actions();
+            case LOG_STATUS:
+                return batch.logStatuses();
+            default:
+                throw new IllegalArgumentException("Not a text field: " + field);
+        }
+    }
+
+    private static int[] intColumn(FlowLogBatch batch, FlowField field) {
+        switch (field) {
+            case VERSION:
+                return batch.versions();
+            case SRCPORT:
+                return batch.srcPorts();
+            case DSTPORT:
+                return batch.dstPorts();
+            case PROTOCOL:
+                return batch.protocols();
+            default:
+                throw new IllegalArgumentException("Not an integer field: " + field);
+        }
+    }
+
+    private static long[] longColumn(FlowLogBatch batch, FlowField field) {
+        switch (field) {
+            case PACKETS:
+                return batch.packets();
+            case BYTES:
+                return batch.bytes();
+            case START:
+                return batch.startTimes();
+            case END:
+                return batch.endTimes();
+            default:
+                throw new IllegalArgumentException("Not a long field: " + field);
+        }
+    }
+}
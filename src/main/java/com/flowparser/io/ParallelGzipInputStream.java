@@ -0,0 +1,459 @@
+package com.flowparser.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a multi-member gzip file (several gzip streams concatenated, as
+ * produced by appending gzip files or by block-compressing tools) with one member
+ * per worker thread, while returning the bytes in their original order.
+ *
+ * Member boundaries are not indexed in gzip, so the file is scanned ahead for
+ * candidate headers. A candidate is only trusted once the preceding member has
+ * been verified to end exactly there (deflate stream finished, CRC and size
+ * matching), and the output of a member is only read after that check. If a
+ * candidate turns out to be a false match inside compressed data, the reader falls
+ * back to sequential decompression from the last verified member start, skipping
+ * the bytes already returned. The same happens when a member that was expected to
+ * reach the end of the file is followed by more bytes, e.g. a member whose header
+ * the scan did not recognise, or trailing data. The output is therefore always
+ * identical to {@link GZIPInputStream}.
+ *
+ * The scan for the next header looks at most a bounded number of bytes ahead. A
+ * member with no candidate in that range is assumed to reach the end of the file,
+ * so a single-member file is not read twice; if it turns out to end earlier, the
+ * rest of the file is decompressed sequentially.
+ */
+final class ParallelGzipInputStream extends InputStream {
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    // A member needs at least a header, an empty deflate block and a trailer
+    private static final int MIN_MEMBER_SIZE = HEADER_SIZE + 2 + TRAILER_SIZE;
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+    /** Default number of compressed bytes scanned ahead for the next member header */
+    static final long DEFAULT_MAX_SCAN = 32L * 1024 * 1024;
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final int FLAG_HEADER_CRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+    private static final int FLAG_RESERVED = 0xE0;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private final ExecutorService workers;
+    private final int window;
+    private final int blockSize;
+    private final int depth;
+    private final long maxScan;
+    private final Deque<Member> inFlight = new ArrayDeque<>();
+
+    // Start of the next member to schedule, or the file size once all are scheduled
+    private long nextStart;
+    private Member current;
+    private BlockHandoff.Block block;
+    private int position;
+    // Set once the reader has fallen back to sequential decompression
+    private InputStream sequential;
+
+    /**
+     * Opens a gzip file for parallel decompression.
+     *
+     * @param path The gzip file
+     * @param threads Number of members decompressed at the same time
+     * @param blockSize Size of the decompressed blocks handed over
+     * @param depth Number of blocks buffered per member
+     */
+    ParallelGzipInputStream(Path path, int threads, int blockSize, int depth) throws IOException {
+        this(path, threads, blockSize, depth, DEFAULT_MAX_SCAN);
+    }
+
+    /**
+     * Opens a gzip file for parallel decompression with a bounded header scan.
+     *
+     * @param path The gzip file
+     * @param threads Number of members decompressed at the same time
+     * @param blockSize Size of the decompressed blocks handed over
+     * @param depth Number of blocks buffered per member
+     * @param maxScan Number of bytes after a member start that are scanned for the next header
+     */
+    ParallelGzipInputStream(Path path, int threads, int blockSize, int depth, long maxScan) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = threads * 2;
+        this.blockSize = blockSize;
+        this.depth = depth;
+        this.maxScan = maxScan;
+        this.workers = Executors.newFixedThreadPool(threads, daemonThreads());
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (sequential == null) {
+            if (block != null && position < block.length) {
+                int count = Math.min(len, block.length - position);
+                System.arraycopy(block.data, position, b, off, count);
+                position += count;
+                current.delivered += count;
+                return count;
+            }
+
+            if (current == null) {
+                current = nextMember();
+                if (current == null) {
+                    return -1;
+                }
+            }
+
+            block = current.output.take();
+            position = 0;
+            if (block.error != null) {
+                throw block.error;
+            }
+            if (block == BlockHandoff.END) {
+                current = null;
+                block = null;
+            } else if (block == BlockHandoff.OVERRUN) {
+                // The member did not end where the next candidate or the file starts
+                switchToSequential(current);
+            }
+        }
+        return sequential.read(b, off, len);
+    }
+
+    /**
+     * Schedules members up to the window size and returns the oldest one.
+     */
+    private Member nextMember() throws IOException {
+        while (inFlight.size() < window && nextStart < size) {
+            long start = nextStart;
+            long end = findCandidate(start + MIN_MEMBER_SIZE, start + maxScan);
+            if (end < 0) {
+                // No header within reach: assume the member runs to the end of the file
+                end = size;
+            }
+            Member member = new Member(start, end, new BlockHandoff(depth));
+            inFlight.addLast(member);
+            workers.execute(() -> inflate(member));
+            nextStart = end;
+        }
+        return inFlight.pollFirst();
+    }
+
+    /**
+     * Continues with sequential decompression from a verified member start,
+     * skipping the bytes of that member that have already been returned.
+     */
+    private void switchToSequential(Member member) throws IOException {
+        workers.shutdownNow();
+        inFlight.clear();
+        block = null;
+
+        // Interrupting the workers may close the shared channel, so reopen the file
+        InputStream file = Files.newInputStream(path);
+        long toSkip = member.start;
+        while (toSkip > 0) {
+            long skipped = file.skip(toSkip);
+            if (skipped <= 0) {
+                file.close();
+                throw new ZipException("Unexpected end of gzip data");
+            }
+            toSkip -= skipped;
+        }
+        InputStream gzip = new GZIPInputStream(file, INPUT_BUFFER_SIZE);
+        toSkip = member.delivered;
+        byte[] discard = new byte[INPUT_BUFFER_SIZE];
+        while (toSkip > 0) {
+            int read = gzip.read(discard, 0, (int) Math.min(discard.length, toSkip));
+            if (read == -1) {
+                throw new ZipException("Unexpected end of gzip data");
+            }
+            toSkip -= read;
+        }
+        sequential = new AsyncInputStream(gzip, blockSize, depth, "flow-log-gunzip");
+    }
+
+    /**
+     * Returns the offset of the first plausible gzip header between two positions,
+     * the file size if there is none up to the end of the file, or -1 if the scan
+     * stopped at the limit.
+     */
+    private long findCandidate(long from, long limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long scanEnd = Math.min(size, limit + HEADER_SIZE - 1);
+        long offset = from;
+        while (offset + HEADER_SIZE <= scanEnd) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), scanEnd - offset));
+            int read = channel.read(buffer, offset);
+            if (read < HEADER_SIZE) {
+                break;
+            }
+            for (int i = 0; i + HEADER_SIZE <= read; i++) {
+                if (isCandidateHeader(buffer, i)) {
+                    return offset + i;
+                }
+            }
+            // Overlap so that a header across the buffer boundary is found
+            offset += read - HEADER_SIZE + 1;
+        }
+        return scanEnd == size ? size : -1;
+    }
+
+    /**
+     * Checks the fixed part of a gzip member header: magic, deflate method, no reserved
+     * flags, a known extra-flags value and a known operating system.
+     */
+    static boolean isCandidateHeader(ByteBuffer buffer, int i) {
+        if (buffer.get(i) != (byte) 0x1f || buffer.get(i + 1) != (byte) 0x8b || buffer.get(i + 2) != 8) {
+            return false;
+        }
+        int flags = buffer.get(i + 3) & 0xff;
+        int extraFlags = buffer.get(i + 8) & 0xff;
+        int os = buffer.get(i + 9) & 0xff;
+        return (flags & FLAG_RESERVED) == 0
+            && (extraFlags == 0 || extraFlags == 2 || extraFlags == 4)
+            && (os <= 13 || os == 255);
+    }
+
+    /**
+     * Inflates one member on a worker thread, handing the output over in blocks.
+     */
+    private void inflate(Member member) {
+        try {
+            try {
+                inflateMember(member);
+            } catch (IOException e) {
+                member.output.fail(e);
+            }
+        } catch (InterruptedException e) {
+            // Cancelled after a fallback or close
+        }
+    }
+
+    private void inflateMember(Member member) throws IOException, InterruptedException {
+        SegmentReader input = new SegmentReader(member.start, member.end);
+        if (!input.skipHeader()) {
+            member.output.signal(BlockHandoff.OVERRUN);
+            return;
+        }
+
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        long inflated = 0;
+        try {
+            byte[] out = new byte[blockSize];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (input.position == input.limit && !input.fill()) {
+                        member.output.signal(BlockHandoff.OVERRUN);
+                        return;
+                    }
+                    inflater.setInput(input.buffer, input.position, input.limit - input.position);
+                    input.position = input.limit;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Unsupported gzip member with preset dictionary");
+                }
+                int count = inflater.inflate(out, length, out.length - length);
+                crc.update(out, length, count);
+                length += count;
+                inflated += count;
+                if (length == out.length) {
+                    member.output.put(out, length);
+                    out = new byte[blockSize];
+                    length = 0;
+                }
+            }
+            if (length > 0) {
+                member.output.put(out, length);
+            }
+
+            // Give back the input the inflater did not consume and check the trailer
+            input.position -= inflater.getRemaining();
+            // Anything but a trailer up to the end of the range is left to the sequential
+            // reader, which handles members it could not find and trailing data
+            if (input.remainingInSegment() != TRAILER_SIZE) {
+                member.output.signal(BlockHandoff.OVERRUN);
+                return;
+            }
+            long expectedCrc = input.readIntLE();
+            long expectedSize = input.readIntLE();
+            if (expectedCrc != crc.getValue() || expectedSize != (inflated & 0xffffffffL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+            member.output.signal(BlockHandoff.END);
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid gzip data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns true once a false member header forced sequential decompression.
+     */
+    boolean isSequential() {
+        return sequential != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        if (sequential != null) {
+            sequential.close();
+        }
+        channel.close();
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "flow-log-gunzip-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * A member range and the handoff its worker writes into.
+     */
+    private static final class Member {
+        final long start;
+        final long end;
+        final BlockHandoff output;
+        // Bytes of this member already returned to the reader
+        long delivered;
+
+        Member(long start, long end, BlockHandoff output) {
+            this.start = start;
+            this.end = end;
+            this.output = output;
+        }
+    }
+
+    /**
+     * Reads the compressed bytes of one member range with positional reads, which
+     * are safe to use from several threads on the same channel.
+     */
+    private final class SegmentReader {
+        final byte[] buffer = new byte[INPUT_BUFFER_SIZE];
+        int position;
+        int limit;
+        long bufferStart;
+        final long end;
+
+        SegmentReader(long start, long end) {
+            this.bufferStart = start;
+            this.end = end;
+        }
+
+        /**
+         * Refills the buffer with the next bytes of the segment.
+         *
+         * @return false if the segment has no more bytes
+         */
+        boolean fill() throws IOException {
+            bufferStart += limit;
+            position = 0;
+            limit = 0;
+            int wanted = (int) Math.min(buffer.length, end - bufferStart);
+            while (limit < wanted) {
+                int read = channel.read(ByteBuffer.wrap(buffer, limit, wanted - limit), bufferStart + limit);
+                if (read == -1) {
+                    break;
+                }
+                limit += read;
+            }
+            return limit > 0;
+        }
+
+        long remainingInSegment() {
+            return end - bufferStart - position;
+        }
+
+        int readByte() throws IOException {
+            if (position == limit && !fill()) {
+                throw new ZipException("Unexpected end of gzip member");
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        long readIntLE() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 4; i++) {
+                value |= (long) readByte() << (8 * i);
+            }
+            return value;
+        }
+
+        /**
+         * Skips the member header, including optional fields.
+         *
+         * @return false if the header runs past the end of the segment
+         */
+        boolean skipHeader() throws IOException {
+            try {
+                readByte();
+                readByte();
+                readByte();
+                int flags = readByte();
+                for (int i = 0; i < 6; i++) {
+                    readByte();
+                }
+                if ((flags & FLAG_EXTRA) != 0) {
+                    int extraLength = readByte() | (readByte() << 8);
+                    for (int i = 0; i < extraLength; i++) {
+                        readByte();
+                    }
+                }
+                if ((flags & FLAG_NAME) != 0) {
+                    while (readByte() != 0) {
+                        // Skip the file name
+                    }
+                }
+                if ((flags & FLAG_COMMENT) != 0) {
+                    while (readByte() != 0) {
+                        // Skip the comment
+                    }
+                }
+                if ((flags & FLAG_HEADER_CRC) != 0) {
+                    readByte();
+                    readByte();
+                }
+                return true;
+            } catch (ZipException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.flowparser.metrics;
+
+import com.flowparser.model.ParseFailure;
+
+/**
+ * Receives counts and timings from the processing stages.
+ *
+ * Calls are made from the processing threads, so implementations must be
+ * thread-safe and cheap. Stages report counts per block where they can rather
+ * than per record. All methods default to doing nothing, so an implementation
+ * only needs to override what it records.
+ */
+public interface FlowMetrics {
+    /**
+     * Metrics that discard everything.
+     */
+    FlowMetrics NOOP = new FlowMetrics() {
+    };
+
+    /**
+     * Records input lines read, including empty and invalid ones.
+     *
+     * @param count Number of lines
+     */
+    default void linesRead(long count) {
+    }
+
+    /**
+     * Records input bytes read, after decompression.
+     *
+     * @param count Number of bytes
+     */
+    default void bytesRead(long count) {
+    }
+
+    /**
+     * Records a line that could not be parsed.
+     *
+     * @param failure The reason
+     */
+    default void parseFailure(ParseFailure failure) {
+    }
+
+    /**
+     * Records records that matched a tag in the lookup table.
+     *
+     * @param count Number of records
+     */
+    default void tagged(long count) {
+    }
+
+    /**
+     * Records records that did not match any tag.
+     *
+     * @param count Number of records
+     */
+    default void untagged(long count) {
+    }
+
+    /**
+     * Records time spent in a stage. Time of stages running on several threads is summed.
+     *
+     * @param stage The stage
+     * @param nanos Elapsed time in nanoseconds
+     */
+    default void stageNanos(Stage stage, long nanos) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.flowparser.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the processing metrics, registered as
+ * {@code com.flowparser:type=FlowMetrics}.
+ */
+public interface FlowMetricsMXBean {
+    long getLinesRead();
+
+    long getBytesRead();
+
+    long getTaggedRecords();
+
+    long getUntaggedRecords();
+
+    long getParseFailures();
+
+    /**
+     * Returns the number of parse failures by {@link com.flowparser.model.ParseFailure} name.
+     */
+    Map<String, Long> getParseFailuresByReason();
+
+    /**
+     * Returns the summed time of each {@link Stage} in nanoseconds.
+     */
+    Map<String, Long> getStageNanos();
+
+    long getElapsedNanos();
+
+    double getRecordsPerSecond();
+}
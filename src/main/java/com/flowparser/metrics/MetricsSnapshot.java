@@ -0,0 +1,115 @@
+package com.flowparser.metrics;
+
+import com.flowparser.model.ParseFailure;
+
+import java.util.Locale;
+
+/**
+ * Immutable copy of the metrics at one point in time.
+ */
+public final class MetricsSnapshot {
+    private final long linesRead;
+    private final long bytesRead;
+    private final long taggedRecords;
+    private final long untaggedRecords;
+    private final long[] parseFailures;
+    private final long[] stageNanos;
+    private final long elapsedNanos;
+
+    MetricsSnapshot(long linesRead, long bytesRead, long taggedRecords, long untaggedRecords,
+                    long[] parseFailures, long[] stageNanos, long elapsedNanos) {
+        this.linesRead = linesRead;
+        this.bytesRead = bytesRead;
+        this.taggedRecords = taggedRecords;
+        this.untaggedRecords = untaggedRecords;
+        this.parseFailures = parseFailures;
+        this.stageNanos = stageNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getTaggedRecords() {
+        return taggedRecords;
+    }
+
+    public long getUntaggedRecords() {
+        return untaggedRecords;
+    }
+
+    /**
+     * Returns the number of records that were parsed and counted.
+     */
+    public long getRecords() {
+        return taggedRecords + untaggedRecords;
+    }
+
+    public long getParseFailures(ParseFailure failure) {
+        return parseFailures[failure.ordinal()];
+    }
+
+    /**
+     * Returns the number of parse failures of all reasons.
+     */
+    public long getParseFailures() {
+        long total = 0;
+        for (long count : parseFailures) {
+            total += count;
+        }
+        return total;
+    }
+
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns records per second of wall-clock time.
+     */
+    public double getRecordsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getRecords() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Renders the snapshot as a single-line JSON object.
+     *
+     * @return The JSON text
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(512);
+        json.append('{');
+        json.append("\"linesRead\":").append(linesRead);
+        json.append(",\"bytesRead\":").append(bytesRead);
+        json.append(",\"records\":").append(getRecords());
+        json.append(",\"taggedRecords\":").append(taggedRecords);
+        json.append(",\"untaggedRecords\":").append(untaggedRecords);
+        json.append(",\"parseFailures\":{");
+        for (ParseFailure failure : ParseFailure.values()) {
+            if (failure.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(failure.name()).append("\":").append(parseFailures[failure.ordinal()]);
+        }
+        json.append("},\"stageNanos\":{");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(stage.name()).append("\":").append(stageNanos[stage.ordinal()]);
+        }
+        json.append("},\"elapsedNanos\":").append(elapsedNanos);
+        json.append(",\"recordsPerSecond\":").append(String.format(Locale.ROOT, "%.1f", getRecordsPerSecond()));
+        json.append('}');
+        return json.toString();
+    }
+}
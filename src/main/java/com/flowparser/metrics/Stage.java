@@ -0,0 +1,17 @@
+package com.flowparser.metrics;
+
+/**
+ * Processing stages whose time is measured.
+ */
+public enum Stage {
+    /** Reading input bytes, including decompression done by the reading thread */
+    READ,
+    /** Splitting lines and decoding their fields into batches */
+    PARSE,
+    /** Matching records against the lookup table and the multi-tag rules */
+    TAG,
+    /** Adding records to the statistics: counts, volumes, top addresses and distinct counts */
+    AGGREGATE,
+    /** Writing the output file */
+    WRITE
+}
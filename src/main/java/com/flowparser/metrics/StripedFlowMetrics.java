@@ -0,0 +1,170 @@
+package com.flowparser.metrics;
+
+import com.flowparser.model.ParseFailure;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics kept in {@link LongAdder}s, which spread updates from different threads
+ * over separate cells, so recording takes no locks and causes little contention.
+ *
+ * Elapsed time runs from construction until {@link #finish()} is called.
+ */
+public final class StripedFlowMetrics implements FlowMetrics, FlowMetricsMXBean {
+    public static final String OBJECT_NAME = "com.flowparser:type=FlowMetrics";
+
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder tagged = new LongAdder();
+    private final LongAdder untagged = new LongAdder();
+    private final LongAdder[] parseFailures = newAdders(ParseFailure.values().length);
+    private final LongAdder[] stageNanos = newAdders(Stage.values().length);
+    private final long startNanos = System.nanoTime();
+    private volatile long finishNanos;
+
+    @Override
+    public void linesRead(long count) {
+        linesRead.add(count);
+    }
+
+    @Override
+    public void bytesRead(long count) {
+        bytesRead.add(count);
+    }
+
+    @Override
+    public void parseFailure(ParseFailure failure) {
+        parseFailures[failure.ordinal()].increment();
+    }
+
+    @Override
+    public void tagged(long count) {
+        tagged.add(count);
+    }
+
+    @Override
+    public void untagged(long count) {
+        untagged.add(count);
+    }
+
+    @Override
+    public void stageNanos(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * Stops the elapsed-time clock.
+     */
+    public void finish() {
+        finishNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns a copy of the current values.
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(linesRead.sum(), bytesRead.sum(), tagged.sum(), untagged.sum(),
+                sums(parseFailures), sums(stageNanos), getElapsedNanos());
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under {@link #OBJECT_NAME},
+     * replacing metrics registered earlier.
+     *
+     * @return The name under which the metrics are registered
+     * @throws JMException If registration fails
+     */
+    public ObjectName registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        try {
+            server.registerMBean(this, name);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        }
+        return name;
+    }
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getTaggedRecords() {
+        return tagged.sum();
+    }
+
+    @Override
+    public long getUntaggedRecords() {
+        return untagged.sum();
+    }
+
+    @Override
+    public long getParseFailures() {
+        long total = 0;
+        for (LongAdder adder : parseFailures) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getParseFailuresByReason() {
+        Map<String, Long> failures = new LinkedHashMap<>();
+        for (ParseFailure failure : ParseFailure.values()) {
+            failures.put(failure.name(), parseFailures[failure.ordinal()].sum());
+        }
+        return failures;
+    }
+
+    @Override
+    public Map<String, Long> getStageNanos() {
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (Stage stage : Stage.values()) {
+            nanos.put(stage.name(), stageNanos[stage.ordinal()].sum());
+        }
+        return nanos;
+    }
+
+    @Override
+    public long getElapsedNanos() {
+        long finish = finishNanos;
+        return (finish == 0 ? System.nanoTime() : finish) - startNanos;
+    }
+
+    @Override
+    public double getRecordsPerSecond() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0 ? 0 : (tagged.sum() + untagged.sum()) * 1e9 / elapsed;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+}
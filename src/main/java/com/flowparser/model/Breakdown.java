@@ -0,0 +1,12 @@
+package com.flowparser.model;
+
+/**
+ * Breakdowns of the statistics that are only kept when asked for, since they cost
+ * time for every record and need the address and interface fields decoded.
+ */
+public enum Breakdown {
+    /** Source and destination addresses with the most bytes */
+    TOP_ADDRESSES,
+    /** Estimated distinct source addresses, destination addresses and interfaces per tag */
+    DISTINCT_COUNTS
+}
@@ -0,0 +1,107 @@
+package com.flowparser.model;
+
+import com.flowparser.util.HyperLogLog;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Statistics that many threads can update at the same time.
+ *
+ * Each thread updates its own shard, a plain {@link Statistics} created the first
+ * time the thread writes, so threads never write to shared counters or cache lines.
+ * The shards are combined with {@link Statistics#merge} when the totals are read.
+ * Every shard has its own monitor, which only its owning thread takes while
+ * updating, so it is uncontended except for the moment a {@link #snapshot()} copies
+ * that shard; readers therefore always see whole batches. Updates should be a batch
+ * of records at a time, as the processor makes them, to keep the per-update cost low.
+ *
+ * All shards share one {@link TagDictionary}, which is safe for concurrent interning.
+ * Shards are kept after their thread ends, so no counts are lost.
+ */
+public final class ConcurrentStatistics {
+    private final TagDictionary tagDictionary;
+    private final int distinctPrecision;
+    private final List<Statistics> shards = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Statistics> shard = ThreadLocal.withInitial(this::newShard);
+
+    /**
+     * Creates empty statistics with distinct count sketches of the default precision.
+     *
+     * @param tagDictionary Dictionary that tag ids refer to
+     */
+    public ConcurrentStatistics(TagDictionary tagDictionary) {
+        this(tagDictionary, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param tagDictionary Dictionary that tag ids refer to
+     * @param distinctPrecision Precision of the per-tag distinct count sketches
+     * @throws IllegalArgumentException If the precision is out of range
+     */
+    public ConcurrentStatistics(TagDictionary tagDictionary, int distinctPrecision) {
+        HyperLogLog.checkPrecision(distinctPrecision);
+        this.tagDictionary = tagDictionary;
+        this.distinctPrecision = distinctPrecision;
+    }
+
+    /**
+     * Applies an update to the calling thread's shard. The update must not keep the
+     * shard or pass it to another thread.
+     *
+     * @param update Adds counts to the shard
+     */
+    public void update(Consumer<Statistics> update) {
+        Statistics statistics = shard.get();
+        synchronized (statistics) {
+            update.accept(statistics);
+        }
+    }
+
+    /**
+     * Adds all counts of other statistics, e.g. of a file processed separately.
+     *
+     * @param other The statistics to add
+     */
+    public void merge(Statistics other) {
+        update(statistics -> statistics.merge(other));
+    }
+
+    /**
+     * Returns the combined counts of all shards so far, as new statistics that the
+     * caller owns. Updates made while the snapshot is taken are either fully in it or
+     * not at all.
+     */
+    public Statistics snapshot() {
+        Statistics combined = new Statistics(tagDictionary, distinctPrecision);
+        for (Statistics statistics : shards) {
+            synchronized (statistics) {
+                combined.merge(statistics);
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * Returns the dictionary that tag ids refer to.
+     */
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * Returns the number of threads that have updated these statistics.
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    private Statistics newShard() {
+        Statistics statistics = new Statistics(tagDictionary, distinctPrecision);
+        shards.add(statistics);
+        return statistics;
+    }
+}
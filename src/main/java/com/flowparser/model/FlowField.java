@@ -0,0 +1,92 @@
+package com.flowparser.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fields that can appear in an AWS VPC flow log record, with the name used in
+ * custom format strings and log file headers, and the format version that
+ * introduced them.
+ *
+ * The first fourteen fields make up the default (version 2) format and are the
+ * ones a {@link FlowLogEntry} holds; the others can appear in custom formats and
+ * are skipped when parsing.
+ */
+public enum FlowField {
+    VERSION("version", 2),
+    ACCOUNT_ID("account-id", 2),
+    INTERFACE_ID("interface-id", 2),
+    SRCADDR("srcaddr", 2),
+    DSTADDR("dstaddr", 2),
+    SRCPORT("srcport", 2),
+    DSTPORT("dstport", 2),
+    PROTOCOL("protocol", 2),
+    PACKETS("packets", 2),
+    BYTES("bytes", 2),
+    START("start", 2),
+    END("end", 2),
+    ACTION("action", 2),
+    LOG_STATUS("log-status", 2),
+    VPC_ID("vpc-id", 3),
+    SUBNET_ID("subnet-id", 3),
+    INSTANCE_ID("instance-id", 3),
+    TCP_FLAGS("tcp-flags", 3),
+    TYPE("type", 3),
+    PKT_SRCADDR("pkt-srcaddr", 3),
+    PKT_DSTADDR("pkt-dstaddr", 3),
+    REGION("region", 4),
+    AZ_ID("az-id", 4),
+    SUBLOCATION_TYPE("sublocation-type", 4),
+    SUBLOCATION_ID("sublocation-id", 4),
+    PKT_SRC_AWS_SERVICE("pkt-src-aws-service", 5),
+    PKT_DST_AWS_SERVICE("pkt-dst-aws-service", 5),
+    FLOW_DIRECTION("flow-direction", 5),
+    TRAFFIC_PATH("traffic-path", 5);
+
+    private static final Map<String, FlowField> BY_NAME = new HashMap<>();
+
+    static {
+        for (FlowField field : values()) {
+            BY_NAME.put(field.fieldName, field);
+        }
+    }
+
+    private final String fieldName;
+    private final int version;
+
+    FlowField(String fieldName, int version) {
+        this.fieldName = fieldName;
+        this.version = version;
+    }
+
+    /**
+     * Returns the name used in format strings and headers, e.g. "dstport".
+     */
+    public String fieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Returns the flow log version that introduced the field.
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Returns true if the field is held by a {@link FlowLogEntry}.
+     */
+    public boolean isEntryField() {
+        return version == 2;
+    }
+
+    /**
+     * Looks up a field by its format name.
+     *
+     * @param name The name, e.g. "dstport"
+     * @return The field, or null if the name is not known
+     */
+    public static FlowField forName(String name) {
+        return BY_NAME.get(name);
+    }
+}
@@ -0,0 +1,259 @@
+package com.flowparser.model;
+
+import com.flowparser.util.Hashing;
+import com.flowparser.util.Ipv4;
+
+import java.util.Arrays;
+
+/**
+ * A reusable batch of parsed flow log records stored column by column.
+ *
+ * Each field has a primitive (or String) array with one slot per record, so a
+ * consumer can process a whole batch in tight loops over the columns it needs
+ * instead of one {@link FlowLogEntry} object per record. Only the fields the
+ * parser was asked to decode are filled; the others are 0 or null. Decoded
+ * srcaddr and dstaddr fields are also kept packed into long columns, with
+ * {@link Ipv4#NONE} for addresses that are not IPv4 or not decoded, and decoded
+ * addresses, interface ids and actions are hashed for distinct counting and rule
+ * matching, with
+ * {@link Hashing#NO_HASH} for fields that are not decoded. Slots from
+ * {@link #size()} up to the capacity hold stale values from earlier batches.
+ *
+ * The parser fills the same batch again after handing it to the consumer, so
+ * consumers must not keep a reference to it. Not thread-safe.
+ */
+public final class FlowLogBatch {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int[] versions;
+    private final String[] accountIds;
+    private final String[] interfaceIds;
+    private final String[] srcAddrs;
+    private final String[] dstAddrs;
+    private final int[] srcPorts;
+    private final int[] dstPorts;
+    private final int[] protocols;
+    private final long[] packets;
+    private final long[] bytes;
+    private final long[] startTimes;
+    private final long[] endTimes;
+    private final String[] actions;
+    private final String[] logStatuses;
+    private final long[] srcIpv4s;
+    private final long[] dstIpv4s;
+    private final long[] srcAddrHashes;
+    private final long[] dstAddrHashes;
+    private final long[] interfaceIdHashes;
+    private final long[] actionHashes;
+    // Filled by the consumer that tags the batch
+    private final int[] tagIds;
+    private int size;
+
+    public FlowLogBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity Maximum number of records
+     */
+    public FlowLogBatch(int capacity) {
+        this.versions = new int[capacity];
+        this.accountIds = new String[capacity];
+        this.interfaceIds = new String[capacity];
+        this.srcAddrs = new String[capacity];
+        this.dstAddrs = new String[capacity];
+        this.srcPorts = new int[capacity];
+        this.dstPorts = new int[capacity];
+        this.protocols = new int[capacity];
+        this.packets = new long[capacity];
+        this.bytes = new long[capacity];
+        this.startTimes = new long[capacity];
+        this.endTimes = new long[capacity];
+        this.actions = new String[capacity];
+        this.logStatuses = new String[capacity];
+        this.srcIpv4s = new long[capacity];
+        this.dstIpv4s = new long[capacity];
+        Arrays.fill(srcIpv4s, Ipv4.NONE);
+        Arrays.fill(dstIpv4s, Ipv4.NONE);
+        this.srcAddrHashes = new long[capacity];
+        this.dstAddrHashes = new long[capacity];
+        this.interfaceIdHashes = new long[capacity];
+        this.actionHashes = new long[capacity];
+        this.tagIds = new int[capacity];
+    }
+
+    /**
+     * Appends a record. The batch must not be full.
+     */
+    public void add(int version, String accountId, String interfaceId, String srcAddr, String dstAddr,
+                    int srcPort, int dstPort, int protocol, long packetCount, long byteCount,
+                    long startTime, long endTime, String action, String logStatus) {
+        int row = size++;
+        versions[row] = version;
+        accountIds[row] = accountId;
+        interfaceIds[row] = interfaceId;
+        srcAddrs[row] = srcAddr;
+        dstAddrs[row] = dstAddr;
+        srcPorts[row] = srcPort;
+        dstPorts[row] = dstPort;
+        protocols[row] = protocol;
+        packets[row] = packetCount;
+        bytes[row] = byteCount;
+        startTimes[row] = startTime;
+        endTimes[row] = endTime;
+        actions[row] = action;
+        logStatuses[row] = logStatus;
+    }
+
+    /**
+     * Removes all records, keeping the arrays for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sets the number of records, for producers that fill the column arrays directly.
+     *
+     * @param size Number of valid rows, at most {@link #capacity()}
+     */
+    public void setSize(int size) {
+        if (size < 0 || size > capacity()) {
+            throw new IllegalArgumentException("Batch size out of range: " + size);
+        }
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return versions.length;
+    }
+
+    public boolean isFull() {
+        return size == versions.length;
+    }
+
+    /**
+     * Creates an entry object for one record, for consumers that work per record.
+     *
+     * @param row Index of the record, below {@link #size()}
+     * @return A new entry with the record's fields
+     */
+    public FlowLogEntry entry(int row) {
+        return new FlowLogEntry(
+            versions[row], accountIds[row], interfaceIds[row], srcAddrs[row], dstAddrs[row],
+            srcPorts[row], dstPorts[row], protocols[row], packets[row], bytes[row],
+            startTimes[row], endTimes[row], actions[row], logStatuses[row]
+        );
+    }
+
+    public int[] versions() {
+        return versions;
+    }
+
+    public String[] accountIds() {
+        return accountIds;
+    }
+
+    public String[] interfaceIds() {
+        return interfaceIds;
+    }
+
+    public String[] srcAddrs() {
+        return srcAddrs;
+    }
+
+    public String[] dstAddrs() {
+        return dstAddrs;
+    }
+
+    /**
+     * Returns the srcaddr column packed as IPv4 values, see {@link Ipv4}.
+     */
+    public long[] srcIpv4s() {
+        return srcIpv4s;
+    }
+
+    /**
+     * Returns the dstaddr column packed as IPv4 values, see {@link Ipv4}.
+     */
+    public long[] dstIpv4s() {
+        return dstIpv4s;
+    }
+
+    /**
+     * Returns the hashes of the srcaddr column, see {@link Hashing}.
+     */
+    public long[] srcAddrHashes() {
+        return srcAddrHashes;
+    }
+
+    /**
+     * Returns the hashes of the dstaddr column, see {@link Hashing}.
+     */
+    public long[] dstAddrHashes() {
+        return dstAddrHashes;
+    }
+
+    /**
+     * Returns the hashes of the interface-id column, see {@link Hashing}.
+     */
+    public long[] interfaceIdHashes() {
+        return interfaceIdHashes;
+    }
+
+    /**
+     * Returns the hashes of the action column, see {@link Hashing}.
+     */
+    public long[] actionHashes() {
+        return actionHashes;
+    }
+
+    public int[] srcPorts() {
+        return srcPorts;
+    }
+
+    public int[] dstPorts() {
+        return dstPorts;
+    }
+
+    public int[] protocols() {
+        return protocols;
+    }
+
+    public long[] packets() {
+        return packets;
+    }
+
+    public long[] bytes() {
+        return bytes;
+    }
+
+    public long[] startTimes() {
+        return startTimes;
+    }
+
+    public long[] endTimes() {
+        return endTimes;
+    }
+
+    public String[] actions() {
+        return actions;
+    }
+
+    public String[] logStatuses() {
+        return logStatuses;
+    }
+
+    /**
+     * Returns the tag id column, which the parser leaves alone and a tagging consumer fills.
+     */
+    public int[] tagIds() {
+        return tagIds;
+    }
+}
@@ -2,7 +2,9 @@ package com.flowparser.model;
 
 /**
  * Represents a single entry in the flow log.
- * Based on AWS VPC flow log format version 2.
+ * Based on AWS VPC flow log format version 2. Packet and byte counts are longs, since a
+ * single long-lived flow can carry more than 2 GB in one aggregation interval. Fields that the log format does not
+ * include, or that the parser was not asked to decode, are 0 or null.
  */
 public class FlowLogEntry {
     private final int version;
@@ -13,8 +15,8 @@ public class FlowLogEntry {
     private final int srcPort;
     private final int dstPort;
     private final int protocol;
-    private final int packets;
-    private final int bytes;
+    private final long packets;
+    private final long bytes;
     private final long startTime;
     private final long endTime;
     private final String action;
@@ -24,7 +26,7 @@ public class FlowLogEntry {
     private String tag;
 
     public FlowLogEntry(int version, String accountId, String interfaceId, String srcAddr, String dstAddr, 
-                       int srcPort, int dstPort, int protocol, int packets, int bytes, 
+                       int srcPort, int dstPort, int protocol, long packets, long bytes, 
                        long startTime, long endTime, String action, String logStatus) {
         this.version = version;
         this.accountId = accountId;
@@ -80,19 +82,14 @@ public class FlowLogEntry {
      * Only common protocols used in the assignment.
      */
     public String getProtocolName() {
-        switch (protocol) {
-            case 6: return "tcp";
-            case 17: return "udp";
-            case 1: return "icmp";
-            default: return String.valueOf(protocol);
-        }
+        return Protocols.name(protocol);
     }
 
-    public int getPackets() {
+    public long getPackets() {
         return packets;
     }
 
-    public int getBytes() {
+    public long getBytes() {
         return bytes;
     }
 
@@ -0,0 +1,15 @@
+package com.flowparser.model;
+
+/**
+ * Categories of flow log lines that could not be parsed.
+ */
+public enum ParseFailure {
+    /** Fewer fields than the format requires */
+    INSUFFICIENT_FIELDS,
+    /** A version other than the supported one */
+    UNSUPPORTED_VERSION,
+    /** A numeric field that is not a valid number */
+    INVALID_NUMBER,
+    /** Any other problem */
+    OTHER
+}
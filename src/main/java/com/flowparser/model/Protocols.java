@@ -0,0 +1,58 @@
+package com.flowparser.model;
+
+/**
+ * Conversions between IANA protocol numbers and the names used in lookup tables and output.
+ */
+public final class Protocols {
+
+    private Protocols() {
+    }
+
+    /**
+     * Returns the protocol name for a protocol number.
+     * Only common protocols used in the assignment have names; others are rendered as the number.
+     *
+     * @param protocol The protocol number
+     * @return The protocol name
+     */
+    public static String name(int protocol) {
+        switch (protocol) {
+            case 6: return "tcp";
+            case 17: return "udp";
+            case 1: return "icmp";
+            default: return String.valueOf(protocol);
+        }
+    }
+
+    /**
+     * Returns the protocol number whose name is exactly the given string, as produced
+     * by {@link #name(int)}, or -1 if there is none in the range 0-255.
+     * For example "tcp" gives 6 and "47" gives 47, but "6" and "TCP" give -1.
+     *
+     * @param name The protocol name
+     * @return The protocol number, or -1 if the name is not a canonical protocol name
+     */
+    public static int number(String name) {
+        switch (name) {
+            case "tcp": return 6;
+            case "udp": return 17;
+            case "icmp": return 1;
+            default:
+                break;
+        }
+
+        int length = name.length();
+        if (length == 0 || length > 3 || (length > 1 && name.charAt(0) == '0')) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value <= 255 && name(value).equals(name) ? value : -1;
+    }
+}
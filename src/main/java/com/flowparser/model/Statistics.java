@@ -1,59 +1,741 @@
 package com.flowparser.model;
 
-import java.util.HashMap;
+import com.flowparser.util.Hashing;
+import com.flowparser.util.HeavyHitters;
+import com.flowparser.util.HyperLogLog;
+import com.flowparser.util.IntIndexMap;
+import com.flowparser.util.Ipv4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Class to store statistics about flow log data.
+ *
+ * Counts are kept in primitive arrays: tags are counted by their id in a
+ * {@link TagDictionary}, and port/protocol combinations by a packed int key
+ * (16-bit port, 8-bit protocol number) in an open-addressing index. Strings are
+ * only rendered when the map views are requested. Combinations that do not fit the
+ * packed key (ports outside 0-65535, unknown protocol names) are kept in a small
+ * string-keyed side table so that no input is lost.
+ *
+ * Next to each record count, the packets and bytes of the records are summed in
+ * parallel long arrays, so that traffic volume can be reported per tag and per
+ * port/protocol combination. The sums are longs because a single flow record can
+ * exceed the int range.
+ *
+ * The source and destination addresses with the most bytes are tracked in
+ * fixed-size {@link HeavyHitters} summaries keyed by packed IPv4 address, so memory
+ * does not grow with the number of distinct addresses. The summaries are created
+ * when addresses are first added, so statistics that never track them do not pay
+ * for them.
+ *
+ * The number of distinct source addresses, destination addresses and interfaces
+ * per tag is estimated with {@link HyperLogLog} sketches of the field hashes, which
+ * are created for a tag when it first has a hashed field. The per-tag sketch arrays
+ * are likewise only created once distinct counts are first added.
+ *
+ * Records matched by a multi-tag rule set are also counted per rule tag, once for
+ * each tag they carry, so those counts can add up to more than the records.
+ *
+ * Not thread-safe; parallel workers keep their own instance and {@link #merge} them,
+ * or update a shared {@link ConcurrentStatistics}. Merging is associative, so results
+ * can be reduced in any grouping, e.g. as a tree.
  */
 public class Statistics {
-    // Count of tags
-    private final Map<String, Integer> tagCounts;
-    
-    // Count of port/protocol combinations
-    private final Map<String, Integer> portProtocolCounts;
-    
+    private static final int MAX_PORT = 0xFFFF;
+    private static final int MAX_PROTOCOL = 0xFF;
+
+    private final TagDictionary tagDictionary;
+
+    // Count, packets and bytes of tags, indexed by tag id
+    private long[] tagCounts;
+    private long[] tagPackets;
+    private long[] tagBytes;
+
+    // Count, packets and bytes of port/protocol combinations, indexed by the dense index of the packed key
+    private final IntIndexMap portProtocolIndex;
+    private long[] portProtocolCounts;
+    private long[] portProtocolPackets;
+    private long[] portProtocolBytes;
+
+    // Port/protocol combinations that cannot be packed, keyed by "port,protocol";
+    // the values hold the count, packets and bytes
+    private final Map<String, long[]> otherPortProtocolCounts;
+
+    // Heaviest source and destination IPv4 addresses by bytes, null until addresses have been added
+    private HeavyHitters topSourceAddresses;
+    private HeavyHitters topDestinationAddresses;
+
+    // Distinct count sketches per tag id, null until distinct counts have been added;
+    // the sketch of a tag is null until the tag has a value
+    private final int distinctPrecision;
+    private HyperLogLog[] tagSourceAddresses;
+    private HyperLogLog[] tagDestinationAddresses;
+    private HyperLogLog[] tagInterfaces;
+
+    // Records per rule tag id, null until a rule set has been applied
+    private long[] ruleTagCounts;
+
     public Statistics() {
-        this.tagCounts = new HashMap<>();
-        this.portProtocolCounts = new HashMap<>();
+        this(new TagDictionary());
     }
-    
+
+    /**
+     * Creates statistics that count tags by their id in the given dictionary.
+     *
+     * @param tagDictionary Dictionary shared with the code that assigns tag ids
+     */
+    public Statistics(TagDictionary tagDictionary) {
+        this(tagDictionary, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates statistics with distinct count sketches of the given precision.
+     *
+     * @param tagDictionary Dictionary shared with the code that assigns tag ids
+     * @param distinctPrecision Precision of the distinct count sketches, see {@link HyperLogLog}
+     * @throws IllegalArgumentException If the precision is out of range
+     */
+    public Statistics(TagDictionary tagDictionary, int distinctPrecision) {
+        HyperLogLog.checkPrecision(distinctPrecision);
+        this.tagDictionary = tagDictionary;
+        this.tagCounts = new long[Math.max(16, tagDictionary.size())];
+        this.tagPackets = new long[tagCounts.length];
+        this.tagBytes = new long[tagCounts.length];
+        this.portProtocolIndex = new IntIndexMap();
+        this.portProtocolCounts = new long[64];
+        this.portProtocolPackets = new long[64];
+        this.portProtocolBytes = new long[64];
+        this.otherPortProtocolCounts = new LinkedHashMap<>();
+        this.distinctPrecision = distinctPrecision;
+    }
+
     /**
      * Adds a tag to the statistics.
-     * 
+     *
      * @param tag The tag to add (or "Untagged" if null)
      */
     public void addTag(String tag) {
-        String tagName = (tag == null) ? "Untagged" : tag;
-        tagCounts.put(tagName, tagCounts.getOrDefault(tagName, 0) + 1);
+        addTag(tag == null ? TagDictionary.UNTAGGED_ID : tagDictionary.intern(tag));
+    }
+
+    /**
+     * Adds a tag to the statistics by its id.
+     *
+     * @param tagId The tag id in this statistics' dictionary
+     */
+    public void addTag(int tagId) {
+        addTagCount(tagId, 1, 0, 0);
+    }
+
+    /**
+     * Adds a record with its volume to the statistics by tag id.
+     *
+     * @param tagId The tag id in this statistics' dictionary
+     * @param packets Packets of the record
+     * @param bytes Bytes of the record
+     */
+    public void addTag(int tagId, long packets, long bytes) {
+        addTagCount(tagId, 1, packets, bytes);
     }
-    
+
+    /**
+     * Adds one record for each tag id in a range of a column.
+     *
+     * @param tagIds Tag ids in this statistics' dictionary
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void addTags(int[] tagIds, int from, int to) {
+        growTags(tagIds, from, to);
+        long[] counts = tagCounts;
+        for (int i = from; i < to; i++) {
+            counts[tagIds[i]]++;
+        }
+    }
+
+    /**
+     * Adds one record and its packets and bytes for each tag id in a range of a column.
+     *
+     * @param tagIds Tag ids in this statistics' dictionary
+     * @param packets Packet column
+     * @param bytes Byte column
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void addTags(int[] tagIds, long[] packets, long[] bytes, int from, int to) {
+        growTags(tagIds, from, to);
+        long[] counts = tagCounts;
+        long[] packetSums = tagPackets;
+        long[] byteSums = tagBytes;
+        for (int i = from; i < to; i++) {
+            int tagId = tagIds[i];
+            counts[tagId]++;
+            packetSums[tagId] += packets[i];
+            byteSums[tagId] += bytes[i];
+        }
+    }
+
+    /**
+     * Sizes the tag counters once for a range of ids, so that loops only increment.
+     */
+    private void growTags(int[] tagIds, int from, int to) {
+        int maxId = TagDictionary.UNTAGGED_ID;
+        for (int i = from; i < to; i++) {
+            maxId = Math.max(maxId, tagIds[i]);
+        }
+        growTags(maxId);
+    }
+
+    private void growTags(int maxId) {
+        if (maxId >= tagCounts.length) {
+            int length = Math.max(maxId + 1, tagCounts.length * 2);
+            tagCounts = Arrays.copyOf(tagCounts, length);
+            tagPackets = Arrays.copyOf(tagPackets, length);
+            tagBytes = Arrays.copyOf(tagBytes, length);
+            if (tagSourceAddresses != null) {
+                tagSourceAddresses = Arrays.copyOf(tagSourceAddresses, length);
+                tagDestinationAddresses = Arrays.copyOf(tagDestinationAddresses, length);
+                tagInterfaces = Arrays.copyOf(tagInterfaces, length);
+            }
+        }
+    }
+
+    private void startDistinctCounts() {
+        if (tagSourceAddresses == null) {
+            tagSourceAddresses = new HyperLogLog[tagCounts.length];
+            tagDestinationAddresses = new HyperLogLog[tagCounts.length];
+            tagInterfaces = new HyperLogLog[tagCounts.length];
+        }
+    }
+
+    private void startTopAddresses() {
+        if (topSourceAddresses == null) {
+            topSourceAddresses = new HeavyHitters();
+            topDestinationAddresses = new HeavyHitters();
+        }
+    }
+
+    /**
+     * Adds the hashed source address, destination address and interface id of each
+     * record in a range to the distinct counts of its tag. Fields without a hash
+     * ({@link Hashing#NO_HASH}) are skipped.
+     *
+     * @param tagIds Tag ids in this statistics' dictionary
+     * @param srcAddrHashes Source address hash column
+     * @param dstAddrHashes Destination address hash column
+     * @param interfaceIdHashes Interface id hash column
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void addDistinct(int[] tagIds, long[] srcAddrHashes, long[] dstAddrHashes, long[] interfaceIdHashes,
+                            int from, int to) {
+        startDistinctCounts();
+        growTags(tagIds, from, to);
+        for (int i = from; i < to; i++) {
+            int tagId = tagIds[i];
+            addHash(tagSourceAddresses, tagId, srcAddrHashes[i]);
+            addHash(tagDestinationAddresses, tagId, dstAddrHashes[i]);
+            addHash(tagInterfaces, tagId, interfaceIdHashes[i]);
+        }
+    }
+
+    private void addHash(HyperLogLog[] sketches, int tagId, long hash) {
+        if (hash == Hashing.NO_HASH) {
+            return;
+        }
+        HyperLogLog sketch = sketches[tagId];
+        if (sketch == null) {
+            sketch = new HyperLogLog(distinctPrecision);
+            sketches[tagId] = sketch;
+        }
+        sketch.add(hash);
+    }
+
+    private static void mergeSketch(HyperLogLog[] sketches, int tagId, HyperLogLog other, int precision) {
+        if (other == null) {
+            return;
+        }
+        if (sketches[tagId] == null) {
+            sketches[tagId] = new HyperLogLog(precision);
+        }
+        sketches[tagId].merge(other);
+    }
+
+    /**
+     * Adds one record with the rule tags it matched, each of which is counted once.
+     *
+     * @param tagIds Rule tag ids in this statistics' dictionary, without repeats
+     * @param count Number of valid entries in tagIds, which may be 0
+     */
+    public void addRuleTags(int[] tagIds, int count) {
+        if (ruleTagCounts == null) {
+            ruleTagCounts = new long[Math.max(16, tagDictionary.size())];
+        }
+        for (int i = 0; i < count; i++) {
+            addRuleTagCount(tagIds[i], 1);
+        }
+    }
+
+    private void addRuleTagCount(int tagId, long count) {
+        if (tagId >= ruleTagCounts.length) {
+            ruleTagCounts = Arrays.copyOf(ruleTagCounts, Math.max(tagId + 1, ruleTagCounts.length * 2));
+        }
+        ruleTagCounts[tagId] += count;
+    }
+
+    private void addTagCount(int tagId, long count, long packets, long bytes) {
+        growTags(tagId);
+        tagCounts[tagId] += count;
+        tagPackets[tagId] += packets;
+        tagBytes[tagId] += bytes;
+    }
+
     /**
      * Adds a port/protocol combination to the statistics.
-     * 
+     *
      * @param port The destination port
      * @param protocol The protocol (tcp, udp, icmp, etc.)
      */
     public void addPortProtocol(int port, String protocol) {
-        String key = port + "," + protocol;
-        portProtocolCounts.put(key, portProtocolCounts.getOrDefault(key, 0) + 1);
+        int protocolNumber = Protocols.number(protocol);
+        if (protocolNumber >= 0 && port >= 0 && port <= MAX_PORT) {
+            addPacked(packPortProtocol(port, protocolNumber), 1, 0, 0);
+        } else {
+            addOther(port + "," + protocol, 1, 0, 0);
+        }
     }
-    
+
+    /**
+     * Adds a port/protocol combination to the statistics by protocol number.
+     *
+     * @param port The destination port
+     * @param protocol The protocol number
+     */
+    public void addPortProtocol(int port, int protocol) {
+        addPortProtocol(port, protocol, 0, 0);
+    }
+
+    /**
+     * Adds a port/protocol combination with the volume of its record.
+     *
+     * @param port The destination port
+     * @param protocol The protocol number
+     * @param packets Packets of the record
+     * @param bytes Bytes of the record
+     */
+    public void addPortProtocol(int port, int protocol, long packets, long bytes) {
+        if (port >= 0 && port <= MAX_PORT && protocol >= 0 && protocol <= MAX_PROTOCOL) {
+            addPacked(packPortProtocol(port, protocol), 1, packets, bytes);
+        } else {
+            addOther(port + "," + Protocols.name(protocol), 1, packets, bytes);
+        }
+    }
+
+    /**
+     * Adds one record for each port/protocol pair in a range of two columns.
+     *
+     * @param ports Destination port column
+     * @param protocols Protocol number column
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void addPortProtocols(int[] ports, int[] protocols, int from, int to) {
+        for (int i = from; i < to; i++) {
+            addPortProtocol(ports[i], protocols[i]);
+        }
+    }
+
+    /**
+     * Adds one record and its packets and bytes for each port/protocol pair in a range
+     * of columns.
+     *
+     * @param ports Destination port column
+     * @param protocols Protocol number column
+     * @param packets Packet column
+     * @param bytes Byte column
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void addPortProtocols(int[] ports, int[] protocols, long[] packets, long[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            addPortProtocol(ports[i], protocols[i], packets[i], bytes[i]);
+        }
+    }
+
+    /**
+     * Adds the bytes of each record in a range to its source and destination address.
+     * Addresses that are not IPv4 are skipped.
+     *
+     * @param srcIpv4s Packed source address column, see {@link Ipv4}
+     * @param dstIpv4s Packed destination address column
+     * @param bytes Byte column
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void addAddresses(long[] srcIpv4s, long[] dstIpv4s, long[] bytes, int from, int to) {
+        startTopAddresses();
+        for (int i = from; i < to; i++) {
+            if (srcIpv4s[i] != Ipv4.NONE) {
+                topSourceAddresses.add((int) srcIpv4s[i], bytes[i]);
+            }
+            if (dstIpv4s[i] != Ipv4.NONE) {
+                topDestinationAddresses.add((int) dstIpv4s[i], bytes[i]);
+            }
+        }
+    }
+
+    private void addPacked(int key, long count, long packets, long bytes) {
+        int index = portProtocolIndex.add(key);
+        if (index == portProtocolCounts.length) {
+            int length = portProtocolCounts.length * 2;
+            portProtocolCounts = Arrays.copyOf(portProtocolCounts, length);
+            portProtocolPackets = Arrays.copyOf(portProtocolPackets, length);
+            portProtocolBytes = Arrays.copyOf(portProtocolBytes, length);
+        }
+        portProtocolCounts[index] += count;
+        portProtocolPackets[index] += packets;
+        portProtocolBytes[index] += bytes;
+    }
+
+    private void addOther(String key, long count, long packets, long bytes) {
+        long[] sums = otherPortProtocolCounts.computeIfAbsent(key, k -> new long[3]);
+        sums[0] += count;
+        sums[1] += packets;
+        sums[2] += bytes;
+    }
+
+    /**
+     * Adds all counts from another statistics object to this one.
+     * Used to combine the results of parallel workers.
+     *
+     * @param other The statistics to merge into this one
+     */
+    public void merge(Statistics other) {
+        if (other.tagSourceAddresses != null) {
+            startDistinctCounts();
+        }
+        for (int id = 0; id < other.tagCounts.length; id++) {
+            long count = other.tagCounts[id];
+            if (count == 0) {
+                continue;
+            }
+            int localId = other.tagDictionary == tagDictionary ? id : tagDictionary.intern(other.tagDictionary.name(id));
+            addTagCount(localId, count, other.tagPackets[id], other.tagBytes[id]);
+            if (other.tagSourceAddresses != null) {
+                mergeSketch(tagSourceAddresses, localId, other.tagSourceAddresses[id], distinctPrecision);
+                mergeSketch(tagDestinationAddresses, localId, other.tagDestinationAddresses[id], distinctPrecision);
+                mergeSketch(tagInterfaces, localId, other.tagInterfaces[id], distinctPrecision);
+            }
+        }
+
+        for (int index = 0; index < other.portProtocolIndex.size(); index++) {
+            addPacked(other.portProtocolIndex.keyAt(index), other.portProtocolCounts[index],
+                    other.portProtocolPackets[index], other.portProtocolBytes[index]);
+        }
+        other.otherPortProtocolCounts.forEach((key, sums) -> addOther(key, sums[0], sums[1], sums[2]));
+
+        if (other.ruleTagCounts != null) {
+            if (ruleTagCounts == null) {
+                ruleTagCounts = new long[other.ruleTagCounts.length];
+            }
+            for (int id = 0; id < other.ruleTagCounts.length; id++) {
+                if (other.ruleTagCounts[id] > 0) {
+                    int localId = other.tagDictionary == tagDictionary ? id : tagDictionary.intern(other.tagDictionary.name(id));
+                    addRuleTagCount(localId, other.ruleTagCounts[id]);
+                }
+            }
+        }
+        if (other.topSourceAddresses != null) {
+            startTopAddresses();
+            topSourceAddresses.merge(other.topSourceAddresses);
+            topDestinationAddresses.merge(other.topDestinationAddresses);
+        }
+    }
+
+    /**
+     * Returns the dictionary that tag ids of these statistics refer to.
+     */
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * Returns the count for a tag id.
+     *
+     * @param tagId The tag id
+     * @return The number of records counted for the tag
+     */
+    public long getTagCount(int tagId) {
+        return tagId < tagCounts.length ? tagCounts[tagId] : 0;
+    }
+
+    /**
+     * Returns the packets summed for a tag id.
+     */
+    public long getTagPackets(int tagId) {
+        return tagId < tagPackets.length ? tagPackets[tagId] : 0;
+    }
+
+    /**
+     * Returns the bytes summed for a tag id.
+     */
+    public long getTagBytes(int tagId) {
+        return tagId < tagBytes.length ? tagBytes[tagId] : 0;
+    }
+
+    /**
+     * Returns the estimated number of distinct source addresses of a tag.
+     */
+    public long getDistinctSourceAddresses(int tagId) {
+        return estimate(tagSourceAddresses, tagId);
+    }
+
+    /**
+     * Returns the estimated number of distinct destination addresses of a tag.
+     */
+    public long getDistinctDestinationAddresses(int tagId) {
+        return estimate(tagDestinationAddresses, tagId);
+    }
+
+    /**
+     * Returns the estimated number of distinct interfaces of a tag.
+     */
+    public long getDistinctInterfaces(int tagId) {
+        return estimate(tagInterfaces, tagId);
+    }
+
+    private static long estimate(HyperLogLog[] sketches, int tagId) {
+        return sketches != null && tagId < sketches.length && sketches[tagId] != null ? sketches[tagId].estimate() : 0;
+    }
+
+    /**
+     * Returns whether distinct counts have been added, so that they are meaningful.
+     */
+    public boolean hasDistinctCounts() {
+        return tagSourceAddresses != null;
+    }
+
+    /**
+     * Returns whether addresses have been added, so that the top addresses are meaningful.
+     */
+    public boolean hasTopAddresses() {
+        return topSourceAddresses != null;
+    }
+
+    /**
+     * Returns the number of distinct packed port/protocol combinations.
+     */
+    public int getPortProtocolSize() {
+        return portProtocolIndex.size();
+    }
+
+    /**
+     * Returns the packed port/protocol key at a dense index.
+     *
+     * @param index Index between 0 and {@link #getPortProtocolSize()} (exclusive)
+     * @return The packed key, see {@link #packPortProtocol}
+     */
+    public int getPortProtocolKey(int index) {
+        return portProtocolIndex.keyAt(index);
+    }
+
+    /**
+     * Returns the count of the port/protocol combination at a dense index.
+     *
+     * @param index Index between 0 and {@link #getPortProtocolSize()} (exclusive)
+     * @return The number of records counted for the combination
+     */
+    public long getPortProtocolCount(int index) {
+        return portProtocolCounts[index];
+    }
+
+    /**
+     * Returns the packets summed for the port/protocol combination at a dense index.
+     */
+    public long getPortProtocolPackets(int index) {
+        return portProtocolPackets[index];
+    }
+
+    /**
+     * Returns the bytes summed for the port/protocol combination at a dense index.
+     */
+    public long getPortProtocolBytes(int index) {
+        return portProtocolBytes[index];
+    }
+
+    /**
+     * Returns the port/protocol combinations that cannot be packed, such as ports out
+     * of range or protocols without a number, in the order they were first counted.
+     * None of their keys is the rendering of a packed combination.
+     *
+     * @return Read-only map of port,protocol to a three-element array of count,
+     *         packets and bytes; the arrays must not be modified
+     */
+    public Map<String, long[]> getUnpackedPortProtocols() {
+        return Collections.unmodifiableMap(otherPortProtocolCounts);
+    }
+
+    /**
+     * Returns the source addresses with the most bytes, heaviest first.
+     *
+     * @param count Maximum number of addresses
+     * @return Counters keyed by packed IPv4 address; weights are bytes, possibly overestimated
+     */
+    public List<HeavyHitters.Counter> getTopSourceAddresses(int count) {
+        return topSourceAddresses == null ? List.of() : topSourceAddresses.top(count);
+    }
+
+    /**
+     * Returns the destination addresses with the most bytes, heaviest first.
+     *
+     * @param count Maximum number of addresses
+     * @return Counters keyed by packed IPv4 address; weights are bytes, possibly overestimated
+     */
+    public List<HeavyHitters.Counter> getTopDestinationAddresses(int count) {
+        return topDestinationAddresses == null ? List.of() : topDestinationAddresses.top(count);
+    }
+
+    /**
+     * Packs a port (0-65535) and protocol number (0-255) into a single int key.
+     */
+    public static int packPortProtocol(int port, int protocol) {
+        return (port << 8) | protocol;
+    }
+
+    public static int unpackPort(int key) {
+        return key >>> 8;
+    }
+
+    public static int unpackProtocol(int key) {
+        return key & MAX_PROTOCOL;
+    }
+
     /**
      * Gets the map of tag counts.
-     * 
+     * The map is a snapshot rendered from the primitive counters. Counts are kept as
+     * longs; callers that may see more than {@link Integer#MAX_VALUE} records for a tag
+     * should read them with {@link #getTagCount(int)} instead.
+     *
      * @return Map of tag names to count
+     * @throws ArithmeticException If a count does not fit in an int
      */
     public Map<String, Integer> getTagCounts() {
-        return tagCounts;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int id = 0; id < tagCounts.length; id++) {
+            if (tagCounts[id] > 0) {
+                counts.put(tagDictionary.name(id), Math.toIntExact(tagCounts[id]));
+            }
+        }
+        return counts;
     }
-    
+
+    /**
+     * Returns whether a rule set has been applied, so that rule tag counts are meaningful.
+     */
+    public boolean hasRuleTags() {
+        return ruleTagCounts != null;
+    }
+
+    /**
+     * Returns the number of records that carry a rule tag.
+     *
+     * @param tagId The rule tag id
+     * @return The number of records counted for the tag
+     */
+    public long getRuleTagCount(int tagId) {
+        return ruleTagCounts != null && tagId < ruleTagCounts.length ? ruleTagCounts[tagId] : 0;
+    }
+
+    /**
+     * Gets the number of records per rule tag, for tags that matched any record.
+     * Counts above {@link Integer#MAX_VALUE} must be read with {@link #getRuleTagCount(int)}.
+     *
+     * @return Map of rule tag names to count
+     * @throws ArithmeticException If a count does not fit in an int
+     */
+    public Map<String, Integer> getRuleTagCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        if (ruleTagCounts != null) {
+            for (int id = 0; id < ruleTagCounts.length; id++) {
+                if (ruleTagCounts[id] > 0) {
+                    counts.put(tagDictionary.name(id), Math.toIntExact(ruleTagCounts[id]));
+                }
+            }
+        }
+        return counts;
+    }
+
     /**
      * Gets the map of port/protocol combination counts.
-     * 
+     * The map is a snapshot rendered from the primitive counters. Counts above
+     * {@link Integer#MAX_VALUE} must be read with {@link #getPortProtocolCount(int)} and
+     * {@link #getUnpackedPortProtocols()}.
+     *
      * @return Map of port,protocol to count
+     * @throws ArithmeticException If a count does not fit in an int
      */
     public Map<String, Integer> getPortProtocolCounts() {
-        return portProtocolCounts;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int index = 0; index < portProtocolIndex.size(); index++) {
+            int key = portProtocolIndex.keyAt(index);
+            counts.put(unpackPort(key) + "," + Protocols.name(unpackProtocol(key)),
+                    Math.toIntExact(portProtocolCounts[index]));
+        }
+        otherPortProtocolCounts.forEach((key, sums) -> counts.merge(key, Math.toIntExact(sums[0]), Integer::sum));
+        return counts;
+    }
+
+    /**
+     * Gets the packets and bytes of each tag that has records.
+     *
+     * @return Map of tag names to a two-element array of packets and bytes
+     */
+    public Map<String, long[]> getTagVolumes() {
+        Map<String, long[]> volumes = new LinkedHashMap<>();
+        for (int id = 0; id < tagCounts.length; id++) {
+            if (tagCounts[id] > 0) {
+                volumes.put(tagDictionary.name(id), new long[]{tagPackets[id], tagBytes[id]});
+            }
+        }
+        return volumes;
+    }
+
+    /**
+     * Gets the estimated distinct counts of each tag that has records.
+     *
+     * @return Map of tag names to a three-element array of distinct source addresses,
+     *         destination addresses and interfaces
+     */
+    public Map<String, long[]> getDistinctCounts() {
+        Map<String, long[]> distinct = new LinkedHashMap<>();
+        for (int id = 0; id < tagCounts.length; id++) {
+            if (tagCounts[id] > 0) {
+                distinct.put(tagDictionary.name(id), new long[]{
+                    getDistinctSourceAddresses(id), getDistinctDestinationAddresses(id), getDistinctInterfaces(id)});
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Gets the packets and bytes of each port/protocol combination.
+     *
+     * @return Map of port,protocol to a two-element array of packets and bytes
+     */
+    public Map<String, long[]> getPortProtocolVolumes() {
+        Map<String, long[]> volumes = new LinkedHashMap<>();
+        for (int index = 0; index < portProtocolIndex.size(); index++) {
+            int key = portProtocolIndex.keyAt(index);
+            volumes.put(unpackPort(key) + "," + Protocols.name(unpackProtocol(key)),
+                    new long[]{portProtocolPackets[index], portProtocolBytes[index]});
+        }
+        otherPortProtocolCounts.forEach((key, sums) -> volumes.merge(key, new long[]{sums[1], sums[2]},
+                (a, b) -> new long[]{a[0] + b[0], a[1] + b[1]}));
+        return volumes;
     }
-}
\ No newline at end of file
+}
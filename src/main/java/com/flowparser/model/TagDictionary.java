@@ -0,0 +1,84 @@
+package com.flowparser.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns dense integer ids to tag names so that statistics can count tags in
+ * primitive arrays instead of string-keyed maps.
+ *
+ * Id 0 is always the "Untagged" bucket. Ids are never reused or removed, so a
+ * dictionary can be shared by all statistics of a run, including parallel workers.
+ * Interning is thread-safe; lookups of existing tags do not lock.
+ */
+public final class TagDictionary {
+    public static final String UNTAGGED = "Untagged";
+    public static final int UNTAGGED_ID = 0;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile int size;
+
+    public TagDictionary() {
+        intern(UNTAGGED);
+    }
+
+    /**
+     * Returns the id of a tag, assigning a new one if the tag has not been seen before.
+     *
+     * @param tag The tag name
+     * @return The tag id
+     */
+    public int intern(String tag) {
+        Integer id = ids.get(tag);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(tag);
+            if (id != null) {
+                return id;
+            }
+            int newId = size;
+            String[] current = names;
+            if (newId == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[newId] = tag;
+            // Publish the name before the id becomes visible through the map
+            names = current;
+            size = newId + 1;
+            ids.put(tag, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * Returns the id of a tag, or -1 if it has not been interned.
+     *
+     * @param tag The tag name
+     * @return The tag id, or -1
+     */
+    public int idOf(String tag) {
+        Integer id = ids.get(tag);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the name of a tag id.
+     *
+     * @param id The tag id
+     * @return The tag name
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of ids assigned so far.
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,334 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.TagDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Address rules compiled into a path-compressed binary radix (Patricia) trie over
+ * packed IPv4 destination addresses, with the port ranges of each network compiled
+ * into sorted disjoint intervals per protocol.
+ *
+ * A lookup follows the address down the trie, visiting at most 33 nodes, and at
+ * each node on the path that has rules does a binary search of the intervals for the
+ * record's protocol. The deepest network with a rule for the port and protocol wins
+ * (longest prefix match). Within a network the narrowest matching port range wins,
+ * and of equally wide ranges the one listed last. Rules for any address have the
+ * lowest priority. All state is held in int arrays, so lookups do not allocate.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+final class AddressLookupTable {
+    private static final int NONE = -1;
+
+    // Trie nodes: network, prefix length and the children for a 0 and a 1 bit after the prefix
+    private final int[] networks;
+    private final int[] prefixLengths;
+    private final int[] zeroChildren;
+    private final int[] oneChildren;
+    // Rule groups of node n are [nodeGroups[n], nodeGroups[n + 1]); the last node holds the any-address rules
+    private final int[] nodeGroups;
+    // One group per protocol of a node; its intervals are [groupIntervals[g], groupIntervals[g + 1])
+    private final int[] groupProtocols;
+    private final int[] groupIntervals;
+    // Disjoint port intervals sorted by first port, with the tag id of each
+    private final int[] intervalFromPorts;
+    private final int[] intervalToPorts;
+    private final int[] intervalTagIds;
+
+    private AddressLookupTable(int[] networks, int[] prefixLengths, int[] zeroChildren, int[] oneChildren,
+                               int[] nodeGroups, int[] groupProtocols, int[] groupIntervals,
+                               int[] intervalFromPorts, int[] intervalToPorts, int[] intervalTagIds) {
+        this.networks = networks;
+        this.prefixLengths = prefixLengths;
+        this.zeroChildren = zeroChildren;
+        this.oneChildren = oneChildren;
+        this.nodeGroups = nodeGroups;
+        this.groupProtocols = groupProtocols;
+        this.groupIntervals = groupIntervals;
+        this.intervalFromPorts = intervalFromPorts;
+        this.intervalToPorts = intervalToPorts;
+        this.intervalTagIds = intervalTagIds;
+    }
+
+    /**
+     * Compiles address rules.
+     *
+     * @param rules The rules, in the order they were listed
+     * @param tagDictionary Dictionary used to assign tag ids
+     * @return The compiled rules
+     */
+    static AddressLookupTable compile(List<AddressRule> rules, TagDictionary tagDictionary) {
+        // Build the trie from objects first; the root is 0.0.0.0/0 and always exists
+        TrieNode root = new TrieNode(0, 0);
+        TrieNode anyAddress = new TrieNode(0, AddressRule.ANY_ADDRESS);
+        for (int i = 0; i < rules.size(); i++) {
+            AddressRule rule = rules.get(i);
+            TrieNode node = rule.getPrefixLength() == AddressRule.ANY_ADDRESS
+                    ? anyAddress : insert(root, rule.getNetwork(), rule.getPrefixLength());
+            node.protocols.computeIfAbsent(rule.getProtocol(), protocol -> new ArrayList<>())
+                    .add(new PortRange(rule.getFromPort(), rule.getToPort(), tagDictionary.intern(rule.getTag()), i));
+        }
+
+        // Number the nodes depth first, then flatten them into arrays
+        List<TrieNode> nodes = new ArrayList<>();
+        number(root, nodes);
+        nodes.add(anyAddress);
+        int nodeCount = nodes.size() - 1;
+
+        int[] networks = new int[nodeCount];
+        int[] prefixLengths = new int[nodeCount];
+        int[] zeroChildren = new int[nodeCount];
+        int[] oneChildren = new int[nodeCount];
+        int[] nodeGroups = new int[nodes.size() + 1];
+        IntList groupProtocols = new IntList();
+        IntList groupIntervals = new IntList();
+        IntList fromPorts = new IntList();
+        IntList toPorts = new IntList();
+        IntList tagIds = new IntList();
+
+        for (int n = 0; n < nodes.size(); n++) {
+            TrieNode node = nodes.get(n);
+            if (n < nodeCount) {
+                networks[n] = node.network;
+                prefixLengths[n] = node.prefixLength;
+                zeroChildren[n] = node.children[0] == null ? NONE : node.children[0].index;
+                oneChildren[n] = node.children[1] == null ? NONE : node.children[1].index;
+            }
+            nodeGroups[n] = groupProtocols.size();
+            for (Map.Entry<Integer, List<PortRange>> protocol : node.protocols.entrySet()) {
+                groupProtocols.add(protocol.getKey());
+                groupIntervals.add(fromPorts.size());
+                addIntervals(protocol.getValue(), fromPorts, toPorts, tagIds);
+            }
+        }
+        nodeGroups[nodes.size()] = groupProtocols.size();
+        groupIntervals.add(fromPorts.size());
+
+        return new AddressLookupTable(networks, prefixLengths, zeroChildren, oneChildren, nodeGroups,
+                groupProtocols.toArray(), groupIntervals.toArray(),
+                fromPorts.toArray(), toPorts.toArray(), tagIds.toArray());
+    }
+
+    /**
+     * Returns the tag id of the best rule for a record.
+     *
+     * @param dstPort The destination port
+     * @param protocol The protocol number
+     * @param dstIpv4 The destination address as packed by {@link com.flowparser.util.Ipv4}, or {@code Ipv4.NONE}
+     * @return The tag id, or {@link CompiledLookupTable#NO_TAG} if no rule matches
+     */
+    int match(int dstPort, int protocol, long dstIpv4) {
+        int tagId = matchPorts(networks.length, dstPort, protocol);
+        if (dstIpv4 < 0) {
+            return tagId;
+        }
+
+        int address = (int) dstIpv4;
+        int node = 0;
+        while (node != NONE) {
+            int prefixLength = prefixLengths[node];
+            if (prefixLength > 0 && ((address ^ networks[node]) & (-1 << (32 - prefixLength))) != 0) {
+                break;
+            }
+            int nodeTagId = matchPorts(node, dstPort, protocol);
+            if (nodeTagId != CompiledLookupTable.NO_TAG) {
+                tagId = nodeTagId;
+            }
+            if (prefixLength == 32) {
+                break;
+            }
+            // Follow the bit after the prefix
+            node = (address << prefixLength) < 0 ? oneChildren[node] : zeroChildren[node];
+        }
+        return tagId;
+    }
+
+    private int matchPorts(int node, int dstPort, int protocol) {
+        for (int group = nodeGroups[node]; group < nodeGroups[node + 1]; group++) {
+            if (groupProtocols[group] != protocol) {
+                continue;
+            }
+            // Find the last interval that starts at or before the port
+            int low = groupIntervals[group];
+            int high = groupIntervals[group + 1] - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (intervalFromPorts[middle] <= dstPort) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high >= groupIntervals[group] && dstPort <= intervalToPorts[high]
+                    ? intervalTagIds[high] : CompiledLookupTable.NO_TAG;
+        }
+        return CompiledLookupTable.NO_TAG;
+    }
+
+    /**
+     * Returns the node for a network, adding it (and a branching node if needed).
+     */
+    private static TrieNode insert(TrieNode root, int network, int prefixLength) {
+        TrieNode node = root;
+        while (node.prefixLength < prefixLength) {
+            int bit = bit(network, node.prefixLength);
+            TrieNode child = node.children[bit];
+            if (child == null) {
+                TrieNode leaf = new TrieNode(network, prefixLength);
+                node.children[bit] = leaf;
+                return leaf;
+            }
+
+            int common = Math.min(commonPrefixLength(network, child.network), Math.min(prefixLength, child.prefixLength));
+            if (common == child.prefixLength) {
+                // The child contains the network
+                node = child;
+            } else if (common == prefixLength) {
+                // The network contains the child
+                TrieNode inserted = new TrieNode(network, prefixLength);
+                inserted.children[bit(child.network, prefixLength)] = child;
+                node.children[bit] = inserted;
+                return inserted;
+            } else {
+                // They differ after the common bits, so branch there
+                TrieNode branch = new TrieNode(network & (-1 << (32 - common)), common);
+                TrieNode leaf = new TrieNode(network, prefixLength);
+                branch.children[bit(child.network, common)] = child;
+                branch.children[bit(network, common)] = leaf;
+                node.children[bit] = branch;
+                return leaf;
+            }
+        }
+        return node;
+    }
+
+    private static int bit(int address, int position) {
+        return (address << position) < 0 ? 1 : 0;
+    }
+
+    private static int commonPrefixLength(int a, int b) {
+        return Integer.numberOfLeadingZeros(a ^ b);
+    }
+
+    private static void number(TrieNode node, List<TrieNode> nodes) {
+        node.index = nodes.size();
+        nodes.add(node);
+        for (TrieNode child : node.children) {
+            if (child != null) {
+                number(child, nodes);
+            }
+        }
+    }
+
+    /**
+     * Splits overlapping port ranges into disjoint intervals, each with the tag of the
+     * narrowest range covering it (the last listed of equally wide ones), merging
+     * neighbours with the same tag.
+     */
+    private static void addIntervals(List<PortRange> ranges, IntList fromPorts, IntList toPorts, IntList tagIds) {
+        // Every range starts or ends an elementary interval
+        TreeSet<Integer> bounds = new TreeSet<>();
+        for (PortRange range : ranges) {
+            bounds.add(range.fromPort);
+            bounds.add(range.toPort + 1);
+        }
+        ranges.sort(Comparator.comparingInt(range -> range.fromPort));
+        PriorityQueue<PortRange> covering = new PriorityQueue<>(
+                Comparator.comparingInt((PortRange range) -> range.toPort - range.fromPort)
+                        .thenComparing(Comparator.comparingInt((PortRange range) -> range.order).reversed()));
+
+        int next = 0;
+        Integer start = bounds.first();
+        for (Integer end = bounds.higher(start); end != null; start = end, end = bounds.higher(start)) {
+            while (next < ranges.size() && ranges.get(next).fromPort <= start) {
+                covering.add(ranges.get(next++));
+            }
+            // Ranges that ended are removed once they reach the head
+            while (!covering.isEmpty() && covering.peek().toPort < start) {
+                covering.poll();
+            }
+            if (covering.isEmpty()) {
+                continue;
+            }
+            int tagId = covering.peek().tagId;
+            int last = fromPorts.size() - 1;
+            if (last >= 0 && tagIds.get(last) == tagId && toPorts.get(last) == start - 1) {
+                toPorts.set(last, end - 1);
+            } else {
+                fromPorts.add(start);
+                toPorts.add(end - 1);
+                tagIds.add(tagId);
+            }
+        }
+    }
+
+    /**
+     * A trie node while compiling.
+     */
+    private static class TrieNode {
+        final int network;
+        final int prefixLength;
+        final TrieNode[] children = new TrieNode[2];
+        // Port ranges of the node's rules by protocol number
+        final TreeMap<Integer, List<PortRange>> protocols = new TreeMap<>();
+        int index;
+
+        TrieNode(int network, int prefixLength) {
+            this.network = network;
+            this.prefixLength = prefixLength;
+        }
+    }
+
+    private static class PortRange {
+        final int fromPort;
+        final int toPort;
+        final int tagId;
+        final int order;
+
+        PortRange(int fromPort, int toPort, int tagId, int order) {
+            this.fromPort = fromPort;
+            this.toPort = toPort;
+            this.tagId = tagId;
+            this.order = order;
+        }
+    }
+
+    /**
+     * Growable int array for the flattened tables.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.flowparser.parser;
+
+/**
+ * One entry of an address-aware lookup table: records whose destination address is
+ * in an IPv4 network, whose destination port is in a range and whose protocol
+ * matches get the rule's tag.
+ *
+ * Instances are immutable.
+ */
+public final class AddressRule {
+    /** Prefix length of a rule that matches any destination address, including IPv6 and missing ones */
+    public static final int ANY_ADDRESS = -1;
+    public static final int MIN_PORT = 0;
+    public static final int MAX_PORT = 0xFFFF;
+
+    private final int network;
+    private final int prefixLength;
+    private final int fromPort;
+    private final int toPort;
+    private final int protocol;
+    private final String tag;
+
+    /**
+     * Creates a rule. Address bits beyond the prefix length are ignored.
+     *
+     * @param network The IPv4 network address as packed by {@link com.flowparser.util.Ipv4#parse(String)}, cast to int
+     * @param prefixLength The number of leading address bits that must match (0 to 32), or {@link #ANY_ADDRESS}
+     * @param fromPort The lowest matching destination port
+     * @param toPort The highest matching destination port
+     * @param protocol The protocol number
+     * @param tag The tag of matching records
+     * @throws IllegalArgumentException If the prefix length or port range is invalid
+     */
+    public AddressRule(int network, int prefixLength, int fromPort, int toPort, int protocol, String tag) {
+        if (prefixLength < ANY_ADDRESS || prefixLength > 32) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+        if (fromPort < MIN_PORT || toPort > MAX_PORT || fromPort > toPort) {
+            throw new IllegalArgumentException("Invalid port range: " + fromPort + "-" + toPort);
+        }
+        this.network = prefixLength > 0 ? network & (-1 << (32 - prefixLength)) : 0;
+        this.prefixLength = prefixLength;
+        this.fromPort = fromPort;
+        this.toPort = toPort;
+        this.protocol = protocol;
+        this.tag = tag;
+    }
+
+    public int getNetwork() {
+        return network;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    public int getFromPort() {
+        return fromPort;
+    }
+
+    public int getToPort() {
+        return toPort;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
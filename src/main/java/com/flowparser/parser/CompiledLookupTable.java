@@ -0,0 +1,211 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.Protocols;
+import com.flowparser.model.TagDictionary;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lookup table compiled into direct-indexed arrays for O(1) matching of
+ * (dstport, protocol) to a tag id without hashing or building strings.
+ *
+ * For every protocol number that appears in the table there is an array of 65536
+ * tag ids indexed by port. Keys outside that domain (ports outside 0-65535, protocol
+ * numbers above 255) are rare and kept in a string-keyed map that is only consulted
+ * for records outside the domain. Matching gives the same results as looking up
+ * {@code FlowLogEntry.getLookupKey()} in the source map.
+ *
+ * A table may also have {@link AddressRule}s, which match destination networks and
+ * port ranges through an {@link AddressLookupTable}. They take precedence over the
+ * (dstport, protocol) entries, which only apply to records no address rule matches.
+ *
+ * Instances are immutable and safe to share between threads.
+ */
+public final class CompiledLookupTable {
+    public static final int NO_TAG = -1;
+
+    private static final int PORT_COUNT = 0x10000;
+    private static final int PROTOCOL_COUNT = 0x100;
+
+    private final TagDictionary tagDictionary;
+    // Tag ids indexed by [protocol][port], null for protocols without entries
+    private final int[][] tagIdsByProtocol;
+    // Tag ids of keys outside the dense domain, keyed by "dstport,protocol"
+    private final Map<String, Integer> otherTagIds;
+    // Address rules, null if there are none
+    private final AddressLookupTable addressRules;
+
+    private CompiledLookupTable(TagDictionary tagDictionary, int[][] tagIdsByProtocol, Map<String, Integer> otherTagIds,
+                                AddressLookupTable addressRules) {
+        this.tagDictionary = tagDictionary;
+        this.tagIdsByProtocol = tagIdsByProtocol;
+        this.otherTagIds = otherTagIds;
+        this.addressRules = addressRules;
+    }
+
+    /**
+     * Compiles a lookup table map as produced by {@link LookupTableParser#parseLookupTable}.
+     *
+     * @param lookupTable Map of "dstport,protocol" keys to tags
+     * @param tagDictionary Dictionary used to assign tag ids
+     * @return The compiled table
+     */
+    public static CompiledLookupTable compile(Map<String, String> lookupTable, TagDictionary tagDictionary) {
+        return compile(lookupTable, List.of(), tagDictionary);
+    }
+
+    /**
+     * Compiles a lookup table map together with address rules as produced by
+     * {@link LookupTableParser#parseAddressRules}.
+     *
+     * @param lookupTable Map of "dstport,protocol" keys to tags
+     * @param addressRules Address rules, in the order they were listed
+     * @param tagDictionary Dictionary used to assign tag ids
+     * @return The compiled table
+     */
+    public static CompiledLookupTable compile(Map<String, String> lookupTable, List<AddressRule> addressRules,
+                                              TagDictionary tagDictionary) {
+        int[][] tagIdsByProtocol = new int[PROTOCOL_COUNT][];
+        Map<String, Integer> otherTagIds = new HashMap<>();
+
+        for (Map.Entry<String, String> entry : lookupTable.entrySet()) {
+            String key = entry.getKey();
+            int tagId = tagDictionary.intern(entry.getValue());
+
+            int comma = key.indexOf(',');
+            int port = comma > 0 ? canonicalPort(key, comma) : -1;
+            int protocol = comma > 0 ? Protocols.number(key.substring(comma + 1)) : -1;
+            if (port < 0 || protocol < 0) {
+                // Only a record rendering exactly this key can match it
+                otherTagIds.put(key, tagId);
+                continue;
+            }
+
+            int[] tagIds = tagIdsByProtocol[protocol];
+            if (tagIds == null) {
+                tagIds = new int[PORT_COUNT];
+                Arrays.fill(tagIds, NO_TAG);
+                tagIdsByProtocol[protocol] = tagIds;
+            }
+            tagIds[port] = tagId;
+        }
+
+        return new CompiledLookupTable(tagDictionary, tagIdsByProtocol, otherTagIds,
+                addressRules.isEmpty() ? null : AddressLookupTable.compile(addressRules, tagDictionary));
+    }
+
+    /**
+     * Returns the tag id for a destination port and protocol number.
+     *
+     * @param dstPort The destination port
+     * @param protocol The protocol number
+     * @return The tag id, or {@link #NO_TAG} if there is no match
+     */
+    public int match(int dstPort, int protocol) {
+        if ((dstPort & ~(PORT_COUNT - 1)) == 0 && (protocol & ~(PROTOCOL_COUNT - 1)) == 0) {
+            int[] tagIds = tagIdsByProtocol[protocol];
+            return tagIds == null ? NO_TAG : tagIds[dstPort];
+        }
+        if (otherTagIds.isEmpty()) {
+            return NO_TAG;
+        }
+        Integer tagId = otherTagIds.get(dstPort + "," + Protocols.name(protocol));
+        return tagId == null ? NO_TAG : tagId;
+    }
+
+    /**
+     * Returns the tag id for a record, trying the address rules first.
+     *
+     * @param dstPort The destination port
+     * @param protocol The protocol number
+     * @param dstIpv4 The destination address as packed by {@link com.flowparser.util.Ipv4}, or {@code Ipv4.NONE}
+     * @return The tag id, or {@link #NO_TAG} if there is no match
+     */
+    public int match(int dstPort, int protocol, long dstIpv4) {
+        if (addressRules != null) {
+            int tagId = addressRules.match(dstPort, protocol, dstIpv4);
+            if (tagId != NO_TAG) {
+                return tagId;
+            }
+        }
+        return match(dstPort, protocol);
+    }
+
+    /**
+     * Matches a range of records at once, like calling {@link #match(int, int, long)} for each.
+     *
+     * @param dstPorts Destination port column
+     * @param protocols Protocol number column
+     * @param dstIpv4s Packed destination address column
+     * @param tagIds Receives the tag id, or {@link #NO_TAG}, of each record
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void matchAll(int[] dstPorts, int[] protocols, long[] dstIpv4s, int[] tagIds, int from, int to) {
+        if (addressRules == null) {
+            matchAll(dstPorts, protocols, tagIds, from, to);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            tagIds[i] = match(dstPorts[i], protocols[i], dstIpv4s[i]);
+        }
+    }
+
+    /**
+     * Matches a range of records at once, like calling {@link #match(int, int)} for each.
+     *
+     * @param dstPorts Destination port column
+     * @param protocols Protocol number column
+     * @param tagIds Receives the tag id, or {@link #NO_TAG}, of each record
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     */
+    public void matchAll(int[] dstPorts, int[] protocols, int[] tagIds, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int dstPort = dstPorts[i];
+            int protocol = protocols[i];
+            if ((dstPort & ~(PORT_COUNT - 1)) == 0 && (protocol & ~(PROTOCOL_COUNT - 1)) == 0) {
+                int[] portTagIds = tagIdsByProtocol[protocol];
+                tagIds[i] = portTagIds == null ? NO_TAG : portTagIds[dstPort];
+            } else {
+                tagIds[i] = match(dstPort, protocol);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the table has address rules, which need the destination address of each record.
+     */
+    public boolean hasAddressRules() {
+        return addressRules != null;
+    }
+
+    /**
+     * Returns the dictionary that the matched tag ids refer to.
+     */
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * Returns the port if the text before the comma is exactly how the port would be
+     * rendered in a lookup key and lies in 0-65535, otherwise -1.
+     */
+    private static int canonicalPort(String key, int end) {
+        if (end > 5 || (end > 1 && key.charAt(0) == '0')) {
+            return -1;
+        }
+        int port = 0;
+        for (int i = 0; i < end; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            port = port * 10 + (c - '0');
+        }
+        return port < PORT_COUNT ? port : -1;
+    }
+}
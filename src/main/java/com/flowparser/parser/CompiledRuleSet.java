@@ -0,0 +1,293 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.TagDictionary;
+import com.flowparser.util.Hashing;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Multi-tag rules compiled into per-field bitset indexes, so that a record can be
+ * matched against all rules at once instead of one rule at a time.
+ *
+ * Each constrained field (source and destination address, source and destination
+ * port, protocol, action) splits its value domain at the rule boundaries into
+ * disjoint intervals, and every interval has a bitset of the rules that accept it.
+ * Matching a record is a binary search per field followed by ANDing the bitsets, so
+ * the cost grows with the number of fields and the number of rules divided by 64,
+ * not with the number of rules. Identical bitsets are stored once. A record gets
+ * the tags of all rules whose bits survive, each tag once.
+ *
+ * Instances are immutable and safe to share between threads; each thread matches
+ * through its own {@link Matcher}.
+ */
+public final class CompiledRuleSet {
+    // Field order of the indexes and of Matcher.match's arguments
+    private static final int SRCADDR = 0;
+    private static final int DSTADDR = 1;
+    private static final int SRCPORT = 2;
+    private static final int DSTPORT = 3;
+    private static final int PROTOCOL = 4;
+    private static final int ACTION = 5;
+    private static final int FIELD_COUNT = 6;
+
+    private final TagDictionary tagDictionary;
+    private final int[] ruleTagIds;
+    private final int words;
+    // Bitset of all rules, for rule sets that constrain no field
+    private final long[] allRules;
+    // Index per constrained field, null for fields that no rule constrains
+    private final FieldIndex[] indexes;
+
+    private CompiledRuleSet(TagDictionary tagDictionary, int[] ruleTagIds, FieldIndex[] indexes) {
+        this.tagDictionary = tagDictionary;
+        this.ruleTagIds = ruleTagIds;
+        this.words = (ruleTagIds.length + 63) >>> 6;
+        this.allRules = new long[words];
+        for (int rule = 0; rule < ruleTagIds.length; rule++) {
+            allRules[rule >>> 6] |= 1L << rule;
+        }
+        this.indexes = indexes;
+    }
+
+    /**
+     * Compiles rules as produced by {@link LookupTableParser#parseTagRules}.
+     *
+     * @param rules The rules
+     * @param tagDictionary Dictionary used to assign tag ids
+     * @return The compiled rule set
+     */
+    public static CompiledRuleSet compile(List<TagRule> rules, TagDictionary tagDictionary) {
+        int[] ruleTagIds = new int[rules.size()];
+        long[][] from = new long[FIELD_COUNT][rules.size()];
+        long[][] to = new long[FIELD_COUNT][rules.size()];
+        for (int i = 0; i < rules.size(); i++) {
+            TagRule rule = rules.get(i);
+            ruleTagIds[i] = tagDictionary.intern(rule.getTag());
+            setNetwork(from[SRCADDR], to[SRCADDR], i, rule.getSrcNetwork(), rule.getSrcPrefixLength());
+            setNetwork(from[DSTADDR], to[DSTADDR], i, rule.getDstNetwork(), rule.getDstPrefixLength());
+            from[SRCPORT][i] = rule.getSrcFromPort();
+            to[SRCPORT][i] = rule.getSrcToPort();
+            from[DSTPORT][i] = rule.getDstFromPort();
+            to[DSTPORT][i] = rule.getDstToPort();
+            setValue(from[PROTOCOL], to[PROTOCOL], i, rule.getProtocol() != TagRule.ANY_PROTOCOL, rule.getProtocol());
+            // Actions are compared by the hash the parser computes for the action column
+            boolean anyAction = rule.getAction() == null;
+            setValue(from[ACTION], to[ACTION], i, !anyAction, anyAction ? 0 : Hashing.hash(rule.getAction()));
+        }
+
+        FieldIndex[] indexes = new FieldIndex[FIELD_COUNT];
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            indexes[field] = FieldIndex.build(from[field], to[field]);
+        }
+        return new CompiledRuleSet(tagDictionary, ruleTagIds, indexes);
+    }
+
+    private static void setNetwork(long[] from, long[] to, int rule, int network, int prefixLength) {
+        if (prefixLength == AddressRule.ANY_ADDRESS) {
+            from[rule] = Long.MIN_VALUE;
+            to[rule] = Long.MAX_VALUE;
+        } else {
+            // Packed addresses are unsigned 32-bit values in a long
+            from[rule] = network & 0xFFFFFFFFL;
+            to[rule] = from[rule] + (1L << (32 - prefixLength)) - 1;
+        }
+    }
+
+    private static void setValue(long[] from, long[] to, int rule, boolean constrained, long value) {
+        from[rule] = constrained ? value : Long.MIN_VALUE;
+        to[rule] = constrained ? value : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of rules.
+     */
+    public int size() {
+        return ruleTagIds.length;
+    }
+
+    /**
+     * Returns the dictionary that the matched tag ids refer to.
+     */
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * Creates a matcher with its own scratch space, for use by one thread.
+     */
+    public Matcher newMatcher() {
+        return new Matcher();
+    }
+
+    /**
+     * Matches records against the rule set without allocating. Not thread-safe.
+     */
+    public final class Matcher {
+        private final long[] matched = new long[words];
+        private final int[] tagIds = new int[ruleTagIds.length];
+        // Record number at which each tag id was last added, to add it once per record
+        private int[] tagStamps = new int[16];
+        private int stamp;
+
+        private Matcher() {
+        }
+
+        /**
+         * Matches one record, writing the ids of its tags to {@link #tagIds()}.
+         *
+         * @param srcIpv4 Packed source address, or {@code Ipv4.NONE}
+         * @param dstIpv4 Packed destination address, or {@code Ipv4.NONE}
+         * @param srcPort The source port
+         * @param dstPort The destination port
+         * @param protocol The protocol number
+         * @param actionHash Hash of the action, see {@link Hashing}
+         * @return The number of tag ids written
+         */
+        public int match(long srcIpv4, long dstIpv4, int srcPort, int dstPort, int protocol, long actionHash) {
+            System.arraycopy(allRules, 0, matched, 0, words);
+            if (!and(SRCADDR, srcIpv4) || !and(DSTADDR, dstIpv4) || !and(SRCPORT, srcPort)
+                    || !and(DSTPORT, dstPort) || !and(PROTOCOL, protocol) || !and(ACTION, actionHash)) {
+                return 0;
+            }
+
+            if (++stamp == 0) {
+                Arrays.fill(tagStamps, 0);
+                stamp = 1;
+            }
+            int count = 0;
+            for (int word = 0; word < words; word++) {
+                long bits = matched[word];
+                while (bits != 0) {
+                    int tagId = ruleTagIds[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                    bits &= bits - 1;
+                    if (tagId >= tagStamps.length) {
+                        tagStamps = Arrays.copyOf(tagStamps, Math.max(tagId + 1, tagStamps.length * 2));
+                    }
+                    if (tagStamps[tagId] != stamp) {
+                        tagStamps[tagId] = stamp;
+                        tagIds[count++] = tagId;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Returns the tag ids of the last match; only the first entries given by its result are valid.
+         */
+        public int[] tagIds() {
+            return tagIds;
+        }
+
+        /**
+         * ANDs the bitset of a field's value into the matched rules.
+         *
+         * @return false if no rule is left
+         */
+        private boolean and(int field, long value) {
+            FieldIndex index = indexes[field];
+            if (index == null) {
+                return true;
+            }
+            long[] bits = index.bitsets[index.find(value)];
+            long any = 0;
+            for (int word = 0; word < words; word++) {
+                any |= matched[word] &= bits[word];
+            }
+            return any != 0;
+        }
+    }
+
+    /**
+     * The disjoint intervals of one field's values, with the bitset of each.
+     */
+    private static final class FieldIndex {
+        // First value of each interval; the first interval starts at Long.MIN_VALUE
+        private final long[] starts;
+        private final long[][] bitsets;
+
+        private FieldIndex(long[] starts, long[][] bitsets) {
+            this.starts = starts;
+            this.bitsets = bitsets;
+        }
+
+        /**
+         * Builds the index of a field from the inclusive value range of each rule,
+         * or returns null if every rule accepts every value.
+         */
+        static FieldIndex build(long[] from, long[] to) {
+            int rules = from.length;
+            TreeSet<Long> bounds = new TreeSet<>();
+            bounds.add(Long.MIN_VALUE);
+            for (int rule = 0; rule < rules; rule++) {
+                bounds.add(from[rule]);
+                if (to[rule] != Long.MAX_VALUE) {
+                    bounds.add(to[rule] + 1);
+                }
+            }
+            if (bounds.size() == 1) {
+                return null;
+            }
+
+            long[] starts = new long[bounds.size()];
+            int i = 0;
+            for (long bound : bounds) {
+                starts[i++] = bound;
+            }
+
+            // Rules that start and end at each interval
+            List<List<Integer>> starting = new ArrayList<>();
+            List<List<Integer>> ending = new ArrayList<>();
+            for (i = 0; i < starts.length; i++) {
+                starting.add(new ArrayList<>());
+                ending.add(new ArrayList<>());
+            }
+            for (int rule = 0; rule < rules; rule++) {
+                starting.get(Arrays.binarySearch(starts, from[rule])).add(rule);
+                if (to[rule] != Long.MAX_VALUE) {
+                    ending.get(Arrays.binarySearch(starts, to[rule] + 1)).add(rule);
+                }
+            }
+
+            // Sweep the intervals, sharing bitsets that are equal
+            int words = (rules + 63) >>> 6;
+            long[] current = new long[words];
+            Map<LongBuffer, long[]> shared = new HashMap<>();
+            long[][] bitsets = new long[starts.length][];
+            for (i = 0; i < starts.length; i++) {
+                for (int rule : ending.get(i)) {
+                    current[rule >>> 6] &= ~(1L << rule);
+                }
+                for (int rule : starting.get(i)) {
+                    current[rule >>> 6] |= 1L << rule;
+                }
+                long[] bits = current.clone();
+                bitsets[i] = shared.computeIfAbsent(LongBuffer.wrap(bits), key -> bits);
+            }
+            return new FieldIndex(starts, bitsets);
+        }
+
+        /**
+         * Returns the interval that contains the value.
+         */
+        int find(long value) {
+            int low = 0;
+            int high = starts.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= value) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.FlowField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The ordered list of fields in the records of a flow log, as given by a custom
+ * format string such as {@code ${version} ${vpc-id} ${dstport} ${protocol}} or by
+ * the header line AWS writes at the top of delivered log files.
+ *
+ * Field names that are not known are kept as columns that are always skipped,
+ * so logs with fields added in newer versions can still be read.
+ */
+public final class FlowLogFormat {
+    private static final Pattern NAME = Pattern.compile("[a-z][a-z0-9-]*");
+    // Longest line that is considered as a header
+    private static final int MAX_HEADER_LENGTH = 4096;
+
+    /** The default format: the fourteen version 2 fields in their standard order */
+    public static final FlowLogFormat DEFAULT = parse(
+            "version account-id interface-id srcaddr dstaddr srcport dstport protocol "
+            + "packets bytes start end action log-status");
+
+    private final String[] names;
+    private final FlowField[] fields;
+    private final int version;
+    private final boolean unknownFields;
+
+    private FlowLogFormat(String[] names) {
+        this.names = names;
+        this.fields = new FlowField[names.length];
+        int maxVersion = 2;
+        boolean unknown = false;
+        for (int i = 0; i < names.length; i++) {
+            fields[i] = FlowField.forName(names[i]);
+            if (fields[i] == null) {
+                unknown = true;
+            } else {
+                maxVersion = Math.max(maxVersion, fields[i].version());
+            }
+        }
+        this.version = maxVersion;
+        this.unknownFields = unknown;
+    }
+
+    /**
+     * Parses a format string. Fields are separated by whitespace and may be written
+     * as {@code ${name}} like in the AWS console or as plain names.
+     *
+     * @param spec The format string
+     * @return The format
+     * @throws IllegalArgumentException If the string is empty, has an invalid or repeated name
+     */
+    public static FlowLogFormat parse(String spec) {
+        String[] tokens = spec.trim().split("\\s+");
+        if (tokens.length == 1 && tokens[0].isEmpty()) {
+            throw new IllegalArgumentException("Empty flow log format");
+        }
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < tokens.length; i++) {
+            String name = tokens[i];
+            if (name.startsWith("${") && name.endsWith("}")) {
+                name = name.substring(2, name.length() - 1);
+            }
+            if (!NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid field name in flow log format: " + tokens[i]);
+            }
+            if (!seen.add(name)) {
+                throw new IllegalArgumentException("Repeated field in flow log format: " + name);
+            }
+            tokens[i] = name;
+        }
+        return new FlowLogFormat(tokens);
+    }
+
+    /**
+     * Reads a line as a header. A header consists of field names only, at least one
+     * of which is known, and no repeated names.
+     *
+     * @param buffer The buffer holding the line
+     * @param start Offset of the first byte of the line
+     * @param end Offset just past the last byte of the line
+     * @return The format the header describes, or null if the line is not a header
+     */
+    static FlowLogFormat fromHeader(byte[] buffer, int start, int end) {
+        if (end - start > MAX_HEADER_LENGTH) {
+            return null;
+        }
+        String line = new String(buffer, start, end - start, StandardCharsets.US_ASCII).trim();
+        // Records start with a number or a dash, headers with a letter
+        if (line.isEmpty() || line.charAt(0) < 'a' || line.charAt(0) > 'z') {
+            return null;
+        }
+        String[] tokens = line.split("\\s+");
+        Set<String> seen = new HashSet<>();
+        boolean known = false;
+        for (String token : tokens) {
+            if (!NAME.matcher(token).matches() || !seen.add(token)) {
+                return null;
+            }
+            known |= FlowField.forName(token) != null;
+        }
+        return known ? new FlowLogFormat(tokens) : null;
+    }
+
+    /**
+     * Returns the number of fields in each record.
+     */
+    public int columnCount() {
+        return names.length;
+    }
+
+    /**
+     * Returns the name of the field in a column.
+     */
+    public String columnName(int column) {
+        return names[column];
+    }
+
+    /**
+     * Returns the column of a field.
+     *
+     * @param field The field
+     * @return The column index, or -1 if the format does not include the field
+     */
+    public int columnOf(FlowField field) {
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] == field) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if the format includes the field.
+     */
+    public boolean contains(FlowField field) {
+        return columnOf(field) >= 0;
+    }
+
+    /**
+     * Returns the version records of this format carry: the highest version of its fields.
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Returns true if the format has fields that are not known to this parser.
+     */
+    public boolean hasUnknownFields() {
+        return unknownFields;
+    }
+
+    /**
+     * Returns the known fields of the format in column order.
+     */
+    public List<FlowField> fields() {
+        List<FlowField> known = new ArrayList<>();
+        for (FlowField field : fields) {
+            if (field != null) {
+                known.add(field);
+            }
+        }
+        return known;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FlowLogFormat && Arrays.equals(names, ((FlowLogFormat) o).names);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(names);
+    }
+
+    /**
+     * Returns the format string in the {@code ${name}} notation.
+     */
+    @Override
+    public String toString() {
+        StringBuilder spec = new StringBuilder();
+        for (String name : names) {
+            if (spec.length() > 0) {
+                spec.append(' ');
+            }
+            spec.append("${").append(name).append('}');
+        }
+        return spec.toString();
+    }
+}
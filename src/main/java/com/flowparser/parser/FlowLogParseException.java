@@ -0,0 +1,29 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.ParseFailure;
+
+/**
+ * Thrown when a flow log line cannot be parsed, with the category of the problem.
+ */
+public class FlowLogParseException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final ParseFailure failure;
+
+    public FlowLogParseException(ParseFailure failure, String message) {
+        super(message);
+        this.failure = failure;
+    }
+
+    public FlowLogParseException(ParseFailure failure, String message, Throwable cause) {
+        super(message, cause);
+        this.failure = failure;
+    }
+
+    /**
+     * Returns the category of the problem.
+     */
+    public ParseFailure getFailure() {
+        return failure;
+    }
+}
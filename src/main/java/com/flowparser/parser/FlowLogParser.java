@@ -1,90 +1,726 @@
 package com.flowparser.parser;
 
+import com.flowparser.io.CompressedInputs;
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.metrics.Stage;
+import com.flowparser.model.FlowField;
+import com.flowparser.model.FlowLogBatch;
 import com.flowparser.model.FlowLogEntry;
+import com.flowparser.model.ParseFailure;
+import com.flowparser.util.Hashing;
+import com.flowparser.util.Ipv4;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
- * Parser for AWS VPC flow logs (version 2).
+ * Parser for AWS VPC flow logs in the default format or a custom format with
+ * fields up to version 5.
+ *
+ * Input is scanned as raw bytes: lines and fields are located by hand and numeric
+ * fields are decoded in place into the columns of a reusable {@link FlowLogBatch},
+ * so the only objects created per record are its decoded text fields. Consumers
+ * that work per record get a {@link FlowLogEntry} built from the batch. Lines that
+ * cannot be parsed are counted in a {@link ParseErrorLog} without throwing an
+ * exception.
+ *
+ * The format is compiled into a {@link ProjectionPlan} for the fields the caller
+ * needs: only those and the numeric fields are decoded, other columns are skipped
+ * and the columns after the last decoded one are only counted. A line is accepted
+ * or rejected the same way whatever fields are needed. Text fields that are not
+ * decoded are left null.
+ *
+ * If an input starts with a header line of field names, as in files AWS delivers
+ * to S3, that header sets the format for the input.
+ *
+ * Parts of an input that are already in memory, such as memory-mapped chunks of a
+ * file, are parsed in place with {@link #parseRegion(ByteBuffer, long, ParseState, Consumer)}
+ * and a {@link ParseState} that each thread reuses for all its parts.
  */
 public class FlowLogParser {
-    
+    // Batches are handed over before each read, so one read should hold about a full batch
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final FlowMetrics metrics;
+    private final ParseErrorLog errors;
+    private final Set<FlowField> fields;
+    private final Set<FlowField> optionalFields;
+    private final boolean identifierText;
+    private final ProjectionPlan plan;
+
+    /**
+     * Creates a parser that does not record metrics.
+     */
+    public FlowLogParser() {
+        this(FlowMetrics.NOOP);
+    }
+
+    /**
+     * Creates a parser that reports lines, bytes, failures and stage times.
+     *
+     * @param metrics Receiver of the metrics
+     */
+    public FlowLogParser(FlowMetrics metrics) {
+        this(metrics, new ParseErrorLog("flow log", System.err));
+    }
+
+    /**
+     * Creates a parser that reports metrics and counts lines that cannot be parsed.
+     *
+     * @param metrics Receiver of the metrics
+     * @param errors Log that counts, samples and summarizes parse failures
+     */
+    public FlowLogParser(FlowMetrics metrics, ParseErrorLog errors) {
+        this(metrics, errors, FlowLogFormat.DEFAULT, null);
+    }
+
+    /**
+     * Creates a parser for a format that decodes only the given fields.
+     *
+     * @param metrics Receiver of the metrics
+     * @param errors Log that counts, samples and summarizes parse failures
+     * @param format Format of inputs that do not start with a header
+     * @param fields Entry fields to decode, or null to decode every entry field of the format
+     * @throws IllegalArgumentException If a requested field is not in the format
+     */
+    public FlowLogParser(FlowMetrics metrics, ParseErrorLog errors, FlowLogFormat format, Set<FlowField> fields) {
+        this(metrics, errors, format, fields, Set.of());
+    }
+
+    /**
+     * Creates a parser for a format that decodes the given fields, and also the
+     * optional fields that the format (or the header of an input) contains.
+     *
+     * @param metrics Receiver of the metrics
+     * @param errors Log that counts, samples and summarizes parse failures
+     * @param format Format of inputs that do not start with a header
+     * @param fields Entry fields to decode, or null to decode every entry field of the format
+     * @param optionalFields Entry fields to decode when present; absent ones are left at 0 or null
+     * @throws IllegalArgumentException If a requested field is not in the format
+     */
+    public FlowLogParser(FlowMetrics metrics, ParseErrorLog errors, FlowLogFormat format, Set<FlowField> fields,
+                         Set<FlowField> optionalFields) {
+        this(metrics, errors, format, fields, optionalFields, true);
+    }
+
+    private FlowLogParser(FlowMetrics metrics, ParseErrorLog errors, FlowLogFormat format, Set<FlowField> fields,
+                          Set<FlowField> optionalFields, boolean identifierText) {
+        this.metrics = metrics;
+        this.errors = errors;
+        this.fields = fields == null ? null : EnumSet.copyOf(fields);
+        this.optionalFields = EnumSet.noneOf(FlowField.class);
+        this.optionalFields.addAll(optionalFields);
+        this.identifierText = identifierText;
+        this.plan = ProjectionPlan.compile(format, this.fields, this.optionalFields, identifierText);
+    }
+
+    /**
+     * Returns the format of inputs that do not start with a header.
+     */
+    public FlowLogFormat format() {
+        return plan.format();
+    }
+
+    /**
+     * Returns a parser with the same metrics, error log and format that decodes
+     * other fields.
+     *
+     * @param fields Entry fields to decode, or null to decode every entry field of the format
+     * @return A new parser
+     * @throws IllegalArgumentException If a requested field is not in the format
+     */
+    public FlowLogParser withFields(Set<FlowField> fields) {
+        return new FlowLogParser(metrics, errors, plan.format(), fields, optionalFields, true);
+    }
+
+    /**
+     * Returns a parser like this one that decodes the srcaddr, dstaddr, interface-id and
+     * action fields only into the packed IPv4 and hash columns of a batch, without
+     * creating their strings.
+     *
+     * @return A new parser
+     */
+    public FlowLogParser withPackedIdentifiers() {
+        return new FlowLogParser(metrics, errors, plan.format(), fields, optionalFields, false);
+    }
+
+    /**
+     * Returns a parser for an input whose first bytes are given: this parser, or one
+     * with the same settings for the format of the header the input starts with.
+     * Used when an input is split into parts that are parsed separately, since only
+     * the first part sees the header.
+     *
+     * @param buffer Bytes from the start of the input
+     * @param start Offset of the first byte
+     * @param end Offset just past the last byte
+     * @return The parser to use for all parts of the input
+     * @throws IOException If the header lacks a field this parser needs
+     */
+    public FlowLogParser forInput(byte[] buffer, int start, int end) throws IOException {
+        // Skip blank lines and find the end of the first line
+        while (start < end && (buffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        int lineEnd = start;
+        while (lineEnd < end && buffer[lineEnd] != '\n' && buffer[lineEnd] != '\r') {
+            lineEnd++;
+        }
+        FlowLogFormat header = FlowLogFormat.fromHeader(buffer, start, lineEnd);
+        if (header == null || header.equals(plan.format())) {
+            return this;
+        }
+        planFor(header);
+        return new FlowLogParser(metrics, errors, header, fields, optionalFields, identifierText);
+    }
+
+    /**
+     * Compiles the plan for a format read from a header.
+     */
+    private ProjectionPlan planFor(FlowLogFormat header) throws IOException {
+        try {
+            return ProjectionPlan.compile(header, fields, optionalFields, identifierText);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unusable flow log header: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the log that counts parse failures.
+     */
+    public ParseErrorLog errors() {
+        return errors;
+    }
+
     /**
      * Parses a flow log file and calls the consumer for each entry.
-     * This uses streaming to efficiently handle large files.
-     * 
+     * This uses streaming to efficiently handle large files. Gzip-compressed files are
+     * detected by their magic bytes and inflated on a background thread.
+     *
      * @param filePath Path to the flow log file
      * @param consumer Consumer function to be called for each flow log entry
      * @throws IOException If there's an error reading the file
      */
     public void parseFlowLogs(String filePath, Consumer<FlowLogEntry> consumer) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            int lineNumber = 0;
-            
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                line = line.trim();
-                
-                // Skip empty lines
-                if (line.isEmpty()) {
+        try (InputStream in = CompressedInputs.open(Paths.get(filePath), 1)) {
+            parseFlowLogs(in, consumer);
+        }
+    }
+
+    /**
+     * Parses a flow log file and calls the consumer for each batch of records.
+     * Compressed files are handled as in {@link #parseFlowLogs(String, Consumer)}.
+     *
+     * @param filePath Path to the flow log file
+     * @param consumer Consumer function to be called for each batch
+     * @throws IOException If there's an error reading the file
+     */
+    public void parseFlowLogBatches(String filePath, Consumer<FlowLogBatch> consumer) throws IOException {
+        try (InputStream in = CompressedInputs.open(Paths.get(filePath), 1)) {
+            parseFlowLogBatches(in, consumer);
+        }
+    }
+
+    /**
+     * Parses flow log data from a stream and calls the consumer for each entry.
+     * Lines may be terminated by "\n", "\r\n" or "\r". The stream is not closed.
+     * A header line at the start sets the format for the rest of the stream; the same
+     * header repeated later, e.g. in concatenated files, is skipped.
+     *
+     * @param in Stream with flow log data
+     * @param consumer Consumer function to be called for each flow log entry
+     * @throws IOException If there's an error reading the stream
+     * @throws TooManyParseErrorsException If the share of invalid lines exceeds the error log's limit
+     */
+    public void parseFlowLogs(InputStream in, Consumer<FlowLogEntry> consumer) throws IOException {
+        parseFlowLogBatches(in, batch -> {
+            for (int row = 0; row < batch.size(); row++) {
+                consumer.accept(batch.entry(row));
+            }
+        });
+    }
+
+    /**
+     * Parses flow log data from a stream and calls the consumer for each batch of records.
+     * The same batch object is refilled for every call. It is handed over when it is
+     * full and whenever the parser is about to read more input, so every complete line
+     * read so far has been delivered before the next read. Otherwise this behaves
+     * like {@link #parseFlowLogs(InputStream, Consumer)}.
+     *
+     * @param in Stream with flow log data
+     * @param consumer Consumer function to be called for each non-empty batch
+     * @throws IOException If there's an error reading the stream
+     * @throws TooManyParseErrorsException If the share of invalid lines exceeds the error log's limit
+     */
+    public void parseFlowLogBatches(InputStream in, Consumer<FlowLogBatch> consumer) throws IOException {
+        ParseState state = new ParseState(plan);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int limit = 0;
+        int scanFrom = 0;
+        int lineNumber = 0;
+        boolean skipLineFeed = false;
+
+        while (true) {
+            long readStart = System.nanoTime();
+            int read = in.read(buffer, limit, buffer.length - limit);
+            long parseStart = System.nanoTime();
+            metrics.stageNanos(Stage.READ, parseStart - readStart);
+            boolean endOfInput = read == -1;
+            if (!endOfInput) {
+                limit += read;
+                metrics.bytesRead(read);
+            }
+
+            int lineStart = 0;
+            if (skipLineFeed && limit > 0) {
+                // The previous block ended with '\r'; drop the '\n' of a "\r\n" pair
+                skipLineFeed = false;
+                if (buffer[0] == '\n') {
+                    lineStart = 1;
+                    scanFrom = 1;
+                }
+            }
+
+            for (int i = scanFrom; i < limit; i++) {
+                byte b = buffer[i];
+                if (b != '\n' && b != '\r') {
                     continue;
                 }
-                
-                try {
-                    FlowLogEntry entry = parseLine(line);
-                    consumer.accept(entry);
-                } catch (Exception e) {
-                    System.err.println("Warning: Failed to parse line " + lineNumber + ": " + e.getMessage());
+                lineNumber++;
+                if (state.tokenizer.tokenize(buffer, lineStart, i) > 0) {
+                    accept(state, lineNumber, -1, consumer);
+                }
+                if (b == '\r') {
+                    if (i + 1 < limit) {
+                        if (buffer[i + 1] == '\n') {
+                            i++;
+                        }
+                    } else {
+                        skipLineFeed = true;
+                    }
+                }
+                lineStart = i + 1;
+            }
+
+            if (endOfInput) {
+                if (lineStart < limit) {
+                    lineNumber++;
+                    if (state.tokenizer.tokenize(buffer, lineStart, limit) > 0) {
+                        accept(state, lineNumber, -1, consumer);
+                    }
                 }
+                flush(state, lineNumber, consumer);
+                metrics.stageNanos(Stage.PARSE, System.nanoTime() - parseStart - state.takeConsumerNanos());
+                return;
+            }
+            flush(state, lineNumber, consumer);
+            errors.checkErrorRatio(false);
+
+            // Move the incomplete last line to the front, growing the buffer for very long lines
+            int remaining = limit - lineStart;
+            if (remaining == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            } else {
+                System.arraycopy(buffer, lineStart, buffer, 0, remaining);
             }
+            limit = remaining;
+            scanFrom = remaining;
+            metrics.stageNanos(Stage.PARSE, System.nanoTime() - parseStart - state.takeConsumerNanos());
         }
     }
-    
+
+    /**
+     * Creates the state for parsing parts of inputs with {@link #parseRegion}: the
+     * batch handed to the consumer and the tokenizer. A thread that parses many
+     * parts should create one and reuse it for all of them.
+     *
+     * @return A new state, to be used by one thread at a time
+     */
+    public ParseState newParseState() {
+        return new ParseState(plan);
+    }
+
     /**
-     * Parses a single line of the flow log file.
-     * 
-     * @param line The line to parse
+     * Parses a part of an input held in a buffer, such as a memory-mapped chunk of a
+     * file, in place and calls the consumer for each batch of records. The part
+     * starts at the beginning of a line and ends after a line terminator or at the
+     * end of the input. A header line at its start is handled as at the start of a
+     * stream, so this parser should be the one {@link #forInput} returned for the
+     * input. Warnings locate failed lines by their byte offset in the input, as the
+     * number of lines before the part is not known.
+     *
+     * @param region The bytes from its position to its limit, which are not changed
+     * @param offset Offset of the region's first byte in the input
+     * @param state State from {@link #newParseState()}, reused across calls on one thread
+     * @param consumer Consumer function to be called for each non-empty batch
+     * @throws IOException If the region starts with a header that lacks a field this parser needs
+     * @throws TooManyParseErrorsException If the share of invalid lines exceeds the error log's limit
+     */
+    public void parseRegion(ByteBuffer region, long offset, ParseState state, Consumer<FlowLogBatch> consumer)
+            throws IOException {
+        int start = region.position();
+        int end = region.limit();
+        if (region.hasArray()) {
+            parseRegion(region.array(), region.arrayOffset() + start, region.arrayOffset() + end, offset,
+                    state, consumer);
+            return;
+        }
+
+        long parseStart = System.nanoTime();
+        state.reset(plan);
+        metrics.bytesRead(end - start);
+        int lineNumber = 0;
+        int lineStart = start;
+        int checkAt = start + BUFFER_SIZE;
+        for (int i = start; i < end; i++) {
+            byte b = region.get(i);
+            if (b != '\n' && b != '\r') {
+                continue;
+            }
+            lineNumber++;
+            if (state.tokenizer.tokenize(region, lineStart, i) > 0) {
+                accept(state, lineNumber, offset + lineStart - start, consumer);
+            }
+            if (b == '\r' && i + 1 < end && region.get(i + 1) == '\n') {
+                i++;
+            }
+            lineStart = i + 1;
+            // Hand over what has been counted and check the error ratio as often as a stream would
+            if (lineStart >= checkAt) {
+                flush(state, lineNumber, consumer);
+                errors.checkErrorRatio(false);
+                checkAt = lineStart + BUFFER_SIZE;
+            }
+        }
+        if (lineStart < end) {
+            lineNumber++;
+            if (state.tokenizer.tokenize(region, lineStart, end) > 0) {
+                accept(state, lineNumber, offset + lineStart - start, consumer);
+            }
+        }
+        flush(state, lineNumber, consumer);
+        errors.checkErrorRatio(false);
+        metrics.stageNanos(Stage.PARSE, System.nanoTime() - parseStart - state.takeConsumerNanos());
+    }
+
+    /**
+     * Parses a part of an input held in a byte array in place, like
+     * {@link #parseRegion(ByteBuffer, long, ParseState, Consumer)}.
+     *
+     * @param buffer The buffer holding the part
+     * @param start Offset of the part's first byte in the buffer
+     * @param end Offset just past the part's last byte
+     * @param offset Offset of the part's first byte in the input
+     * @param state State from {@link #newParseState()}, reused across calls on one thread
+     * @param consumer Consumer function to be called for each non-empty batch
+     * @throws IOException If the part starts with a header that lacks a field this parser needs
+     * @throws TooManyParseErrorsException If the share of invalid lines exceeds the error log's limit
+     */
+    public void parseRegion(byte[] buffer, int start, int end, long offset, ParseState state,
+                            Consumer<FlowLogBatch> consumer) throws IOException {
+        long parseStart = System.nanoTime();
+        state.reset(plan);
+        metrics.bytesRead(end - start);
+        int lineNumber = 0;
+        int lineStart = start;
+        int checkAt = start + BUFFER_SIZE;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (b != '\n' && b != '\r') {
+                continue;
+            }
+            lineNumber++;
+            if (state.tokenizer.tokenize(buffer, lineStart, i) > 0) {
+                accept(state, lineNumber, offset + lineStart - start, consumer);
+            }
+            if (b == '\r' && i + 1 < end && buffer[i + 1] == '\n') {
+                i++;
+            }
+            lineStart = i + 1;
+            // Hand over what has been counted and check the error ratio as often as a stream would
+            if (lineStart >= checkAt) {
+                flush(state, lineNumber, consumer);
+                errors.checkErrorRatio(false);
+                checkAt = lineStart + BUFFER_SIZE;
+            }
+        }
+        if (lineStart < end) {
+            lineNumber++;
+            if (state.tokenizer.tokenize(buffer, lineStart, end) > 0) {
+                accept(state, lineNumber, offset + lineStart - start, consumer);
+            }
+        }
+        flush(state, lineNumber, consumer);
+        errors.checkErrorRatio(false);
+        metrics.stageNanos(Stage.PARSE, System.nanoTime() - parseStart - state.takeConsumerNanos());
+    }
+
+    /**
+     * Decodes a non-empty line that the state's tokenizer has just split, or skips it
+     * as a header, or records why it failed.
+     *
+     * @param lineNumber Number of the line in what this call parses
+     * @param byteOffset Offset of the line in the input, or -1 to report failures by line number
+     */
+    private void accept(ParseState state, int lineNumber, long byteOffset,
+                        Consumer<FlowLogBatch> consumer) throws IOException {
+        FlowLogTokenizer tokenizer = state.tokenizer;
+        if (!state.started) {
+            // The first line may be a header that sets the format of this input
+            state.started = true;
+            byte[] line = tokenizer.lineBytes();
+            FlowLogFormat header = FlowLogFormat.fromHeader(line, 0, line.length);
+            if (header != null) {
+                if (!header.equals(state.plan.format())) {
+                    state.use(planFor(header));
+                }
+                return;
+            }
+        }
+
+        if (decode(state.plan, tokenizer, state.batch)) {
+            if (state.batch.isFull()) {
+                flush(state, lineNumber, consumer);
+            }
+            return;
+        }
+        if (isRepeatedHeader(state.plan, tokenizer)) {
+            return;
+        }
+
+        ParseFailure failure = classify(state.plan, tokenizer);
+        metrics.parseFailure(failure);
+        if (errors.record(failure)) {
+            String text = new String(tokenizer.lineBytes(), StandardCharsets.UTF_8);
+            String message = describe(state.plan, failure, tokenizer);
+            if (byteOffset < 0) {
+                errors.sample(failure, lineNumber, text, "Warning: Failed to parse line " + lineNumber + ": " + message);
+            } else {
+                errors.sample(failure, 0, byteOffset, text,
+                        "Warning: Failed to parse line at byte " + byteOffset + ": " + message);
+            }
+        }
+    }
+
+    /**
+     * Counts the lines up to the given one as read and hands over the batch. Lines are
+     * counted first, so that an error ratio checked by the consumer covers the same
+     * lines as the failures recorded so far.
+     */
+    private void flush(ParseState state, int lineNumber, Consumer<FlowLogBatch> consumer) {
+        int lines = lineNumber - state.countedLines;
+        if (lines > 0) {
+            metrics.linesRead(lines);
+            errors.linesRead(lines);
+            state.countedLines = lineNumber;
+        }
+        state.flush(consumer);
+    }
+
+    /**
+     * Parses a single line held in a byte array.
+     *
+     * @param buffer The buffer holding the line
+     * @param start Offset of the first byte of the line
+     * @param end Offset just past the last byte of the line
      * @return FlowLogEntry object representing the parsed data
      * @throws IllegalArgumentException If the line format is invalid
      */
-    private FlowLogEntry parseLine(String line) {
-        String[] parts = line.trim().split("\\s+");
-        
-        if (parts.length < 14) {
-            throw new IllegalArgumentException("Invalid flow log format: insufficient fields");
+    public FlowLogEntry parseLine(byte[] buffer, int start, int end) {
+        FlowLogTokenizer tokenizer = new FlowLogTokenizer(plan.scanColumns(), plan.requiredColumns());
+        tokenizer.tokenize(buffer, start, end);
+        FlowLogBatch batch = new FlowLogBatch(1);
+        if (!decode(plan, tokenizer, batch)) {
+            ParseFailure failure = classify(plan, tokenizer);
+            throw new FlowLogParseException(failure, describe(plan, failure, tokenizer));
         }
-        
-        try {
-            int version = Integer.parseInt(parts[0]);
-            if (version != 2) {
-                throw new IllegalArgumentException("Unsupported flow log version: " + version);
-            }
-            
-            String accountId = parts[1];
-            String interfaceId = parts[2];
-            String srcAddr = parts[3];
-            String dstAddr = parts[4];
-            int srcPort = Integer.parseInt(parts[5]);
-            int dstPort = Integer.parseInt(parts[6]);
-            int protocol = Integer.parseInt(parts[7]);
-            int packets = Integer.parseInt(parts[8]);
-            int bytes = Integer.parseInt(parts[9]);
-            long startTime = Long.parseLong(parts[10]);
-            long endTime = Long.parseLong(parts[11]);
-            String action = parts[12];
-            String logStatus = parts[13];
-            
-            return new FlowLogEntry(
-                version, accountId, interfaceId, srcAddr, dstAddr,
-                srcPort, dstPort, protocol, packets, bytes,
-                startTime, endTime, action, logStatus
-            );
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Invalid numeric value in flow log", e);
-        }
-    }
-}
\ No newline at end of file
+        return batch.entry(0);
+    }
+
+    /**
+     * Appends a tokenized line to a batch without throwing on invalid input.
+     *
+     * @param plan The fields to decode and their columns
+     * @param tokens The tokenized line
+     * @param batch The batch to append to, not full
+     * @return false if the line format is invalid
+     */
+    private static boolean decode(ProjectionPlan plan, FlowLogTokenizer tokens, FlowLogBatch batch) {
+        if (tokens.fieldCount() < plan.requiredColumns()) {
+            return false;
+        }
+        int version = plan.format().version();
+        int versionColumn = plan.column(FlowField.VERSION);
+        if (versionColumn >= 0) {
+            version = tokens.intValue(versionColumn);
+            if (!isSupportedVersion(plan.format(), version)) {
+                return false;
+            }
+        }
+
+        // Numbers are decoded first so that no strings are built for an invalid line
+        int srcPort = intField(plan, tokens, FlowField.SRCPORT);
+        int dstPort = intField(plan, tokens, FlowField.DSTPORT);
+        int protocol = intField(plan, tokens, FlowField.PROTOCOL);
+        long packets = longField(plan, tokens, FlowField.PACKETS);
+        long bytes = longField(plan, tokens, FlowField.BYTES);
+        long startTime = longField(plan, tokens, FlowField.START);
+        long endTime = longField(plan, tokens, FlowField.END);
+        if (tokens.hasNumberError()) {
+            return false;
+        }
+
+        boolean identifierText = plan.identifierText();
+        batch.add(
+            version, textField(plan, tokens, FlowField.ACCOUNT_ID),
+            identifierText ? textField(plan, tokens, FlowField.INTERFACE_ID) : null,
+            identifierText ? textField(plan, tokens, FlowField.SRCADDR) : null,
+            identifierText ? textField(plan, tokens, FlowField.DSTADDR) : null,
+            srcPort, dstPort, protocol, packets, bytes,
+            startTime, endTime, identifierText ? textField(plan, tokens, FlowField.ACTION) : null,
+            textField(plan, tokens, FlowField.LOG_STATUS)
+        );
+        int row = batch.size() - 1;
+        batch.srcIpv4s()[row] = ipv4Field(plan, tokens, FlowField.SRCADDR);
+        batch.dstIpv4s()[row] = ipv4Field(plan, tokens, FlowField.DSTADDR);
+        batch.srcAddrHashes()[row] = hashField(plan, tokens, FlowField.SRCADDR);
+        batch.dstAddrHashes()[row] = hashField(plan, tokens, FlowField.DSTADDR);
+        batch.interfaceIdHashes()[row] = hashField(plan, tokens, FlowField.INTERFACE_ID);
+        batch.actionHashes()[row] = hashField(plan, tokens, FlowField.ACTION);
+        return true;
+    }
+
+    private static long hashField(ProjectionPlan plan, FlowLogTokenizer tokens, FlowField field) {
+        int column = plan.column(field);
+        return column < 0 ? Hashing.NO_HASH : tokens.hashValue(column);
+    }
+
+    private static long ipv4Field(ProjectionPlan plan, FlowLogTokenizer tokens, FlowField field) {
+        int column = plan.column(field);
+        return column < 0 ? Ipv4.NONE : tokens.ipv4Value(column);
+    }
+
+    private static int intField(ProjectionPlan plan, FlowLogTokenizer tokens, FlowField field) {
+        int column = plan.column(field);
+        return column < 0 ? 0 : tokens.intValue(column);
+    }
+
+    private static long longField(ProjectionPlan plan, FlowLogTokenizer tokens, FlowField field) {
+        int column = plan.column(field);
+        return column < 0 ? 0 : tokens.longValue(column);
+    }
+
+    private static String textField(ProjectionPlan plan, FlowLogTokenizer tokens, FlowField field) {
+        int column = plan.column(field);
+        return column < 0 ? null : tokens.stringValue(column);
+    }
+
+    /**
+     * Records carry the highest version of the fields in their format. Fields this
+     * parser does not know may come from a newer version.
+     */
+    private static boolean isSupportedVersion(FlowLogFormat format, int version) {
+        return version == format.version() || (format.hasUnknownFields() && version > format.version());
+    }
+
+    /**
+     * Returns true if a rejected line is the header of the current format again.
+     * Only lines whose first field is the name of the first column are checked in full.
+     */
+    private static boolean isRepeatedHeader(ProjectionPlan plan, FlowLogTokenizer tokens) {
+        if (!tokens.fieldEquals(0, plan.format().columnName(0))) {
+            return false;
+        }
+        byte[] line = tokens.lineBytes();
+        return plan.format().equals(FlowLogFormat.fromHeader(line, 0, line.length));
+    }
+
+    /**
+     * Determines why {@link #decode} rejected a line.
+     */
+    private static ParseFailure classify(ProjectionPlan plan, FlowLogTokenizer tokens) {
+        if (tokens.fieldCount() < plan.requiredColumns()) {
+            return ParseFailure.INSUFFICIENT_FIELDS;
+        }
+        if (tokens.hasNumberError()) {
+            return ParseFailure.INVALID_NUMBER;
+        }
+        return ParseFailure.UNSUPPORTED_VERSION;
+    }
+
+    /**
+     * Builds the message for a rejected line. Only called for failures that are reported.
+     */
+    private static String describe(ProjectionPlan plan, ParseFailure failure, FlowLogTokenizer tokens) {
+        switch (failure) {
+            case INSUFFICIENT_FIELDS:
+                return "Invalid flow log format: insufficient fields";
+            case UNSUPPORTED_VERSION:
+                return "Unsupported flow log version: " + tokens.intValue(plan.column(FlowField.VERSION));
+            default:
+                return "Invalid numeric value in flow log";
+        }
+    }
+
+    /**
+     * Plan and tokenizer for one input or part of an input, which change if it starts
+     * with a header, and the batch being filled. Created by {@link #newParseState()}
+     * to parse many parts on one thread without allocating a batch for each.
+     */
+    public static final class ParseState {
+        private final FlowLogBatch batch = new FlowLogBatch();
+        private ProjectionPlan plan;
+        private FlowLogTokenizer tokenizer;
+        private boolean started;
+        // Lines reported to the metrics and error log
+        private int countedLines;
+        // Time spent in the consumer, which reports its own stages
+        private long consumerNanos;
+
+        private ParseState(ProjectionPlan plan) {
+            use(plan);
+        }
+
+        private void use(ProjectionPlan plan) {
+            this.plan = plan;
+            this.tokenizer = new FlowLogTokenizer(plan.scanColumns(), plan.requiredColumns());
+        }
+
+        /**
+         * Prepares for the next part, keeping the batch and, if the plan is the same, the tokenizer.
+         */
+        private void reset(ProjectionPlan plan) {
+            if (this.plan != plan) {
+                use(plan);
+            }
+            batch.clear();
+            started = false;
+            countedLines = 0;
+            consumerNanos = 0;
+        }
+
+        private void flush(Consumer<FlowLogBatch> consumer) {
+            if (batch.size() > 0) {
+                long start = System.nanoTime();
+                consumer.accept(batch);
+                batch.clear();
+                consumerNanos += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         * Returns the time spent in the consumer since the last call.
+         */
+        private long takeConsumerNanos() {
+            long nanos = consumerNanos;
+            consumerNanos = 0;
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.flowparser.parser;
+
+import com.flowparser.util.Hashing;
+import com.flowparser.util.Ipv4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a flow log line held in a byte array or a {@link ByteBuffer}, such as a
+ * memory-mapped region of a file, into whitespace separated fields without
+ * creating any intermediate objects or copying the line.
+ *
+ * Field boundaries are recorded in reusable offset arrays and numeric fields are
+ * decoded in place. The splitting rules mirror {@code line.trim().split("\\s+")}:
+ * leading and trailing bytes up to and including the space character are ignored,
+ * and fields are separated by runs of ASCII whitespace.
+ *
+ * A tokenizer keeps state between calls and is not thread-safe.
+ */
+public final class FlowLogTokenizer {
+    private final int[] starts;
+    private final int[] ends;
+    private final int countFields;
+    private byte[] buffer;
+    private ByteBuffer region;
+    private int lineStart;
+    private int lineEnd;
+    private int fieldCount;
+    private boolean numberError;
+
+    /**
+     * Creates a tokenizer that records at most the given number of fields per line.
+     *
+     * @param maxFields Maximum number of fields to record; scanning stops once reached
+     */
+    public FlowLogTokenizer(int maxFields) {
+        this(maxFields, maxFields);
+    }
+
+    /**
+     * Creates a tokenizer that records the boundaries of the leading fields of a line
+     * and only counts the fields after them, without recording where they are.
+     *
+     * @param maxFields Number of leading fields whose boundaries are recorded
+     * @param countFields Maximum number of fields to count, at least maxFields; scanning stops once reached
+     */
+    public FlowLogTokenizer(int maxFields, int countFields) {
+        this.starts = new int[maxFields];
+        this.ends = new int[maxFields];
+        this.countFields = Math.max(maxFields, countFields);
+    }
+
+    /**
+     * Tokenizes the bytes between start (inclusive) and end (exclusive).
+     *
+     * @param buffer The buffer holding the line
+     * @param start Offset of the first byte of the line
+     * @param end Offset just past the last byte of the line
+     * @return The number of fields found, capped at the number of fields to count
+     */
+    public int tokenize(byte[] buffer, int start, int end) {
+        this.buffer = buffer;
+        this.region = null;
+        this.lineStart = start;
+        this.lineEnd = end;
+        this.numberError = false;
+
+        // Trim the same way String.trim() does
+        while (start < end && (buffer[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (buffer[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+
+        int count = 0;
+        int pos = start;
+        int max = starts.length;
+        while (pos < end && count < max) {
+            starts[count] = pos;
+            while (pos < end && !isWhitespace(buffer[pos])) {
+                pos++;
+            }
+            ends[count] = pos;
+            count++;
+            while (pos < end && isWhitespace(buffer[pos])) {
+                pos++;
+            }
+        }
+        // Fields after the recorded ones are only counted
+        while (pos < end && count < countFields) {
+            while (pos < end && !isWhitespace(buffer[pos])) {
+                pos++;
+            }
+            count++;
+            while (pos < end && isWhitespace(buffer[pos])) {
+                pos++;
+            }
+        }
+
+        fieldCount = count;
+        return count;
+    }
+
+    /**
+     * Tokenizes the bytes of a buffer between the absolute indexes start (inclusive)
+     * and end (exclusive), like {@link #tokenize(byte[], int, int)}. The buffer's
+     * position and limit are not used or changed, and field offsets are buffer indexes.
+     *
+     * @param region The buffer holding the line
+     * @param start Index of the first byte of the line
+     * @param end Index just past the last byte of the line
+     * @return The number of fields found, capped at the number of fields to count
+     */
+    public int tokenize(ByteBuffer region, int start, int end) {
+        this.buffer = null;
+        this.region = region;
+        this.lineStart = start;
+        this.lineEnd = end;
+        this.numberError = false;
+
+        while (start < end && (region.get(start) & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (region.get(end - 1) & 0xff) <= ' ') {
+            end--;
+        }
+
+        int count = 0;
+        int pos = start;
+        int max = starts.length;
+        while (pos < end && count < max) {
+            starts[count] = pos;
+            while (pos < end && !isWhitespace(region.get(pos))) {
+                pos++;
+            }
+            ends[count] = pos;
+            count++;
+            while (pos < end && isWhitespace(region.get(pos))) {
+                pos++;
+            }
+        }
+        while (pos < end && count < countFields) {
+            while (pos < end && !isWhitespace(region.get(pos))) {
+                pos++;
+            }
+            count++;
+            while (pos < end && isWhitespace(region.get(pos))) {
+                pos++;
+            }
+        }
+
+        fieldCount = count;
+        return count;
+    }
+
+    /**
+     * Returns the number of fields recorded by the last call to {@link #tokenize}.
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns the buffer offset of the first byte of a field. Only the boundaries of
+     * the leading fields are recorded, see {@link #FlowLogTokenizer(int, int)}.
+     */
+    public int start(int field) {
+        return starts[field];
+    }
+
+    /**
+     * Returns the buffer offset just past the last byte of a field.
+     */
+    public int end(int field) {
+        return ends[field];
+    }
+
+    /**
+     * Decodes a field as a decimal int, following the rules of {@link Integer#parseInt(String)}.
+     *
+     * @param field Index of the field
+     * @return The decoded value
+     * @throws NumberFormatException If the field is not a valid int
+     */
+    public int parseInt(int field) {
+        boolean earlierError = numberError;
+        numberError = false;
+        int value = intValue(field);
+        if (numberError) {
+            throw numberFormatError(field);
+        }
+        numberError = earlierError;
+        return value;
+    }
+
+    /**
+     * Decodes a field as a decimal long, following the rules of {@link Long#parseLong(String)}.
+     *
+     * @param field Index of the field
+     * @return The decoded value
+     * @throws NumberFormatException If the field is not a valid long
+     */
+    public long parseLong(int field) {
+        boolean earlierError = numberError;
+        numberError = false;
+        long value = longValue(field);
+        if (numberError) {
+            throw numberFormatError(field);
+        }
+        numberError = earlierError;
+        return value;
+    }
+
+    /**
+     * Decodes a field as a decimal int like {@link #parseInt}, but instead of throwing
+     * returns 0 and sets the flag reported by {@link #hasNumberError()}.
+     *
+     * @param field Index of the field
+     * @return The decoded value, or 0 if the field is not a valid int
+     */
+    public int intValue(int field) {
+        return (int) decode(field, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decodes a field as a decimal long like {@link #parseLong}, but instead of throwing
+     * returns 0 and sets the flag reported by {@link #hasNumberError()}.
+     *
+     * @param field Index of the field
+     * @return The decoded value, or 0 if the field is not a valid long
+     */
+    public long longValue(int field) {
+        return decode(field, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns true if {@link #intValue} or {@link #longValue} met an invalid number
+     * since the last call to {@link #tokenize}.
+     */
+    public boolean hasNumberError() {
+        return numberError;
+    }
+
+    /**
+     * Decodes a decimal number in the given range, accumulating negatively to cover
+     * the full range as {@link Long#parseLong(String)} does.
+     */
+    private long decode(int field, long minValue, long maxValue) {
+        int pos = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        long limit = -maxValue;
+
+        byte first = byteAt(pos);
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+                limit = minValue;
+            } else if (first != '+') {
+                return invalidNumber();
+            }
+            if (end - pos == 1) {
+                return invalidNumber();
+            }
+            pos++;
+        }
+
+        long multiplyMin = limit / 10;
+        long result = 0;
+        while (pos < end) {
+            int digit = byteAt(pos++) - '0';
+            if (digit < 0 || digit > 9 || result < multiplyMin) {
+                return invalidNumber();
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return invalidNumber();
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private byte byteAt(int index) {
+        return buffer != null ? buffer[index] : region.get(index);
+    }
+
+    private long invalidNumber() {
+        numberError = true;
+        return 0;
+    }
+
+    /**
+     * Materializes a field as a String. Only used for fields that are kept as text.
+     *
+     * @param field Index of the field
+     * @return The field text
+     */
+    public String stringValue(int field) {
+        if (buffer != null) {
+            return new String(buffer, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+        }
+        return new String(copy(starts[field], ends[field]), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns true if a field consists of the ASCII characters of the given text.
+     *
+     * @param field Index of the field
+     * @param text The text to compare with
+     * @return Whether the field matches the text
+     */
+    public boolean fieldEquals(int field, String text) {
+        int start = starts[field];
+        if (ends[field] - start != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (byteAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the line given to the last call to {@link #tokenize}, without its line
+     * terminator. Only used for lines that are inspected further, such as a header.
+     *
+     * @return The bytes of the line
+     */
+    public byte[] lineBytes() {
+        return copy(lineStart, lineEnd);
+    }
+
+    private byte[] copy(int start, int end) {
+        if (buffer != null) {
+            return Arrays.copyOfRange(buffer, start, end);
+        }
+        byte[] bytes = new byte[end - start];
+        region.get(start, bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes a field as a dotted-quad IPv4 address without creating a string.
+     *
+     * @param field Index of the field
+     * @return The packed address, or {@link Ipv4#NONE} if the field is not an IPv4 address
+     */
+    public long ipv4Value(int field) {
+        return buffer != null ? Ipv4.parse(buffer, starts[field], ends[field])
+                : Ipv4.parse(region, starts[field], ends[field]);
+    }
+
+    /**
+     * Hashes the bytes of a field without creating a string.
+     *
+     * @param field Index of the field
+     * @return The hash, see {@link Hashing#hash(byte[], int, int)}
+     */
+    public long hashValue(int field) {
+        return buffer != null ? Hashing.hash(buffer, starts[field], ends[field])
+                : Hashing.hash(region, starts[field], ends[field]);
+    }
+
+    private NumberFormatException numberFormatError(int field) {
+        return new NumberFormatException("For input string: \"" + stringValue(field) + "\"");
+    }
+
+    /**
+     * Matches the ASCII whitespace characters of the regex class {@code \s}.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+}
@@ -1,16 +1,38 @@
 package com.flowparser.parser;
 
+import com.flowparser.model.ParseFailure;
+import com.flowparser.model.Protocols;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.util.Ipv4;
+
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Parser for the lookup table CSV file.
  * The lookup table format is: dstport,protocol,tag
+ *
+ * A table whose header starts with dstaddr has address rules instead:
+ * dstaddr,dstport,protocol,tag, where dstaddr is an IPv4 network such as
+ * 10.0.0.0/8, a single address, or * for any address, and dstport is a port,
+ * a range such as 49152-65535, or * for any port.
+ *
+ * Multi-tag rule files, parsed with {@link #parseTagRules}, name their columns in
+ * the header, e.g. srcaddr,dstport,protocol,action,tag. Every rule that matches a
+ * record adds its tag to it.
  */
 public class LookupTableParser {
+    private static final String ADDRESS_COLUMN = "dstaddr";
+    private static final String ANY = "*";
+    private static final String TAG_COLUMN = "tag";
+    private static final Set<String> RULE_COLUMNS = Set.of(
+            "srcaddr", "dstaddr", "srcport", "dstport", "protocol", "action", TAG_COLUMN);
 
     /**
      * Parses the lookup table file and returns a map of key to tag.
@@ -22,6 +44,8 @@ public class LookupTableParser {
      */
     public Map<String, String> parseLookupTable(String filePath) throws IOException {
         Map<String, String> lookupTable = new HashMap<>();
+        ParseErrorLog errors = new ParseErrorLog("lookup table", System.err);
+        int replacedTags = 0;
         
         try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String line;
@@ -30,6 +54,7 @@ public class LookupTableParser {
             
             while ((line = reader.readLine()) != null) {
                 lineNumber++;
+                errors.linesRead(1);
                 line = line.trim();
                 
                 // Skip empty lines
@@ -53,28 +78,308 @@ public class LookupTableParser {
                     continue;
                 }
                 
-                try {
-                    String[] parts = line.toLowerCase().split(",");
-                    if (parts.length < 3) {
-                        System.err.println("Warning: Invalid lookup table entry on line " + lineNumber + ": insufficient fields");
-                        continue;
+                String[] parts = line.toLowerCase().split(",");
+                if (parts.length < 3) {
+                    if (errors.record(ParseFailure.INSUFFICIENT_FIELDS)) {
+                        errors.sample(ParseFailure.INSUFFICIENT_FIELDS, lineNumber, line,
+                                "Warning: Invalid lookup table entry on line " + lineNumber + ": insufficient fields");
                     }
-                    
-                    String dstPort = parts[0].trim();
-                    String protocol = parts[1].trim();
-                    String tag = parts[2].trim();
-                    
-                    // Create lookup key in the format "dstport,protocol"
-                    String lookupKey = dstPort + "," + protocol;
-                    
-                    // Add to lookup table
-                    lookupTable.put(lookupKey, tag);
-                } catch (Exception e) {
-                    System.err.println("Warning: Failed to parse lookup table entry on line " + lineNumber + ": " + e.getMessage());
+                    continue;
+                }
+                
+                String dstPort = parts[0].trim();
+                String protocol = parts[1].trim();
+                String tag = parts[2].trim();
+                
+                // Create lookup key in the format "dstport,protocol"
+                String lookupKey = dstPort + "," + protocol;
+                
+                // Add to lookup table; a repeated key replaces the earlier tag
+                String previous = lookupTable.put(lookupKey, tag);
+                if (previous != null && !previous.equals(tag)) {
+                    replacedTags++;
                 }
             }
         }
         
+        errors.finish();
+        if (replacedTags > 0) {
+            System.err.println("Warning: " + replacedTags + " lookup table entries repeat an earlier dstport,protocol"
+                    + " and replace its tag; use a rule file (--rules) to give records several tags");
+        }
         return lookupTable;
     }
+    
+    /**
+     * Parses a lookup table file with address rules, in the format
+     * dstaddr,dstport,protocol,tag.
+     * 
+     * @param filePath Path to the lookup table CSV file
+     * @return The rules in the order they are listed
+     * @throws IOException If there's an error reading the file
+     */
+    public List<AddressRule> parseAddressRules(String filePath) throws IOException {
+        List<AddressRule> rules = new ArrayList<>();
+        ParseErrorLog errors = new ParseErrorLog("lookup table", System.err);
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            boolean isHeader = true;
+            int lineNumber = 0;
+            
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                errors.linesRead(1);
+                line = line.trim();
+                
+                // Skip empty lines and the header
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (isHeader) {
+                    isHeader = false;
+                    continue;
+                }
+                
+                String[] parts = line.toLowerCase().split(",");
+                if (parts.length < 4) {
+                    if (errors.record(ParseFailure.INSUFFICIENT_FIELDS)) {
+                        errors.sample(ParseFailure.INSUFFICIENT_FIELDS, lineNumber, line,
+                                "Warning: Invalid lookup table entry on line " + lineNumber + ": insufficient fields");
+                    }
+                    continue;
+                }
+                
+                try {
+                    rules.add(parseAddressRule(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim()));
+                } catch (IllegalArgumentException e) {
+                    if (errors.record(ParseFailure.OTHER)) {
+                        errors.sample(ParseFailure.OTHER, lineNumber, line,
+                                "Warning: Invalid lookup table entry on line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        
+        errors.finish();
+        return rules;
+    }
+    
+    /**
+     * Parses a multi-tag rule file. The header names the columns: tag and any of
+     * srcaddr, dstaddr, srcport, dstport, protocol and action, in any order. Columns
+     * that are left out, and values of *, match anything.
+     * 
+     * @param filePath Path to the rule CSV file
+     * @return The rules in the order they are listed
+     * @throws IOException If there's an error reading the file, or the header is invalid
+     */
+    public List<TagRule> parseTagRules(String filePath) throws IOException {
+        List<TagRule> rules = new ArrayList<>();
+        ParseErrorLog errors = new ParseErrorLog("rule", System.err);
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            List<String> columns = null;
+            int lineNumber = 0;
+            
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                errors.linesRead(1);
+                line = line.trim();
+                
+                // Skip empty lines
+                if (line.isEmpty()) {
+                    continue;
+                }
+                
+                // The header says which column holds which field
+                if (columns == null) {
+                    columns = new ArrayList<>();
+                    for (String column : line.toLowerCase().split(",")) {
+                        column = column.trim();
+                        if (!RULE_COLUMNS.contains(column) || columns.contains(column)) {
+                            throw new IOException("Invalid rule file header, unknown or repeated column: " + column);
+                        }
+                        columns.add(column);
+                    }
+                    if (!columns.contains(TAG_COLUMN)) {
+                        throw new IOException("Invalid rule file header, no tag column: " + line);
+                    }
+                    continue;
+                }
+                
+                // Keep trailing empty values, which match any value
+                String[] parts = line.split(",", -1);
+                if (parts.length < columns.size()) {
+                    if (errors.record(ParseFailure.INSUFFICIENT_FIELDS)) {
+                        errors.sample(ParseFailure.INSUFFICIENT_FIELDS, lineNumber, line,
+                                "Warning: Invalid rule on line " + lineNumber + ": insufficient fields");
+                    }
+                    continue;
+                }
+                
+                try {
+                    rules.add(parseTagRule(columns, parts));
+                } catch (IllegalArgumentException e) {
+                    if (errors.record(ParseFailure.OTHER)) {
+                        errors.sample(ParseFailure.OTHER, lineNumber, line,
+                                "Warning: Invalid rule on line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        
+        errors.finish();
+        return rules;
+    }
+    
+    /**
+     * Parses the lookup table file and compiles it for O(1) matching, or for
+     * longest prefix matching if it has address rules.
+     * 
+     * @param filePath Path to the lookup table CSV file
+     * @return Compiled lookup table with its own tag dictionary
+     * @throws IOException If there's an error reading the file
+     */
+    public CompiledLookupTable compileLookupTable(String filePath) throws IOException {
+        return compileLookupTable(filePath, new TagDictionary());
+    }
+    
+    /**
+     * Parses the lookup table file and compiles it with the given tag dictionary, so
+     * that tags keep their ids across tables, e.g. when a table is reloaded.
+     * 
+     * @param filePath Path to the lookup table CSV file
+     * @param tagDictionary Dictionary used to assign tag ids
+     * @return Compiled lookup table
+     * @throws IOException If there's an error reading the file
+     */
+    public CompiledLookupTable compileLookupTable(String filePath, TagDictionary tagDictionary) throws IOException {
+        if (hasAddressRules(filePath)) {
+            return CompiledLookupTable.compile(Map.of(), parseAddressRules(filePath), tagDictionary);
+        }
+        return CompiledLookupTable.compile(parseLookupTable(filePath), tagDictionary);
+    }
+    
+    /**
+     * Returns whether the first non-empty line of the file is an address rule header.
+     */
+    private static boolean hasAddressRules(String filePath) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    return line.toLowerCase().startsWith(ADDRESS_COLUMN + ",");
+                }
+            }
+            return false;
+        }
+    }
+    
+    private static AddressRule parseAddressRule(String address, String ports, String protocolName, String tag) {
+        int[] network = parseNetwork(address);
+        int[] portRange = parsePorts(ports);
+        int protocol = Protocols.number(protocolName);
+        if (protocol < 0) {
+            throw new IllegalArgumentException("invalid protocol " + protocolName);
+        }
+        return new AddressRule(network[0], network[1], portRange[0], portRange[1], protocol, tag);
+    }
+    
+    /**
+     * Parses a network, a single address or *, returning the packed network and the
+     * prefix length ({@link AddressRule#ANY_ADDRESS} for *).
+     */
+    private static int[] parseNetwork(String address) {
+        if (address.equals(ANY)) {
+            return new int[] {0, AddressRule.ANY_ADDRESS};
+        }
+        int slash = address.indexOf('/');
+        long packed = Ipv4.parse(slash < 0 ? address : address.substring(0, slash));
+        if (packed == Ipv4.NONE) {
+            throw new IllegalArgumentException("invalid address " + address);
+        }
+        int prefixLength = slash < 0 ? 32 : parseNumber(address.substring(slash + 1), 32, "prefix length");
+        return new int[] {(int) packed, prefixLength};
+    }
+    
+    /**
+     * Parses a port, a range of ports or *, returning the first and last port.
+     */
+    private static int[] parsePorts(String ports) {
+        if (ports.equals(ANY)) {
+            return new int[] {AddressRule.MIN_PORT, AddressRule.MAX_PORT};
+        }
+        int dash = ports.indexOf('-');
+        int fromPort = parseNumber(dash < 0 ? ports : ports.substring(0, dash), AddressRule.MAX_PORT, "port");
+        int toPort = dash < 0 ? fromPort : parseNumber(ports.substring(dash + 1), AddressRule.MAX_PORT, "port");
+        return new int[] {fromPort, toPort};
+    }
+    
+    private static TagRule parseTagRule(List<String> columns, String[] parts) {
+        int[] srcNetwork = parseNetwork(ANY);
+        int[] dstNetwork = parseNetwork(ANY);
+        int[] srcPorts = parsePorts(ANY);
+        int[] dstPorts = parsePorts(ANY);
+        int protocol = TagRule.ANY_PROTOCOL;
+        String action = TagRule.ANY_ACTION;
+        String tag = null;
+        for (int i = 0; i < columns.size(); i++) {
+            // Tags are lowercase like in the lookup table; actions are uppercase like in flow logs
+            String value = parts[i].trim().toLowerCase();
+            if (value.isEmpty()) {
+                value = ANY;
+            }
+            switch (columns.get(i)) {
+                case "srcaddr":
+                    srcNetwork = parseNetwork(value);
+                    break;
+                case "dstaddr":
+                    dstNetwork = parseNetwork(value);
+                    break;
+                case "srcport":
+                    srcPorts = parsePorts(value);
+                    break;
+                case "dstport":
+                    dstPorts = parsePorts(value);
+                    break;
+                case "protocol":
+                    if (!value.equals(ANY)) {
+                        protocol = Protocols.number(value);
+                        if (protocol < 0) {
+                            throw new IllegalArgumentException("invalid protocol " + value);
+                        }
+                    }
+                    break;
+                case "action":
+                    if (!value.equals(ANY) && !value.equals("accept") && !value.equals("reject")) {
+                        throw new IllegalArgumentException("invalid action " + value);
+                    }
+                    action = value.equals(ANY) ? TagRule.ANY_ACTION : value.toUpperCase();
+                    break;
+                default:
+                    tag = value;
+                    break;
+            }
+        }
+        if (tag.equals(ANY)) {
+            throw new IllegalArgumentException("missing tag");
+        }
+        return new TagRule(srcNetwork[0], srcNetwork[1], dstNetwork[0], dstNetwork[1],
+                srcPorts[0], srcPorts[1], dstPorts[0], dstPorts[1], protocol, action, tag);
+    }
+    
+    private static int parseNumber(String value, int max, String what) {
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number >= 0 && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("invalid " + what + " " + value);
+    }
 }
\ No newline at end of file
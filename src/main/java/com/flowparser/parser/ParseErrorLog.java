@@ -0,0 +1,257 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.ParseFailure;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts lines that cannot be parsed by category and reports them without
+ * flooding the error stream.
+ *
+ * The first few failures are printed individually and kept as samples with their
+ * line number (or byte offset) and text; after that, failures are only counted and a summary is
+ * printed at most once per interval. Optionally, processing is aborted once the
+ * share of failed lines exceeds a limit. Recording a failure is a counter
+ * increment, so a completely broken input costs about as much as a valid one.
+ *
+ * Instances are thread-safe and can be shared by parsers on several threads.
+ */
+public class ParseErrorLog {
+    public static final int DEFAULT_SAMPLE_SIZE = 10;
+    public static final long DEFAULT_SUMMARY_INTERVAL_MILLIS = 10_000;
+    // Lines to see before the error ratio is enforced, unless the input ends earlier
+    static final long MIN_LINES_FOR_RATIO = 1000;
+    private static final int MAX_SAMPLE_TEXT = 256;
+
+    private final String source;
+    private final PrintStream out;
+    private final int sampleSize;
+    private final long summaryIntervalNanos;
+    private final double maxErrorRatio;
+
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder[] failures = new LongAdder[ParseFailure.values().length];
+    private final AtomicInteger sampleSlots = new AtomicInteger();
+    private final List<Sample> samples = new ArrayList<>();
+    private final AtomicLong nextSummaryNanos;
+
+    /**
+     * Creates a log that samples the first {@value #DEFAULT_SAMPLE_SIZE} failures,
+     * summarizes the rest every 10 seconds and never aborts.
+     *
+     * @param source What is being parsed, used in messages (e.g. "flow log")
+     * @param out Stream for warnings and summaries
+     */
+    public ParseErrorLog(String source, PrintStream out) {
+        this(source, out, DEFAULT_SAMPLE_SIZE, DEFAULT_SUMMARY_INTERVAL_MILLIS, 1.0);
+    }
+
+    /**
+     * Creates a log.
+     *
+     * @param source What is being parsed, used in messages (e.g. "flow log")
+     * @param out Stream for warnings and summaries
+     * @param sampleSize Number of failures printed individually and kept as samples
+     * @param summaryIntervalMillis Minimum time between summaries of further failures
+     * @param maxErrorRatio Share of failed lines above which processing is aborted; 1 never aborts
+     */
+    public ParseErrorLog(String source, PrintStream out, int sampleSize, long summaryIntervalMillis,
+                         double maxErrorRatio) {
+        this.source = source;
+        this.out = out;
+        this.sampleSize = sampleSize;
+        this.summaryIntervalNanos = summaryIntervalMillis * 1_000_000L;
+        this.maxErrorRatio = maxErrorRatio;
+        this.nextSummaryNanos = new AtomicLong(System.nanoTime() + summaryIntervalNanos);
+        for (int i = 0; i < failures.length; i++) {
+            failures[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds to the number of lines seen, valid or not.
+     *
+     * @param count Number of lines
+     */
+    public void linesRead(long count) {
+        lines.add(count);
+    }
+
+    /**
+     * Counts a failed line. If this returns true, the caller should pass the details
+     * to {@link #sample}; building them is skipped for all other failures.
+     *
+     * @param failure The category of the failure
+     * @return Whether the failure should be sampled
+     */
+    public boolean record(ParseFailure failure) {
+        failures[failure.ordinal()].increment();
+        if (sampleSlots.get() < sampleSize && sampleSlots.getAndIncrement() < sampleSize) {
+            return true;
+        }
+        summarizeIfDue();
+        return false;
+    }
+
+    /**
+     * Keeps a sampled failure and prints its warning.
+     *
+     * @param failure The category of the failure
+     * @param lineNumber Line number of the failed line
+     * @param text Text of the failed line
+     * @param warning Message to print
+     */
+    public void sample(ParseFailure failure, long lineNumber, String text, String warning) {
+        sample(failure, lineNumber, -1, text, warning);
+    }
+
+    /**
+     * Keeps a sampled failure with the position of its line in the input and prints
+     * its warning. Parts of an input parsed separately only know where their lines
+     * start, not how many lines come before them.
+     *
+     * @param failure The category of the failure
+     * @param lineNumber Line number of the failed line, or 0 if not known
+     * @param byteOffset Offset of the first byte of the failed line in the input, or -1 if not known
+     * @param text Text of the failed line
+     * @param warning Message to print
+     */
+    public void sample(ParseFailure failure, long lineNumber, long byteOffset, String text, String warning) {
+        String sampleText = text.length() > MAX_SAMPLE_TEXT ? text.substring(0, MAX_SAMPLE_TEXT) : text;
+        synchronized (samples) {
+            samples.add(new Sample(failure, lineNumber, byteOffset, sampleText));
+        }
+        out.println(warning);
+    }
+
+    /**
+     * Aborts if the share of failed lines exceeds the limit. The ratio is only
+     * enforced after {@value #MIN_LINES_FOR_RATIO} lines, or at the end of the input.
+     *
+     * @param endOfInput Whether the whole input has been seen
+     * @throws TooManyParseErrorsException If the limit is exceeded
+     */
+    public void checkErrorRatio(boolean endOfInput) throws TooManyParseErrorsException {
+        if (maxErrorRatio >= 1.0) {
+            return;
+        }
+        long lineCount = lines.sum();
+        if (lineCount == 0 || (lineCount < MIN_LINES_FOR_RATIO && !endOfInput)) {
+            return;
+        }
+        long failureCount = getFailureCount();
+        if (failureCount > maxErrorRatio * lineCount) {
+            throw new TooManyParseErrorsException("Aborted after " + failureCount + " of " + lineCount + " "
+                    + source + " lines failed to parse (" + countsByCategory()
+                    + "), more than the allowed ratio of " + maxErrorRatio);
+        }
+    }
+
+    /**
+     * Prints a final summary if there were failures that were not printed individually.
+     */
+    public void finish() {
+        if (getFailureCount() > sampleSize) {
+            printSummary("in total");
+        }
+    }
+
+    public long getLineCount() {
+        return lines.sum();
+    }
+
+    public long getFailureCount(ParseFailure failure) {
+        return failures[failure.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of failures of all categories.
+     */
+    public long getFailureCount() {
+        long total = 0;
+        for (LongAdder adder : failures) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the sampled failures in the order they were sampled.
+     */
+    public List<Sample> getSamples() {
+        synchronized (samples) {
+            return new ArrayList<>(samples);
+        }
+    }
+
+    private void summarizeIfDue() {
+        long now = System.nanoTime();
+        long next = nextSummaryNanos.get();
+        if (now - next >= 0 && nextSummaryNanos.compareAndSet(next, now + summaryIntervalNanos)) {
+            printSummary("so far");
+        }
+    }
+
+    private void printSummary(String scope) {
+        out.println("Warning: " + getFailureCount() + " " + source + " lines failed to parse " + scope
+                + " (" + countsByCategory() + "); only the first " + sampleSize + " were shown");
+    }
+
+    private String countsByCategory() {
+        StringBuilder counts = new StringBuilder();
+        for (ParseFailure failure : ParseFailure.values()) {
+            long count = failures[failure.ordinal()].sum();
+            if (count > 0) {
+                if (counts.length() > 0) {
+                    counts.append(", ");
+                }
+                counts.append(failure.name()).append(": ").append(count);
+            }
+        }
+        return counts.toString();
+    }
+
+    /**
+     * A failed line kept for diagnosis.
+     */
+    public static final class Sample {
+        private final ParseFailure failure;
+        private final long lineNumber;
+        private final long byteOffset;
+        private final String text;
+
+        Sample(ParseFailure failure, long lineNumber, long byteOffset, String text) {
+            this.failure = failure;
+            this.lineNumber = lineNumber;
+            this.byteOffset = byteOffset;
+            this.text = text;
+        }
+
+        public ParseFailure getFailure() {
+            return failure;
+        }
+
+        /**
+         * Returns the line number, or 0 if only the byte offset is known.
+         */
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * Returns the offset of the line's first byte in the input, or -1 if not known.
+         */
+        public long getByteOffset() {
+            return byteOffset;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.FlowField;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A flow log format compiled for the fields one consumer needs: for each entry
+ * field, the column to decode it from, and how many leading columns a line must
+ * be split into. Columns after the last needed one are only counted, and columns
+ * in between are skipped without being decoded. Addresses and interface ids may be
+ * decoded only into their packed and hashed columns, without building strings.
+ *
+ * Whatever fields are needed, a line must have every column of the format, and
+ * its numeric entry fields are always decoded, so that a projection accepts
+ * exactly the lines a full parse accepts.
+ */
+final class ProjectionPlan {
+    private static final int NOT_DECODED = -1;
+
+    private final FlowLogFormat format;
+    private final int[] columns;
+    private final int scanColumns;
+    private final boolean identifierText;
+
+    private ProjectionPlan(FlowLogFormat format, int[] columns, int scanColumns, boolean identifierText) {
+        this.format = format;
+        this.columns = columns;
+        this.scanColumns = scanColumns;
+        this.identifierText = identifierText;
+    }
+
+    /**
+     * Returns true for the entry fields that are decoded as numbers.
+     */
+    private static boolean isNumeric(FlowField field) {
+        switch (field) {
+            case VERSION:
+            case SRCPORT:
+            case DSTPORT:
+            case PROTOCOL:
+            case PACKETS:
+            case BYTES:
+            case START:
+            case END:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Compiles a plan.
+     *
+     * @param format The format of the records
+     * @param fields Entry fields to decode, or null for every entry field of the format
+     * @param optionalFields Entry fields to decode if the format has them
+     * @param identifierText Whether decoded addresses, interface ids and actions are also kept as strings
+     * @return The plan
+     * @throws IllegalArgumentException If a requested field is not in the format
+     */
+    static ProjectionPlan compile(FlowLogFormat format, Set<FlowField> fields, Set<FlowField> optionalFields,
+                                  boolean identifierText) {
+        int[] columns = new int[FlowField.values().length];
+        Arrays.fill(columns, NOT_DECODED);
+        int lastColumn = -1;
+
+        for (FlowField field : FlowField.values()) {
+            int column = format.columnOf(field);
+            boolean requested = fields == null ? field.isEntryField() && column >= 0 : fields.contains(field);
+            if (requested && column < 0) {
+                throw new IllegalArgumentException("Flow log format " + format + " has no " + field.fieldName() + " field");
+            }
+            // Numbers, including the version, are always checked when the format carries them
+            boolean decoded = requested || isNumeric(field) || optionalFields.contains(field);
+            if (column >= 0 && decoded && field.isEntryField()) {
+                columns[field.ordinal()] = column;
+                lastColumn = Math.max(lastColumn, column);
+            }
+        }
+
+        int scanColumns = Math.max(1, lastColumn + 1);
+        return new ProjectionPlan(format, columns, scanColumns, identifierText);
+    }
+
+    FlowLogFormat format() {
+        return format;
+    }
+
+    /**
+     * Returns the column to decode a field from, or -1 if it is not decoded.
+     */
+    int column(FlowField field) {
+        return columns[field.ordinal()];
+    }
+
+    /**
+     * Returns whether decoded srcaddr, dstaddr, interface-id and action fields are kept
+     * as strings, and not only as packed and hashed values.
+     */
+    boolean identifierText() {
+        return identifierText;
+    }
+
+    /**
+     * Returns the number of leading columns a line is split into.
+     */
+    int scanColumns() {
+        return scanColumns;
+    }
+
+    /**
+     * Returns the number of columns a line needs to be valid, which are all columns
+     * of the format.
+     */
+    int requiredColumns() {
+        return format.columnCount();
+    }
+}
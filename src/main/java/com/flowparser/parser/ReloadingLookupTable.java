@@ -0,0 +1,167 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.TagDictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A lookup table that is reloaded in the background whenever its file changes, so
+ * that a long-running stream picks up new tags without a restart.
+ *
+ * A daemon thread watches the file's directory. After a change it waits until the
+ * file has been quiet for a short time, so that an editor or copy has finished
+ * writing, then parses and compiles the file into a new table and publishes it with
+ * a single atomic reference swap. Readers call {@link #get()}, a plain volatile read,
+ * and always see a complete table: either the old one or the new one. If the file
+ * cannot be read, the previous table stays in use and a warning is printed.
+ *
+ * Every table is compiled with the same {@link TagDictionary}, so tag ids stay
+ * valid across reloads and statistics collected before a reload keep their meaning.
+ */
+public final class ReloadingLookupTable implements Supplier<CompiledLookupTable>, Closeable {
+    public static final long DEFAULT_QUIET_MILLIS = 200;
+
+    private final Path file;
+    private final PrintStream out;
+    private final long quietMillis;
+    private final TagDictionary tagDictionary = new TagDictionary();
+    private final AtomicReference<CompiledLookupTable> current = new AtomicReference<>();
+    private final AtomicLong reloads = new AtomicLong();
+    private final WatchService watchService;
+    private final Thread watcher;
+
+    /**
+     * Loads the lookup table and starts watching it, waiting
+     * {@value #DEFAULT_QUIET_MILLIS} ms after a change before reloading.
+     *
+     * @param filePath Path to the lookup table CSV file
+     * @throws IOException If the table cannot be read or the file cannot be watched
+     */
+    public ReloadingLookupTable(String filePath) throws IOException {
+        this(filePath, System.err, DEFAULT_QUIET_MILLIS);
+    }
+
+    /**
+     * Loads the lookup table and starts watching it.
+     *
+     * @param filePath Path to the lookup table CSV file
+     * @param out Stream for reload messages and warnings
+     * @param quietMillis Time the file must be unchanged before it is reloaded
+     * @throws IOException If the table cannot be read or the file cannot be watched
+     */
+    public ReloadingLookupTable(String filePath, PrintStream out, long quietMillis) throws IOException {
+        this.file = Paths.get(filePath).toAbsolutePath();
+        this.out = out;
+        this.quietMillis = quietMillis;
+        current.set(compile());
+
+        // Watch the directory, as editors often replace the file rather than write to it
+        this.watchService = file.getFileSystem().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watcher = new Thread(this::watch, "lookup-table-watcher");
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    /**
+     * Returns the current table. Does not lock; the table is immutable.
+     */
+    @Override
+    public CompiledLookupTable get() {
+        return current.get();
+    }
+
+    /**
+     * Returns the dictionary shared by all tables.
+     */
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    /**
+     * Returns the number of times the table has been replaced.
+     */
+    public long getReloadCount() {
+        return reloads.get();
+    }
+
+    /**
+     * Reloads the table now. If the file cannot be read, the current table is kept
+     * and a warning is printed.
+     *
+     * @return true if the table was replaced
+     */
+    public synchronized boolean reload() {
+        CompiledLookupTable table;
+        try {
+            table = compile();
+        } catch (IOException | RuntimeException e) {
+            out.println("Warning: Failed to reload lookup table " + file + ", keeping the previous one: " + e.getMessage());
+            return false;
+        }
+        current.set(table);
+        // Reported before it is counted, so that waiting for the count sees the message
+        out.println("Reloaded lookup table " + file);
+        reloads.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops watching the file. The current table stays available.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+        watcher.interrupt();
+    }
+
+    private CompiledLookupTable compile() throws IOException {
+        return new LookupTableParser().compileLookupTable(file.toString(), tagDictionary);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                if (changed(watchService.take())) {
+                    // Let the writer finish before reading the file
+                    WatchKey key;
+                    while ((key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS)) != null) {
+                        changed(key);
+                    }
+                    reload();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Consumes the events of a key and returns whether one of them concerns the file.
+     */
+    private boolean changed(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return changed;
+    }
+}
@@ -0,0 +1,126 @@
+package com.flowparser.parser;
+
+/**
+ * One rule of a multi-tag rule set: records that match every field the rule
+ * constrains get the rule's tag, in addition to the tags of other matching rules.
+ *
+ * Addresses are IPv4 networks (with {@link AddressRule#ANY_ADDRESS} for any value,
+ * including IPv6 and missing ones), ports are inclusive ranges, and the protocol and
+ * action are exact values or any value.
+ *
+ * Instances are immutable.
+ */
+public final class TagRule {
+    /** Protocol of a rule that matches any protocol */
+    public static final int ANY_PROTOCOL = -1;
+    /** Action of a rule that matches any action */
+    public static final String ANY_ACTION = null;
+
+    private final int srcNetwork;
+    private final int srcPrefixLength;
+    private final int dstNetwork;
+    private final int dstPrefixLength;
+    private final int srcFromPort;
+    private final int srcToPort;
+    private final int dstFromPort;
+    private final int dstToPort;
+    private final int protocol;
+    private final String action;
+    private final String tag;
+
+    /**
+     * Creates a rule. Address bits beyond the prefix lengths are ignored.
+     *
+     * @param srcNetwork The source network, as packed by {@link com.flowparser.util.Ipv4#parse(String)}, cast to int
+     * @param srcPrefixLength The source prefix length (0 to 32), or {@link AddressRule#ANY_ADDRESS}
+     * @param dstNetwork The destination network
+     * @param dstPrefixLength The destination prefix length (0 to 32), or {@link AddressRule#ANY_ADDRESS}
+     * @param srcFromPort The lowest matching source port
+     * @param srcToPort The highest matching source port
+     * @param dstFromPort The lowest matching destination port
+     * @param dstToPort The highest matching destination port
+     * @param protocol The protocol number, or {@link #ANY_PROTOCOL}
+     * @param action The action as it appears in flow logs (e.g. ACCEPT), or {@link #ANY_ACTION}
+     * @param tag The tag of matching records
+     * @throws IllegalArgumentException If a prefix length or port range is invalid
+     */
+    public TagRule(int srcNetwork, int srcPrefixLength, int dstNetwork, int dstPrefixLength,
+                   int srcFromPort, int srcToPort, int dstFromPort, int dstToPort,
+                   int protocol, String action, String tag) {
+        checkPrefixLength(srcPrefixLength);
+        checkPrefixLength(dstPrefixLength);
+        checkPorts(srcFromPort, srcToPort);
+        checkPorts(dstFromPort, dstToPort);
+        this.srcNetwork = mask(srcNetwork, srcPrefixLength);
+        this.srcPrefixLength = srcPrefixLength;
+        this.dstNetwork = mask(dstNetwork, dstPrefixLength);
+        this.dstPrefixLength = dstPrefixLength;
+        this.srcFromPort = srcFromPort;
+        this.srcToPort = srcToPort;
+        this.dstFromPort = dstFromPort;
+        this.dstToPort = dstToPort;
+        this.protocol = protocol;
+        this.action = action;
+        this.tag = tag;
+    }
+
+    private static void checkPrefixLength(int prefixLength) {
+        if (prefixLength < AddressRule.ANY_ADDRESS || prefixLength > 32) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+    }
+
+    private static void checkPorts(int fromPort, int toPort) {
+        if (fromPort < AddressRule.MIN_PORT || toPort > AddressRule.MAX_PORT || fromPort > toPort) {
+            throw new IllegalArgumentException("Invalid port range: " + fromPort + "-" + toPort);
+        }
+    }
+
+    private static int mask(int network, int prefixLength) {
+        return prefixLength > 0 ? network & (-1 << (32 - prefixLength)) : 0;
+    }
+
+    public int getSrcNetwork() {
+        return srcNetwork;
+    }
+
+    public int getSrcPrefixLength() {
+        return srcPrefixLength;
+    }
+
+    public int getDstNetwork() {
+        return dstNetwork;
+    }
+
+    public int getDstPrefixLength() {
+        return dstPrefixLength;
+    }
+
+    public int getSrcFromPort() {
+        return srcFromPort;
+    }
+
+    public int getSrcToPort() {
+        return srcToPort;
+    }
+
+    public int getDstFromPort() {
+        return dstFromPort;
+    }
+
+    public int getDstToPort() {
+        return dstToPort;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,16 @@
+package com.flowparser.parser;
+
+import java.io.IOException;
+
+/**
+ * Thrown to abort processing once the share of lines that cannot be parsed
+ * exceeds the configured limit, which usually means the input has a different
+ * format than expected.
+ */
+public class TooManyParseErrorsException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public TooManyParseErrorsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,205 @@
+package com.flowparser.processor;
+
+import com.flowparser.io.FlowLogCache;
+import com.flowparser.model.Statistics;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Processes many flow log files, such as the per-interface, per-interval files
+ * delivered to S3, on a bounded pool of workers and merges the results.
+ *
+ * Files are scheduled largest first, so that a big file is not left to run alone
+ * at the end while the other workers are idle. Each worker keeps its own
+ * {@link Statistics} and the per-worker results are merged once all files are done.
+ */
+public class BatchFileProcessor {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private final FlowLogProcessor processor;
+    private final int threads;
+    private final boolean useCache;
+
+    /**
+     * Creates a batch processor.
+     *
+     * @param processor Processor used for each file
+     * @param threads Maximum number of files processed at the same time
+     */
+    public BatchFileProcessor(FlowLogProcessor processor, int threads) {
+        this(processor, threads, false);
+    }
+
+    /**
+     * Creates a batch processor that optionally reads and writes a binary cache
+     * next to each file (see {@link FlowLogCache}).
+     *
+     * @param processor Processor used for each file
+     * @param threads Maximum number of files processed at the same time
+     * @param useCache Whether to use the per-file caches
+     */
+    public BatchFileProcessor(FlowLogProcessor processor, int threads, boolean useCache) {
+        this.processor = processor;
+        this.threads = threads;
+        this.useCache = useCache;
+    }
+
+    /**
+     * Returns true if the argument names a directory or contains glob characters.
+     *
+     * @param pathOrGlob A file, directory or glob pattern
+     * @return Whether the argument refers to a batch of files
+     */
+    public static boolean isBatchInput(String pathOrGlob) {
+        return Files.isDirectory(Paths.get(pathOrGlob)) || containsGlob(pathOrGlob);
+    }
+
+    /**
+     * Resolves a directory or glob pattern to the regular files it contains.
+     * Cache files written next to flow logs are left out.
+     * Directories are walked recursively. For a glob, the walk starts at the
+     * longest leading path without glob characters, and files are matched
+     * against the whole pattern, e.g. {@code logs/2024/*}{@code /*.log}.
+     *
+     * @param pathOrGlob A file, directory or glob pattern
+     * @return The matching regular files
+     * @throws IOException If a directory cannot be read
+     */
+    public static List<Path> resolveInputs(String pathOrGlob) throws IOException {
+        if (!containsGlob(pathOrGlob)) {
+            Path path = Paths.get(pathOrGlob);
+            if (!Files.isDirectory(path)) {
+                return List.of(path);
+            }
+            return listFiles(path, file -> true);
+        }
+
+        // Walk from the directory part before the first glob character
+        int firstGlob = indexOfGlob(pathOrGlob);
+        int separator = Math.max(pathOrGlob.lastIndexOf('/', firstGlob), pathOrGlob.lastIndexOf('\\', firstGlob));
+        Path base = separator < 0 ? Paths.get("") : Paths.get(pathOrGlob.substring(0, separator + 1));
+        if (!Files.isDirectory(base.toAbsolutePath())) {
+            return List.of();
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pathOrGlob);
+        return listFiles(base, matcher);
+    }
+
+    /**
+     * Processes the files and returns the merged statistics.
+     *
+     * @param files Flow log files to process
+     * @return Statistics object with counts over all files
+     * @throws IOException If there's an error reading a file
+     */
+    public Statistics process(List<Path> files) throws IOException {
+        List<Path> schedule = largestFirst(files);
+        int workerCount = Math.max(1, Math.min(threads, schedule.size()));
+        AtomicInteger nextFile = new AtomicInteger();
+
+        if (workerCount == 1) {
+            Statistics statistics = processor.newStatistics();
+            processFiles(schedule, nextFile, statistics);
+            return statistics;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        try {
+            List<Future<Statistics>> futures = new ArrayList<>();
+            for (int i = 0; i < workerCount; i++) {
+                futures.add(executor.submit(() -> {
+                    Statistics workerStatistics = processor.newStatistics();
+                    processFiles(schedule, nextFile, workerStatistics);
+                    return workerStatistics;
+                }));
+            }
+
+            Statistics statistics = processor.newStatistics();
+            for (Future<Statistics> future : futures) {
+                statistics.merge(await(future));
+            }
+            return statistics;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Processes files from the schedule until none are left.
+     */
+    private void processFiles(List<Path> schedule, AtomicInteger nextFile, Statistics statistics) throws IOException {
+        int index;
+        while ((index = nextFile.getAndIncrement()) < schedule.size()) {
+            processor.recordFile(schedule.get(index), statistics, useCache);
+        }
+    }
+
+    /**
+     * Orders files by size, largest first.
+     */
+    static List<Path> largestFirst(List<Path> files) throws IOException {
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path file : files) {
+            sizes.put(file, Files.size(file));
+        }
+        List<Path> schedule = new ArrayList<>(files);
+        schedule.sort(Comparator.comparing((Path file) -> sizes.get(file)).reversed());
+        return schedule;
+    }
+
+    private static List<Path> listFiles(Path directory, PathMatcher filter) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                .filter(file -> !FlowLogCache.isCacheFile(file))
+                .filter(filter::matches)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean containsGlob(String pathOrGlob) {
+        return indexOfGlob(pathOrGlob) >= 0;
+    }
+
+    private static int indexOfGlob(String pathOrGlob) {
+        for (int i = 0; i < pathOrGlob.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(pathOrGlob.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Statistics await(Future<Statistics> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing flow log files", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to process flow log file: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.FlowLogBatch;
+import com.flowparser.model.Statistics;
+import com.flowparser.parser.FlowLogParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Processes a single flow log file in parallel by memory-mapping it and cutting
+ * it into newline-aligned chunks.
+ *
+ * Each worker pulls chunks from a shared counter, parses the mapped bytes in place
+ * with its own {@link FlowLogParser.ParseState} into its own {@link Statistics},
+ * and the per-worker statistics are merged once all chunks are done. Parse
+ * warnings give the byte offset of the failed line in the file. A header line at
+ * the start of the file sets the format for all chunks.
+ */
+class ChunkedFileProcessor {
+    // Chunks per worker, so that uneven chunks even out across workers
+    private static final int CHUNKS_PER_THREAD = 4;
+    // Upper bound for a single mapping, well below the 2 GB limit of FileChannel.map
+    private static final long MAX_CHUNK_SIZE = 256L * 1024 * 1024;
+    private static final int ALIGN_BUFFER_SIZE = 8 * 1024;
+
+    private final FlowLogParser parser;
+    private final Supplier<Statistics> statisticsFactory;
+    private final BiConsumer<FlowLogBatch, Statistics> recorder;
+    private final int threads;
+
+    /**
+     * Creates a chunked processor.
+     *
+     * @param parser Parser used by all workers
+     * @param statisticsFactory Creates the empty statistics of each worker
+     * @param recorder Callback that tags a batch and records it into a worker's statistics
+     * @param threads Number of worker threads
+     */
+    ChunkedFileProcessor(FlowLogParser parser, Supplier<Statistics> statisticsFactory,
+                         BiConsumer<FlowLogBatch, Statistics> recorder, int threads) {
+        this.parser = parser;
+        this.statisticsFactory = statisticsFactory;
+        this.recorder = recorder;
+        this.threads = threads;
+    }
+
+    /**
+     * Processes the file and returns the merged statistics.
+     *
+     * @param flowLogFile Path to the flow log file
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the file
+     */
+    Statistics process(String flowLogFile) throws IOException {
+        Path path = Paths.get(flowLogFile);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            FlowLogParser fileParser = parserForHeader(parser, channel);
+            long[] boundaries = computeChunkBoundaries(channel);
+            int chunkCount = boundaries.length - 1;
+            int workerCount = Math.min(threads, chunkCount);
+
+            if (workerCount <= 1) {
+                Statistics statistics = statisticsFactory.get();
+                processChunks(fileParser, channel, boundaries, new AtomicInteger(), statistics);
+                return statistics;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+            try {
+                AtomicInteger nextChunk = new AtomicInteger();
+                List<Future<Statistics>> futures = new ArrayList<>();
+                for (int i = 0; i < workerCount; i++) {
+                    futures.add(executor.submit(() -> {
+                        Statistics workerStatistics = statisticsFactory.get();
+                        processChunks(fileParser, channel, boundaries, nextChunk, workerStatistics);
+                        return workerStatistics;
+                    }));
+                }
+
+                Statistics statistics = statisticsFactory.get();
+                for (Future<Statistics> future : futures) {
+                    statistics.merge(await(future));
+                }
+                return statistics;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Parses chunks until none are left, recording entries into the given statistics.
+     */
+    private void processChunks(FlowLogParser parser, FileChannel channel, long[] boundaries,
+                               AtomicInteger nextChunk, Statistics statistics) throws IOException {
+        FlowLogParser.ParseState state = parser.newParseState();
+        int chunk;
+        while ((chunk = nextChunk.getAndIncrement()) < boundaries.length - 1) {
+            long start = boundaries[chunk];
+            long size = boundaries[chunk + 1] - start;
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            parser.parseRegion(region, start, state, batch -> recorder.accept(batch, statistics));
+        }
+    }
+
+    /**
+     * Returns the parser for the format of the file's header, if it has one.
+     */
+    static FlowLogParser parserForHeader(FlowLogParser parser, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        int read = channel.read(buffer, 0);
+        return parser.forInput(buffer.array(), 0, Math.max(0, read));
+    }
+
+    /**
+     * Splits the file into ranges that each start at the beginning of a line.
+     *
+     * @return Chunk start offsets followed by the file size
+     */
+    long[] computeChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkCount = Math.max((long) threads * CHUNKS_PER_THREAD, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        chunkCount = Math.max(1, Math.min(chunkCount, size));
+
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        for (long i = 1; i < chunkCount; i++) {
+            long aligned = nextLineStart(channel, size * i / chunkCount);
+            if (aligned > boundaries.get(boundaries.size() - 1) && aligned < size) {
+                boundaries.add(aligned);
+            }
+        }
+        boundaries.add(size);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset just past the first '\n' at or after the given position,
+     * or the file size if there is none.
+     */
+    static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        long offset = position;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private static Statistics await(Future<Statistics> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing flow log chunks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to process flow log chunk: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -1,27 +1,235 @@
 package com.flowparser.processor;
 
-import com.flowparser.model.FlowLogEntry;
+import com.flowparser.io.CompressedInputs;
+import com.flowparser.io.FlowLogCache;
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.metrics.Stage;
+import com.flowparser.model.Breakdown;
+import com.flowparser.model.ConcurrentStatistics;
+import com.flowparser.model.FlowField;
+import com.flowparser.model.FlowLogBatch;
 import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.CompiledLookupTable;
+import com.flowparser.parser.CompiledRuleSet;
+import com.flowparser.parser.FlowLogFormat;
 import com.flowparser.parser.FlowLogParser;
+import com.flowparser.parser.ParseErrorLog;
+import com.flowparser.parser.ReloadingLookupTable;
+import com.flowparser.util.HyperLogLog;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 /**
  * Processor that combines parsing flow logs with matching them against the lookup table.
+ * The parser only decodes the fields that tagging and counting use, and records are
+ * tagged and counted a {@link FlowLogBatch} at a time.
  */
 public class FlowLogProcessor {
-    private final Map<String, String> lookupTable;
+    // Fields read by recordBatch; volumes are counted when the format has them, address rules of the
+    // lookup table match the destination address, and the start time is what windowed processing groups
+    // records by
+    private static final Set<FlowField> FIELDS = EnumSet.of(FlowField.DSTPORT, FlowField.PROTOCOL);
+    private static final Set<FlowField> OPTIONAL_FIELDS = EnumSet.of(
+            FlowField.PACKETS, FlowField.BYTES, FlowField.DSTADDR, FlowField.START);
+    // Further fields that multi-tag rules can match on
+    private static final Set<FlowField> RULE_FIELDS = EnumSet.of(FlowField.SRCADDR, FlowField.SRCPORT, FlowField.ACTION);
+    // Further fields of the top addresses and the distinct counts
+    private static final Set<FlowField> TOP_ADDRESS_FIELDS = EnumSet.of(FlowField.SRCADDR);
+    private static final Set<FlowField> DISTINCT_FIELDS = EnumSet.of(FlowField.SRCADDR, FlowField.INTERFACE_ID);
+    // Bytes read from the start of a file to find its header line
+    private static final int HEADER_PEEK_SIZE = 8 * 1024;
+
+    // Current lookup table; fixed unless the table is reloaded while running
+    private final Supplier<CompiledLookupTable> lookupTables;
     private final FlowLogParser parser;
+    private final TagDictionary tagDictionary;
+    private final FlowMetrics metrics;
+    private final int distinctPrecision;
+    private final boolean topAddresses;
+    private final boolean distinctCounts;
+    private final Set<FlowField> optionalFields;
+    // Multi-tag rules, null if there are none
+    private final CompiledRuleSet rules;
     
     /**
      * Creates a new FlowLogProcessor with the given lookup table.
+     * The map is compiled into a {@link CompiledLookupTable} for matching.
      * 
      * @param lookupTable Map of lookup keys to tags
      */
     public FlowLogProcessor(Map<String, String> lookupTable) {
-        this.lookupTable = lookupTable;
-        this.parser = new FlowLogParser();
+        this(CompiledLookupTable.compile(lookupTable, new TagDictionary()));
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor with the given compiled lookup table.
+     * 
+     * @param lookupTable Compiled lookup table
+     */
+    public FlowLogProcessor(CompiledLookupTable lookupTable) {
+        this(lookupTable, FlowMetrics.NOOP);
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor that reports to the given metrics.
+     * 
+     * @param lookupTable Compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     */
+    public FlowLogProcessor(CompiledLookupTable lookupTable, FlowMetrics metrics) {
+        this(lookupTable, metrics, new ParseErrorLog("flow log", System.err));
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor that reports to the given metrics and error log.
+     * 
+     * @param lookupTable Compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     * @param errors Log that counts, samples and summarizes lines that cannot be parsed
+     */
+    public FlowLogProcessor(CompiledLookupTable lookupTable, FlowMetrics metrics, ParseErrorLog errors) {
+        this(lookupTable, metrics, errors, FlowLogFormat.DEFAULT);
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor for flow logs in the given format.
+     * Inputs that start with a header line use the format of the header instead.
+     * 
+     * @param lookupTable Compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     * @param errors Log that counts, samples and summarizes lines that cannot be parsed
+     * @param format Format of inputs without a header
+     * @throws IllegalArgumentException If the format lacks the dstport or protocol field
+     */
+    public FlowLogProcessor(CompiledLookupTable lookupTable, FlowMetrics metrics, ParseErrorLog errors,
+                            FlowLogFormat format) {
+        this(lookupTable, metrics, errors, format, HyperLogLog.DEFAULT_PRECISION);
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor with distinct count sketches of the given precision.
+     * 
+     * @param lookupTable Compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     * @param errors Log that counts, samples and summarizes lines that cannot be parsed
+     * @param format Format of inputs without a header
+     * @param distinctPrecision Precision of the per-tag distinct counts, see {@link HyperLogLog}
+     * @throws IllegalArgumentException If the format lacks the dstport or protocol field,
+     *                                  or the precision is out of range
+     */
+    public FlowLogProcessor(CompiledLookupTable lookupTable, FlowMetrics metrics, ParseErrorLog errors,
+                            FlowLogFormat format, int distinctPrecision) {
+        this(lookupTable, metrics, errors, format, distinctPrecision, null);
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor that also counts the tags of multi-tag rules.
+     * 
+     * @param lookupTable Compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     * @param errors Log that counts, samples and summarizes lines that cannot be parsed
+     * @param format Format of inputs without a header
+     * @param distinctPrecision Precision of the per-tag distinct counts, see {@link HyperLogLog}
+     * @param rules Multi-tag rules sharing the lookup table's tag dictionary, or null for none
+     * @throws IllegalArgumentException If the format lacks the dstport or protocol field, the
+     *                                  precision is out of range, or the rules use another dictionary
+     */
+    public FlowLogProcessor(CompiledLookupTable lookupTable, FlowMetrics metrics, ParseErrorLog errors,
+                            FlowLogFormat format, int distinctPrecision, CompiledRuleSet rules) {
+        this(lookupTable, metrics, errors, format, distinctPrecision, rules, Set.of());
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor that also keeps the given breakdowns of the
+     * statistics. Without them only the tag and port/protocol counts and volumes are
+     * kept, and the address and interface fields that only they use are not decoded.
+     * 
+     * @param lookupTable Compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     * @param errors Log that counts, samples and summarizes lines that cannot be parsed
+     * @param format Format of inputs without a header
+     * @param distinctPrecision Precision of the per-tag distinct counts, see {@link HyperLogLog}
+     * @param rules Multi-tag rules sharing the lookup table's tag dictionary, or null for none
+     * @param breakdowns Breakdowns to keep in the statistics
+     * @throws IllegalArgumentException If the format lacks the dstport or protocol field, the
+     *                                  precision is out of range, or the rules use another dictionary
+     */
+    public FlowLogProcessor(CompiledLookupTable lookupTable, FlowMetrics metrics, ParseErrorLog errors,
+                            FlowLogFormat format, int distinctPrecision, CompiledRuleSet rules,
+                            Set<Breakdown> breakdowns) {
+        this(() -> lookupTable, metrics, errors, format, distinctPrecision, rules, breakdowns);
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor whose lookup table can be replaced while it runs,
+     * e.g. by a {@link ReloadingLookupTable}. Each batch of records is tagged with the
+     * table current when the batch is matched. Every table must use the tag dictionary
+     * of the first one.
+     * 
+     * @param lookupTables Supplier of the current compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     * @param errors Log that counts, samples and summarizes lines that cannot be parsed
+     * @param format Format of inputs without a header
+     * @param distinctPrecision Precision of the per-tag distinct counts, see {@link HyperLogLog}
+     * @param rules Multi-tag rules sharing the lookup table's tag dictionary, or null for none
+     * @throws IllegalArgumentException If the format lacks the dstport or protocol field, the
+     *                                  precision is out of range, or the rules use another dictionary
+     */
+    public FlowLogProcessor(Supplier<CompiledLookupTable> lookupTables, FlowMetrics metrics, ParseErrorLog errors,
+                            FlowLogFormat format, int distinctPrecision, CompiledRuleSet rules) {
+        this(lookupTables, metrics, errors, format, distinctPrecision, rules, Set.of());
+    }
+    
+    /**
+     * Creates a new FlowLogProcessor whose lookup table can be replaced while it runs,
+     * and that also keeps the given breakdowns of the statistics.
+     * 
+     * @param lookupTables Supplier of the current compiled lookup table
+     * @param metrics Receiver of parse and tag metrics
+     * @param errors Log that counts, samples and summarizes lines that cannot be parsed
+     * @param format Format of inputs without a header
+     * @param distinctPrecision Precision of the per-tag distinct counts, see {@link HyperLogLog}
+     * @param rules Multi-tag rules sharing the lookup table's tag dictionary, or null for none
+     * @param breakdowns Breakdowns to keep in the statistics
+     * @throws IllegalArgumentException If the format lacks the dstport or protocol field, the
+     *                                  precision is out of range, or the rules use another dictionary
+     */
+    public FlowLogProcessor(Supplier<CompiledLookupTable> lookupTables, FlowMetrics metrics, ParseErrorLog errors,
+                            FlowLogFormat format, int distinctPrecision, CompiledRuleSet rules,
+                            Set<Breakdown> breakdowns) {
+        HyperLogLog.checkPrecision(distinctPrecision);
+        TagDictionary tagDictionary = lookupTables.get().getTagDictionary();
+        if (rules != null && rules.getTagDictionary() != tagDictionary) {
+            throw new IllegalArgumentException("Rules must be compiled with the lookup table's tag dictionary");
+        }
+        this.topAddresses = breakdowns.contains(Breakdown.TOP_ADDRESSES);
+        this.distinctCounts = breakdowns.contains(Breakdown.DISTINCT_COUNTS);
+        this.optionalFields = EnumSet.copyOf(OPTIONAL_FIELDS);
+        if (rules != null) {
+            optionalFields.addAll(RULE_FIELDS);
+        }
+        if (topAddresses) {
+            optionalFields.addAll(TOP_ADDRESS_FIELDS);
+        }
+        if (distinctCounts) {
+            optionalFields.addAll(DISTINCT_FIELDS);
+        }
+        this.lookupTables = lookupTables;
+        this.parser = new FlowLogParser(metrics, errors, format, FIELDS, optionalFields).withPackedIdentifiers();
+        this.tagDictionary = tagDictionary;
+        this.metrics = metrics;
+        this.distinctPrecision = distinctPrecision;
+        this.rules = rules;
     }
     
     /**
@@ -32,29 +240,317 @@ public class FlowLogProcessor {
      * @throws IOException If there's an error reading the file
      */
     public Statistics processFlowLogs(String flowLogFile) throws IOException {
-        Statistics statistics = new Statistics();
-        
-        parser.parseFlowLogs(flowLogFile, entry -> {
-            // Match entry against lookup table
-            String tag = matchEntryToTag(entry);
-            entry.setTag(tag);
-            
-            // Add to statistics
-            statistics.addTag(tag);
-            statistics.addPortProtocol(entry.getDstPort(), entry.getProtocolName());
-        });
+        Statistics statistics = newStatistics();
+        
+        parser.parseFlowLogBatches(flowLogFile, batch -> recordBatch(batch, statistics));
+        
+        return statistics;
+    }
+    
+    /**
+     * Processes flow log data from a stream and returns statistics.
+     * The stream is read to the end but not closed.
+     * 
+     * @param in Stream with flow log data
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the stream
+     */
+    public Statistics processFlowLogs(InputStream in) throws IOException {
+        Statistics statistics = newStatistics();
+        
+        parser.parseFlowLogBatches(in, batch -> recordBatch(batch, statistics));
+        
+        return statistics;
+    }
+    
+    /**
+     * Processes flow log data from a stream into shared statistics. Several threads can
+     * call this at the same time with the same statistics, e.g. one per input; each
+     * batch is added to the calling thread's shard without locking the others.
+     * The stream is read to the end but not closed.
+     * 
+     * @param in Stream with flow log data
+     * @param statistics The statistics to update, from {@link #newConcurrentStatistics()}
+     * @throws IOException If there's an error reading the stream
+     * @throws IllegalArgumentException If the statistics use another tag dictionary
+     */
+    public void processFlowLogs(InputStream in, ConcurrentStatistics statistics) throws IOException {
+        if (statistics.getTagDictionary() != tagDictionary) {
+            throw new IllegalArgumentException("Statistics must use the lookup table's tag dictionary");
+        }
+        parser.parseFlowLogBatches(in, batch -> statistics.update(shard -> recordBatch(batch, shard)));
+    }
+    
+    /**
+     * Creates empty statistics that threads can update concurrently, sharing this
+     * processor's tag ids.
+     * 
+     * @return The statistics
+     */
+    public ConcurrentStatistics newConcurrentStatistics() {
+        return new ConcurrentStatistics(tagDictionary, distinctPrecision);
+    }
+    
+    /**
+     * Processes flow log data from a stream using the given number of threads and returns
+     * statistics. With more than one thread, reading, and parsing and tagging, run in a
+     * pipeline on separate threads (see {@link PipelinedFlowLogProcessor}).
+     * The stream is read to the end but not closed.
+     * 
+     * @param in Stream with flow log data
+     * @param threads Number of parse/tag worker threads
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the stream
+     */
+    public Statistics processFlowLogs(InputStream in, int threads) throws IOException {
+        if (threads <= 1) {
+            return processFlowLogs(in);
+        }
+        return new PipelinedFlowLogProcessor(this, threads).process(in);
+    }
+    
+    /**
+     * Processes the flow log file using the given number of threads and returns statistics.
+     * With more than one thread the file is memory-mapped and split into newline-aligned
+     * chunks that are processed in parallel; the totals are the same as for the
+     * sequential path.
+     * Compressed files cannot be split this way; for those the threads inflate
+     * gzip members in parallel and parse the output in a pipeline.
+     * 
+     * @param flowLogFile Path to the flow log file
+     * @param threads Number of worker threads
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the file
+     */
+    public Statistics processFlowLogs(String flowLogFile, int threads) throws IOException {
+        if (threads <= 1) {
+            return processFlowLogs(flowLogFile);
+        }
+        Path path = Paths.get(flowLogFile);
+        if (CompressedInputs.detect(path) != CompressedInputs.Compression.NONE) {
+            try (InputStream in = CompressedInputs.open(path, threads)) {
+                return processFlowLogs(in, threads);
+            }
+        }
+        return new ChunkedFileProcessor(parser, this::newStatistics, this::recordBatch, threads).process(flowLogFile);
+    }
+    
+    /**
+     * Processes the flow log file on a fork/join pool and returns statistics. The file
+     * is memory-mapped and split in halves at line boundaries until the regions are
+     * small, and idle threads steal regions from busy ones (see
+     * {@link ForkJoinFileProcessor}). The totals are the same as for the sequential
+     * path. Compressed files are processed as in {@link #processFlowLogs(String, int)}.
+     * 
+     * @param flowLogFile Path to the flow log file
+     * @param threads Parallelism of the pool
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the file
+     */
+    public Statistics processFlowLogsForkJoin(String flowLogFile, int threads) throws IOException {
+        if (CompressedInputs.detect(Paths.get(flowLogFile)) != CompressedInputs.Compression.NONE) {
+            return processFlowLogs(flowLogFile, threads);
+        }
+        return new ForkJoinFileProcessor(parser, this::newStatistics, this::recordBatch, threads).process(flowLogFile);
+    }
+    
+    /**
+     * Processes the flow log file like {@link #processFlowLogs(String, int)}, using a
+     * binary cache of the parsed records next to it (see {@link FlowLogCache}). If the
+     * cache is missing or the file has changed since it was written, the file is parsed
+     * and the cache is written on the way; otherwise the cache is read and the text is
+     * not parsed at all.
+     * 
+     * @param flowLogFile Path to the flow log file
+     * @param threads Number of worker threads used when the file is parsed
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the file or the cache
+     */
+    public Statistics processFlowLogsCached(String flowLogFile, int threads) throws IOException {
+        Path path = Paths.get(flowLogFile);
+        if (!Files.isRegularFile(path)) {
+            return processFlowLogs(flowLogFile, threads);
+        }
+        Path cache = FlowLogCache.sidecarFor(path);
+        String cacheKey = cacheKey(path);
+        Statistics statistics = newStatistics();
+        if (FlowLogCache.isValid(cache, path, cacheKey)) {
+            Set<FlowField> fields = EnumSet.copyOf(FIELDS);
+            fields.addAll(optionalFields);
+            FlowLogCache.read(cache, fields, metrics, batch -> recordBatch(batch, statistics));
+            return statistics;
+        }
         
+        try (FlowLogCache.Writer writer = createCache(cache, path, cacheKey)) {
+            if (writer == null) {
+                return processFlowLogs(flowLogFile, threads);
+            }
+            // The cache holds every field, so parse all of them. A projection accepts
+            // the same lines as a full parse, so the cache holds exactly the records
+            // that a run without it counts.
+            FlowLogParser fullParser = parser.withFields(null);
+            boolean compressed = CompressedInputs.detect(path) != CompressedInputs.Compression.NONE;
+            try {
+                if (threads <= 1 || compressed) {
+                    fullParser.parseFlowLogBatches(flowLogFile, batch -> cacheAndRecord(writer, batch, statistics));
+                } else {
+                    Statistics merged = new ChunkedFileProcessor(fullParser, this::newStatistics,
+                            (batch, chunkStatistics) -> cacheAndRecord(writer, batch, chunkStatistics), threads)
+                            .process(flowLogFile);
+                    statistics.merge(merged);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.commit();
+        }
         return statistics;
     }
     
     /**
-     * Attempts to match a flow log entry to a tag from the lookup table.
+     * Processes one file sequentially into the given statistics, optionally through
+     * its cache as in {@link #processFlowLogsCached(String, int)}.
      * 
-     * @param entry The flow log entry to match
-     * @return The matching tag, or null if no match is found
+     * @param file Path to the flow log file
+     * @param statistics The statistics to update
+     * @param useCache Whether to read or write the file's cache
+     * @throws IOException If there's an error reading the file or the cache
+     */
+    void recordFile(Path file, Statistics statistics, boolean useCache) throws IOException {
+        if (useCache) {
+            statistics.merge(processFlowLogsCached(file.toString(), 1));
+        } else {
+            parser.parseFlowLogBatches(file.toString(), batch -> recordBatch(batch, statistics));
+        }
+    }
+    
+    /**
+     * Returns the parser used by this processor.
+     */
+    FlowLogParser parser() {
+        return parser;
+    }
+    
+    /**
+     * Returns the metrics this processor reports to.
+     */
+    FlowMetrics metrics() {
+        return metrics;
+    }
+    
+    /**
+     * Creates empty statistics that share this processor's tag ids.
+     */
+    Statistics newStatistics() {
+        return new Statistics(tagDictionary, distinctPrecision);
+    }
+    
+    /**
+     * Tags a batch of records and adds them to the statistics.
+     * 
+     * @param batch The records
+     * @param statistics The statistics to update
+     */
+    void recordBatch(FlowLogBatch batch, Statistics statistics) {
+        recordBatch(batch, 0, batch.size(), statistics);
+    }
+    
+    /**
+     * Tags a range of a batch and adds it to the statistics. The tag ids are left in
+     * the batch's tag id column, with {@link TagDictionary#UNTAGGED_ID} for records
+     * without a match.
+     * 
+     * @param batch The records
+     * @param from Index of the first record
+     * @param to Index just past the last record
+     * @param statistics The statistics to update
+     */
+    void recordBatch(FlowLogBatch batch, int from, int to, Statistics statistics) {
+        int[] dstPorts = batch.dstPorts();
+        int[] protocols = batch.protocols();
+        int[] tagIds = batch.tagIds();
+        
+        // Match the records against the lookup table, the same snapshot for the whole batch
+        long tagStart = System.nanoTime();
+        CompiledLookupTable lookupTable = lookupTables.get();
+        lookupTable.matchAll(dstPorts, protocols, batch.dstIpv4s(), tagIds, from, to);
+        int untagged = 0;
+        for (int i = from; i < to; i++) {
+            if (tagIds[i] == CompiledLookupTable.NO_TAG) {
+                tagIds[i] = TagDictionary.UNTAGGED_ID;
+                untagged++;
+            }
+        }
+        metrics.tagged(to - from - untagged);
+        metrics.untagged(untagged);
+        
+        // Add to statistics
+        long aggregateStart = System.nanoTime();
+        long[] packets = batch.packets();
+        long[] bytes = batch.bytes();
+        statistics.addTags(tagIds, packets, bytes, from, to);
+        statistics.addPortProtocols(dstPorts, protocols, packets, bytes, from, to);
+        if (topAddresses) {
+            statistics.addAddresses(batch.srcIpv4s(), batch.dstIpv4s(), bytes, from, to);
+        }
+        if (distinctCounts) {
+            statistics.addDistinct(tagIds, batch.srcAddrHashes(), batch.dstAddrHashes(), batch.interfaceIdHashes(),
+                    from, to);
+        }
+        long aggregateEnd = System.nanoTime();
+        
+        // Count every tag of the multi-tag rules that each record matches; mostly matching, so timed as tagging
+        if (rules != null) {
+            CompiledRuleSet.Matcher matcher = rules.newMatcher();
+            long[] srcIpv4s = batch.srcIpv4s();
+            long[] dstIpv4s = batch.dstIpv4s();
+            int[] srcPorts = batch.srcPorts();
+            long[] actionHashes = batch.actionHashes();
+            for (int i = from; i < to; i++) {
+                int count = matcher.match(srcIpv4s[i], dstIpv4s[i], srcPorts[i], dstPorts[i], protocols[i], actionHashes[i]);
+                statistics.addRuleTags(matcher.tagIds(), count);
+            }
+        }
+        long end = System.nanoTime();
+        metrics.stageNanos(Stage.TAG, aggregateStart - tagStart + end - aggregateEnd);
+        metrics.stageNanos(Stage.AGGREGATE, aggregateEnd - aggregateStart);
+    }
+    
+    /**
+     * Returns the key that ties a cache to the log format its records were parsed
+     * with: the format of the file's header if it has one, otherwise the configured
+     * format.
+     */
+    private String cacheKey(Path source) throws IOException {
+        byte[] head;
+        try (InputStream in = CompressedInputs.open(source, 1)) {
+            head = in.readNBytes(HEADER_PEEK_SIZE);
+        }
+        return parser.forInput(head, 0, head.length).format().toString();
+    }
+    
+    /**
+     * Appends a batch to the cache, then tags and counts it.
+     */
+    private void cacheAndRecord(FlowLogCache.Writer writer, FlowLogBatch batch, Statistics statistics) {
+        try {
+            writer.append(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        recordBatch(batch, statistics);
+    }
+    
+    /**
+     * Starts writing a cache, or returns null with a warning if that is not possible,
+     * e.g. because the directory is read-only.
      */
-    private String matchEntryToTag(FlowLogEntry entry) {
-        String lookupKey = entry.getLookupKey();
-        return lookupTable.get(lookupKey);
+    private FlowLogCache.Writer createCache(Path cache, Path source, String cacheKey) {
+        try {
+            return FlowLogCache.create(cache, source, cacheKey);
+        } catch (IOException e) {
+            System.err.println("Warning: Cannot write flow log cache " + cache + ": " + e.getMessage());
+            return null;
+        }
     }
-}
\ No newline at end of file
+}
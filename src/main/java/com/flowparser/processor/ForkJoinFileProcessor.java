@@ -0,0 +1,179 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.FlowLogBatch;
+import com.flowparser.model.Statistics;
+import com.flowparser.parser.FlowLogParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Processes a single flow log file on a {@link ForkJoinPool} by splitting it
+ * recursively at line boundaries.
+ *
+ * The whole file is one {@link RecursiveAction}. A task whose region is larger than
+ * the threshold splits it in two at the first newline after the middle, forks the
+ * first half and works on the second; a region at or below the threshold is
+ * memory-mapped and parsed in place. Each thread that runs regions keeps one
+ * {@link FlowLogParser.ParseState} and one {@link Statistics} for all of them, so
+ * a region costs no buffers, batches or sketches of its own, and the per-thread
+ * statistics are merged once the pool is done. Idle workers steal the largest
+ * pending halves from busy ones, so regions that take longer, e.g. because of long
+ * lines or parse errors, do not leave other cores waiting. Counts do not depend on
+ * which thread ran a region; like with {@link ChunkedFileProcessor}, only the
+ * estimates of approximate top talkers can differ from run to run.
+ *
+ * Parse warnings give the byte offset of the failed line in the file. A header line
+ * at the start of the file sets the format for all regions.
+ */
+class ForkJoinFileProcessor {
+    /** Default size below which a region is not split further */
+    static final long DEFAULT_REGION_SIZE = 4L * 1024 * 1024;
+
+    private final FlowLogParser parser;
+    private final Supplier<Statistics> statisticsFactory;
+    private final BiConsumer<FlowLogBatch, Statistics> recorder;
+    private final int threads;
+    private final long regionSize;
+
+    /**
+     * Creates a fork/join processor with the default region size.
+     *
+     * @param parser Parser used by all tasks
+     * @param statisticsFactory Creates the empty statistics of each thread
+     * @param recorder Callback that tags a batch and records it into a thread's statistics
+     * @param threads Parallelism of the pool
+     */
+    ForkJoinFileProcessor(FlowLogParser parser, Supplier<Statistics> statisticsFactory,
+                          BiConsumer<FlowLogBatch, Statistics> recorder, int threads) {
+        this(parser, statisticsFactory, recorder, threads, DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Creates a fork/join processor.
+     *
+     * @param parser Parser used by all tasks
+     * @param statisticsFactory Creates the empty statistics of each thread
+     * @param recorder Callback that tags a batch and records it into a thread's statistics
+     * @param threads Parallelism of the pool
+     * @param regionSize Size in bytes below which a region is not split further
+     */
+    ForkJoinFileProcessor(FlowLogParser parser, Supplier<Statistics> statisticsFactory,
+                          BiConsumer<FlowLogBatch, Statistics> recorder, int threads, long regionSize) {
+        this.parser = parser;
+        this.statisticsFactory = statisticsFactory;
+        this.recorder = recorder;
+        this.threads = threads;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Processes the file and returns the merged statistics.
+     *
+     * @param flowLogFile Path to the flow log file
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the file
+     */
+    Statistics process(String flowLogFile) throws IOException {
+        Path path = Paths.get(flowLogFile);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            FlowLogParser fileParser = ChunkedFileProcessor.parserForHeader(parser, channel);
+            Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+            ThreadLocal<Worker> worker = ThreadLocal.withInitial(() -> {
+                Worker created = new Worker(fileParser.newParseState(), statisticsFactory.get());
+                workers.add(created);
+                return created;
+            });
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new RegionTask(fileParser, channel, worker, 0, channel.size()));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdownNow();
+                // The calling thread may have run regions too; pool threads end with the pool
+                worker.remove();
+            }
+
+            Statistics statistics = statisticsFactory.get();
+            for (Worker done : workers) {
+                statistics.merge(done.statistics);
+            }
+            return statistics;
+        }
+    }
+
+    /**
+     * Counts the lines of a region, which starts at the beginning of a line and ends
+     * after a newline or at the end of the file.
+     */
+    private class RegionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FlowLogParser parser;
+        private final FileChannel channel;
+        private final ThreadLocal<Worker> worker;
+        private final long start;
+        private final long end;
+
+        RegionTask(FlowLogParser parser, FileChannel channel, ThreadLocal<Worker> worker, long start, long end) {
+            this.parser = parser;
+            this.channel = channel;
+            this.worker = worker;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                long middle = end - start > regionSize
+                        ? ChunkedFileProcessor.nextLineStart(channel, start + (end - start) / 2) : end;
+                if (middle >= end) {
+                    // Small enough, or one line with no newline after the middle
+                    parse();
+                    return;
+                }
+
+                RegionTask first = new RegionTask(parser, channel, worker, start, middle);
+                first.fork();
+                new RegionTask(parser, channel, worker, middle, end).compute();
+                first.join();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void parse() throws IOException {
+            if (end > start) {
+                Worker current = worker.get();
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                parser.parseRegion(region, start, current.state, batch -> recorder.accept(batch, current.statistics));
+            }
+        }
+    }
+
+    /**
+     * What a thread reuses for every region it parses.
+     */
+    private static final class Worker {
+        final FlowLogParser.ParseState state;
+        final Statistics statistics;
+
+        Worker(FlowLogParser.ParseState state, Statistics statistics) {
+            this.state = state;
+            this.statistics = statistics;
+        }
+    }
+}
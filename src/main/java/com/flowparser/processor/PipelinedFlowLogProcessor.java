@@ -0,0 +1,295 @@
+package com.flowparser.processor;
+
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.metrics.Stage;
+import com.flowparser.model.Statistics;
+import com.flowparser.parser.FlowLogParser;
+import com.flowparser.util.RingBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Processes a flow log stream in stages on separate threads: the calling thread
+ * reads large blocks cut at line boundaries, and parse/tag workers turn them into
+ * counts in their own {@link Statistics}, which are merged at the end. Each
+ * worker parses the blocks in place with its own {@link FlowLogParser.ParseState},
+ * so no per-block buffers or batches are allocated.
+ *
+ * Blocks travel from the reader to the workers through a bounded lock-free
+ * {@link RingBuffer}, and empty buffers travel back through a second one. The
+ * fixed set of buffers bounds memory use and applies backpressure: the reader
+ * waits for a free buffer when the workers fall behind. Unlike
+ * {@link ChunkedFileProcessor} the input does not need to be seekable, so
+ * standard input and decompressed streams are parsed on several cores as well.
+ * Parse warnings give the byte offset of the failed line in the stream. A header
+ * line at the start of the stream sets the format for all blocks.
+ */
+public class PipelinedFlowLogProcessor {
+    private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    // Buffers per worker: one being parsed, one queued and one being filled
+    private static final int BUFFERS_PER_WORKER = 3;
+    private static final int SPIN_LIMIT = 100;
+    private static final int YIELD_LIMIT = 200;
+    private static final long PARK_NANOS = 50_000;
+
+    private final FlowLogProcessor processor;
+    private final int workers;
+    private final int blockSize;
+
+    /**
+     * Creates a pipelined processor.
+     *
+     * @param processor Processor whose parser, lookup table and tag ids the workers use
+     * @param workers Number of parse/tag worker threads
+     */
+    public PipelinedFlowLogProcessor(FlowLogProcessor processor, int workers) {
+        this(processor, workers, DEFAULT_BLOCK_SIZE);
+    }
+
+    PipelinedFlowLogProcessor(FlowLogProcessor processor, int workers, int blockSize) {
+        this.processor = processor;
+        this.workers = workers;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Processes flow log data from a stream and returns the merged statistics.
+     * The stream is read to the end but not closed.
+     *
+     * @param in Stream with flow log data
+     * @return Statistics object with counts
+     * @throws IOException If there's an error reading the stream
+     */
+    public Statistics process(InputStream in) throws IOException {
+        int bufferCount = workers * BUFFERS_PER_WORKER;
+        RingBuffer<Block> filled = new RingBuffer<>(bufferCount + workers);
+        RingBuffer<Block> free = new RingBuffer<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            free.offer(new Block(new byte[blockSize]));
+        }
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // Set by the reader from the first block, before that block is published
+        AtomicReference<FlowLogParser> parser = new AtomicReference<>(processor.parser());
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Statistics>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> parseBlocks(filled, free, failure, parser)));
+            }
+
+            try {
+                readBlocks(in, filled, free, failure, parser);
+            } catch (IOException | RuntimeException e) {
+                // If a worker failed first, its exception is reported when awaiting it below
+                if (failure.compareAndSet(null, e)) {
+                    endWorkers(filled);
+                    throw e;
+                }
+            }
+            endWorkers(filled);
+
+            Statistics statistics = processor.newStatistics();
+            for (Future<Statistics> future : futures) {
+                statistics.merge(await(future));
+            }
+            return statistics;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends one end marker per worker. The filled ring has room for every buffer plus
+     * the markers, so this never waits.
+     */
+    private void endWorkers(RingBuffer<Block> filled) throws IOException {
+        for (int i = 0; i < workers; i++) {
+            put(filled, Block.END, null);
+        }
+    }
+
+    /**
+     * I/O stage: fills free buffers with whole lines and hands them to the workers.
+     * A partial last line is carried over to the start of the next buffer.
+     */
+    private void readBlocks(InputStream in, RingBuffer<Block> filled, RingBuffer<Block> free,
+                            AtomicReference<Throwable> failure, AtomicReference<FlowLogParser> parser)
+            throws IOException {
+        FlowMetrics metrics = processor.metrics();
+        byte[] carry = new byte[0];
+        int carryLength = 0;
+        long offset = 0;
+        boolean first = true;
+
+        while (true) {
+            Block block = take(free, failure);
+            if (block.data.length < carryLength * 2) {
+                // A line longer than the buffers; give this one more room
+                block.data = new byte[carryLength * 2];
+            }
+            System.arraycopy(carry, 0, block.data, 0, carryLength);
+            int limit = carryLength;
+
+            int read = 0;
+            long readStart = System.nanoTime();
+            while (limit < block.data.length && (read = in.read(block.data, limit, block.data.length - limit)) != -1) {
+                limit += read;
+            }
+            metrics.stageNanos(Stage.READ, System.nanoTime() - readStart);
+            boolean endOfInput = read == -1;
+
+            // Without a line end in a full buffer everything is carried over and the next buffer grows
+            int cut = endOfInput ? limit : lastLineEnd(block.data, limit);
+            carryLength = limit - cut;
+            if (carry.length < carryLength) {
+                carry = new byte[Math.max(carryLength, carry.length * 2)];
+            }
+            System.arraycopy(block.data, cut, carry, 0, carryLength);
+
+            block.length = cut;
+            block.offset = offset;
+            offset += cut;
+            if (first && cut > 0) {
+                first = false;
+                parser.set(parser.get().forInput(block.data, 0, cut));
+            }
+            if (cut > 0) {
+                put(filled, block, failure);
+            } else {
+                put(free, block, failure);
+            }
+            if (endOfInput) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parse/tag stage: parses blocks into the worker's own statistics until the end marker.
+     */
+    private Statistics parseBlocks(RingBuffer<Block> filled, RingBuffer<Block> free,
+                                   AtomicReference<Throwable> failure, AtomicReference<FlowLogParser> parser)
+            throws IOException {
+        Statistics statistics = processor.newStatistics();
+        FlowLogParser.ParseState state = processor.parser().newParseState();
+        try {
+            while (true) {
+                Block block = take(filled, null);
+                if (block == Block.END) {
+                    return statistics;
+                }
+                if (failure.get() == null) {
+                    parser.get().parseRegion(block.data, 0, block.length, block.offset, state,
+                            batch -> processor.recordBatch(batch, statistics));
+                }
+                put(free, block, null);
+            }
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the offset just past the last '\n' or '\r' before the limit, or 0 if there is none.
+     */
+    private static int lastLineEnd(byte[] data, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (data[i] == '\n' || data[i] == '\r') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Adds a block, waiting while the ring is full. Gives up once another stage has failed.
+     */
+    private static void put(RingBuffer<Block> ring, Block block, AtomicReference<Throwable> failure)
+            throws IOException {
+        int idle = 0;
+        while (!ring.offer(block)) {
+            checkFailure(failure);
+            idle = idle(idle);
+        }
+    }
+
+    /**
+     * Removes a block, waiting while the ring is empty. Gives up once another stage has failed.
+     */
+    private static Block take(RingBuffer<Block> ring, AtomicReference<Throwable> failure) throws IOException {
+        int idle = 0;
+        Block block;
+        while ((block = ring.poll()) == null) {
+            checkFailure(failure);
+            idle = idle(idle);
+        }
+        return block;
+    }
+
+    private static void checkFailure(AtomicReference<Throwable> failure) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while waiting for a flow log block");
+        }
+        if (failure != null && failure.get() != null) {
+            throw new IOException("Flow log pipeline stopped after a failure in another stage", failure.get());
+        }
+    }
+
+    /**
+     * Backs off from spinning to yielding to parking, so a stalled stage costs little CPU.
+     */
+    private static int idle(int idle) {
+        if (idle < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (idle < YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+
+    private static Statistics await(Future<Statistics> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing flow log blocks", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to process flow log block: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * A buffer of whole lines passed between the stages.
+     */
+    private static final class Block {
+        // Tells a worker that there are no more blocks
+        static final Block END = new Block(new byte[0]);
+
+        byte[] data;
+        int length;
+        // Offset of the first byte in the stream
+        long offset;
+
+        Block(byte[] data) {
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.Statistics;
+import com.flowparser.parser.ParseErrorLog;
+import com.flowparser.writer.StatisticsWriter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes an unbounded stream of flow log data, such as a pipe from a collector,
+ * and periodically writes a snapshot of the statistics so far.
+ *
+ * A snapshot is written every N records and/or every T seconds, and once more when
+ * the stream ends. Snapshots are cumulative and replace the output file atomically,
+ * so readers never see a partially written file. The error ratio of the parser's
+ * {@link ParseErrorLog} is checked before each snapshot, so
+ * an input over the limit does not replace the output. Nothing is kept per record, so
+ * memory use only depends on the number of distinct tags and port/protocol pairs.
+ *
+ * With a time based trigger, the input is read on a background thread and the
+ * processing thread waits for it only until the next snapshot is due. Records of a
+ * burst are therefore written within the interval even if the stream then stays
+ * idle for hours; an idle stream with nothing new counted produces no snapshots.
+ * Statistics are only touched by the processing thread.
+ */
+public class StreamingFlowLogProcessor {
+    private final FlowLogProcessor processor;
+    private final StatisticsWriter writer;
+    private final Path outputFile;
+    private final long snapshotRecords;
+    private final long snapshotIntervalNanos;
+
+    /**
+     * Creates a streaming processor.
+     *
+     * @param processor Processor that tags and counts the records
+     * @param writer Writer used for the snapshots
+     * @param outputFile Path of the snapshot output file
+     * @param snapshotRecords Write a snapshot every this many records, or 0 to disable
+     * @param snapshotIntervalMillis Write a snapshot at least this often while there are new records, even
+     *                               if the input is idle, or 0 to disable
+     */
+    public StreamingFlowLogProcessor(FlowLogProcessor processor, StatisticsWriter writer, String outputFile,
+                                     long snapshotRecords, long snapshotIntervalMillis) {
+        this.processor = processor;
+        this.writer = writer;
+        this.outputFile = Paths.get(outputFile);
+        this.snapshotRecords = snapshotRecords;
+        this.snapshotIntervalNanos = snapshotIntervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Processes a channel until it reaches end of stream.
+     *
+     * @param channel Channel with flow log data
+     * @return The final statistics, which have also been written to the output file
+     * @throws IOException If there's an error reading the input or writing a snapshot
+     */
+    public Statistics process(ReadableByteChannel channel) throws IOException {
+        return process(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Processes a stream until it reaches end of stream. The stream is not closed.
+     *
+     * @param in Stream with flow log data
+     * @return The final statistics, which have also been written to the output file
+     * @throws IOException If there's an error reading the input or writing a snapshot
+     */
+    public Statistics process(InputStream in) throws IOException {
+        Statistics statistics = processor.newStatistics();
+        SnapshotState state = new SnapshotState(statistics);
+
+        SnapshotTriggeringStream input = new SnapshotTriggeringStream(in, state);
+        try {
+            processor.parser().parseFlowLogBatches(input, batch -> {
+                if (snapshotRecords == 0) {
+                    processor.recordBatch(batch, statistics);
+                    state.pendingRecords += batch.size();
+                    return;
+                }
+                // Split the batch where a record count snapshot is due
+                int from = 0;
+                while (from < batch.size()) {
+                    int to = from + (int) Math.min(batch.size() - from, snapshotRecords - state.pendingRecords);
+                    processor.recordBatch(batch, from, to, statistics);
+                    state.pendingRecords += to - from;
+                    from = to;
+                    if (state.pendingRecords == snapshotRecords) {
+                        state.snapshot(false);
+                    }
+                }
+            });
+            state.snapshot(true);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            input.stopReading();
+        }
+        return statistics;
+    }
+
+    /**
+     * Writes the statistics to a temporary file next to the output and moves it into place.
+     */
+    private void writeSnapshot(Statistics statistics) throws IOException {
+        Path directory = outputFile.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(directory, outputFile.getFileName().toString(), ".tmp");
+        try {
+            writer.writeStatistics(statistics, tempFile.toString());
+            try {
+                Files.move(tempFile, outputFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, outputFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Tracks what has been written since the last snapshot.
+     */
+    private class SnapshotState {
+        private final Statistics statistics;
+        private long pendingRecords;
+        private long lastSnapshotNanos = System.nanoTime();
+
+        SnapshotState(Statistics statistics) {
+            this.statistics = statistics;
+        }
+
+        /**
+         * Writes a snapshot, unless the share of lines that failed to parse is over the
+         * error log's limit; then the output is left as it is and processing aborts.
+         */
+        void snapshot(boolean endOfInput) {
+            try {
+                processor.parser().errors().checkErrorRatio(endOfInput);
+                writeSnapshot(statistics);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pendingRecords = 0;
+            lastSnapshotNanos = System.nanoTime();
+        }
+
+        /**
+         * Returns the time until the time based snapshot is due, or Long.MAX_VALUE if
+         * none will be due before more records are counted.
+         */
+        long nanosUntilDue() {
+            if (snapshotIntervalNanos == 0 || pendingRecords == 0) {
+                return Long.MAX_VALUE;
+            }
+            return Math.max(0, lastSnapshotNanos + snapshotIntervalNanos - System.nanoTime());
+        }
+
+        void snapshotIfDue() {
+            if (snapshotIntervalNanos > 0 && pendingRecords > 0
+                    && System.nanoTime() - lastSnapshotNanos >= snapshotIntervalNanos) {
+                snapshot(false);
+            }
+        }
+    }
+
+    /**
+     * Checks the time based trigger each time the parser asks for more input, which
+     * is when all complete lines read so far have been counted, and while it waits
+     * for that input.
+     *
+     * Without a time based trigger, reads go straight to the source. Otherwise a
+     * daemon thread reads the source and hands over what each read returns, and a
+     * read waits for it at most until a snapshot is due.
+     */
+    private class SnapshotTriggeringStream extends FilterInputStream {
+        private static final int CHUNK_SIZE = 64 * 1024;
+        private static final int QUEUE_DEPTH = 4;
+
+        private final SnapshotState state;
+        private final BlockingQueue<Chunk> chunks;
+        private final Thread reader;
+        private Chunk current;
+        private int position;
+
+        SnapshotTriggeringStream(InputStream in, SnapshotState state) {
+            super(in);
+            this.state = state;
+            if (snapshotIntervalNanos > 0) {
+                this.chunks = new ArrayBlockingQueue<>(QUEUE_DEPTH);
+                this.reader = new Thread(this::readSource, "flow-log-stream-reader");
+                this.reader.setDaemon(true);
+                this.reader.start();
+            } else {
+                this.chunks = null;
+                this.reader = null;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                state.snapshotIfDue();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (reader == null) {
+                return super.read(b, off, len);
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            try {
+                while (current == null || position == current.length) {
+                    if (current == Chunk.END) {
+                        return -1;
+                    }
+                    current = nextChunk();
+                    position = 0;
+                    if (current.error != null) {
+                        throw current.error;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for flow log input");
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current.data, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Waits for the next chunk, writing a snapshot whenever one falls due while
+         * the source is idle.
+         */
+        private Chunk nextChunk() throws IOException, InterruptedException {
+            while (true) {
+                long waitNanos = state.nanosUntilDue();
+                Chunk chunk = waitNanos == Long.MAX_VALUE ? chunks.take() : chunks.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (chunk != null) {
+                    return chunk;
+                }
+                try {
+                    state.snapshotIfDue();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+
+        /**
+         * Reads the source on the background thread until it ends or fails.
+         */
+        private void readSource() {
+            try {
+                try {
+                    while (true) {
+                        byte[] data = new byte[CHUNK_SIZE];
+                        int read = in.read(data, 0, data.length);
+                        if (read == -1) {
+                            chunks.put(Chunk.END);
+                            return;
+                        }
+                        if (read > 0) {
+                            chunks.put(new Chunk(data, read, null));
+                        }
+                    }
+                } catch (IOException e) {
+                    chunks.put(new Chunk(null, 0, e));
+                }
+            } catch (InterruptedException e) {
+                // Processing stopped early
+            }
+        }
+
+        /**
+         * Stops the background reader once processing has ended. A reader blocked in
+         * a read of the source stays blocked until the source returns, as reads of
+         * most streams cannot be interrupted; it is a daemon thread.
+         */
+        void stopReading() {
+            if (reader != null) {
+                reader.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Bytes returned by one read of the source, or the end or failure of the source.
+     */
+    private static final class Chunk {
+        static final Chunk END = new Chunk(new byte[0], 0, null);
+
+        final byte[] data;
+        final int length;
+        final IOException error;
+
+        Chunk(byte[] data, int length, IOException error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.flowparser.processor;
+
+import com.flowparser.io.CompressedInputs;
+import com.flowparser.model.ConcurrentStatistics;
+import com.flowparser.model.Statistics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Processes many small flow log files with one virtual thread per file, for inputs
+ * where opening and reading files, e.g. on a network filesystem, takes longer than
+ * parsing them.
+ *
+ * Each file's virtual thread waits for a permit of a semaphore that caps the number
+ * of files in flight, reads the file and hands its bytes to a small pool of platform
+ * threads, which parse, tag and count them into a shared {@link ConcurrentStatistics}.
+ * The virtual thread keeps its permit until the file has been counted, so at most
+ * the permitted number of files are open or held in memory at once, while any
+ * number of reads can wait on the filesystem without tying up a platform thread.
+ *
+ * Virtual threads need Java 21; the class is compiled for the default target and
+ * looks them up at runtime, see {@link #isSupported()}.
+ */
+public class VirtualThreadFileProcessor {
+    /** Default number of files open at the same time */
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private final FlowLogProcessor processor;
+    private final int maxOpenFiles;
+    private final int aggregationThreads;
+    private final Supplier<ExecutorService> fileExecutors;
+
+    /**
+     * Creates a processor that reads files on virtual threads.
+     *
+     * @param processor Processor used for each file
+     * @param maxOpenFiles Maximum number of files open or waiting to be counted at once
+     * @param aggregationThreads Number of platform threads that parse and count
+     * @throws UnsupportedOperationException If the runtime has no virtual threads
+     */
+    public VirtualThreadFileProcessor(FlowLogProcessor processor, int maxOpenFiles, int aggregationThreads) {
+        this(processor, maxOpenFiles, aggregationThreads, VirtualThreadFileProcessor::newVirtualThreadExecutor);
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later, running on Java "
+                    + Runtime.version().feature());
+        }
+    }
+
+    /**
+     * Creates a processor that reads files on the threads of the given executors.
+     *
+     * @param processor Processor used for each file
+     * @param maxOpenFiles Maximum number of files open or waiting to be counted at once
+     * @param aggregationThreads Number of platform threads that parse and count
+     * @param fileExecutors Creates the executor that runs one task per file
+     */
+    VirtualThreadFileProcessor(FlowLogProcessor processor, int maxOpenFiles, int aggregationThreads,
+                               Supplier<ExecutorService> fileExecutors) {
+        this.processor = processor;
+        this.maxOpenFiles = maxOpenFiles;
+        this.aggregationThreads = aggregationThreads;
+        this.fileExecutors = fileExecutors;
+    }
+
+    /**
+     * Returns true if the runtime supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Processes the files and returns the merged statistics.
+     *
+     * @param files Flow log files to process
+     * @return Statistics object with counts over all files
+     * @throws IOException If there's an error reading a file
+     */
+    public Statistics process(List<Path> files) throws IOException {
+        ConcurrentStatistics statistics = processor.newConcurrentStatistics();
+        Semaphore openFiles = new Semaphore(maxOpenFiles);
+        ExecutorService aggregation = Executors.newFixedThreadPool(aggregationThreads);
+        ExecutorService fileThreads = fileExecutors.get();
+        try {
+            List<Future<Void>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(fileThreads.submit(() -> {
+                    openFiles.acquire();
+                    try {
+                        // Blocking reads are cheap on a virtual thread; parsing goes to the platform pool
+                        byte[] data = Files.readAllBytes(file);
+                        await(aggregation.submit(() -> {
+                            try (InputStream in = open(data)) {
+                                processor.processFlowLogs(in, statistics);
+                            }
+                            return null;
+                        }));
+                    } finally {
+                        openFiles.release();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                await(future);
+            }
+        } finally {
+            fileThreads.shutdownNow();
+            aggregation.shutdownNow();
+        }
+        return statistics.snapshot();
+    }
+
+    /**
+     * Returns a stream over a file's bytes. Gzip data is inflated lazily as the stream
+     * is read, so on the platform aggregation thread that parses it, not on the file's
+     * virtual thread.
+     */
+    private static InputStream open(byte[] data) throws IOException {
+        InputStream in = new ByteArrayInputStream(data);
+        switch (CompressedInputs.detect(data, data.length)) {
+            case NONE:
+                return in;
+            case GZIP:
+                return new GZIPInputStream(in);
+            default:
+                // Reports the unsupported compression
+                return CompressedInputs.decompress(in);
+        }
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create virtual threads", e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing flow log files", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to process flow log file: " + cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.FlowLogBatch;
+import com.flowparser.model.Statistics;
+import com.flowparser.parser.ParseErrorLog;
+import com.flowparser.writer.StatisticsWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Processes a stream of flow log data into tumbling time windows, such as one per
+ * minute or per hour, keyed on the start time of each record.
+ *
+ * Records may arrive out of order by up to the allowed lateness. The stream's
+ * watermark is the latest start time seen minus the allowed lateness; a window is
+ * closed once its end is at or before the watermark. Closed windows are appended
+ * to the output in order of their start and evicted, so memory only depends on the
+ * number of windows open at a time, not on how long the stream runs. Records that
+ * belong to a window that has already been closed are dropped and counted as late.
+ * At the end of the stream all remaining windows are written.
+ *
+ * The output file is only replaced when the first window is written, and the error
+ * ratio of the parser's {@link ParseErrorLog} is checked before every window, so an
+ * input over the limit does not replace the output with the counts of bad data.
+ */
+public class WindowedFlowLogProcessor {
+    private final FlowLogProcessor processor;
+    private final ParseErrorLog errors;
+    private final StatisticsWriter writer;
+    private final Path outputFile;
+    private final long windowSeconds;
+    private final long allowedLatenessSeconds;
+
+    /**
+     * Creates a windowed processor.
+     *
+     * @param processor Processor that tags and counts the records
+     * @param writer Writer used for the closed windows
+     * @param outputFile Path of the output file, which is replaced
+     * @param windowSeconds Length of each window in seconds
+     * @param allowedLatenessSeconds How far behind the latest start time a record may be and still be counted
+     */
+    public WindowedFlowLogProcessor(FlowLogProcessor processor, StatisticsWriter writer, String outputFile,
+                                    long windowSeconds, long allowedLatenessSeconds) {
+        if (windowSeconds < 1) {
+            throw new IllegalArgumentException("Window length must be positive: " + windowSeconds);
+        }
+        if (allowedLatenessSeconds < 0) {
+            throw new IllegalArgumentException("Allowed lateness must not be negative: " + allowedLatenessSeconds);
+        }
+        this.processor = processor;
+        this.errors = processor.parser().errors();
+        this.writer = writer;
+        this.outputFile = Paths.get(outputFile);
+        this.windowSeconds = windowSeconds;
+        this.allowedLatenessSeconds = allowedLatenessSeconds;
+    }
+
+    /**
+     * Processes a stream until it reaches end of stream. The stream is not closed.
+     *
+     * @param in Stream with flow log data
+     * @return The number of windows written and of late records dropped
+     * @throws IOException If there's an error reading the input or writing the output
+     */
+    public Summary process(InputStream in) throws IOException {
+        WindowState state = new WindowState();
+        try {
+            processor.parser().parseFlowLogBatches(in, state::recordBatch);
+            errors.checkErrorRatio(true);
+            state.closeWindows(Long.MAX_VALUE);
+            // Replace the output even if no window was written
+            state.output();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            state.close();
+        }
+        return new Summary(state.windowsWritten, state.lateRecords);
+    }
+
+    /**
+     * Start of the window that contains the given time.
+     */
+    private long windowStart(long time) {
+        return Math.floorDiv(time, windowSeconds) * windowSeconds;
+    }
+
+    /**
+     * The open windows of one run, and how far the stream has moved on.
+     */
+    private class WindowState {
+        // Opened when the first window is written
+        private FileChannel out;
+        // Open windows by start, oldest first
+        private final TreeMap<Long, Statistics> windows = new TreeMap<>();
+        private long latestStartTime = Long.MIN_VALUE;
+        // Windows that start before this have been written
+        private long closedBefore = Long.MIN_VALUE;
+        private long windowsWritten;
+        private long lateRecords;
+
+
+        /**
+         * Counts a batch in runs of consecutive records of the same window, closing
+         * windows as soon as a record moves the watermark past their end.
+         */
+        void recordBatch(FlowLogBatch batch) {
+            long[] startTimes = batch.startTimes();
+            int runStart = 0;
+            long runWindow = 0;
+            for (int row = 0; row < batch.size(); row++) {
+                long window = windowStart(startTimes[row]);
+                if (row > runStart && window != runWindow) {
+                    recordRun(batch, runStart, row, runWindow);
+                    runStart = row;
+                }
+                runWindow = window;
+
+                if (startTimes[row] > latestStartTime) {
+                    latestStartTime = startTimes[row];
+                    long watermark = windowStart(latestStartTime - allowedLatenessSeconds);
+                    if (watermark > closedBefore) {
+                        // The record's own window is at or after the watermark, so count it first
+                        recordRun(batch, runStart, row + 1, runWindow);
+                        runStart = row + 1;
+                        closeWindows(watermark);
+                    }
+                }
+            }
+            recordRun(batch, runStart, batch.size(), runWindow);
+        }
+
+        private void recordRun(FlowLogBatch batch, int from, int to, long window) {
+            if (from == to) {
+                return;
+            }
+            if (window < closedBefore) {
+                lateRecords += to - from;
+                return;
+            }
+            Statistics statistics = windows.computeIfAbsent(window, start -> processor.newStatistics());
+            processor.recordBatch(batch, from, to, statistics);
+        }
+
+        /**
+         * Writes and evicts all windows that start before the given time.
+         */
+        void closeWindows(long before) {
+            try {
+                while (!windows.isEmpty() && windows.firstKey() < before) {
+                    // Leave the output as it is once the input is over the error limit
+                    errors.checkErrorRatio(false);
+                    Map.Entry<Long, Statistics> window = windows.pollFirstEntry();
+                    long start = window.getKey();
+                    writer.writeWindow(window.getValue(), start, start + windowSeconds, output());
+                    windowsWritten++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            closedBefore = Math.max(closedBefore, before);
+        }
+
+        /**
+         * Returns the output, replacing the file when it is first used.
+         */
+        FileChannel output() throws IOException {
+            if (out == null) {
+                out = FileChannel.open(outputFile, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            }
+            return out;
+        }
+
+        void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Outcome of a windowed run.
+     */
+    public static class Summary {
+        private final long windowsWritten;
+        private final long lateRecords;
+
+        Summary(long windowsWritten, long lateRecords) {
+            this.windowsWritten = windowsWritten;
+            this.lateRecords = lateRecords;
+        }
+
+        /**
+         * @return Number of windows written to the output
+         */
+        public long getWindowsWritten() {
+            return windowsWritten;
+        }
+
+        /**
+         * @return Number of records dropped because their window had already been written
+         */
+        public long getLateRecords() {
+            return lateRecords;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.flowparser.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hashes of field bytes for distinct counting, computed on the bytes of a
+ * line so that no string has to be created. A string hashes to the same value as
+ * its UTF-8 bytes.
+ */
+public final class Hashing {
+    /**
+     * Marks a field that was not hashed; {@link #hash} never returns it.
+     */
+    public static final long NO_HASH = 0;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    /**
+     * Hashes the bytes between start (inclusive) and end (exclusive).
+     *
+     * @param buffer The buffer holding the bytes
+     * @param start Offset of the first byte
+     * @param end Offset just past the last byte
+     * @return A well mixed 64-bit hash, never {@link #NO_HASH}
+     */
+    public static long hash(byte[] buffer, int start, int end) {
+        // FNV-1a over the bytes, then a finalizer so that all bits depend on all input bits
+        long h = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (buffer[i] & 0xff)) * FNV_PRIME;
+        }
+        h = mix(h);
+        return h == NO_HASH ? 1 : h;
+    }
+
+    /**
+     * Hashes the bytes of a buffer between the indexes start (inclusive) and end
+     * (exclusive), to the same value as {@link #hash(byte[], int, int)}. The buffer's
+     * position and limit are not used.
+     *
+     * @param buffer The buffer holding the bytes
+     * @param start Index of the first byte
+     * @param end Index just past the last byte
+     * @return A well mixed 64-bit hash, never {@link #NO_HASH}
+     */
+    public static long hash(ByteBuffer buffer, int start, int end) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            h = (h ^ (buffer.get(i) & 0xff)) * FNV_PRIME;
+        }
+        h = mix(h);
+        return h == NO_HASH ? 1 : h;
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of a string.
+     *
+     * @param value The string, may be null
+     * @return The hash, or {@link #NO_HASH} for null
+     */
+    public static long hash(String value) {
+        if (value == null) {
+            return NO_HASH;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return hash(bytes, 0, bytes.length);
+    }
+
+    /**
+     * The finalizer of MurmurHash3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
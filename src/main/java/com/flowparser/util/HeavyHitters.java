@@ -0,0 +1,281 @@
+package com.flowparser.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Space-Saving summary of the heaviest int keys in a weighted stream, such as
+ * IPv4 addresses weighted by bytes, in memory fixed by its capacity.
+ *
+ * While fewer keys than the capacity have been seen, every key has an exact
+ * counter. After that, a new key takes over the counter with the smallest weight
+ * and starts from that weight, which is recorded as its error. A key's weight is
+ * therefore never underestimated, and overestimated by at most its error; any key
+ * whose true weight exceeds total weight / capacity is guaranteed to be kept.
+ *
+ * Counters are found through an open-addressing hash table and ordered in a binary
+ * min-heap by weight, so an update costs a hash probe and a short sift. Summaries
+ * of parallel workers are combined with {@link #merge}. Not thread-safe.
+ */
+public final class HeavyHitters {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+    // Per counter: key, estimated weight, overestimate bound and position in the heap
+    private int[] keys;
+    private long[] weights;
+    private long[] errors;
+    private int[] heapPositions;
+    // Min-heap of counters by weight
+    private int[] heap;
+    // Hash table: the counter holding each key, or EMPTY
+    private int[] table;
+    private int mask;
+    private int size;
+    private long totalWeight;
+
+    public HeavyHitters() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty summary. Its arrays are allocated on the first update.
+     *
+     * @param capacity Number of counters, the most keys tracked at a time
+     */
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds weight to a key.
+     *
+     * @param key The key
+     * @param weight The weight to add; keys are not tracked for zero or negative weights
+     */
+    public void add(int key, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        totalWeight += weight;
+        add(key, weight, 0);
+    }
+
+    /**
+     * Adds the counters of another summary to this one. The bounds of the result are
+     * those of a summary with this capacity over both streams.
+     *
+     * @param other The summary to merge into this one
+     */
+    public void merge(HeavyHitters other) {
+        totalWeight += other.totalWeight;
+        for (int counter = 0; counter < other.size; counter++) {
+            add(other.keys[counter], other.weights[counter], other.errors[counter]);
+        }
+    }
+
+    private void add(int key, long weight, long error) {
+        if (keys == null) {
+            allocate();
+        }
+        int bucket = bucketOf(key);
+        int counter = table[bucket];
+        if (counter != EMPTY) {
+            weights[counter] += weight;
+            errors[counter] += error;
+            siftDown(heapPositions[counter]);
+            return;
+        }
+
+        if (size < capacity) {
+            counter = size++;
+            keys[counter] = key;
+            weights[counter] = weight;
+            errors[counter] = error;
+            table[bucket] = counter;
+            heap[counter] = counter;
+            heapPositions[counter] = counter;
+            siftUp(counter);
+            return;
+        }
+
+        // Take over the counter with the smallest weight
+        counter = heap[0];
+        long minimum = weights[counter];
+        removeFromTable(keys[counter]);
+        keys[counter] = key;
+        weights[counter] = minimum + weight;
+        errors[counter] = minimum + error;
+        table[bucketOf(key)] = counter;
+        siftDown(0);
+    }
+
+    /**
+     * Returns the heaviest keys, heaviest first; keys of equal weight are ordered by key.
+     *
+     * @param count Maximum number of keys
+     * @return The counters of up to count keys
+     */
+    public List<Counter> top(int count) {
+        Integer[] counters = new Integer[size];
+        for (int counter = 0; counter < size; counter++) {
+            counters[counter] = counter;
+        }
+        Arrays.sort(counters, Comparator.comparingLong((Integer counter) -> weights[counter]).reversed()
+                .thenComparingInt(counter -> keys[counter]));
+
+        List<Counter> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, size); i++) {
+            int counter = counters[i];
+            top.add(new Counter(keys[counter], weights[counter], errors[counter]));
+        }
+        return top;
+    }
+
+    /**
+     * Returns the number of keys currently tracked.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the total weight added, including the weight of keys no longer tracked.
+     */
+    public long totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * A tracked key with its estimated weight.
+     */
+    public static final class Counter {
+        private final int key;
+        private final long weight;
+        private final long error;
+
+        Counter(int key, long weight, long error) {
+            this.key = key;
+            this.weight = weight;
+            this.error = error;
+        }
+
+        public int getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the estimated weight, which is at least the true weight.
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * Returns the most by which the weight may be overestimated.
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    private void allocate() {
+        int tableSize = Integer.highestOneBit(Math.max(4, capacity * 2 - 1)) << 1;
+        keys = new int[capacity];
+        weights = new long[capacity];
+        errors = new long[capacity];
+        heapPositions = new int[capacity];
+        heap = new int[capacity];
+        table = new int[tableSize];
+        Arrays.fill(table, EMPTY);
+        mask = tableSize - 1;
+    }
+
+    /**
+     * Returns the bucket holding a key, or the empty bucket where it would be inserted.
+     */
+    private int bucketOf(int key) {
+        int bucket = hash(key) & mask;
+        while (true) {
+            int counter = table[bucket];
+            if (counter == EMPTY || keys[counter] == key) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes a key from the hash table, shifting later entries of its probe
+     * sequence back so that no lookup stops early at the emptied bucket.
+     */
+    private void removeFromTable(int key) {
+        int bucket = bucketOf(key);
+        table[bucket] = EMPTY;
+        int next = (bucket + 1) & mask;
+        while (table[next] != EMPTY) {
+            int counter = table[next];
+            int home = hash(keys[counter]) & mask;
+            // Move the entry back if its home bucket is not between the gap and its bucket
+            if (((next - home) & mask) >= ((next - bucket) & mask)) {
+                table[bucket] = counter;
+                table[next] = EMPTY;
+                bucket = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void siftUp(int position) {
+        int counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (weights[heap[parent]] <= weights[counter]) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        int counter = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && weights[heap[child + 1]] < weights[heap[child]]) {
+                child++;
+            }
+            if (weights[heap[child]] >= weights[counter]) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(int counter, int position) {
+        heap[position] = counter;
+        heapPositions[counter] = position;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
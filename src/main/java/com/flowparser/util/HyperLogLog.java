@@ -0,0 +1,122 @@
+package com.flowparser.util;
+
+/**
+ * HyperLogLog sketch that estimates the number of distinct values added to it
+ * from their 64-bit hashes, in 2^precision bytes.
+ *
+ * The top precision bits of a hash select a register, which keeps the largest
+ * position of the first 1 bit seen in the remaining bits. The relative standard
+ * error of the estimate is about 1.04 / sqrt(2^precision), e.g. 1.6% at the default
+ * precision of 12 (4 KB). Small counts use linear counting over the empty
+ * registers, which is close to exact. Sketches of the same precision are merged
+ * by taking the maximum of each register, so per-worker sketches combine without
+ * loss. Not thread-safe.
+ */
+public final class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision Number of hash bits that select a register, between
+     *                  {@value #MIN_PRECISION} and {@value #MAX_PRECISION}
+     */
+    public HyperLogLog(int precision) {
+        checkPrecision(precision);
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Checks that a precision is supported.
+     *
+     * @param precision The precision
+     * @throws IllegalArgumentException If it is out of range
+     */
+    public static void checkPrecision(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between " + MIN_PRECISION
+                    + " and " + MAX_PRECISION + ": " + precision);
+        }
+    }
+
+    /**
+     * Adds a value by its hash.
+     *
+     * @param hash A well mixed 64-bit hash of the value, e.g. from {@link Hashing}
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // The sentinel bit caps the rank when all remaining bits are 0
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the values of another sketch to this one.
+     *
+     * @param other A sketch of the same precision
+     * @throws IllegalArgumentException If the precisions differ
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of precision "
+                    + other.precision + " and " + precision);
+        }
+        byte[] otherRegisters = other.registers;
+        for (int i = 0; i < registers.length; i++) {
+            if (otherRegisters[i] > registers[i]) {
+                registers[i] = otherRegisters[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values added.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate for small counts
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public int precision() {
+        return precision;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
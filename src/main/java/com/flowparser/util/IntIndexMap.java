@@ -0,0 +1,123 @@
+package com.flowparser.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index that maps int keys to dense indexes 0, 1, 2, ...
+ * in insertion order.
+ *
+ * Callers keep their values in plain arrays addressed by the dense index, which
+ * avoids boxing and makes iteration a simple loop over {@code 0..size()-1}.
+ * Not thread-safe.
+ */
+public final class IntIndexMap {
+    private static final int EMPTY = -1;
+
+    // Hash table: the dense index of the key stored in each bucket, or EMPTY
+    private int[] table;
+    private int mask;
+    // Keys in insertion order
+    private int[] keys;
+    private int size;
+
+    public IntIndexMap() {
+        this(64);
+    }
+
+    /**
+     * Creates an index sized for the expected number of keys.
+     *
+     * @param expectedSize Expected number of keys
+     */
+    public IntIndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        this.mask = capacity - 1;
+        this.keys = new int[Math.max(4, expectedSize)];
+    }
+
+    /**
+     * Returns the dense index of a key, adding the key if it is not present.
+     *
+     * @param key The key
+     * @return The dense index of the key
+     */
+    public int add(int key) {
+        int bucket = hash(key) & mask;
+        while (true) {
+            int index = table[bucket];
+            if (index == EMPTY) {
+                break;
+            }
+            if (keys[index] == key) {
+                return index;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        int index = size++;
+        if (index == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        }
+        keys[index] = key;
+        table[bucket] = index;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    /**
+     * Returns the dense index of a key, or -1 if it is not present.
+     *
+     * @param key The key
+     * @return The dense index, or -1
+     */
+    public int indexOf(int key) {
+        int bucket = hash(key) & mask;
+        while (true) {
+            int index = table[bucket];
+            if (index == EMPTY) {
+                return -1;
+            }
+            if (keys[index] == key) {
+                return index;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the key stored at a dense index.
+     */
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void rehash() {
+        int capacity = table.length * 2;
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+        for (int index = 0; index < size; index++) {
+            int bucket = hash(keys[index]) & mask;
+            while (table[bucket] != EMPTY) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = index;
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,120 @@
+package com.flowparser.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Conversion between dotted-quad IPv4 addresses and their 32-bit value packed
+ * into an int, so that addresses can be counted without keeping strings.
+ */
+public final class Ipv4 {
+    /**
+     * Marks a value that is not an IPv4 address, e.g. an IPv6 address or "-".
+     * Packed addresses are returned as longs so this can be told from 255.255.255.255.
+     */
+    public static final long NONE = -1;
+
+    private Ipv4() {
+    }
+
+    /**
+     * Parses a dotted-quad address held in a byte array.
+     *
+     * @param buffer The buffer holding the address
+     * @param start Offset of the first byte
+     * @param end Offset just past the last byte
+     * @return The address as an unsigned 32-bit value, or {@link #NONE}
+     */
+    public static long parse(byte[] buffer, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int pos = start;
+        while (octets < 4) {
+            int octet = 0;
+            int digits = 0;
+            while (pos < end && buffer[pos] >= '0' && buffer[pos] <= '9' && digits < 4) {
+                octet = octet * 10 + (buffer[pos++] - '0');
+                digits++;
+            }
+            if (digits == 0 || digits > 3 || octet > 255) {
+                return NONE;
+            }
+            address = (address << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (pos >= end || buffer[pos] != '.') {
+                    return NONE;
+                }
+                pos++;
+            }
+        }
+        return pos == end ? address : NONE;
+    }
+
+    /**
+     * Parses a dotted-quad address held in a buffer, such as a memory-mapped file,
+     * like {@link #parse(byte[], int, int)}. The buffer's position and limit are not used.
+     *
+     * @param buffer The buffer holding the address
+     * @param start Index of the first byte
+     * @param end Index just past the last byte
+     * @return The address as an unsigned 32-bit value, or {@link #NONE}
+     */
+    public static long parse(ByteBuffer buffer, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int pos = start;
+        while (octets < 4) {
+            int octet = 0;
+            int digits = 0;
+            byte b;
+            while (pos < end && (b = buffer.get(pos)) >= '0' && b <= '9' && digits < 4) {
+                octet = octet * 10 + (b - '0');
+                pos++;
+                digits++;
+            }
+            if (digits == 0 || digits > 3 || octet > 255) {
+                return NONE;
+            }
+            address = (address << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (pos >= end || buffer.get(pos) != '.') {
+                    return NONE;
+                }
+                pos++;
+            }
+        }
+        return pos == end ? address : NONE;
+    }
+
+    /**
+     * Parses a dotted-quad address.
+     *
+     * @param address The address text, may be null
+     * @return The address as an unsigned 32-bit value, or {@link #NONE}
+     */
+    public static long parse(String address) {
+        if (address == null || address.length() > 15) {
+            return NONE;
+        }
+        byte[] bytes = new byte[address.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = address.charAt(i);
+            if (c > 0x7f) {
+                return NONE;
+            }
+            bytes[i] = (byte) c;
+        }
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Formats a packed address as a dotted quad.
+     *
+     * @param address The address packed into an int
+     * @return The address text, e.g. "10.0.1.201"
+     */
+    public static String format(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xff) + "." + ((address >>> 8) & 0xff) + "." + (address & 0xff);
+    }
+}
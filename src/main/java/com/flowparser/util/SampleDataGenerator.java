@@ -3,6 +3,8 @@ package com.flowparser.util;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -11,6 +13,16 @@ import java.util.Random;
  */
 public class SampleDataGenerator {
     private static final Random random = new Random();
+    private static final int DEFAULT_RANDOM_MAPPINGS = 50;
+    
+    /**
+     * Reseeds the random generator so that generated data is reproducible.
+     * 
+     * @param seed The seed
+     */
+    public static void setSeed(long seed) {
+        random.setSeed(seed);
+    }
     
     /**
      * Generates a sample flow log file with the specified number of entries.
@@ -28,6 +40,20 @@ public class SampleDataGenerator {
         }
     }
     
+    /**
+     * Generates flow log entries in memory, one per line terminated by '\n'.
+     * 
+     * @param numEntries Number of entries to generate
+     * @return The flow log text
+     */
+    public static String generateFlowLogs(int numEntries) {
+        StringBuilder flowLogs = new StringBuilder(numEntries * 120);
+        for (int i = 0; i < numEntries; i++) {
+            flowLogs.append(generateFlowLogEntry()).append('\n');
+        }
+        return flowLogs.toString();
+    }
+    
     /**
      * Generates a sample lookup table file.
      * 
@@ -35,47 +61,62 @@ public class SampleDataGenerator {
      * @throws IOException If there's an error writing to the file
      */
     public static void generateLookupTableFile(String filePath) throws IOException {
+        generateLookupTableFile(filePath, DEFAULT_RANDOM_MAPPINGS);
+    }
+    
+    /**
+     * Generates a sample lookup table file with the given number of random mappings
+     * in addition to the common ports.
+     * 
+     * @param filePath Path to save the lookup table file
+     * @param numRandomMappings Number of random port/protocol mappings to add
+     * @throws IOException If there's an error writing to the file
+     */
+    public static void generateLookupTableFile(String filePath, int numRandomMappings) throws IOException {
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
-            // Write header
-            writer.write("dstport,protocol,tag");
-            writer.newLine();
-            
-            // Common ports and their tags
-            writer.write("25,tcp,sv_P1");
-            writer.newLine();
-            writer.write("68,udp,sv_P2");
-            writer.newLine();
-            writer.write("23,tcp,sv_P1");
-            writer.newLine();
-            writer.write("31,udp,SV_P3");
-            writer.newLine();
-            writer.write("443,tcp,sv_P2");
-            writer.newLine();
-            writer.write("22,tcp,sv_P4");
-            writer.newLine();
-            writer.write("3389,tcp,sv_P5");
-            writer.newLine();
-            writer.write("0,icmp,sv_P5");
-            writer.newLine();
-            writer.write("110,tcp,email");
-            writer.newLine();
-            writer.write("993,tcp,email");
-            writer.newLine();
-            writer.write("143,tcp,email");
-            writer.newLine();
-            
-            // Add some more random ports for testing
-            for (int i = 0; i < 50; i++) {
-                int port = 1024 + random.nextInt(64000);
-                String protocol = (random.nextBoolean()) ? "tcp" : "udp";
-                String tag = "sv_R" + (1 + random.nextInt(10));
-                
-                writer.write(port + "," + protocol + "," + tag);
+            for (String line : generateLookupTableLines(numRandomMappings)) {
+                writer.write(line);
                 writer.newLine();
             }
         }
     }
     
+    /**
+     * Generates the lines of a lookup table, starting with the header.
+     * 
+     * @param numRandomMappings Number of random port/protocol mappings to add
+     * @return The lookup table lines
+     */
+    public static List<String> generateLookupTableLines(int numRandomMappings) {
+        List<String> lines = new ArrayList<>();
+        
+        // Header
+        lines.add("dstport,protocol,tag");
+        
+        // Common ports and their tags
+        lines.add("25,tcp,sv_P1");
+        lines.add("68,udp,sv_P2");
+        lines.add("23,tcp,sv_P1");
+        lines.add("31,udp,SV_P3");
+        lines.add("443,tcp,sv_P2");
+        lines.add("22,tcp,sv_P4");
+        lines.add("3389,tcp,sv_P5");
+        lines.add("0,icmp,sv_P5");
+        lines.add("110,tcp,email");
+        lines.add("993,tcp,email");
+        lines.add("143,tcp,email");
+        
+        // Add some more random ports for testing
+        for (int i = 0; i < numRandomMappings; i++) {
+            int port = 1024 + random.nextInt(64000);
+            String protocol = (random.nextBoolean()) ? "tcp" : "udp";
+            String tag = "sv_R" + (1 + random.nextInt(10));
+            
+            lines.add(port + "," + protocol + "," + tag);
+        }
+        return lines;
+    }
+    
     /**
      * Generates a random flow log entry.
      * 
@@ -0,0 +1,122 @@
+package com.flowparser.writer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes text output into a reusable byte buffer that is written to a channel
+ * whenever it fills up. Numbers are encoded digit by digit and ASCII text byte by
+ * byte, so writing a row does not create strings; other text is encoded with the
+ * output's charset.
+ *
+ * Not thread-safe.
+ */
+final class ByteOutput {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    // Digits of the longest long, without the sign
+    private static final int MAX_DIGITS = 19;
+
+    private final WritableByteChannel channel;
+    private final Charset charset;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] digits = new byte[MAX_DIGITS];
+
+    /**
+     * Creates an output.
+     *
+     * @param channel Channel the bytes are written to
+     * @param charset Charset of text that is not ASCII
+     */
+    ByteOutput(WritableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.charset = charset;
+    }
+
+    /**
+     * Appends text.
+     */
+    ByteOutput text(String text) throws IOException {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                return bytes(text.getBytes(charset));
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) text.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Appends a number in decimal.
+     */
+    ByteOutput number(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return text(Long.toString(value));
+        }
+        if (buffer.remaining() < MAX_DIGITS + 1) {
+            flush();
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int start = MAX_DIGITS;
+        do {
+            digits[--start] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        buffer.put(digits, start, MAX_DIGITS - start);
+        return this;
+    }
+
+    /**
+     * Appends a single ASCII character.
+     */
+    ByteOutput character(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+        return this;
+    }
+
+    /**
+     * Ends the line with the platform line separator, like {@code BufferedWriter.newLine()}.
+     */
+    ByteOutput newLine() throws IOException {
+        return bytes(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private ByteOutput bytes(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int count = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+        return this;
+    }
+}
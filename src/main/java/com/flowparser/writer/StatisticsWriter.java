@@ -1,18 +1,55 @@
 package com.flowparser.writer;
 
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.metrics.Stage;
+import com.flowparser.model.Protocols;
 import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.util.HeavyHitters;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
 /**
- * Writes statistics to an output file.
+ * Writes statistics to an output file: record counts per tag and per port/protocol
+ * combination (and per rule tag, when multi-tag rules were applied), followed by
+ * the packets and bytes of each, ordered by bytes, and, when they were tracked, the
+ * source and destination addresses with the most bytes and the estimated number of
+ * distinct addresses and interfaces per tag.
+ *
+ * Rows are sorted as primitive index arrays and encoded straight into a reusable
+ * byte buffer that is written to a file channel, so no string is built per row.
  */
 public class StatisticsWriter {
+    // Number of addresses listed in each top address section
+    static final int TOP_ADDRESSES = 10;
+
+    private final FlowMetrics metrics;
+
+    /**
+     * Creates a writer that does not record metrics.
+     */
+    public StatisticsWriter() {
+        this(FlowMetrics.NOOP);
+    }
+
+    /**
+     * Creates a writer that reports the time spent writing.
+     *
+     * @param metrics Receiver of the write stage time
+     */
+    public StatisticsWriter(FlowMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     /**
      * Writes statistics to the specified output file.
@@ -22,45 +59,292 @@ public class StatisticsWriter {
      * @throws IOException If there's an error writing to the file
      */
     public void writeStatistics(Statistics statistics, String outputFile) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
-            // Write tag counts
-            writer.write("Tag Counts:");
-            writer.newLine();
-            writer.write("Tag,Count");
-            writer.newLine();
-            
-            // Sort tags by count (descending) and write them
-            statistics.getTagCounts().entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .forEach(entry -> {
-                    try {
-                        writer.write(entry.getKey() + "," + entry.getValue());
-                        writer.newLine();
-                    } catch (IOException e) {
-                        throw new RuntimeException("Error writing tag statistics", e);
-                    }
-                });
-            
-            writer.newLine();
-            
-            // Write port/protocol combination counts
-            writer.write("Port/Protocol Combination Counts:");
-            writer.newLine();
-            writer.write("Port,Protocol,Count");
-            writer.newLine();
-            
-            // Extract and sort port/protocol combinations
-            statistics.getPortProtocolCounts().entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .forEach(entry -> {
-                    try {
-                        String[] parts = entry.getKey().split(",");
-                        writer.write(parts[0] + "," + parts[1] + "," + entry.getValue());
-                        writer.newLine();
-                    } catch (IOException e) {
-                        throw new RuntimeException("Error writing port/protocol statistics", e);
-                    }
-                });
+        long start = System.nanoTime();
+        try {
+            write(statistics, outputFile);
+        } finally {
+            metrics.stageNanos(Stage.WRITE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Appends the record counts of one time window to an open channel: a line with
+     * the window as an ISO-8601 interval, the tag counts and the port/protocol
+     * combination counts, followed by a blank line, encoded as UTF-8. All bytes of
+     * the window have been written to the channel once this returns.
+     *
+     * @param statistics The statistics of the window
+     * @param windowStart Start of the window in seconds since the epoch, inclusive
+     * @param windowEnd End of the window in seconds since the epoch, exclusive
+     * @param channel Channel of the windowed output
+     * @throws IOException If there's an error writing
+     */
+    public void writeWindow(Statistics statistics, long windowStart, long windowEnd, WritableByteChannel channel)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            ByteOutput out = new ByteOutput(channel, StandardCharsets.UTF_8);
+            out.text("Window: ").text(Instant.ofEpochSecond(windowStart).toString())
+                    .character('/').text(Instant.ofEpochSecond(windowEnd).toString()).newLine();
+            writeCounts(out, statistics, tagsByCount(statistics));
+            out.newLine();
+            out.flush();
+        } finally {
+            metrics.stageNanos(Stage.WRITE, System.nanoTime() - start);
+        }
+    }
+
+    private void write(Statistics statistics, String outputFile) throws IOException {
+        // Encoded in the default charset, like the text of a FileWriter
+        try (FileChannel channel = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteOutput out = new ByteOutput(channel, Charset.defaultCharset());
+            int[] tags = tagsByCount(statistics);
+            writeCounts(out, statistics, tags);
+
+            out.newLine();
+
+            // Write traffic volume per tag, largest first
+            out.text("Tag Volumes:").newLine();
+            out.text("Tag,Packets,Bytes").newLine();
+            TagDictionary dictionary = statistics.getTagDictionary();
+            int[] tagIds = tagIds(statistics);
+            long[] tagBytes = new long[tagIds.length];
+            for (int i = 0; i < tagIds.length; i++) {
+                tagBytes[i] = statistics.getTagBytes(tagIds[i]);
+            }
+            for (int i : sortDescending(tagBytes)) {
+                int tag = tagIds[i];
+                out.text(dictionary.name(tag)).character(',').number(statistics.getTagPackets(tag))
+                        .character(',').number(tagBytes[i]).newLine();
+            }
+
+            out.newLine();
+
+            // Write traffic volume per port/protocol combination, largest first
+            out.text("Port/Protocol Volumes:").newLine();
+            out.text("Port,Protocol,Packets,Bytes").newLine();
+            PortProtocolRows rows = new PortProtocolRows(statistics);
+            for (int row : sortDescending(rows.bytes)) {
+                rows.writeKey(out, row);
+                out.character(',').number(rows.packets[row]).character(',').number(rows.bytes[row]).newLine();
+            }
+
+            if (statistics.hasTopAddresses()) {
+                out.newLine();
+
+                // Write the heaviest source and destination addresses
+                out.text("Top Source Addresses:").newLine();
+                out.text("Address,Bytes").newLine();
+                writeAddresses(out, statistics.getTopSourceAddresses(TOP_ADDRESSES));
+
+                out.newLine();
+
+                out.text("Top Destination Addresses:").newLine();
+                out.text("Address,Bytes").newLine();
+                writeAddresses(out, statistics.getTopDestinationAddresses(TOP_ADDRESSES));
+            }
+
+            if (statistics.hasDistinctCounts()) {
+                out.newLine();
+
+                // Write the distinct counts per tag, in the order of the tag counts
+                out.text("Distinct Counts per Tag:").newLine();
+                out.text("Tag,Source Addresses,Destination Addresses,Interfaces").newLine();
+                for (int tag : tags) {
+                    out.text(dictionary.name(tag))
+                            .character(',').number(statistics.getDistinctSourceAddresses(tag))
+                            .character(',').number(statistics.getDistinctDestinationAddresses(tag))
+                            .character(',').number(statistics.getDistinctInterfaces(tag)).newLine();
+                }
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the record counts per tag, per port/protocol combination and, if rules
+     * were applied, per rule tag, largest first.
+     *
+     * @param tags Ids of the tags with records, largest count first
+     */
+    private static void writeCounts(ByteOutput out, Statistics statistics, int[] tags) throws IOException {
+        TagDictionary dictionary = statistics.getTagDictionary();
+
+        // Write tag counts
+        out.text("Tag Counts:").newLine();
+        out.text("Tag,Count").newLine();
+        for (int tag : tags) {
+            out.text(dictionary.name(tag)).character(',').number(statistics.getTagCount(tag)).newLine();
+        }
+
+        out.newLine();
+
+        // Write port/protocol combination counts
+        out.text("Port/Protocol Combination Counts:").newLine();
+        out.text("Port,Protocol,Count").newLine();
+        PortProtocolRows rows = new PortProtocolRows(statistics);
+        for (int row : sortDescending(rows.counts)) {
+            rows.writeKey(out, row);
+            out.character(',').number(rows.counts[row]).newLine();
+        }
+
+        // Write the multi-tag rule counts, if rules were applied
+        if (statistics.hasRuleTags()) {
+            out.newLine();
+            out.text("Rule Tag Counts:").newLine();
+            out.text("Tag,Count").newLine();
+            int[] ruleTags = new int[dictionary.size()];
+            long[] ruleCounts = new long[ruleTags.length];
+            int size = 0;
+            for (int id = 0; id < ruleTags.length; id++) {
+                long count = statistics.getRuleTagCount(id);
+                if (count > 0) {
+                    ruleTags[size] = id;
+                    ruleCounts[size++] = count;
+                }
+            }
+            for (int i : sortDescending(Arrays.copyOf(ruleCounts, size))) {
+                out.text(dictionary.name(ruleTags[i])).character(',').number(ruleCounts[i]).newLine();
+            }
+        }
+    }
+
+    private static void writeAddresses(ByteOutput out, List<HeavyHitters.Counter> addresses) throws IOException {
+        for (HeavyHitters.Counter address : addresses) {
+            int key = address.getKey();
+            out.number(key >>> 24).character('.').number((key >>> 16) & 0xff).character('.')
+                    .number((key >>> 8) & 0xff).character('.').number(key & 0xff)
+                    .character(',').number(address.getWeight()).newLine();
+        }
+    }
+
+    /**
+     * Returns the ids of the tags with records, in id order.
+     */
+    private static int[] tagIds(Statistics statistics) {
+        int[] ids = new int[statistics.getTagDictionary().size()];
+        int size = 0;
+        for (int id = 0; id < ids.length; id++) {
+            if (statistics.getTagCount(id) > 0) {
+                ids[size++] = id;
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Returns the ids of the tags with records, largest count first and in id order
+     * among equal counts.
+     */
+    private static int[] tagsByCount(Statistics statistics) {
+        int[] ids = tagIds(statistics);
+        long[] counts = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            counts[i] = statistics.getTagCount(ids[i]);
+        }
+        int[] tags = sortDescending(counts);
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = ids[tags[i]];
+        }
+        return tags;
+    }
+
+    /**
+     * Returns the indexes of the values, largest value first. The sort is a stable
+     * bottom-up merge sort, so equal values keep the order of their indexes.
+     */
+    static int[] sortDescending(long[] values) {
+        int size = values.length;
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int[] merged = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int left = 0; left < size; left += 2 * width) {
+                int middle = Math.min(left + width, size);
+                int right = Math.min(left + 2 * width, size);
+                int i = left;
+                int j = middle;
+                int k = left;
+                while (i < middle && j < right) {
+                    // The left run wins ties, which keeps the sort stable
+                    merged[k++] = values[order[j]] > values[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < middle) {
+                    merged[k++] = order[i++];
+                }
+                while (j < right) {
+                    merged[k++] = order[j++];
+                }
+            }
+            int[] swap = order;
+            order = merged;
+            merged = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Count, packets and bytes of the port/protocol combinations in row order:
+     * packed combinations by their dense index, followed by the ones that cannot be
+     * packed.
+     */
+    private static final class PortProtocolRows {
+        private final int[] keys;
+        private final String[] otherKeys;
+        private final long[] counts;
+        private final long[] packets;
+        private final long[] bytes;
+
+        PortProtocolRows(Statistics statistics) {
+            int packed = statistics.getPortProtocolSize();
+            Map<String, long[]> others = statistics.getUnpackedPortProtocols();
+            int size = packed + others.size();
+            keys = new int[packed];
+            otherKeys = new String[others.size()];
+            counts = new long[size];
+            packets = new long[size];
+            bytes = new long[size];
+            for (int index = 0; index < packed; index++) {
+                keys[index] = statistics.getPortProtocolKey(index);
+                counts[index] = statistics.getPortProtocolCount(index);
+                packets[index] = statistics.getPortProtocolPackets(index);
+                bytes[index] = statistics.getPortProtocolBytes(index);
+            }
+            int row = packed;
+            for (Map.Entry<String, long[]> other : others.entrySet()) {
+                otherKeys[row - packed] = other.getKey();
+                counts[row] = other.getValue()[0];
+                packets[row] = other.getValue()[1];
+                bytes[row] = other.getValue()[2];
+                row++;
+            }
+        }
+
+        /**
+         * Writes the port and protocol of a row, separated by a comma.
+         */
+        void writeKey(ByteOutput out, int row) throws IOException {
+            if (row >= keys.length) {
+                out.text(otherKeys[row - keys.length]);
+                return;
+            }
+            int key = keys[row];
+            out.number(Statistics.unpackPort(key)).character(',');
+            int protocol = Statistics.unpackProtocol(key);
+            switch (protocol) {
+                case 6:
+                case 17:
+                case 1:
+                    // Named protocols, see Protocols.name
+                    out.text(Protocols.name(protocol));
+                    break;
+                default:
+                    out.number(protocol);
+                    break;
+            }
         }
     }
-}
\ No newline at end of file
+}
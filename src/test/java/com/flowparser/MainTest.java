@@ -0,0 +1,119 @@
+package com.flowparser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MainTest {
+    private static final String PREVIOUS_OUTPUT = "previous output\n";
+
+    @Test
+    void testRunOverErrorLimitLeavesOutputUntouched() throws IOException {
+        // Too few lines for the ratio to be enforced before the end of the input
+        Path directory = Files.createTempDirectory("flowlogs");
+        Path inputs = Files.createDirectory(directory.resolve("inputs"));
+        Path flowLogFile = inputs.resolve("flow.log");
+        Files.writeString(flowLogFile, flowLogs(5, 20));
+        Path lookupTableFile = directory.resolve("lookup.csv");
+        Files.writeString(lookupTableFile, "dstport,protocol,tag\n443,tcp,web\n");
+        Path outputFile = directory.resolve("output.csv");
+
+        String[][] modes = {{}, {"--threads", "2"}, {"--fork-join"}};
+        for (String[] mode : modes) {
+            Files.writeString(outputFile, PREVIOUS_OUTPUT);
+            run(flowLogFile, lookupTableFile, outputFile, "0.5", mode);
+            assertEquals(PREVIOUS_OUTPUT, Files.readString(outputFile), Arrays.toString(mode));
+        }
+        // A directory goes through the batch path
+        run(inputs, lookupTableFile, outputFile, "0.5");
+        assertEquals(PREVIOUS_OUTPUT, Files.readString(outputFile));
+
+        // Within the limit the output is replaced
+        run(inputs, lookupTableFile, outputFile, "0.9");
+        List<String> lines = Files.readAllLines(outputFile);
+        assertTrue(lines.contains("web,5"), lines.toString());
+
+        deleteRecursively(directory);
+    }
+
+    @Test
+    void testStreamOverErrorLimitLeavesOutputUntouched() throws IOException {
+        // Enough lines that the ratio is enforced before snapshots and windows written mid-stream
+        Path directory = Files.createTempDirectory("flowlogs");
+        Path flowLogFile = directory.resolve("flow.log");
+        Files.writeString(flowLogFile, flowLogs(500, 600));
+        Path lookupTableFile = directory.resolve("lookup.csv");
+        Files.writeString(lookupTableFile, "dstport,protocol,tag\n443,tcp,web\n");
+        Path outputFile = directory.resolve("output.csv");
+
+        String[][] modes = {{"--snapshot-records", "2"}, {"--snapshot-seconds", "60"}, {"--window-seconds", "60"}};
+        for (String[] mode : modes) {
+            Files.writeString(outputFile, PREVIOUS_OUTPUT);
+            run(flowLogFile, lookupTableFile, outputFile, "0.5", mode);
+            assertEquals(PREVIOUS_OUTPUT, Files.readString(outputFile), Arrays.toString(mode));
+        }
+
+        deleteRecursively(directory);
+    }
+
+    @Test
+    void testBreakdownsAreWrittenOnlyWhenAsked() throws IOException {
+        Path directory = Files.createTempDirectory("flowlogs");
+        Path flowLogFile = directory.resolve("flow.log");
+        Files.writeString(flowLogFile, flowLogs(5, 0));
+        Path lookupTableFile = directory.resolve("lookup.csv");
+        Files.writeString(lookupTableFile, "dstport,protocol,tag\n443,tcp,web\n");
+        Path outputFile = directory.resolve("output.csv");
+
+        run(flowLogFile, lookupTableFile, outputFile, "0.5");
+        List<String> lines = Files.readAllLines(outputFile);
+        assertTrue(lines.contains("web,5"), lines.toString());
+        assertFalse(lines.contains("Top Source Addresses:"), lines.toString());
+        assertFalse(lines.contains("Distinct Counts per Tag:"), lines.toString());
+
+        run(flowLogFile, lookupTableFile, outputFile, "0.5", "--top-addresses", "--distinct-counts");
+        lines = Files.readAllLines(outputFile);
+        assertTrue(lines.contains("Top Source Addresses:"), lines.toString());
+        assertTrue(lines.contains("web,1,1,1"), lines.toString());
+
+        // Windows are written without the breakdowns, so asking for them is rejected
+        Files.writeString(outputFile, PREVIOUS_OUTPUT);
+        run(flowLogFile, lookupTableFile, outputFile, "0.5", "--top-addresses", "--window-seconds", "60");
+        assertEquals(PREVIOUS_OUTPUT, Files.readString(outputFile));
+
+        deleteRecursively(directory);
+    }
+
+    private static void run(Path flowLogFile, Path lookupTableFile, Path outputFile, String maxErrorRatio,
+                            String... options) {
+        List<String> args = new ArrayList<>(List.of(flowLogFile.toString(), lookupTableFile.toString(),
+                outputFile.toString(), "--max-error-ratio", maxErrorRatio));
+        args.addAll(Arrays.asList(options));
+        Main.main(args.toArray(new String[0]));
+    }
+
+    private static String flowLogs(int valid, int invalid) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < valid; i++) {
+            lines.append("2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 ")
+                .append(1620140760 + i).append(" 1620140821 ACCEPT OK\n");
+        }
+        for (int i = 0; i < invalid; i++) {
+            lines.append("not a flow log line ").append(i).append('\n');
+        }
+        return lines.toString();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+}
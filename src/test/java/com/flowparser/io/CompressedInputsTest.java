@@ -0,0 +1,223 @@
+package com.flowparser.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedInputsTest {
+
+    @Test
+    void testDetectsFormatsByMagicBytes() {
+        assertEquals(CompressedInputs.Compression.GZIP, CompressedInputs.detect(new byte[]{0x1f, (byte) 0x8b, 8, 0}, 4));
+        assertEquals(CompressedInputs.Compression.ZSTD,
+                CompressedInputs.detect(new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd}, 4));
+        assertEquals(CompressedInputs.Compression.NONE, CompressedInputs.detect("2 12".getBytes(StandardCharsets.US_ASCII), 4));
+        assertEquals(CompressedInputs.Compression.NONE, CompressedInputs.detect(new byte[]{0x1f}, 1));
+    }
+
+    @Test
+    void testOpensPlainAndGzipFiles() throws IOException {
+        byte[] content = sampleLines(5000);
+        Path plain = Files.createTempFile("flowlogs", ".log");
+        Path gzip = Files.createTempFile("flowlogs", ".log.gz");
+        Files.write(plain, content);
+        Files.write(gzip, gzip(content, Deflater.DEFAULT_COMPRESSION));
+
+        byte[] plainRead = readAll(CompressedInputs.open(plain, 1));
+        byte[] gzipRead = readAll(CompressedInputs.open(gzip, 1));
+        byte[] parallelRead = readAll(CompressedInputs.open(gzip, 4));
+        Files.delete(plain);
+        Files.delete(gzip);
+
+        assertArrayEquals(content, plainRead);
+        assertArrayEquals(content, gzipRead);
+        assertArrayEquals(content, parallelRead);
+    }
+
+    @Test
+    void testParallelMultiMemberGzip() throws IOException {
+        // Members are cut mid-line, so lines span member boundaries; stored members
+        // are larger than the worker's input buffer
+        byte[] content = sampleLines(20000);
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        int memberSize = 300 * 1024 + 13;
+        for (int offset = 0, member = 0; offset < content.length; offset += memberSize, member++) {
+            int length = Math.min(memberSize, content.length - offset);
+            byte[] part = new byte[length];
+            System.arraycopy(content, offset, part, 0, length);
+            int level = member % 2 == 0 ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION;
+            members.write(gzip(part, level));
+        }
+        Path file = Files.createTempFile("flowlogs", ".log.gz");
+        Files.write(file, members.toByteArray());
+
+        byte[] read;
+        boolean sequential;
+        try (ParallelGzipInputStream in = new ParallelGzipInputStream(file, 4, 1024, 2)) {
+            read = in.readAllBytes();
+            sequential = in.isSequential();
+        }
+        Files.delete(file);
+
+        assertArrayEquals(content, read);
+        assertFalse(sequential);
+    }
+
+    @Test
+    void testFalseMemberHeaderFallsBackToSequential() throws IOException {
+        // A stored (uncompressed) member whose data contains a valid-looking gzip header
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        first.write(sampleLines(50));
+        first.write(new byte[]{0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff});
+        first.write(sampleLines(200));
+        byte[] second = sampleLines(100);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first.toByteArray());
+        expected.write(second);
+
+        Path file = Files.createTempFile("flowlogs", ".log.gz");
+        Files.write(file, gzip(first.toByteArray(), Deflater.NO_COMPRESSION));
+        Files.write(file, gzip(second, Deflater.DEFAULT_COMPRESSION), StandardOpenOption.APPEND);
+
+        byte[] read;
+        boolean sequential;
+        try (ParallelGzipInputStream in = new ParallelGzipInputStream(file, 3, 512, 2)) {
+            read = in.readAllBytes();
+            sequential = in.isSequential();
+        }
+        Files.delete(file);
+
+        assertArrayEquals(expected.toByteArray(), read);
+        assertTrue(sequential);
+    }
+
+    @Test
+    void testUnrecognisedLastMemberIsNotDropped() throws IOException {
+        // The last member has an extra-flags value the header scan does not accept,
+        // which GZIPInputStream ignores; the first member then seems to end the file
+        byte[] first = sampleLines(300);
+        byte[] second = sampleLines(200);
+        byte[] secondMember = gzip(second, Deflater.DEFAULT_COMPRESSION);
+        secondMember[8] = 1;
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+
+        Path file = Files.createTempFile("flowlogs", ".log.gz");
+        Files.write(file, gzip(first, Deflater.DEFAULT_COMPRESSION));
+        Files.write(file, secondMember, StandardOpenOption.APPEND);
+
+        byte[] read;
+        boolean sequential;
+        try (ParallelGzipInputStream in = new ParallelGzipInputStream(file, 3, 512, 2)) {
+            read = in.readAllBytes();
+            sequential = in.isSequential();
+        }
+        byte[] reference = readAll(new GZIPInputStream(Files.newInputStream(file)));
+        Files.delete(file);
+
+        assertArrayEquals(expected.toByteArray(), reference);
+        assertArrayEquals(reference, read);
+        assertTrue(sequential);
+    }
+
+    @Test
+    void testBoundedHeaderScan() throws IOException {
+        byte[] content = sampleLines(20000);
+        Path single = Files.createTempFile("flowlogs", ".log.gz");
+        Files.write(single, gzip(content, Deflater.DEFAULT_COMPRESSION));
+        // Members larger than the scan reach
+        Path multi = Files.createTempFile("flowlogs", ".log.gz");
+        int half = content.length / 2;
+        Files.write(multi, gzip(Arrays.copyOf(content, half), Deflater.NO_COMPRESSION));
+        Files.write(multi, gzip(Arrays.copyOfRange(content, half, content.length), Deflater.NO_COMPRESSION),
+                StandardOpenOption.APPEND);
+
+        byte[] singleRead;
+        boolean singleSequential;
+        try (ParallelGzipInputStream in = new ParallelGzipInputStream(single, 2, 1024, 2, 4096)) {
+            singleRead = in.readAllBytes();
+            singleSequential = in.isSequential();
+        }
+        byte[] multiRead;
+        try (ParallelGzipInputStream in = new ParallelGzipInputStream(multi, 2, 1024, 2, 4096)) {
+            multiRead = in.readAllBytes();
+        }
+        Files.delete(single);
+        Files.delete(multi);
+
+        // A single member is inflated to the end of the file without a fallback
+        assertArrayEquals(content, singleRead);
+        assertFalse(singleSequential);
+        assertArrayEquals(content, multiRead);
+    }
+
+    @Test
+    void testRejectsZstd() throws IOException {
+        Path file = Files.createTempFile("flowlogs", ".log.zst");
+        Files.write(file, new byte[]{0x28, (byte) 0xb5, 0x2f, (byte) 0xfd, 0, 0});
+
+        IOException e = assertThrows(IOException.class, () -> CompressedInputs.open(file, 1));
+        Files.delete(file);
+
+        assertTrue(e.getMessage().contains("Zstandard"));
+    }
+
+    @Test
+    void testDecompressesStream() throws IOException {
+        byte[] content = sampleLines(1000);
+
+        byte[] fromGzip = readAll(CompressedInputs.decompress(
+                new ByteArrayInputStream(gzip(content, Deflater.BEST_SPEED))));
+        byte[] fromPlain = readAll(CompressedInputs.decompress(new ByteArrayInputStream(content)));
+        byte[] fromEmpty = readAll(CompressedInputs.decompress(new ByteArrayInputStream(new byte[0])));
+
+        assertArrayEquals(content, fromGzip);
+        assertArrayEquals(content, fromPlain);
+        assertEquals(0, fromEmpty.length);
+    }
+
+    private static byte[] sampleLines(int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append("2 123456789012 eni-").append(i % 97)
+                .append(" 10.0.1.201 198.51.100.2 49153 ").append(i % 1024)
+                .append(" 6 25 20000 1620140761 1620140821 ACCEPT OK\n");
+        }
+        return lines.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] gzip(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return stream.readAllBytes();
+        }
+    }
+}
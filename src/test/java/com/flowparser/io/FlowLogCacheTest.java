@@ -0,0 +1,159 @@
+package com.flowparser.io;
+
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.model.FlowField;
+import com.flowparser.model.FlowLogBatch;
+import com.flowparser.parser.FlowLogFormat;
+import com.flowparser.parser.FlowLogParser;
+import com.flowparser.parser.ParseErrorLog;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlowLogCacheTest {
+    private static final String FORMAT_KEY = FlowLogFormat.DEFAULT.toString();
+
+    @Test
+    void testRoundTripPreservesAllFields() throws IOException {
+        // More rows than fit in one batch, so the cache has several row groups
+        Path source = writeSource(10000);
+        Path cache = FlowLogCache.sidecarFor(source);
+        List<String> parsed = new ArrayList<>();
+        writeCache(source, cache, parsed);
+
+        List<String> cached = new ArrayList<>();
+        long records = FlowLogCache.read(cache, null, FlowMetrics.NOOP, batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                cached.add(row(batch, i));
+            }
+        });
+
+        Files.delete(source);
+        Files.delete(cache);
+
+        assertEquals(10000, records);
+        assertEquals(parsed, cached);
+    }
+
+    @Test
+    void testReadsOnlyRequestedColumns() throws IOException {
+        Path source = writeSource(100);
+        Path cache = FlowLogCache.sidecarFor(source);
+        writeCache(source, cache, new ArrayList<>());
+
+        List<FlowLogBatch> batches = new ArrayList<>();
+        FlowLogCache.read(cache, EnumSet.of(FlowField.DSTPORT, FlowField.PROTOCOL), FlowMetrics.NOOP, batches::add);
+
+        Files.delete(source);
+        Files.delete(cache);
+
+        FlowLogBatch batch = batches.get(0);
+        assertEquals(100, batch.size());
+        assertEquals(7, batch.dstPorts()[7]);
+        assertEquals(6, batch.protocols()[7]);
+        assertNull(batch.srcAddrs()[7]);
+        assertEquals(0, batch.bytes()[7]);
+    }
+
+    @Test
+    void testChangedSourceInvalidatesCache() throws IOException {
+        Path source = writeSource(10);
+        Path cache = FlowLogCache.sidecarFor(source);
+        assertFalse(FlowLogCache.isValid(cache, source, FORMAT_KEY));
+
+        writeCache(source, cache, new ArrayList<>());
+        assertTrue(FlowLogCache.isValid(cache, source, FORMAT_KEY));
+        assertFalse(FlowLogCache.isValid(cache, source, "${version} ${dstport} ${protocol}"));
+
+        // Same size, new modification time
+        FileTime modified = Files.getLastModifiedTime(source);
+        Files.setLastModifiedTime(source, FileTime.fromMillis(modified.toMillis() + 60_000));
+        assertFalse(FlowLogCache.isValid(cache, source, FORMAT_KEY));
+
+        // Same modification time, new size
+        Files.writeString(source, "\n", StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(source, modified);
+        assertFalse(FlowLogCache.isValid(cache, source, FORMAT_KEY));
+
+        Files.delete(source);
+        Files.delete(cache);
+    }
+
+    @Test
+    void testUncommittedCacheIsDiscarded() throws IOException {
+        Path source = writeSource(10);
+        Path cache = FlowLogCache.sidecarFor(source);
+        try (FlowLogCache.Writer writer = FlowLogCache.create(cache, source, FORMAT_KEY)) {
+            quietParser().parseFlowLogBatches(source.toString(), batch -> append(writer, batch));
+        }
+
+        try (var files = Files.list(source.getParent())) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().startsWith(cache.getFileName().toString())));
+        }
+        assertFalse(FlowLogCache.isValid(cache, source, FORMAT_KEY));
+        assertTrue(FlowLogCache.isCacheFile(cache));
+        assertFalse(FlowLogCache.isCacheFile(source));
+        Files.delete(source);
+    }
+
+    private static Path writeSource(int count) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append("2 123456789012 eni-").append(i % 97)
+                .append(" 10.0.1.").append(i % 251).append(" 198.51.100.2 49153 ").append(i % 1024)
+                .append(" 6 ").append(i).append(" 20000 1620140761 ").append(1620140821L + i)
+                .append(i % 3 == 0 ? " REJECT OK\n" : " ACCEPT OK\n");
+        }
+        lines.append("2 123456789012 eni-1 - - - - - - - 1620140761 1620140821 - NODATA\n");
+        Path source = Files.createTempFile("flowlogs", ".log");
+        Files.writeString(source, lines);
+        return source;
+    }
+
+    private static void writeCache(Path source, Path cache, List<String> parsed) throws IOException {
+        // NODATA lines are reported and skipped, not cached
+        FlowLogParser parser = quietParser();
+        try (FlowLogCache.Writer writer = FlowLogCache.create(cache, source, FORMAT_KEY)) {
+            parser.parseFlowLogBatches(source.toString(), batch -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    parsed.add(row(batch, i));
+                }
+                append(writer, batch);
+            });
+            writer.commit();
+        }
+    }
+
+    private static FlowLogParser quietParser() {
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(OutputStream.nullOutputStream()));
+        return new FlowLogParser(FlowMetrics.NOOP, errors);
+    }
+
+    private static String row(FlowLogBatch batch, int i) {
+        return String.join(" ", String.valueOf(batch.versions()[i]), batch.accountIds()[i], batch.interfaceIds()[i],
+            batch.srcAddrs()[i], batch.dstAddrs()[i], String.valueOf(batch.srcPorts()[i]),
+            String.valueOf(batch.dstPorts()[i]), String.valueOf(batch.protocols()[i]),
+            String.valueOf(batch.packets()[i]), String.valueOf(batch.bytes()[i]),
+            String.valueOf(batch.startTimes()[i]), String.valueOf(batch.endTimes()[i]),
+            batch.actions()[i], batch.logStatuses()[i]);
+    }
+
+    private static void append(FlowLogCache.Writer writer, FlowLogBatch batch) {
+        try {
+            writer.append(batch);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.flowparser.metrics;
+
+import com.flowparser.model.ParseFailure;
+import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.CompiledLookupTable;
+import com.flowparser.processor.FlowLogProcessor;
+import com.flowparser.writer.StatisticsWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedFlowMetricsTest {
+    private static final String VALID_443 = "2 123456789012 eni-1 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+    private static final String VALID_80 = "2 123456789012 eni-1 10.0.1.201 198.51.100.2 49153 80 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+
+    @Test
+    void testRecordsCountsFromProcessingAndWriting() throws IOException {
+        String data = VALID_443 + VALID_443 + VALID_80
+                + "\n"
+                + "2 123456789012 eni-1\n"
+                + "3 123456789012 eni-1 10.0.1.201 198.51.100.2 49153 80 6 25 20000 1620140761 1620140821 ACCEPT OK\n"
+                + "2 123456789012 eni-1 10.0.1.201 198.51.100.2 49153 http 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+        byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+
+        StripedFlowMetrics metrics = new StripedFlowMetrics();
+        CompiledLookupTable lookupTable = CompiledLookupTable.compile(Map.of("443,tcp", "sv_P2"), new TagDictionary());
+        FlowLogProcessor processor = new FlowLogProcessor(lookupTable, metrics);
+        Statistics statistics = processor.processFlowLogs(new ByteArrayInputStream(bytes));
+        Path output = Files.createTempFile("output", ".csv");
+        new StatisticsWriter(metrics).writeStatistics(statistics, output.toString());
+        Files.delete(output);
+        metrics.finish();
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(7, snapshot.getLinesRead());
+        assertEquals(bytes.length, snapshot.getBytesRead());
+        assertEquals(2, snapshot.getTaggedRecords());
+        assertEquals(1, snapshot.getUntaggedRecords());
+        assertEquals(3, snapshot.getParseFailures());
+        assertEquals(1, snapshot.getParseFailures(ParseFailure.INSUFFICIENT_FIELDS));
+        assertEquals(1, snapshot.getParseFailures(ParseFailure.UNSUPPORTED_VERSION));
+        assertEquals(1, snapshot.getParseFailures(ParseFailure.INVALID_NUMBER));
+        assertTrue(snapshot.getStageNanos(Stage.PARSE) > 0);
+        assertTrue(snapshot.getStageNanos(Stage.TAG) > 0);
+        assertTrue(snapshot.getStageNanos(Stage.AGGREGATE) > 0);
+        assertTrue(snapshot.getStageNanos(Stage.WRITE) > 0);
+        assertEquals(snapshot.getElapsedNanos(), metrics.snapshot().getElapsedNanos());
+
+        String json = snapshot.toJson();
+        assertTrue(json.startsWith("{\"linesRead\":7,\"bytesRead\":" + bytes.length + ",\"records\":3,"));
+        assertTrue(json.contains("\"parseFailures\":{\"INSUFFICIENT_FIELDS\":1,\"UNSUPPORTED_VERSION\":1,\"INVALID_NUMBER\":1,\"OTHER\":0}"));
+        assertTrue(json.matches(".*\"stageNanos\":\\{\"READ\":\\d+,\"PARSE\":\\d+,\"TAG\":\\d+,"
+                + "\"AGGREGATE\":\\d+,\"WRITE\":\\d+}.*"), json);
+    }
+
+    @Test
+    void testExposedOverJmx() throws JMException {
+        StripedFlowMetrics metrics = new StripedFlowMetrics();
+        metrics.linesRead(5);
+        metrics.tagged(2);
+        metrics.parseFailure(ParseFailure.OTHER);
+        metrics.stageNanos(Stage.TAG, 7);
+        ObjectName name = metrics.registerMBean();
+        // Registering again replaces the earlier instance
+        name = metrics.registerMBean();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(5L, server.getAttribute(name, "LinesRead"));
+            assertEquals(2L, server.getAttribute(name, "TaggedRecords"));
+            assertEquals(1L, server.getAttribute(name, "ParseFailures"));
+            TabularData stageNanos = (TabularData) server.getAttribute(name, "StageNanos");
+            assertEquals(7L, stageNanos.get(new Object[]{"TAG"}).get("value"));
+            assertEquals(0L, stageNanos.get(new Object[]{"AGGREGATE"}).get("value"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.flowparser.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentStatisticsTest {
+
+    @Test
+    void testThreadsUpdateTheirOwnShards() throws InterruptedException {
+        TagDictionary tags = new TagDictionary();
+        int web = tags.intern("web");
+        ConcurrentStatistics statistics = new ConcurrentStatistics(tags);
+        int threads = 8;
+        int batches = 500;
+        int[] tagIds = {web, web, TagDictionary.UNTAGGED_ID, web};
+        int[] ports = {443, 443, 25, 80};
+        int[] protocols = {6, 6, 6, 6};
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < batches; i++) {
+                    statistics.update(shard -> {
+                        shard.addTags(tagIds, 0, 4);
+                        shard.addPortProtocols(ports, protocols, 0, 4);
+                    });
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+
+        // Snapshots taken while threads update only contain whole batches
+        for (int i = 0; i < 20; i++) {
+            Statistics snapshot = statistics.snapshot();
+            long records = snapshot.getTagCounts().values().stream().mapToLong(Integer::longValue).sum();
+            assertEquals(0, records % 4);
+            assertEquals(snapshot.getTagCounts().getOrDefault("web", 0),
+                    3 * snapshot.getTagCounts().getOrDefault("Untagged", 0));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Statistics total = statistics.snapshot();
+        assertEquals(threads, statistics.getShardCount());
+        assertEquals(3 * threads * batches, total.getTagCounts().get("web"));
+        assertEquals(threads * batches, total.getTagCounts().get("Untagged"));
+        assertEquals(2 * threads * batches, total.getPortProtocolCounts().get("443,tcp"));
+        assertEquals(threads * batches, total.getPortProtocolCounts().get("80,tcp"));
+    }
+
+    @Test
+    void testMergeAddsToTheTotals() {
+        TagDictionary tags = new TagDictionary();
+        ConcurrentStatistics statistics = new ConcurrentStatistics(tags);
+        Statistics file = new Statistics(tags);
+        file.addTag("email");
+        file.addPortProtocol(25, 6);
+
+        statistics.merge(file);
+        statistics.merge(file);
+        statistics.update(shard -> shard.addTag("email"));
+
+        Statistics total = statistics.snapshot();
+        assertEquals(3, total.getTagCounts().get("email"));
+        assertEquals(2, total.getPortProtocolCounts().get("25,tcp"));
+        assertEquals(1, statistics.getShardCount());
+        // Snapshots are copies
+        total.addTag("email");
+        assertEquals(3, statistics.snapshot().getTagCounts().get("email"));
+    }
+}
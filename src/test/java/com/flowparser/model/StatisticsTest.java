@@ -0,0 +1,326 @@
+package com.flowparser.model;
+
+import com.flowparser.util.Hashing;
+import com.flowparser.util.HeavyHitters;
+import com.flowparser.util.Ipv4;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatisticsTest {
+
+    @Test
+    void testStringAndPrimitiveApisShareCounters() {
+        TagDictionary tags = new TagDictionary();
+        int email = tags.intern("email");
+        Statistics statistics = new Statistics(tags);
+
+        statistics.addTag("email");
+        statistics.addTag(email);
+        statistics.addTag(null);
+        statistics.addTag("Untagged");
+
+        statistics.addPortProtocol(443, "tcp");
+        statistics.addPortProtocol(443, 6);
+        statistics.addPortProtocol(53, "udp");
+        statistics.addPortProtocol(0, 1);
+
+        Map<String, Integer> tagCounts = statistics.getTagCounts();
+        assertEquals(2, tagCounts.size());
+        assertEquals(2, tagCounts.get("email"));
+        assertEquals(2, tagCounts.get("Untagged"));
+        assertEquals(2, statistics.getTagCount(email));
+
+        Map<String, Integer> portProtocolCounts = statistics.getPortProtocolCounts();
+        assertEquals(3, portProtocolCounts.size());
+        assertEquals(2, portProtocolCounts.get("443,tcp"));
+        assertEquals(1, portProtocolCounts.get("53,udp"));
+        assertEquals(1, portProtocolCounts.get("0,icmp"));
+    }
+
+    @Test
+    void testColumnApisMatchSingleRecordApis() {
+        TagDictionary tags = new TagDictionary();
+        int email = tags.intern("email");
+        int web = tags.intern("web");
+        int[] tagIds = {email, web, TagDictionary.UNTAGGED_ID, email, 40};
+        int[] ports = {443, 53, 443, 70000, 22};
+        int[] protocols = {6, 17, 6, 6, 6};
+
+        Statistics columns = new Statistics(tags);
+        columns.addTags(tagIds, 0, 4);
+        columns.addPortProtocols(ports, protocols, 0, 4);
+        Statistics rows = new Statistics(tags);
+        for (int i = 0; i < 4; i++) {
+            rows.addTag(tagIds[i]);
+            rows.addPortProtocol(ports[i], protocols[i]);
+        }
+
+        assertEquals(rows.getTagCounts(), columns.getTagCounts());
+        assertEquals(rows.getPortProtocolCounts(), columns.getPortProtocolCounts());
+        assertEquals(2, columns.getTagCount(email));
+        assertEquals(1, columns.getPortProtocolCounts().get("70000,tcp"));
+
+        // Ids beyond the current counters grow them
+        columns.addTags(tagIds, 4, 5);
+        assertEquals(1, columns.getTagCount(40));
+    }
+
+    @Test
+    void testCombinationsOutsidePackedRangeKeepTheirKeys() {
+        Statistics statistics = new Statistics();
+
+        statistics.addPortProtocol(70000, 6);
+        statistics.addPortProtocol(-1, "tcp");
+        statistics.addPortProtocol(443, 300);
+        statistics.addPortProtocol(443, "300");
+        statistics.addPortProtocol(443, "TCP");
+        statistics.addPortProtocol(443, "6");
+        statistics.addPortProtocol(443, "47");
+
+        Map<String, Integer> counts = statistics.getPortProtocolCounts();
+        assertEquals(1, counts.get("70000,tcp"));
+        assertEquals(1, counts.get("-1,tcp"));
+        assertEquals(2, counts.get("443,300"));
+        assertEquals(1, counts.get("443,TCP"));
+        assertEquals(1, counts.get("443,6"));
+        assertEquals(1, counts.get("443,47"));
+        assertNull(counts.get("443,tcp"));
+    }
+
+    @Test
+    void testMergeAcrossDictionaries() {
+        Statistics first = new Statistics();
+        first.addTag("sv_p1");
+        first.addTag("sv_p2");
+        first.addPortProtocol(443, 6);
+
+        Statistics second = new Statistics();
+        second.addTag("sv_p2");
+        second.addTag("sv_p3");
+        second.addPortProtocol(443, 6);
+        second.addPortProtocol(23, 6);
+        second.addPortProtocol(70000, 6);
+
+        first.merge(second);
+
+        Map<String, Integer> tagCounts = first.getTagCounts();
+        assertEquals(1, tagCounts.get("sv_p1"));
+        assertEquals(2, tagCounts.get("sv_p2"));
+        assertEquals(1, tagCounts.get("sv_p3"));
+
+        Map<String, Integer> portProtocolCounts = first.getPortProtocolCounts();
+        assertEquals(2, portProtocolCounts.get("443,tcp"));
+        assertEquals(1, portProtocolCounts.get("23,tcp"));
+        assertEquals(1, portProtocolCounts.get("70000,tcp"));
+    }
+
+    @Test
+    void testMergeIsAssociative() {
+        TagDictionary tags = new TagDictionary();
+        Statistics[] parts = new Statistics[4];
+        for (int i = 0; i < parts.length; i++) {
+            // Every other part has its own dictionary
+            parts[i] = new Statistics(i % 2 == 0 ? tags : new TagDictionary());
+            for (int j = 0; j <= i; j++) {
+                parts[i].addTag("tag" + j);
+                parts[i].addPortProtocol(1000 + j, 6);
+            }
+        }
+
+        // ((a + b) + c) + d
+        Statistics left = new Statistics(tags);
+        for (Statistics part : parts) {
+            left.merge(part);
+        }
+        // (a + b) + (c + d), as a tree reduction does it
+        Statistics first = new Statistics(tags);
+        first.merge(parts[0]);
+        first.merge(parts[1]);
+        Statistics second = new Statistics(new TagDictionary());
+        second.merge(parts[2]);
+        second.merge(parts[3]);
+        first.merge(second);
+
+        assertEquals(left.getTagCounts(), first.getTagCounts());
+        assertEquals(left.getPortProtocolCounts(), first.getPortProtocolCounts());
+        assertEquals(4, left.getTagCounts().get("tag0"));
+        assertEquals(1, left.getTagCounts().get("tag3"));
+    }
+
+    @Test
+    void testVolumesAreSummedPerTagAndPortProtocol() {
+        TagDictionary tags = new TagDictionary();
+        int email = tags.intern("email");
+        int[] tagIds = {email, email, TagDictionary.UNTAGGED_ID, email};
+        int[] ports = {25, 25, 443, 70000};
+        int[] protocols = {6, 6, 6, 6};
+        // A single 10 GB flow does not fit an int
+        long[] packets = {10, 7_500_000, 3, 1};
+        long[] bytes = {1000, 10L << 30, 300, 100};
+
+        Statistics first = new Statistics(tags);
+        first.addTags(tagIds, packets, bytes, 0, 2);
+        first.addPortProtocols(ports, protocols, packets, bytes, 0, 2);
+        Statistics second = new Statistics(tags);
+        for (int i = 2; i < 4; i++) {
+            second.addTag(tagIds[i], packets[i], bytes[i]);
+            second.addPortProtocol(ports[i], protocols[i], packets[i], bytes[i]);
+        }
+        first.merge(second);
+
+        assertEquals(7_500_011, first.getTagPackets(email));
+        assertEquals((10L << 30) + 1100, first.getTagBytes(email));
+        assertEquals(3, first.getTagCount(email));
+        assertArrayEquals(new long[]{3, 300}, first.getTagVolumes().get("Untagged"));
+        assertArrayEquals(new long[]{7_500_010, (10L << 30) + 1000}, first.getPortProtocolVolumes().get("25,tcp"));
+        assertArrayEquals(new long[]{1, 100}, first.getPortProtocolVolumes().get("70000,tcp"));
+        assertEquals(2, first.getPortProtocolCounts().get("25,tcp"));
+
+        // Records added without a volume count but add no packets or bytes
+        first.addTag(email);
+        assertEquals(4, first.getTagCount(email));
+        assertEquals(7_500_011, first.getTagPackets(email));
+    }
+
+    @Test
+    void testTopAddressesByBytes() {
+        long a = Ipv4.parse("10.0.0.1");
+        long b = Ipv4.parse("10.0.0.2");
+        long[] sources = {a, b, a, Ipv4.NONE};
+        long[] destinations = {b, b, a, a};
+        long[] bytes = {100, 50, 100, 1000};
+
+        Statistics first = new Statistics();
+        first.addAddresses(sources, destinations, bytes, 0, 2);
+        Statistics second = new Statistics();
+        second.addAddresses(sources, destinations, bytes, 2, 4);
+        first.merge(second);
+
+        List<HeavyHitters.Counter> topSources = first.getTopSourceAddresses(10);
+        assertEquals(2, topSources.size());
+        assertEquals("10.0.0.1", Ipv4.format(topSources.get(0).getKey()));
+        assertEquals(200, topSources.get(0).getWeight());
+        List<HeavyHitters.Counter> topDestinations = first.getTopDestinationAddresses(1);
+        assertEquals(1, topDestinations.size());
+        assertEquals((int) a, topDestinations.get(0).getKey());
+        assertEquals(1100, topDestinations.get(0).getWeight());
+    }
+
+    @Test
+    void testDistinctCountsPerTag() {
+        TagDictionary tags = new TagDictionary();
+        int web = tags.intern("web");
+        int rows = 3000;
+        int[] tagIds = new int[rows];
+        long[] sources = new long[rows];
+        long[] destinations = new long[rows];
+        long[] interfaces = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            tagIds[i] = i % 3 == 0 ? TagDictionary.UNTAGGED_ID : web;
+            sources[i] = Hashing.hash("10.0." + (i / 256) + "." + (i % 256));
+            destinations[i] = Hashing.hash("192.168.0." + (i % 10));
+            interfaces[i] = i % 2 == 0 ? Hashing.hash("eni-" + (i % 4)) : Hashing.NO_HASH;
+        }
+
+        Statistics first = new Statistics(tags, 14);
+        first.addTags(tagIds, 0, 1000);
+        first.addDistinct(tagIds, sources, destinations, interfaces, 0, 1000);
+        Statistics second = new Statistics(tags, 14);
+        second.addTags(tagIds, 1000, rows);
+        second.addDistinct(tagIds, sources, destinations, interfaces, 1000, rows);
+        first.merge(second);
+
+        assertEquals(2000, first.getDistinctSourceAddresses(web), 40);
+        assertEquals(1000, first.getDistinctSourceAddresses(TagDictionary.UNTAGGED_ID), 20);
+        assertEquals(10, first.getDistinctDestinationAddresses(web));
+        assertEquals(2, first.getDistinctInterfaces(web));
+        assertArrayEquals(new long[]{first.getDistinctSourceAddresses(web), 10, 2}, first.getDistinctCounts().get("web"));
+        assertEquals(0, first.getDistinctInterfaces(99));
+
+        // Sketches of different precision cannot be merged
+        assertThrows(IllegalArgumentException.class, () -> first.merge(withOneRecord(tags, 10)));
+    }
+
+    @Test
+    void testRuleTagsCountEveryMatchingTag() {
+        TagDictionary tags = new TagDictionary();
+        int web = tags.intern("web");
+        int internal = tags.intern("internal");
+        Statistics first = new Statistics(tags);
+        assertFalse(first.hasRuleTags());
+        first.addRuleTags(new int[]{web, internal}, 2);
+        first.addRuleTags(new int[]{internal, web}, 1);
+
+        // Statistics that matched no rule still show an empty section
+        Statistics unmatched = new Statistics(tags);
+        unmatched.addRuleTags(new int[0], 0);
+        assertTrue(unmatched.hasRuleTags());
+        assertEquals(Map.of(), unmatched.getRuleTagCounts());
+
+        TagDictionary otherTags = new TagDictionary();
+        Statistics second = new Statistics(otherTags);
+        second.addRuleTags(new int[]{otherTags.intern("internal"), otherTags.intern("dns")}, 2);
+        first.merge(second);
+        first.merge(new Statistics(tags));
+
+        assertEquals(1, first.getRuleTagCount(web));
+        assertEquals(3, first.getRuleTagCount(internal));
+        assertEquals(Map.of("web", 1, "internal", 3, "dns", 1), first.getRuleTagCounts());
+        // Rule tags are not tag counts
+        assertEquals(Map.of(), first.getTagCounts());
+    }
+
+    private static Statistics withOneRecord(TagDictionary tags, int distinctPrecision) {
+        Statistics statistics = new Statistics(tags, distinctPrecision);
+        statistics.addTags(new int[]{0}, 0, 1);
+        statistics.addDistinct(new int[]{0}, new long[]{1}, new long[]{1}, new long[]{1}, 0, 1);
+        return statistics;
+    }
+
+    @Test
+    void testManyPortProtocolCombinations() {
+        Statistics statistics = new Statistics();
+        for (int port = 0; port <= 0xFFFF; port++) {
+            statistics.addPortProtocol(port, 6);
+            statistics.addPortProtocol(port, 17);
+        }
+        statistics.addPortProtocol(65535, 17);
+
+        assertEquals(2 * 65536, statistics.getPortProtocolSize());
+        int index = statistics.getPortProtocolSize() - 1;
+        assertEquals(65535, Statistics.unpackPort(statistics.getPortProtocolKey(index)));
+        assertEquals(17, Statistics.unpackProtocol(statistics.getPortProtocolKey(index)));
+        assertEquals(2, statistics.getPortProtocolCount(index));
+    }
+
+    @Test
+    void testCountsBeyondIntRange() {
+        TagDictionary tags = new TagDictionary();
+        int web = tags.intern("web");
+        Statistics statistics = new Statistics(tags);
+        statistics.addTag(web);
+        statistics.addPortProtocol(443, 6);
+        statistics.addPortProtocol(70000, "tcp");
+        statistics.addRuleTags(new int[]{web}, 1);
+        // Double every count by merging with a copy until it passes the int range
+        for (int i = 0; i < 31; i++) {
+            Statistics copy = new Statistics(tags);
+            copy.merge(statistics);
+            statistics.merge(copy);
+        }
+        long expected = 1L << 31;
+
+        assertEquals(expected, statistics.getTagCount(web));
+        assertEquals(expected, statistics.getRuleTagCount(web));
+        assertEquals(expected, statistics.getPortProtocolCount(0));
+        assertEquals(expected, statistics.getUnpackedPortProtocols().get("70000,tcp")[0]);
+        // The int views refuse to truncate
+        assertThrows(ArithmeticException.class, statistics::getTagCounts);
+        assertThrows(ArithmeticException.class, statistics::getRuleTagCounts);
+        assertThrows(ArithmeticException.class, statistics::getPortProtocolCounts);
+    }
+}
@@ -0,0 +1,208 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.Protocols;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.util.Ipv4;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledLookupTableTest {
+
+    @Test
+    void testMatchesMapLookupForEveryPortAndProtocol() {
+        Map<String, String> lookupTable = new HashMap<>();
+        lookupTable.put("25,tcp", "sv_p1");
+        lookupTable.put("68,udp", "sv_p2");
+        lookupTable.put("0,icmp", "sv_p5");
+        lookupTable.put("65535,47", "gre");
+        lookupTable.put("443,TCP", "upper");      // never matches, keys are lowercase
+        lookupTable.put("443,6", "numeric");      // never matches, 6 renders as tcp
+        lookupTable.put("080,tcp", "padded");     // never matches, ports render without padding
+        lookupTable.put("70000,tcp", "big_port");
+        lookupTable.put("-1,udp", "negative");
+        lookupTable.put("53,300", "big_protocol");
+
+        CompiledLookupTable compiled = CompiledLookupTable.compile(lookupTable, new TagDictionary());
+
+        int[] protocols = {0, 1, 6, 17, 47, 255};
+        for (int protocol : protocols) {
+            for (int port = 0; port <= 0xFFFF; port++) {
+                assertSameMatch(lookupTable, compiled, port, protocol);
+            }
+        }
+        assertSameMatch(lookupTable, compiled, 70000, 6);
+        assertSameMatch(lookupTable, compiled, -1, 17);
+        assertSameMatch(lookupTable, compiled, 53, 300);
+        assertSameMatch(lookupTable, compiled, 53, -6);
+        assertSameMatch(lookupTable, compiled, 70001, 6);
+    }
+
+    @Test
+    void testMatchAllMatchesSingleLookups() {
+        Map<String, String> lookupTable = new HashMap<>();
+        lookupTable.put("25,tcp", "sv_p1");
+        lookupTable.put("68,udp", "sv_p2");
+        lookupTable.put("70000,tcp", "big_port");
+        CompiledLookupTable compiled = CompiledLookupTable.compile(lookupTable, new TagDictionary());
+
+        int[] dstPorts = {25, 68, 68, 70000, -1, 443, 25};
+        int[] protocols = {6, 17, 6, 6, 17, 6, 300};
+        int[] tagIds = new int[dstPorts.length + 1];
+        tagIds[0] = 99;
+        tagIds[dstPorts.length] = 99;
+        compiled.matchAll(dstPorts, protocols, tagIds, 1, dstPorts.length);
+
+        // Records outside the range are left alone
+        assertEquals(99, tagIds[0]);
+        assertEquals(99, tagIds[dstPorts.length]);
+        for (int i = 1; i < dstPorts.length; i++) {
+            assertEquals(compiled.match(dstPorts[i], protocols[i]), tagIds[i]);
+        }
+        assertEquals("big_port", compiled.getTagDictionary().name(tagIds[3]));
+    }
+
+    @Test
+    void testCompileLookupTableFileIsCaseInsensitive() throws IOException {
+        String testData = "dstport,protocol,tag\n" +
+                          "25,TCP,sv_P1\n" +
+                          "443,tcp,SV_P2\n" +
+                          "68,Udp,sv_p2\n";
+        Path tempFile = Files.createTempFile("lookup", ".csv");
+        Files.writeString(tempFile, testData);
+
+        CompiledLookupTable compiled = new LookupTableParser().compileLookupTable(tempFile.toString());
+
+        Files.delete(tempFile);
+
+        TagDictionary tags = compiled.getTagDictionary();
+        assertEquals("sv_p1", tags.name(compiled.match(25, 6)));
+        assertEquals("sv_p2", tags.name(compiled.match(443, 6)));
+        assertEquals(compiled.match(443, 6), compiled.match(68, 17));
+        assertEquals(CompiledLookupTable.NO_TAG, compiled.match(25, 17));
+    }
+
+    @Test
+    void testAddressRulesUseLongestPrefixThenNarrowestPorts() throws IOException {
+        String testData = "dstaddr,dstport,protocol,tag\n" +
+                          "*,*,tcp,any_tcp\n" +
+                          "0.0.0.0/0,443,tcp,https\n" +
+                          "10.0.0.0/8,443,tcp,internal-https\n" +
+                          "10.0.0.0/8,49152-65535,tcp,internal-ephemeral\n" +
+                          "10.1.0.0/16,0-1023,udp,internal-udp\n" +
+                          "10.1.2.3,443,tcp,host\n" +
+                          "10.1.0.0/16,1000-2000,tcp,wide\n" +
+                          "10.1.0.0/16,1500-1600,tcp,narrow\n";
+        Path tempFile = Files.createTempFile("lookup", ".csv");
+        Files.writeString(tempFile, testData);
+
+        CompiledLookupTable compiled = new LookupTableParser().compileLookupTable(tempFile.toString());
+
+        Files.delete(tempFile);
+
+        assertTrue(compiled.hasAddressRules());
+        assertEquals("internal-https", tagName(compiled, 443, 6, "10.200.0.1"));
+        assertEquals("host", tagName(compiled, 443, 6, "10.1.2.3"));
+        assertEquals("internal-https", tagName(compiled, 443, 6, "10.1.2.4"));
+        assertEquals("https", tagName(compiled, 443, 6, "192.168.0.1"));
+        assertEquals("internal-ephemeral", tagName(compiled, 50000, 6, "10.1.2.3"));
+        // The deepest network with a rule for the port and protocol wins
+        assertEquals("internal-udp", tagName(compiled, 53, 17, "10.1.9.9"));
+        assertEquals(null, tagName(compiled, 53, 17, "10.2.9.9"));
+        // Within a network the narrowest port range wins
+        assertEquals("narrow", tagName(compiled, 1550, 6, "10.1.9.9"));
+        assertEquals("wide", tagName(compiled, 1601, 6, "10.1.9.9"));
+        // Records without an IPv4 destination only match rules for any address
+        assertEquals("any_tcp", tagName(compiled, 443, 6, null));
+        assertEquals("any_tcp", tagName(compiled, 80, 6, "192.168.0.1"));
+    }
+
+    @Test
+    void testAddressRulesMatchBruteForce() {
+        Random random = new Random(42);
+        int[] protocols = {6, 17};
+        List<AddressRule> rules = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            // Few distinct networks so that prefixes nest and share port ranges
+            int prefixLength = random.nextInt(10) == 0 ? AddressRule.ANY_ADDRESS : random.nextInt(33);
+            int network = (random.nextInt(4) << 30) | (random.nextInt(4) << 20) | random.nextInt(4);
+            int fromPort = random.nextInt(200);
+            int toPort = fromPort + random.nextInt(random.nextBoolean() ? 5 : 100);
+            rules.add(new AddressRule(network, prefixLength, fromPort, toPort,
+                    protocols[random.nextInt(protocols.length)], "tag" + i));
+        }
+        CompiledLookupTable compiled = CompiledLookupTable.compile(Map.of(), rules, new TagDictionary());
+
+        int[] dstPorts = new int[5000];
+        int[] recordProtocols = new int[dstPorts.length];
+        long[] dstIpv4s = new long[dstPorts.length];
+        for (int i = 0; i < dstPorts.length; i++) {
+            dstPorts[i] = random.nextInt(320);
+            recordProtocols[i] = protocols[random.nextInt(protocols.length)];
+            dstIpv4s[i] = random.nextInt(20) == 0 ? Ipv4.NONE
+                    : (((long) random.nextInt(4) << 30) | (random.nextInt(4) << 20) | random.nextInt(8)) & 0xFFFFFFFFL;
+        }
+        int[] tagIds = new int[dstPorts.length];
+        compiled.matchAll(dstPorts, recordProtocols, dstIpv4s, tagIds, 0, dstPorts.length);
+
+        for (int i = 0; i < dstPorts.length; i++) {
+            AddressRule expected = bestRule(rules, dstPorts[i], recordProtocols[i], dstIpv4s[i]);
+            String actual = tagIds[i] == CompiledLookupTable.NO_TAG ? null : compiled.getTagDictionary().name(tagIds[i]);
+            assertEquals(expected == null ? null : expected.getTag(), actual,
+                    Ipv4.format((int) dstIpv4s[i]) + " " + dstPorts[i] + "," + recordProtocols[i]);
+        }
+    }
+
+    @Test
+    void testAddressRulesTakePrecedenceOverPortEntries() {
+        List<AddressRule> rules = List.of(new AddressRule((int) Ipv4.parse("10.0.0.0"), 8, 443, 443, 6, "internal"));
+        CompiledLookupTable compiled = CompiledLookupTable.compile(Map.of("443,tcp", "https"), rules, new TagDictionary());
+
+        assertEquals("internal", tagName(compiled, 443, 6, "10.0.0.1"));
+        assertEquals("https", tagName(compiled, 443, 6, "11.0.0.1"));
+        assertEquals("https", tagName(compiled, 443, 6, null));
+    }
+
+    /**
+     * The rule a linear scan picks: longest prefix, then narrowest range, then listed last.
+     */
+    private static AddressRule bestRule(List<AddressRule> rules, int port, int protocol, long address) {
+        AddressRule best = null;
+        for (AddressRule rule : rules) {
+            boolean addressMatches = rule.getPrefixLength() == AddressRule.ANY_ADDRESS
+                    || (address != Ipv4.NONE && (rule.getPrefixLength() == 0
+                        || (((int) address ^ rule.getNetwork()) >>> (32 - rule.getPrefixLength())) == 0));
+            if (!addressMatches || rule.getProtocol() != protocol || port < rule.getFromPort() || port > rule.getToPort()) {
+                continue;
+            }
+            if (best == null || rule.getPrefixLength() > best.getPrefixLength()
+                    || (rule.getPrefixLength() == best.getPrefixLength()
+                        && rule.getToPort() - rule.getFromPort() <= best.getToPort() - best.getFromPort())) {
+                best = rule;
+            }
+        }
+        return best;
+    }
+
+    private static String tagName(CompiledLookupTable compiled, int port, int protocol, String address) {
+        int tagId = compiled.match(port, protocol, Ipv4.parse(address));
+        return tagId == CompiledLookupTable.NO_TAG ? null : compiled.getTagDictionary().name(tagId);
+    }
+
+    private static void assertSameMatch(Map<String, String> lookupTable, CompiledLookupTable compiled,
+                                        int port, int protocol) {
+        String expected = lookupTable.get(port + "," + Protocols.name(protocol));
+        int tagId = compiled.match(port, protocol);
+        String actual = tagId == CompiledLookupTable.NO_TAG ? null : compiled.getTagDictionary().name(tagId);
+        assertEquals(expected, actual, port + "," + protocol);
+    }
+}
@@ -0,0 +1,135 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.TagDictionary;
+import com.flowparser.util.Hashing;
+import com.flowparser.util.Ipv4;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiledRuleSetTest {
+
+    private static final long ACCEPT = Hashing.hash("ACCEPT");
+    private static final long REJECT = Hashing.hash("REJECT");
+
+    @Test
+    void testRecordCarriesEveryMatchingTag() {
+        List<TagRule> rules = List.of(
+                rule(AddressRule.ANY_ADDRESS, 0, "10.0.0.0", 8, 443, 443, 6, null, "internal-https"),
+                rule(AddressRule.ANY_ADDRESS, 0, AddressRule.ANY_ADDRESS, 0, 0, 65535, 6, "REJECT", "rejected-tcp"),
+                rule(AddressRule.ANY_ADDRESS, 0, "10.1.0.0", 16, 0, 65535, TagRule.ANY_PROTOCOL, null, "internal"),
+                rule(AddressRule.ANY_ADDRESS, 0, "10.0.0.0", 8, 0, 65535, TagRule.ANY_PROTOCOL, null, "internal"));
+        CompiledRuleSet compiled = CompiledRuleSet.compile(rules, new TagDictionary());
+        CompiledRuleSet.Matcher matcher = compiled.newMatcher();
+
+        assertEquals(Set.of("internal-https", "rejected-tcp", "internal"),
+                tags(compiled, matcher, Ipv4.NONE, Ipv4.parse("10.1.2.3"), 49153, 443, 6, REJECT));
+        assertEquals(Set.of("internal-https", "internal"),
+                tags(compiled, matcher, Ipv4.NONE, Ipv4.parse("10.2.2.3"), 49153, 443, 6, ACCEPT));
+        assertEquals(Set.of("rejected-tcp"),
+                tags(compiled, matcher, Ipv4.NONE, Ipv4.parse("192.168.0.1"), 49153, 443, 6, REJECT));
+        assertEquals(Set.of(),
+                tags(compiled, matcher, Ipv4.NONE, Ipv4.NONE, 49153, 443, 17, Hashing.NO_HASH));
+    }
+
+    @Test
+    void testMatchesBruteForce() {
+        Random random = new Random(7);
+        String[] actions = {null, "ACCEPT", "REJECT"};
+        List<TagRule> rules = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int srcPrefix = random.nextInt(3) == 0 ? AddressRule.ANY_ADDRESS : random.nextInt(33);
+            int dstPrefix = random.nextInt(3) == 0 ? AddressRule.ANY_ADDRESS : random.nextInt(33);
+            int srcFrom = random.nextInt(2) == 0 ? 0 : random.nextInt(100);
+            int srcTo = srcFrom == 0 ? 65535 : srcFrom + random.nextInt(50);
+            int dstFrom = random.nextInt(100);
+            int dstTo = dstFrom + random.nextInt(random.nextBoolean() ? 3 : 60);
+            rules.add(new TagRule(address(random), srcPrefix, address(random), dstPrefix,
+                    srcFrom, srcTo, dstFrom, dstTo,
+                    random.nextInt(3) == 0 ? TagRule.ANY_PROTOCOL : (random.nextBoolean() ? 6 : 17),
+                    actions[random.nextInt(actions.length)], "tag" + random.nextInt(50)));
+        }
+        CompiledRuleSet compiled = CompiledRuleSet.compile(rules, new TagDictionary());
+        CompiledRuleSet.Matcher matcher = compiled.newMatcher();
+
+        for (int i = 0; i < 5000; i++) {
+            long srcIpv4 = random.nextInt(10) == 0 ? Ipv4.NONE : address(random) & 0xFFFFFFFFL;
+            long dstIpv4 = random.nextInt(10) == 0 ? Ipv4.NONE : address(random) & 0xFFFFFFFFL;
+            int srcPort = random.nextInt(200);
+            int dstPort = random.nextInt(200);
+            int protocol = random.nextBoolean() ? 6 : 17;
+            String action = actions[random.nextInt(actions.length)];
+            long actionHash = action == null ? Hashing.NO_HASH : Hashing.hash(action);
+
+            Set<String> expected = new TreeSet<>();
+            for (TagRule rule : rules) {
+                if (inNetwork(srcIpv4, rule.getSrcNetwork(), rule.getSrcPrefixLength())
+                        && inNetwork(dstIpv4, rule.getDstNetwork(), rule.getDstPrefixLength())
+                        && srcPort >= rule.getSrcFromPort() && srcPort <= rule.getSrcToPort()
+                        && dstPort >= rule.getDstFromPort() && dstPort <= rule.getDstToPort()
+                        && (rule.getProtocol() == TagRule.ANY_PROTOCOL || rule.getProtocol() == protocol)
+                        && (rule.getAction() == null || rule.getAction().equals(action))) {
+                    expected.add(rule.getTag());
+                }
+            }
+            int count = matcher.match(srcIpv4, dstIpv4, srcPort, dstPort, protocol, actionHash);
+            Set<String> actual = new TreeSet<>();
+            for (int t = 0; t < count; t++) {
+                assertTrue(actual.add(compiled.getTagDictionary().name(matcher.tagIds()[t])), "tags are not repeated");
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testRulesWithoutConstraintsMatchEverything() {
+        List<TagRule> rules = List.of(
+                rule(AddressRule.ANY_ADDRESS, 0, AddressRule.ANY_ADDRESS, 0, 0, 65535, TagRule.ANY_PROTOCOL, null, "all"));
+        CompiledRuleSet compiled = CompiledRuleSet.compile(rules, new TagDictionary());
+        assertEquals(Set.of("all"), tags(compiled, compiled.newMatcher(), Ipv4.NONE, Ipv4.NONE, 0, 0, 0, Hashing.NO_HASH));
+
+        CompiledRuleSet empty = CompiledRuleSet.compile(List.of(), new TagDictionary());
+        assertEquals(0, empty.size());
+        assertEquals(Set.of(), tags(empty, empty.newMatcher(), Ipv4.NONE, Ipv4.NONE, 0, 0, 0, Hashing.NO_HASH));
+    }
+
+    private static int address(Random random) {
+        // Few distinct values per octet so that networks overlap
+        return (random.nextInt(3) << 30) | (random.nextInt(3) << 16) | random.nextInt(3);
+    }
+
+    private static boolean inNetwork(long address, int network, int prefixLength) {
+        if (prefixLength == AddressRule.ANY_ADDRESS) {
+            return true;
+        }
+        return address != Ipv4.NONE
+                && (prefixLength == 0 || (((int) address ^ network) >>> (32 - prefixLength)) == 0);
+    }
+
+    private static TagRule rule(int srcPrefixLength, int srcNetwork, String dstNetwork, int dstPrefixLength,
+                                int dstFromPort, int dstToPort, int protocol, String action, String tag) {
+        return new TagRule(srcNetwork, srcPrefixLength, (int) Ipv4.parse(dstNetwork), dstPrefixLength,
+                0, 65535, dstFromPort, dstToPort, protocol, action, tag);
+    }
+
+    private static TagRule rule(int srcPrefixLength, int srcNetwork, int dstPrefixLength, int dstNetwork,
+                                int dstFromPort, int dstToPort, int protocol, String action, String tag) {
+        return new TagRule(srcNetwork, srcPrefixLength, dstNetwork, dstPrefixLength,
+                0, 65535, dstFromPort, dstToPort, protocol, action, tag);
+    }
+
+    private static Set<String> tags(CompiledRuleSet compiled, CompiledRuleSet.Matcher matcher, long srcIpv4,
+                                    long dstIpv4, int srcPort, int dstPort, int protocol, long actionHash) {
+        int count = matcher.match(srcIpv4, dstIpv4, srcPort, dstPort, protocol, actionHash);
+        Set<String> tags = new TreeSet<>();
+        Arrays.stream(matcher.tagIds(), 0, count).forEach(id -> tags.add(compiled.getTagDictionary().name(id)));
+        return tags;
+    }
+}
@@ -0,0 +1,68 @@
+package com.flowparser.parser;
+
+import com.flowparser.model.FlowField;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlowLogFormatTest {
+
+    @Test
+    void testParseFormatString() {
+        FlowLogFormat format = FlowLogFormat.parse("${version} ${vpc-id} ${dstport}  ${protocol} ${az-id}");
+
+        assertEquals(5, format.columnCount());
+        assertEquals(4, format.version());
+        assertEquals(2, format.columnOf(FlowField.DSTPORT));
+        assertEquals(-1, format.columnOf(FlowField.SRCPORT));
+        assertFalse(format.hasUnknownFields());
+        assertEquals(List.of(FlowField.VERSION, FlowField.VPC_ID, FlowField.DSTPORT, FlowField.PROTOCOL, FlowField.AZ_ID),
+                format.fields());
+        assertEquals(format, FlowLogFormat.parse("version vpc-id dstport protocol az-id"));
+        assertEquals("${version} ${vpc-id} ${dstport} ${protocol} ${az-id}", format.toString());
+    }
+
+    @Test
+    void testDefaultFormat() {
+        assertEquals(14, FlowLogFormat.DEFAULT.columnCount());
+        assertEquals(2, FlowLogFormat.DEFAULT.version());
+        assertEquals(6, FlowLogFormat.DEFAULT.columnOf(FlowField.DSTPORT));
+        assertEquals(7, FlowLogFormat.DEFAULT.columnOf(FlowField.PROTOCOL));
+    }
+
+    @Test
+    void testUnknownFieldsAreKept() {
+        FlowLogFormat format = FlowLogFormat.parse("version dstport protocol ecs-cluster-name");
+        assertTrue(format.hasUnknownFields());
+        assertEquals(4, format.columnCount());
+        assertEquals("ecs-cluster-name", format.columnName(3));
+    }
+
+    @Test
+    void testInvalidFormatStrings() {
+        assertThrows(IllegalArgumentException.class, () -> FlowLogFormat.parse(" "));
+        assertThrows(IllegalArgumentException.class, () -> FlowLogFormat.parse("${version} ${Dstport}"));
+        assertThrows(IllegalArgumentException.class, () -> FlowLogFormat.parse("dstport protocol dstport"));
+    }
+
+    @Test
+    void testHeaderDetection() {
+        assertEquals(FlowLogFormat.DEFAULT, header(
+                "version account-id interface-id srcaddr dstaddr srcport dstport protocol packets bytes start end action log-status"));
+        assertEquals(FlowLogFormat.parse("dstport protocol"), header("  dstport\tprotocol "));
+
+        // Records, free text and names that are all unknown are not headers
+        assertNull(header("2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1 2 ACCEPT OK"));
+        assertNull(header("Invalid line format"));
+        assertNull(header("too few fields"));
+        assertNull(header("dstport protocol dstport"));
+    }
+
+    private static FlowLogFormat header(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return FlowLogFormat.fromHeader(bytes, 0, bytes.length);
+    }
+}
@@ -1,13 +1,28 @@
 package com.flowparser.parser;
 
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.model.FlowField;
+import com.flowparser.model.FlowLogBatch;
 import com.flowparser.model.FlowLogEntry;
+import com.flowparser.model.ParseFailure;
+import com.flowparser.util.SampleDataGenerator;
+import com.flowparser.util.Hashing;
+import com.flowparser.util.Ipv4;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -94,4 +109,371 @@ class FlowLogParserTest {
         // Verify results - should get no entries due to unsupported version
         assertEquals(0, entries.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testByteParserMatchesStringParser() {
+        String[] lines = {
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "  2\t123456789012  eni-0a1b2c3d 10.0.1.201\t\t198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK \r",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK extra fields",
+            "+2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 -1 +443 6 25 20000 -1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 2147483647 -2147483648 9223372036854775807 -9223372036854775808 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 2147483648 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 7500000 10737418240 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 9223372036854775808 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 9223372036854775808 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 4x3 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 - 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "x 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "3 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "+3 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "03 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "-0 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT",
+            "Invalid line format"
+        };
+
+        for (String line : lines) {
+            assertSameResult(line);
+        }
+    }
+
+    @Test
+    void testByteParserMatchesStringParserOnGeneratedData() throws IOException {
+        Path tempFile = Files.createTempFile("flowlogs", ".test");
+        SampleDataGenerator.generateFlowLogFile(tempFile.toString(), 500);
+        List<String> lines = Files.readAllLines(tempFile);
+        Files.delete(tempFile);
+
+        for (String line : lines) {
+            assertSameResult(line);
+        }
+    }
+
+    @Test
+    void testParseStreamWithMixedLineEndings() throws IOException {
+        String testData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\r\n" +
+                "\n" +
+                "2 123456789012 eni-4d3c2b1a 192.168.1.100 203.0.113.101 49154 23 6 15 12000 1620140761 1620140821 REJECT OK\r" +
+                "2 123456789012 eni-5e6f7g8h 192.168.1.101 198.51.100.3 49155 80 6 10 8000 1620140761 1620140821 ACCEPT OK";
+
+        FlowLogParser parser = new FlowLogParser();
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(testData.getBytes(StandardCharsets.UTF_8)), entries::add);
+
+        assertEquals(3, entries.size());
+        assertEquals(443, entries.get(0).getDstPort());
+        assertEquals(23, entries.get(1).getDstPort());
+        assertEquals(80, entries.get(2).getDstPort());
+        assertEquals("OK", entries.get(2).getLogStatus());
+    }
+
+    @Test
+    void testParseStreamWithLineLongerThanBuffer() throws IOException {
+        StringBuilder longLine = new StringBuilder("2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK");
+        while (longLine.length() < 200_000) {
+            longLine.append(" padding");
+        }
+        String testData = longLine + "\n" +
+                "2 123456789012 eni-4d3c2b1a 192.168.1.100 203.0.113.101 49154 23 6 15 12000 1620140761 1620140821 REJECT OK\n";
+
+        FlowLogParser parser = new FlowLogParser();
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(testData.getBytes(StandardCharsets.UTF_8)), entries::add);
+
+        assertEquals(2, entries.size());
+        assertEquals("OK", entries.get(0).getLogStatus());
+        assertEquals(23, entries.get(1).getDstPort());
+    }
+
+    @Test
+    void testBatchesMatchEntries() throws IOException {
+        byte[] data = SampleDataGenerator.generateFlowLogs(10_000).getBytes(StandardCharsets.UTF_8);
+        FlowLogParser parser = new FlowLogParser();
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(data), entries::add);
+
+        List<Integer> sizes = new ArrayList<>();
+        List<FlowLogEntry> fromBatches = new ArrayList<>();
+        parser.parseFlowLogBatches(new ByteArrayInputStream(data), batch -> {
+            sizes.add(batch.size());
+            for (int row = 0; row < batch.size(); row++) {
+                fromBatches.add(batch.entry(row));
+            }
+        });
+
+        assertEquals(entries.size(), fromBatches.size());
+        assertTrue(sizes.stream().allMatch(size -> size > 0 && size <= FlowLogBatch.DEFAULT_CAPACITY));
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).toString(), fromBatches.get(i).toString());
+            assertEquals(entries.get(i).getBytes(), fromBatches.get(i).getBytes());
+            assertEquals(entries.get(i).getLogStatus(), fromBatches.get(i).getLogStatus());
+        }
+    }
+
+    @Test
+    void testBatchIsFilledUpToCapacity() throws IOException {
+        String line = "2 1 eni-1 10.0.0.1 10.0.0.2 1 443 6 1 1 1 2 ACCEPT OK\n";
+        FlowLogParser parser = new FlowLogParser();
+        List<Integer> sizes = new ArrayList<>();
+        // Short lines, so that one read holds more than a batch
+        parser.parseFlowLogBatches(new ByteArrayInputStream(line.repeat(5000).getBytes(StandardCharsets.UTF_8)),
+                batch -> sizes.add(batch.size()));
+
+        assertEquals(FlowLogBatch.DEFAULT_CAPACITY, sizes.get(0));
+        assertEquals(5000, sizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testProjectionDecodesOnlyRequestedFields() throws IOException {
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, new ParseErrorLog("flow log", System.err),
+                FlowLogFormat.DEFAULT, EnumSet.of(FlowField.DSTPORT, FlowField.PROTOCOL));
+        // Text columns that are not requested are skipped, whatever they hold
+        String testData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 x y\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 23 17 25 20000 1620140761 1620140821 ACCEPT OK\n";
+
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(testData.getBytes(StandardCharsets.UTF_8)), entries::add);
+
+        assertEquals(2, entries.size());
+        FlowLogEntry entry = entries.get(0);
+        assertEquals(2, entry.getVersion());
+        assertEquals(443, entry.getDstPort());
+        assertEquals(6, entry.getProtocol());
+        assertNull(entry.getSrcAddr());
+        assertNull(entry.getAction());
+        assertNull(entry.getLogStatus());
+        assertEquals(17, entries.get(1).getProtocol());
+    }
+
+    @Test
+    void testProjectionRejectsTruncatedLines() throws IOException {
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()));
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, errors,
+                FlowLogFormat.DEFAULT, EnumSet.of(FlowField.DSTPORT, FlowField.PROTOCOL));
+        String full = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK";
+        String[] fields = full.split(" ");
+        StringBuilder testData = new StringBuilder(full).append('\n');
+        // Lines with 8 to 13 of the 14 fields have the requested ones, but are not complete records
+        for (int count = 8; count < fields.length; count++) {
+            testData.append(String.join(" ", Arrays.copyOf(fields, count))).append('\n');
+        }
+
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(testData.toString().getBytes(StandardCharsets.UTF_8)), entries::add);
+
+        assertEquals(1, entries.size());
+        assertEquals(6, errors.getFailureCount(ParseFailure.INSUFFICIENT_FIELDS));
+    }
+
+    @Test
+    void testProjectionRejectsInvalidNumbersInSkippedColumns() throws IOException {
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()));
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, errors,
+                FlowLogFormat.DEFAULT, EnumSet.of(FlowField.DSTPORT, FlowField.PROTOCOL));
+        String testData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 abc 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 x 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 xyz ACCEPT OK\n";
+
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(testData.getBytes(StandardCharsets.UTF_8)), entries::add);
+
+        // The same lines are accepted as with a full parse
+        List<FlowLogEntry> fullEntries = new ArrayList<>();
+        new FlowLogParser(FlowMetrics.NOOP, new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream())))
+                .parseFlowLogs(new ByteArrayInputStream(testData.getBytes(StandardCharsets.UTF_8)), fullEntries::add);
+
+        assertEquals(1, entries.size());
+        assertEquals(fullEntries.size(), entries.size());
+        assertEquals(3, errors.getFailureCount(ParseFailure.INVALID_NUMBER));
+    }
+
+    @Test
+    void testPackedIdentifiersWithoutText() throws IOException {
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, new ParseErrorLog("flow log", System.err),
+                FlowLogFormat.DEFAULT, EnumSet.of(FlowField.DSTPORT),
+                EnumSet.of(FlowField.SRCADDR, FlowField.DSTADDR, FlowField.INTERFACE_ID))
+                .withPackedIdentifiers();
+        String testData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 2001:db8::1 - 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+
+        List<long[]> addresses = new ArrayList<>();
+        parser.parseFlowLogBatches(new ByteArrayInputStream(testData.getBytes(StandardCharsets.UTF_8)), batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                assertNull(batch.srcAddrs()[i]);
+                assertNull(batch.interfaceIds()[i]);
+                assertEquals(Hashing.hash("eni-0a1b2c3d"), batch.interfaceIdHashes()[i]);
+                assertEquals(i == 0 ? Hashing.hash("10.0.1.201") : Hashing.hash("2001:db8::1"), batch.srcAddrHashes()[i]);
+                addresses.add(new long[]{batch.srcIpv4s()[i], batch.dstIpv4s()[i]});
+            }
+        });
+
+        assertEquals(2, addresses.size());
+        assertArrayEquals(new long[]{Ipv4.parse("10.0.1.201"), Ipv4.parse("198.51.100.2")}, addresses.get(0));
+        assertArrayEquals(new long[]{Ipv4.NONE, Ipv4.NONE}, addresses.get(1));
+    }
+
+    @Test
+    void testHeaderSetsFormatOfInput() throws IOException {
+        ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(warnings, true));
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, errors);
+        String testData = "version vpc-id dstport protocol srcaddr tcp-flags action\n" +
+                "3 vpc-1 443 6 10.0.1.201 2 ACCEPT\n" +
+                "version vpc-id dstport protocol srcaddr tcp-flags action\n" +
+                "2 vpc-1 443 6 10.0.1.201 2 ACCEPT\n" +
+                "3 vpc-1 80 6 10.0.1.202 2 REJECT\n";
+
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(testData.getBytes(StandardCharsets.UTF_8)), entries::add);
+
+        // The repeated header is skipped; the version 2 record does not match the version 3 format
+        assertEquals(2, entries.size());
+        assertEquals(1, errors.getFailureCount(), warnings.toString());
+        assertEquals(1, errors.getFailureCount(ParseFailure.UNSUPPORTED_VERSION));
+        assertEquals(443, entries.get(0).getDstPort());
+        assertEquals("10.0.1.201", entries.get(0).getSrcAddr());
+        assertEquals("REJECT", entries.get(1).getAction());
+        assertNull(entries.get(1).getAccountId());
+        // The parser's own format is unchanged for the next input
+        assertEquals(FlowLogFormat.DEFAULT, parser.format());
+    }
+
+    @Test
+    void testRegionsParseInPlaceLikeStreams() throws IOException {
+        String header = "version vpc-id dstport protocol srcaddr interface-id action\n";
+        String testData = header +
+                "3 vpc-1 443 6 10.0.1.201 eni-1 ACCEPT\r\n" +
+                "3 vpc-1 80 6 10.0.1.202 eni-2 REJECT\r" +
+                "3 vpc-1 port 6 10.0.1.203 eni-3 ACCEPT\n" +
+                "3 vpc-1 22 6 10.0.1.204 eni-4 ACCEPT";
+        byte[] data = testData.getBytes(StandardCharsets.UTF_8);
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, new ParseErrorLog("flow log", System.err));
+        List<String> expected = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(data), entry -> expected.add(entry.toString()));
+
+        ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(warnings, true));
+        FlowLogParser fileParser = new FlowLogParser(FlowMetrics.NOOP, errors).forInput(data, 0, data.length);
+        FlowLogParser.ParseState state = fileParser.newParseState();
+        // The header and first record in one region, the rest in a direct buffer like a mapped file
+        int cut = testData.indexOf("3 vpc-1 80");
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).position(cut);
+        List<String> entries = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>();
+        Consumer<FlowLogBatch> consumer = batch -> {
+            for (int row = 0; row < batch.size(); row++) {
+                entries.add(batch.entry(row).toString());
+                hashes.add(batch.interfaceIdHashes()[row]);
+            }
+        };
+        fileParser.parseRegion(data, 0, cut, 0, state, consumer);
+        fileParser.parseRegion(direct, cut, state, consumer);
+
+        assertEquals(expected, entries);
+        assertEquals(List.of(Hashing.hash("eni-1"), Hashing.hash("eni-2"), Hashing.hash("eni-4")), hashes);
+        assertEquals(5, errors.getLineCount());
+        // Failed lines are located by their offset in the input
+        int failed = testData.indexOf("3 vpc-1 port");
+        ParseErrorLog.Sample sample = errors.getSamples().get(0);
+        assertEquals(failed, sample.getByteOffset());
+        assertEquals("3 vpc-1 port 6 10.0.1.203 eni-3 ACCEPT", sample.getText());
+        assertTrue(warnings.toString().startsWith("Warning: Failed to parse line at byte " + failed + ":"),
+                warnings.toString());
+    }
+
+    @Test
+    void testHeaderWithoutRequiredFieldIsReported() {
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, new ParseErrorLog("flow log", System.err),
+                FlowLogFormat.DEFAULT, EnumSet.of(FlowField.DSTPORT, FlowField.PROTOCOL));
+        byte[] data = "version srcaddr protocol\n2 10.0.1.201 6\n".getBytes(StandardCharsets.UTF_8);
+
+        IOException e = assertThrows(IOException.class,
+                () -> parser.parseFlowLogs(new ByteArrayInputStream(data), entry -> { }));
+        assertTrue(e.getMessage().contains("dstport"));
+        assertThrows(IOException.class, () -> parser.forInput(data, 0, data.length));
+    }
+
+    @Test
+    void testUnknownFieldsAllowNewerVersions() throws IOException {
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, new ParseErrorLog("flow log", System.err),
+                FlowLogFormat.parse("${version} ${dstport} ${protocol} ${reject-reason}"), null);
+        List<FlowLogEntry> entries = new ArrayList<>();
+        byte[] data = "8 443 6 BPA\n2 80 6 -\n1 22 6 -\n".getBytes(StandardCharsets.UTF_8);
+        parser.parseFlowLogs(new ByteArrayInputStream(data), entries::add);
+
+        assertEquals(2, entries.size());
+        assertEquals(8, entries.get(0).getVersion());
+    }
+
+    /**
+     * Asserts that the byte parser accepts or rejects a line exactly like the
+     * original split-based parser, and yields the same field values.
+     */
+    private static void assertSameResult(String line) {
+        FlowLogEntry expected = null;
+        String expectedError = null;
+        try {
+            expected = parseWithSplit(line);
+        } catch (IllegalArgumentException e) {
+            expectedError = e.getMessage();
+        }
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        FlowLogEntry actual = null;
+        String actualError = null;
+        try {
+            actual = new FlowLogParser().parseLine(bytes, 0, bytes.length);
+        } catch (IllegalArgumentException e) {
+            actualError = e.getMessage();
+        }
+
+        assertEquals(expectedError, actualError, line);
+        if (expected == null) {
+            return;
+        }
+        assertEquals(expected.getVersion(), actual.getVersion(), line);
+        assertEquals(expected.getAccountId(), actual.getAccountId(), line);
+        assertEquals(expected.getInterfaceId(), actual.getInterfaceId(), line);
+        assertEquals(expected.getSrcAddr(), actual.getSrcAddr(), line);
+        assertEquals(expected.getDstAddr(), actual.getDstAddr(), line);
+        assertEquals(expected.getSrcPort(), actual.getSrcPort(), line);
+        assertEquals(expected.getDstPort(), actual.getDstPort(), line);
+        assertEquals(expected.getProtocol(), actual.getProtocol(), line);
+        assertEquals(expected.getPackets(), actual.getPackets(), line);
+        assertEquals(expected.getBytes(), actual.getBytes(), line);
+        assertEquals(expected.getStartTime(), actual.getStartTime(), line);
+        assertEquals(expected.getEndTime(), actual.getEndTime(), line);
+        assertEquals(expected.getAction(), actual.getAction(), line);
+        assertEquals(expected.getLogStatus(), actual.getLogStatus(), line);
+    }
+
+    /**
+     * The original String based parsing logic, kept as the reference behaviour,
+     * with packets and bytes read as longs.
+     */
+    private static FlowLogEntry parseWithSplit(String line) {
+        String[] parts = line.trim().split("\\s+");
+
+        if (parts.length < 14) {
+            throw new IllegalArgumentException("Invalid flow log format: insufficient fields");
+        }
+
+        try {
+            int version = Integer.parseInt(parts[0]);
+            if (version != 2) {
+                throw new IllegalArgumentException("Unsupported flow log version: " + version);
+            }
+            return new FlowLogEntry(
+                version, parts[1], parts[2], parts[3], parts[4],
+                Integer.parseInt(parts[5]), Integer.parseInt(parts[6]), Integer.parseInt(parts[7]),
+                Long.parseLong(parts[8]), Long.parseLong(parts[9]),
+                Long.parseLong(parts[10]), Long.parseLong(parts[11]), parts[12], parts[13]
+            );
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid numeric value in flow log", e);
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package com.flowparser.parser;
 
+import com.flowparser.util.Ipv4;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -99,4 +101,107 @@ class LookupTableParserTest {
         assertEquals("sv_p1", lookupTable.get("25,tcp"));
         assertEquals("sv_p2", lookupTable.get("443,tcp"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseAddressRules() throws IOException {
+        String testData = "dstaddr,dstport,protocol,tag\n" +
+                          "10.0.0.0/8,443,TCP,Internal-HTTPS\n" +
+                          "10.1.2.3,49152-65535,udp,ephemeral\n" +
+                          "*,*,icmp,any\n" +
+                          "10.0.0.0/33,443,tcp,bad_prefix\n" +
+                          "10.0.0/8,443,tcp,bad_address\n" +
+                          "10.0.0.0/8,2000-1000,tcp,bad_range\n" +
+                          "10.0.0.0/8,443,nosuch,bad_protocol\n" +
+                          "10.0.0.0/8,443,tcp\n";
+        Path tempFile = Files.createTempFile("lookup", ".csv");
+        Files.writeString(tempFile, testData);
+        
+        List<AddressRule> rules = new LookupTableParser().parseAddressRules(tempFile.toString());
+        
+        Files.delete(tempFile);
+        
+        // Invalid lines are skipped
+        assertEquals(3, rules.size());
+        AddressRule rule = rules.get(0);
+        assertEquals((int) Ipv4.parse("10.0.0.0"), rule.getNetwork());
+        assertEquals(8, rule.getPrefixLength());
+        assertEquals(443, rule.getFromPort());
+        assertEquals(443, rule.getToPort());
+        assertEquals(6, rule.getProtocol());
+        assertEquals("internal-https", rule.getTag());
+        
+        rule = rules.get(1);
+        assertEquals(32, rule.getPrefixLength());
+        assertEquals(49152, rule.getFromPort());
+        assertEquals(65535, rule.getToPort());
+        assertEquals(17, rule.getProtocol());
+        
+        rule = rules.get(2);
+        assertEquals(AddressRule.ANY_ADDRESS, rule.getPrefixLength());
+        assertEquals(0, rule.getFromPort());
+        assertEquals(65535, rule.getToPort());
+        assertEquals(1, rule.getProtocol());
+    }
+
+    @Test
+    void testParseTagRules() throws IOException {
+        String testData = "action,srcaddr,dstport,protocol,tag\n" +
+                          "REJECT,*,*,tcp,Rejected-TCP\n" +
+                          "accept,192.168.0.0/16,443,tcp,lan-https\n" +
+                          ",,1024-65535,,\n" +
+                          ",,1024-65535,,high\n" +
+                          "drop,*,*,*,bad_action\n" +
+                          "*,*,*,nosuch,bad_protocol\n" +
+                          "*,*,*\n";
+        Path tempFile = Files.createTempFile("rules", ".csv");
+        Files.writeString(tempFile, testData);
+        
+        List<TagRule> rules = new LookupTableParser().parseTagRules(tempFile.toString());
+        
+        Files.delete(tempFile);
+        
+        // Invalid lines are skipped
+        assertEquals(3, rules.size());
+        TagRule rule = rules.get(0);
+        assertEquals("REJECT", rule.getAction());
+        assertEquals(AddressRule.ANY_ADDRESS, rule.getSrcPrefixLength());
+        assertEquals(AddressRule.ANY_ADDRESS, rule.getDstPrefixLength());
+        assertEquals(0, rule.getDstFromPort());
+        assertEquals(65535, rule.getDstToPort());
+        assertEquals(6, rule.getProtocol());
+        assertEquals("rejected-tcp", rule.getTag());
+        
+        rule = rules.get(1);
+        assertEquals("ACCEPT", rule.getAction());
+        assertEquals((int) Ipv4.parse("192.168.0.0"), rule.getSrcNetwork());
+        assertEquals(16, rule.getSrcPrefixLength());
+        assertEquals(443, rule.getDstFromPort());
+        assertEquals(443, rule.getDstToPort());
+        
+        // Empty values match any value
+        rule = rules.get(2);
+        assertEquals(TagRule.ANY_ACTION, rule.getAction());
+        assertEquals(TagRule.ANY_PROTOCOL, rule.getProtocol());
+        assertEquals(1024, rule.getDstFromPort());
+        assertEquals(0, rule.getSrcFromPort());
+        assertEquals(65535, rule.getSrcToPort());
+        assertEquals("high", rule.getTag());
+    }
+
+    @Test
+    void testParseTagRulesWithInvalidHeader() throws IOException {
+        Path unknownColumn = Files.createTempFile("rules", ".csv");
+        Files.writeString(unknownColumn, "dstport,flags,tag\n443,3,x\n");
+        Path noTag = Files.createTempFile("rules", ".csv");
+        Files.writeString(noTag, "dstport,protocol\n443,tcp\n");
+        
+        LookupTableParser parser = new LookupTableParser();
+        try {
+            assertThrows(IOException.class, () -> parser.parseTagRules(unknownColumn.toString()));
+            assertThrows(IOException.class, () -> parser.parseTagRules(noTag.toString()));
+        } finally {
+            Files.delete(unknownColumn);
+            Files.delete(noTag);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.flowparser.parser;
+
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.model.FlowLogEntry;
+import com.flowparser.model.ParseFailure;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseErrorLogTest {
+    private static final String VALID_LINE =
+            "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+
+    @Test
+    void testCountsByCategoryAndSamplesOnlyTheFirstFailures() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(output, true), 3, 60_000, 1.0);
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, errors);
+
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            data.append("too few fields\n");
+            data.append("3 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1 2 ACCEPT OK\n");
+            data.append("2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 port 6 25 20000 1 2 ACCEPT OK\n");
+            data.append(VALID_LINE);
+        }
+        List<FlowLogEntry> entries = new ArrayList<>();
+        parser.parseFlowLogs(new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8)), entries::add);
+        errors.finish();
+
+        assertEquals(50, entries.size());
+        assertEquals(200, errors.getLineCount());
+        assertEquals(150, errors.getFailureCount());
+        assertEquals(50, errors.getFailureCount(ParseFailure.INSUFFICIENT_FIELDS));
+        assertEquals(50, errors.getFailureCount(ParseFailure.UNSUPPORTED_VERSION));
+        assertEquals(50, errors.getFailureCount(ParseFailure.INVALID_NUMBER));
+
+        List<ParseErrorLog.Sample> samples = errors.getSamples();
+        assertEquals(3, samples.size());
+        assertEquals(ParseFailure.INSUFFICIENT_FIELDS, samples.get(0).getFailure());
+        assertEquals(1, samples.get(0).getLineNumber());
+        assertEquals("too few fields", samples.get(0).getText());
+        assertEquals(ParseFailure.UNSUPPORTED_VERSION, samples.get(1).getFailure());
+        assertEquals(ParseFailure.INVALID_NUMBER, samples.get(2).getFailure());
+
+        // Three individual warnings and one final summary
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\\R");
+        assertEquals(4, lines.length);
+        assertEquals("Warning: Failed to parse line 1: Invalid flow log format: insufficient fields", lines[0]);
+        assertEquals("Warning: Failed to parse line 2: Unsupported flow log version: 3", lines[1]);
+        assertEquals("Warning: Failed to parse line 3: Invalid numeric value in flow log", lines[2]);
+        assertTrue(lines[3].contains("150 flow log lines failed to parse in total"));
+        assertTrue(lines[3].contains("INSUFFICIENT_FIELDS: 50, UNSUPPORTED_VERSION: 50, INVALID_NUMBER: 50"));
+    }
+
+    @Test
+    void testSampleTextIsTruncated() {
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()));
+        assertTrue(errors.record(ParseFailure.OTHER));
+        errors.sample(ParseFailure.OTHER, 7, "x".repeat(10_000), "Warning");
+
+        ParseErrorLog.Sample sample = errors.getSamples().get(0);
+        assertEquals(7, sample.getLineNumber());
+        assertEquals(256, sample.getText().length());
+    }
+
+    @Test
+    void testAbortsWhenErrorRatioIsExceeded() {
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()), 10, 60_000, 0.5);
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, errors);
+        String data = "not a flow log line\n".repeat(100_000);
+
+        TooManyParseErrorsException e = assertThrows(TooManyParseErrorsException.class, () ->
+                parser.parseFlowLogs(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), entry -> { }));
+        assertTrue(e.getMessage().contains("INSUFFICIENT_FIELDS"));
+        // Aborted after the first block rather than at the end of the input
+        assertTrue(errors.getLineCount() < 100_000);
+    }
+
+    @Test
+    void testErrorRatioIsCheckedAtEndOfShortInput() throws IOException {
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()), 10, 60_000, 0.4);
+        FlowLogParser parser = new FlowLogParser(FlowMetrics.NOOP, errors);
+        String data = VALID_LINE + "bad line\n";
+        parser.parseFlowLogs(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)), entry -> { });
+
+        // Too few lines to judge while parsing, but over the limit once the input has ended
+        errors.checkErrorRatio(false);
+        assertThrows(TooManyParseErrorsException.class, () -> errors.checkErrorRatio(true));
+    }
+
+    @Test
+    void testSummariesAreRateLimited() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(output, true), 0, 0, 1.0);
+        for (int i = 0; i < 5; i++) {
+            assertFalse(errors.record(ParseFailure.INVALID_NUMBER));
+        }
+        // With no interval every failure past the samples may print a summary
+        assertEquals(5, output.toString(StandardCharsets.UTF_8).split("\\R").length);
+
+        output.reset();
+        ParseErrorLog limited = new ParseErrorLog("flow log", new PrintStream(output, true), 0, 60_000, 1.0);
+        for (int i = 0; i < 10_000; i++) {
+            limited.record(ParseFailure.INVALID_NUMBER);
+        }
+        assertEquals(0, output.size());
+        assertEquals(10_000, limited.getFailureCount());
+    }
+}
@@ -0,0 +1,84 @@
+package com.flowparser.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReloadingLookupTableTest {
+
+    @Test
+    void testReloadsWhenFileChanges() throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("lookup");
+        Path lookupFile = directory.resolve("lookup.csv");
+        Files.writeString(lookupFile, "dstport,protocol,tag\n443,tcp,https\n");
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+
+        try (ReloadingLookupTable lookupTable = new ReloadingLookupTable(lookupFile.toString(),
+                new PrintStream(messages, true), 50)) {
+            CompiledLookupTable first = lookupTable.get();
+            int https = first.match(443, 6);
+            assertEquals("https", lookupTable.getTagDictionary().name(https));
+            assertEquals(CompiledLookupTable.NO_TAG, first.match(22, 6));
+
+            // Replace the file the way editors do, by moving a new one over it
+            Path newFile = directory.resolve("lookup.csv.tmp");
+            Files.writeString(newFile, "dstport,protocol,tag\n443,tcp,web\n22,tcp,ssh\n");
+            Files.move(newFile, lookupFile, StandardCopyOption.REPLACE_EXISTING);
+            waitForReload(lookupTable);
+
+            CompiledLookupTable second = lookupTable.get();
+            assertNotSame(first, second);
+            assertSame(lookupTable.getTagDictionary(), second.getTagDictionary());
+            assertEquals("web", lookupTable.getTagDictionary().name(second.match(443, 6)));
+            assertEquals("ssh", lookupTable.getTagDictionary().name(second.match(22, 6)));
+            // Ids assigned before the reload keep their names, and the old table is unchanged
+            assertEquals("https", lookupTable.getTagDictionary().name(https));
+            assertEquals(https, first.match(443, 6));
+            assertTrue(messages.toString().contains("Reloaded lookup table"));
+        } finally {
+            Files.deleteIfExists(lookupFile);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testFailedReloadKeepsTable() throws IOException {
+        Path directory = Files.createTempDirectory("lookup");
+        Path lookupFile = directory.resolve("lookup.csv");
+        Files.writeString(lookupFile, "dstport,protocol,tag\n443,tcp,https\n");
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+
+        try (ReloadingLookupTable lookupTable = new ReloadingLookupTable(lookupFile.toString(),
+                new PrintStream(messages, true), 50)) {
+            CompiledLookupTable table = lookupTable.get();
+            Files.delete(lookupFile);
+
+            assertFalse(lookupTable.reload());
+            assertSame(table, lookupTable.get());
+            assertTrue(messages.toString().contains("Warning: Failed to reload lookup table"));
+        } finally {
+            Files.deleteIfExists(lookupFile);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testMissingFileIsRejected() {
+        assertThrows(IOException.class, () -> new ReloadingLookupTable("no-such-lookup-table.csv"));
+    }
+
+    private static void waitForReload(ReloadingLookupTable lookupTable) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (lookupTable.getReloadCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(lookupTable.getReloadCount() > 0, "table was not reloaded");
+    }
+}
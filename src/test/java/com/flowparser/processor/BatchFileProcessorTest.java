@@ -0,0 +1,81 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.Statistics;
+import com.flowparser.parser.LookupTableParser;
+import com.flowparser.util.SampleDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchFileProcessorTest {
+
+    @Test
+    void testDirectoryMatchesConcatenatedInput() throws IOException {
+        Path directory = Files.createTempDirectory("flowlogs");
+        Path nested = Files.createDirectory(directory.resolve("eni-1"));
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path combined = Files.createTempFile("combined", ".log");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+
+        int[] sizes = {10, 2000, 1, 300, 0, 50};
+        for (int i = 0; i < sizes.length; i++) {
+            Path file = (i % 2 == 0 ? directory : nested).resolve("part-" + i + ".log");
+            SampleDataGenerator.generateFlowLogFile(file.toString(), sizes[i]);
+            Files.write(combined, Files.readAllBytes(file), StandardOpenOption.APPEND);
+        }
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        List<Path> files = BatchFileProcessor.resolveInputs(directory.toString());
+        Statistics batch = new BatchFileProcessor(processor, 3).process(files);
+        Statistics sequential = processor.processFlowLogs(combined.toString());
+
+        deleteRecursively(directory);
+        Files.delete(lookupFile);
+        Files.delete(combined);
+
+        assertEquals(sizes.length, files.size());
+        assertEquals(sequential.getTagCounts(), batch.getTagCounts());
+        assertEquals(sequential.getPortProtocolCounts(), batch.getPortProtocolCounts());
+    }
+
+    @Test
+    void testGlobAndLargestFirstOrder() throws IOException {
+        Path directory = Files.createTempDirectory("flowlogs");
+        Path small = directory.resolve("a.log");
+        Path large = directory.resolve("b.log");
+        Path medium = directory.resolve("c.log");
+        Path ignored = directory.resolve("notes.txt");
+        SampleDataGenerator.generateFlowLogFile(small.toString(), 1);
+        SampleDataGenerator.generateFlowLogFile(large.toString(), 100);
+        SampleDataGenerator.generateFlowLogFile(medium.toString(), 10);
+        Files.writeString(ignored, "not a flow log");
+
+        String glob = directory.toString().replace('\\', '/') + "/*.log";
+        assertTrue(BatchFileProcessor.isBatchInput(glob));
+        assertTrue(BatchFileProcessor.isBatchInput(directory.toString()));
+        assertFalse(BatchFileProcessor.isBatchInput(small.toString()));
+
+        List<Path> files = BatchFileProcessor.resolveInputs(glob);
+        List<Path> schedule = BatchFileProcessor.largestFirst(files);
+
+        deleteRecursively(directory);
+
+        assertEquals(List.of(large, medium, small), schedule);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -1,13 +1,37 @@
 package com.flowparser.processor;
 
+import com.flowparser.io.FlowLogCache;
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.model.Breakdown;
+import com.flowparser.model.ConcurrentStatistics;
 import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.CompiledLookupTable;
+import com.flowparser.parser.CompiledRuleSet;
+import com.flowparser.parser.FlowLogFormat;
+import com.flowparser.parser.LookupTableParser;
+import com.flowparser.parser.ParseErrorLog;
+import com.flowparser.util.HyperLogLog;
+import com.flowparser.util.SampleDataGenerator;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -50,6 +74,35 @@ class FlowLogProcessorTest {
         assertEquals(1, portProtocolCounts.get("80,tcp"));
     }
     
+    @Test
+    void testBreakdownsAreOnlyKeptWhenAsked() throws IOException {
+        String flowLogData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-4d3c2b1a 192.168.1.100 198.51.100.2 49154 443 6 15 12000 1620140761 1620140821 ACCEPT OK\n";
+        Path tempFile = Files.createTempFile("flowlogs", ".test");
+        Files.writeString(tempFile, flowLogData);
+
+        CompiledLookupTable lookupTable = CompiledLookupTable.compile(Map.of("443,tcp", "https"), new TagDictionary());
+        Statistics plain = new FlowLogProcessor(lookupTable).processFlowLogs(tempFile.toString());
+        Statistics detailed = new FlowLogProcessor(lookupTable, FlowMetrics.NOOP,
+                new ParseErrorLog("flow log", System.err), FlowLogFormat.DEFAULT, HyperLogLog.DEFAULT_PRECISION, null,
+                EnumSet.allOf(Breakdown.class)).processFlowLogs(tempFile.toString());
+
+        Files.delete(tempFile);
+
+        assertEquals(plain.getTagCounts(), detailed.getTagCounts());
+        assertFalse(plain.hasTopAddresses());
+        assertFalse(plain.hasDistinctCounts());
+        assertTrue(plain.getTopSourceAddresses(5).isEmpty());
+
+        assertTrue(detailed.hasTopAddresses());
+        assertTrue(detailed.hasDistinctCounts());
+        assertEquals(2, detailed.getTopSourceAddresses(5).size());
+        int https = detailed.getTagDictionary().idOf("https");
+        assertEquals(2, detailed.getDistinctSourceAddresses(https));
+        assertEquals(1, detailed.getDistinctDestinationAddresses(https));
+        assertEquals(2, detailed.getDistinctInterfaces(https));
+    }
+
     @Test
     void testProcessEmptyFlowLogs() throws IOException {
         // Create lookup table
@@ -71,4 +124,346 @@ class FlowLogProcessorTest {
         assertTrue(statistics.getTagCounts().isEmpty());
         assertTrue(statistics.getPortProtocolCounts().isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParallelProcessingMatchesSequential() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".test");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        SampleDataGenerator.generateFlowLogFile(flowLogFile.toString(), 20000);
+        // An invalid line and a last line without a terminator
+        Files.writeString(flowLogFile, "not a flow log line\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+                StandardOpenOption.APPEND);
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Statistics sequential = processor.processFlowLogs(flowLogFile.toString());
+        Statistics parallel = processor.processFlowLogs(flowLogFile.toString(), 4);
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+
+        assertEquals(sequential.getTagCounts(), parallel.getTagCounts());
+        assertEquals(sequential.getPortProtocolCounts(), parallel.getPortProtocolCounts());
+        assertEquals(20001, parallel.getTagCounts().values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testParallelProcessingOfEmptyFile() throws IOException {
+        Path tempFile = Files.createTempFile("flowlogs", ".test");
+
+        FlowLogProcessor processor = new FlowLogProcessor(new HashMap<>());
+        Statistics statistics = processor.processFlowLogs(tempFile.toString(), 4);
+
+        Files.delete(tempFile);
+
+        assertTrue(statistics.getTagCounts().isEmpty());
+        assertTrue(statistics.getPortProtocolCounts().isEmpty());
+    }
+
+    @Test
+    void testGzipInputMatchesPlain() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".test");
+        Path gzipFile = Files.createTempFile("flowlogs", ".test.gz");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        SampleDataGenerator.generateFlowLogFile(flowLogFile.toString(), 5000);
+        // Two members, as produced by appending gzip files
+        byte[] content = Files.readAllBytes(flowLogFile);
+        int half = content.length / 2;
+        try (OutputStream out = Files.newOutputStream(gzipFile)) {
+            for (int[] range : new int[][]{{0, half}, {half, content.length}}) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                gzip.write(content, range[0], range[1] - range[0]);
+                gzip.finish();
+            }
+        }
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Statistics plain = processor.processFlowLogs(flowLogFile.toString());
+        Statistics sequential = processor.processFlowLogs(gzipFile.toString());
+        Statistics parallel = processor.processFlowLogs(gzipFile.toString(), 4);
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+        Files.delete(gzipFile);
+
+        assertEquals(plain.getTagCounts(), sequential.getTagCounts());
+        assertEquals(plain.getPortProtocolCounts(), sequential.getPortProtocolCounts());
+        assertEquals(plain.getTagCounts(), parallel.getTagCounts());
+        assertEquals(plain.getPortProtocolCounts(), parallel.getPortProtocolCounts());
+    }
+
+    @Test
+    void testCustomFormatWithHeaderMatchesDefaultFormat() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".test");
+        Path customFile = Files.createTempFile("flowlogs", ".custom");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        SampleDataGenerator.generateFlowLogFile(flowLogFile.toString(), 5000);
+
+        // Same records in a version 5 format with the port and protocol columns swapped
+        StringBuilder custom = new StringBuilder("version vpc-id srcaddr dstaddr srcport protocol dstport flow-direction action\n");
+        for (String line : Files.readAllLines(flowLogFile)) {
+            String[] parts = line.trim().split("\\s+");
+            custom.append("5 vpc-0a1b2c3d ").append(parts[3]).append(' ').append(parts[4]).append(' ')
+                    .append(parts[5]).append(' ').append(parts[7]).append(' ').append(parts[6])
+                    .append(" ingress ").append(parts[12]).append('\n');
+        }
+        Files.writeString(customFile, custom);
+
+        ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(warnings, true));
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().compileLookupTable(lookupFile.toString()),
+                FlowMetrics.NOOP, errors, FlowLogFormat.DEFAULT);
+        Statistics plain = processor.processFlowLogs(flowLogFile.toString());
+        Statistics sequential = processor.processFlowLogs(customFile.toString());
+        Statistics chunked = processor.processFlowLogs(customFile.toString(), 4);
+        Statistics pipelined = new PipelinedFlowLogProcessor(processor, 4, 16 * 1024)
+                .process(new ByteArrayInputStream(Files.readAllBytes(customFile)));
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+        Files.delete(customFile);
+
+        assertEquals(0, errors.getFailureCount(), warnings.toString());
+        for (Statistics statistics : List.of(sequential, chunked, pipelined)) {
+            assertEquals(plain.getTagCounts(), statistics.getTagCounts());
+            assertEquals(plain.getPortProtocolCounts(), statistics.getPortProtocolCounts());
+        }
+    }
+
+    @Test
+    void testCachedRunMatchesParsedRunWithMalformedLines() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        Path cache = FlowLogCache.sidecarFor(flowLogFile);
+        Files.writeString(lookupFile, "dstport,protocol,tag\n443,tcp,https\n23,tcp,telnet\n");
+        String valid = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+        Files.writeString(flowLogFile, valid
+                // Truncated, and with garbage in fields that tagging does not read
+                + "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761\n"
+                + "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 abc 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n"
+                + "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 23 6 25 20000 1620140761 xyz ACCEPT OK\n"
+                + "2 123456789012 eni-0a1b2c3d not-an-address - 49153 23 6 25 20000 1620140761 1620140821 - -\n"
+                + valid);
+
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()));
+        FlowLogProcessor processor = new FlowLogProcessor(CompiledLookupTable.compile(
+                new LookupTableParser().parseLookupTable(lookupFile.toString()), new TagDictionary()),
+                FlowMetrics.NOOP, errors);
+        Statistics parsed = processor.processFlowLogs(flowLogFile.toString());
+        Statistics writing = processor.processFlowLogsCached(flowLogFile.toString(), 1);
+        Statistics reading = processor.processFlowLogsCached(flowLogFile.toString(), 1);
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+        Files.delete(cache);
+
+        assertEquals(Map.of("https", 2, "telnet", 1), parsed.getTagCounts());
+        assertEquals(parsed.getTagCounts(), writing.getTagCounts());
+        assertEquals(parsed.getTagCounts(), reading.getTagCounts());
+        assertEquals(parsed.getPortProtocolCounts(), reading.getPortProtocolCounts());
+    }
+
+    @Test
+    void testCacheIsTiedToHeaderFormat() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        Path cache = FlowLogCache.sidecarFor(flowLogFile);
+        Files.writeString(lookupFile, "dstport,protocol,tag\n443,tcp,https\n");
+        String records = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+        Files.writeString(flowLogFile, "version account-id interface-id srcaddr dstaddr srcport dstport protocol "
+                + "packets bytes start end action log-status\n" + records);
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Statistics before = processor.processFlowLogsCached(flowLogFile.toString(), 1);
+
+        // Swap the port columns in the header, keeping the size and modification time
+        FileTime modified = Files.getLastModifiedTime(flowLogFile);
+        Files.writeString(flowLogFile, "version account-id interface-id srcaddr dstaddr dstport srcport protocol "
+                + "packets bytes start end action log-status\n" + records);
+        Files.setLastModifiedTime(flowLogFile, modified);
+        Statistics after = processor.processFlowLogsCached(flowLogFile.toString(), 1);
+        Statistics parsed = processor.processFlowLogs(flowLogFile.toString());
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+        Files.delete(cache);
+
+        assertEquals(Map.of("https", 1), before.getTagCounts());
+        assertEquals(parsed.getTagCounts(), after.getTagCounts());
+        assertEquals(Map.of("Untagged", 1), after.getTagCounts());
+    }
+
+    @Test
+    void testCachedRunsMatchParsedRun() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        Path cache = FlowLogCache.sidecarFor(flowLogFile);
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        SampleDataGenerator.generateFlowLogFile(flowLogFile.toString(), 20000);
+
+        CompiledLookupTable lookupTable = CompiledLookupTable.compile(
+                new LookupTableParser().parseLookupTable(lookupFile.toString()), new TagDictionary());
+        FlowLogProcessor processor = new FlowLogProcessor(lookupTable, FlowMetrics.NOOP, new ParseErrorLog("flow log", System.err),
+                FlowLogFormat.DEFAULT, HyperLogLog.DEFAULT_PRECISION, null, EnumSet.of(Breakdown.TOP_ADDRESSES));
+        Statistics parsed = processor.processFlowLogs(flowLogFile.toString());
+        Statistics writing = processor.processFlowLogsCached(flowLogFile.toString(), 4);
+        assertTrue(Files.exists(cache));
+
+        // Replace the text without changing size or modification time: the cache is still used
+        FileTime modified = Files.getLastModifiedTime(flowLogFile);
+        Files.write(flowLogFile, new byte[(int) Files.size(flowLogFile)]);
+        Files.setLastModifiedTime(flowLogFile, modified);
+        Statistics reading = processor.processFlowLogsCached(flowLogFile.toString(), 1);
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+        Files.delete(cache);
+
+        for (Statistics statistics : List.of(writing, reading)) {
+            assertEquals(parsed.getTagCounts(), statistics.getTagCounts());
+            assertEquals(parsed.getPortProtocolCounts(), statistics.getPortProtocolCounts());
+            for (int id = 0; id < parsed.getTagDictionary().size(); id++) {
+                assertEquals(parsed.getTagBytes(id), statistics.getTagBytes(id));
+                assertEquals(parsed.getTagPackets(id), statistics.getTagPackets(id));
+            }
+        }
+        assertTrue(parsed.getTagBytes(0) > 0);
+        // The cache keeps the addresses; the estimates depend on the order records were added in
+        assertEquals(5, reading.getTopSourceAddresses(5).size());
+        assertEquals(5, reading.getTopDestinationAddresses(5).size());
+    }
+
+    @Test
+    void testAddressRulesTagByDestinationNetwork() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Files.writeString(lookupFile, "dstaddr,dstport,protocol,tag\n" +
+                "198.51.100.0/24,443,tcp,partner-https\n" +
+                "0.0.0.0/0,443,tcp,https\n" +
+                "10.0.0.0/8,49152-65535,tcp,internal-ephemeral\n");
+        String flowLogData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 203.0.113.9 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 198.51.100.2 10.0.1.201 443 49153 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 2001:db8::1 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().compileLookupTable(lookupFile.toString()));
+        Statistics statistics = processor.processFlowLogs(new ByteArrayInputStream(flowLogData.getBytes()));
+
+        Files.delete(lookupFile);
+
+        assertEquals(1, statistics.getTagCounts().get("partner-https"));
+        assertEquals(1, statistics.getTagCounts().get("https"));
+        assertEquals(1, statistics.getTagCounts().get("internal-ephemeral"));
+        assertEquals(1, statistics.getTagCounts().get("Untagged"));
+    }
+
+    @Test
+    void testRulesAddEveryMatchingTag() throws IOException {
+        Path rulesFile = Files.createTempFile("rules", ".csv");
+        Files.writeString(rulesFile, "srcaddr,dstaddr,srcport,dstport,protocol,action,tag\n" +
+                "*,10.0.0.0/8,*,*,*,*,internal\n" +
+                "*,*,*,443,tcp,*,https\n" +
+                "*,*,*,*,tcp,reject,rejected-tcp\n" +
+                "10.0.1.0/24,*,49152-65535,*,*,accept,subnet-ephemeral\n");
+        String flowLogData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 10.0.2.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 REJECT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 198.51.100.2 10.0.1.201 443 80 17 25 20000 1620140761 1620140821 ACCEPT OK\n" +
+                "2 123456789012 eni-0a1b2c3d 198.51.100.2 203.0.113.9 443 53 17 25 20000 1620140761 1620140821 ACCEPT OK\n";
+        Path flowLogFile = Files.createTempFile("flowlogs", ".test");
+        Files.writeString(flowLogFile, flowLogData);
+
+        CompiledLookupTable lookupTable = new LookupTableParser().compileLookupTable(writeEmptyLookupTable());
+        CompiledRuleSet rules = CompiledRuleSet.compile(
+                new LookupTableParser().parseTagRules(rulesFile.toString()), lookupTable.getTagDictionary());
+        FlowLogProcessor processor = new FlowLogProcessor(lookupTable, FlowMetrics.NOOP,
+                new ParseErrorLog("flow log", System.err), FlowLogFormat.DEFAULT, HyperLogLog.DEFAULT_PRECISION, rules);
+        Statistics sequential = processor.processFlowLogs(new ByteArrayInputStream(flowLogData.getBytes()));
+        Statistics parallel = processor.processFlowLogs(flowLogFile.toString(), 2);
+
+        Files.delete(rulesFile);
+        Files.delete(flowLogFile);
+
+        assertEquals(Map.of("internal", 2, "https", 2, "rejected-tcp", 1, "subnet-ephemeral", 1),
+                sequential.getRuleTagCounts());
+        assertEquals(sequential.getRuleTagCounts(), parallel.getRuleTagCounts());
+        // The single-tag lookup is unchanged
+        assertEquals(Map.of("Untagged", 4), sequential.getTagCounts());
+        assertThrows(IllegalArgumentException.class, () -> new FlowLogProcessor(
+                new LookupTableParser().compileLookupTable(writeEmptyLookupTable()), FlowMetrics.NOOP,
+                new ParseErrorLog("flow log", System.err), FlowLogFormat.DEFAULT, HyperLogLog.DEFAULT_PRECISION, rules));
+    }
+
+    @Test
+    void testReplacedLookupTableTagsLaterBatches() throws IOException {
+        TagDictionary tags = new TagDictionary();
+        AtomicReference<CompiledLookupTable> lookupTable = new AtomicReference<>(
+                CompiledLookupTable.compile(Map.of("443,tcp", "https"), tags));
+        FlowLogProcessor processor = new FlowLogProcessor(lookupTable::get, FlowMetrics.NOOP,
+                new ParseErrorLog("flow log", System.err), FlowLogFormat.DEFAULT, HyperLogLog.DEFAULT_PRECISION, null);
+        String flowLogData = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+
+        Statistics before = processor.processFlowLogs(new ByteArrayInputStream(flowLogData.getBytes()));
+        lookupTable.set(CompiledLookupTable.compile(Map.of("443,tcp", "web"), tags));
+        Statistics after = processor.processFlowLogs(new ByteArrayInputStream(flowLogData.getBytes()));
+        before.merge(after);
+
+        assertEquals(Map.of("https", 1, "web", 1), before.getTagCounts());
+    }
+
+    @Test
+    void testConcurrentStreamsMatchSequential() throws IOException, InterruptedException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().compileLookupTable(lookupFile.toString()));
+        Files.delete(lookupFile);
+        byte[][] inputs = new byte[4][];
+        Statistics sequential = new Statistics();
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = SampleDataGenerator.generateFlowLogs(5000).getBytes();
+            sequential.merge(processor.processFlowLogs(new ByteArrayInputStream(inputs[i])));
+        }
+
+        ConcurrentStatistics concurrent = processor.newConcurrentStatistics();
+        List<Thread> threads = new ArrayList<>();
+        List<Exception> failures = Collections.synchronizedList(new ArrayList<>());
+        for (byte[] input : inputs) {
+            Thread thread = new Thread(() -> {
+                try {
+                    processor.processFlowLogs(new ByteArrayInputStream(input), concurrent);
+                } catch (Exception e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), failures);
+        Statistics total = concurrent.snapshot();
+        assertEquals(sequential.getTagCounts(), total.getTagCounts());
+        assertEquals(sequential.getPortProtocolCounts(), total.getPortProtocolCounts());
+        assertEquals(20000, total.getTagCounts().values().stream().mapToInt(Integer::intValue).sum());
+        assertThrows(IllegalArgumentException.class, () -> processor.processFlowLogs(
+                new ByteArrayInputStream(inputs[0]), new ConcurrentStatistics(new TagDictionary())));
+    }
+
+    @Test
+    void testFormatWithoutPortIsRejected() {
+        FlowLogFormat format = FlowLogFormat.parse("${version} ${srcaddr} ${protocol}");
+        assertThrows(IllegalArgumentException.class, () -> new FlowLogProcessor(
+                new LookupTableParser().compileLookupTable(writeEmptyLookupTable()), FlowMetrics.NOOP,
+                new ParseErrorLog("flow log", System.err), format));
+    }
+
+    private static String writeEmptyLookupTable() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Files.writeString(lookupFile, "dstport,protocol,tag\n");
+        lookupFile.toFile().deleteOnExit();
+        return lookupFile.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.flowparser.processor;
+
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.CompiledLookupTable;
+import com.flowparser.parser.LookupTableParser;
+import com.flowparser.parser.ParseErrorLog;
+import com.flowparser.util.SampleDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForkJoinFileProcessorTest {
+
+    @Test
+    void testSmallRegionsMatchSequential() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        SampleDataGenerator.generateFlowLogFile(flowLogFile.toString(), 5000);
+        // A line much longer than a region and a last line without a terminator
+        Files.writeString(flowLogFile, "x".repeat(5000) + "\n" +
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK",
+                StandardOpenOption.APPEND);
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Statistics sequential = processor.processFlowLogs(flowLogFile.toString());
+        // Regions of 1 KB force a deep split
+        Statistics forkJoin = new ForkJoinFileProcessor(processor.parser(), processor::newStatistics,
+                processor::recordBatch, 4, 1024).process(flowLogFile.toString());
+        Statistics defaultRegions = processor.processFlowLogsForkJoin(flowLogFile.toString(), 2);
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+
+        assertEquals(sequential.getTagCounts(), forkJoin.getTagCounts());
+        assertEquals(sequential.getPortProtocolCounts(), forkJoin.getPortProtocolCounts());
+        assertEquals(sequential.getTagCounts(), defaultRegions.getTagCounts());
+        assertEquals(5001, forkJoin.getTagCounts().values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testSkewedFileWithHeader() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        Files.writeString(lookupFile, "dstport,protocol,tag\n443,tcp,https\n");
+        // One hot interface with most of the lines, in the default field order behind a header
+        StringBuilder data = new StringBuilder("version account-id interface-id srcaddr dstaddr srcport dstport "
+                + "protocol packets bytes start end action log-status\n");
+        for (int i = 0; i < 3000; i++) {
+            String eni = i % 50 == 0 ? "eni-cold" + i : "eni-hot";
+            data.append("2 123456789012 ").append(eni)
+                    .append(" 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n");
+        }
+        Files.writeString(flowLogFile, data);
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Statistics statistics = new ForkJoinFileProcessor(processor.parser(), processor::newStatistics,
+                processor::recordBatch, 3, 4096).process(flowLogFile.toString());
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+
+        assertEquals(3000, statistics.getTagCounts().get("https"));
+        assertNull(statistics.getTagCounts().get("Untagged"));
+    }
+
+    @Test
+    void testRegionsShareStatisticsPerThread() throws IOException {
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        String line = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+        Files.writeString(flowLogFile, line.repeat(2000) + "not a flow log line\n" + line.repeat(2000));
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()));
+        FlowLogProcessor processor = new FlowLogProcessor(CompiledLookupTable.compile(new HashMap<>(), new TagDictionary()),
+                FlowMetrics.NOOP, errors);
+        AtomicInteger created = new AtomicInteger();
+        Supplier<Statistics> factory = () -> {
+            created.incrementAndGet();
+            return processor.newStatistics();
+        };
+
+        // Hundreds of regions of 1 KB
+        Statistics statistics = new ForkJoinFileProcessor(processor.parser(), factory, processor::recordBatch, 4, 1024)
+                .process(flowLogFile.toString());
+        Files.delete(flowLogFile);
+
+        assertEquals(4000, statistics.getTagCounts().get("Untagged"));
+        // One per thread that ran regions, which may include the caller, and the merged result
+        assertTrue(created.get() <= 6, "created " + created.get());
+        assertEquals(1, errors.getFailureCount());
+        assertEquals(line.length() * 2000L, errors.getSamples().get(0).getByteOffset());
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        Files.writeString(lookupFile, "dstport,protocol,tag\n");
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Statistics statistics = processor.processFlowLogsForkJoin(flowLogFile.toString(), 4);
+
+        Files.delete(lookupFile);
+        Files.delete(flowLogFile);
+
+        assertTrue(statistics.getTagCounts().isEmpty());
+    }
+}
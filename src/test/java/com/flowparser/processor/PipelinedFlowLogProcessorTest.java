@@ -0,0 +1,94 @@
+package com.flowparser.processor;
+
+import com.flowparser.metrics.FlowMetrics;
+import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.parser.CompiledLookupTable;
+import com.flowparser.parser.LookupTableParser;
+import com.flowparser.parser.ParseErrorLog;
+import com.flowparser.util.SampleDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelinedFlowLogProcessorTest {
+
+    @Test
+    void testPipelineMatchesSequential() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Files.delete(lookupFile);
+
+        // Mixed line endings, an invalid line, a line longer than a block and no final terminator
+        String longLine = "2 123456789012 eni-" + "a".repeat(5000)
+                + " 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK";
+        String data = SampleDataGenerator.generateFlowLogs(3000).replace("\n", "\r\n")
+                + "not a flow log line\r"
+                + longLine + "\n"
+                + SampleDataGenerator.generateFlowLogs(3000)
+                + "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK";
+        byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+
+        Statistics sequential = processor.processFlowLogs(new ByteArrayInputStream(bytes));
+        Statistics pipelined = new PipelinedFlowLogProcessor(processor, 3, 1024).process(new ByteArrayInputStream(bytes));
+
+        assertEquals(sequential.getTagCounts(), pipelined.getTagCounts());
+        assertEquals(sequential.getPortProtocolCounts(), pipelined.getPortProtocolCounts());
+        assertEquals(6002, pipelined.getTagCounts().values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testFailuresAreReportedByStreamOffset() throws IOException {
+        ParseErrorLog errors = new ParseErrorLog("flow log", new PrintStream(new ByteArrayOutputStream()));
+        FlowLogProcessor processor = new FlowLogProcessor(CompiledLookupTable.compile(new HashMap<>(), new TagDictionary()),
+                FlowMetrics.NOOP, errors);
+        String line = "2 1 eni-1 10.0.0.1 10.0.0.2 1 443 6 1 1 1 2 ACCEPT OK\n";
+        // Far enough in that the invalid line is in a later block
+        String data = line.repeat(100) + "not a flow log line\n" + line;
+
+        byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+        new PipelinedFlowLogProcessor(processor, 2, 256).process(new ByteArrayInputStream(bytes));
+
+        assertEquals(1, errors.getFailureCount());
+        assertEquals(line.length() * 100, errors.getSamples().get(0).getByteOffset());
+    }
+
+    @Test
+    void testReadFailureIsReported() {
+        FlowLogProcessor processor = new FlowLogProcessor(new HashMap<>());
+        InputStream failing = new InputStream() {
+            private int calls;
+
+            @Override
+            public int read() {
+                return -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (++calls > 3) {
+                    throw new IOException("disk went away");
+                }
+                byte[] line = "2 1 eni-1 10.0.0.1 10.0.0.2 1 443 6 1 1 1 2 ACCEPT OK\n".getBytes(StandardCharsets.US_ASCII);
+                int count = Math.min(len, line.length);
+                System.arraycopy(line, 0, b, off, count);
+                return count;
+            }
+        };
+
+        IOException e = assertThrows(IOException.class,
+                () -> new PipelinedFlowLogProcessor(processor, 2, 64).process(failing));
+        assertEquals("disk went away", e.getMessage());
+    }
+}
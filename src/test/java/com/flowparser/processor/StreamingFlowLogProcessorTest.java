@@ -0,0 +1,123 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.Statistics;
+import com.flowparser.writer.StatisticsWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingFlowLogProcessorTest {
+
+    private static final String LINE = "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n";
+
+    @Test
+    void testSnapshotEveryNRecords() throws IOException {
+        Map<String, String> lookupTable = new HashMap<>();
+        lookupTable.put("443,tcp", "sv_p2");
+
+        // Record the total at each snapshot
+        List<Integer> snapshots = new ArrayList<>();
+        StatisticsWriter writer = new StatisticsWriter() {
+            @Override
+            public void writeStatistics(Statistics statistics, String outputFile) throws IOException {
+                snapshots.add(statistics.getTagCounts().getOrDefault("sv_p2", 0));
+                super.writeStatistics(statistics, outputFile);
+            }
+        };
+
+        Path outputFile = Files.createTempFile("output", ".csv");
+        StreamingFlowLogProcessor processor = new StreamingFlowLogProcessor(
+                new FlowLogProcessor(lookupTable), writer, outputFile.toString(), 4, 0);
+        Statistics statistics = processor.process(
+                Channels.newChannel(new ByteArrayInputStream(LINE.repeat(10).getBytes(StandardCharsets.UTF_8))));
+
+        List<String> lines = Files.readAllLines(outputFile);
+        Files.delete(outputFile);
+
+        assertEquals(List.of(4, 8, 10), snapshots);
+        assertEquals(10, statistics.getTagCounts().get("sv_p2"));
+        assertTrue(lines.contains("sv_p2,10"));
+        assertTrue(lines.contains("443,tcp,10"));
+    }
+
+    @Test
+    void testSnapshotOnInterval() throws IOException {
+        List<Integer> snapshots = new ArrayList<>();
+        StatisticsWriter writer = new StatisticsWriter() {
+            @Override
+            public void writeStatistics(Statistics statistics, String outputFile) throws IOException {
+                snapshots.add(statistics.getTagCounts().getOrDefault("Untagged", 0));
+                super.writeStatistics(statistics, outputFile);
+            }
+        };
+
+        // Deliver one line per read, pausing so that each read is past the interval
+        byte[] data = LINE.repeat(3).getBytes(StandardCharsets.UTF_8);
+        ByteArrayInputStream slowInput = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.read(b, off, Math.min(len, LINE.length()));
+            }
+        };
+
+        Path outputFile = Files.createTempFile("output", ".csv");
+        StreamingFlowLogProcessor processor = new StreamingFlowLogProcessor(
+                new FlowLogProcessor(new HashMap<>()), writer, outputFile.toString(), 0, 10);
+        processor.process(slowInput);
+        Files.delete(outputFile);
+
+        assertEquals(List.of(1, 2, 3, 3), snapshots);
+    }
+
+    @Test
+    void testSnapshotWhileStreamIsIdle() throws Exception {
+        PipedOutputStream collector = new PipedOutputStream();
+        PipedInputStream pipe = new PipedInputStream(collector);
+        Path outputFile = Files.createTempFile("output", ".csv");
+        Files.delete(outputFile);
+        StreamingFlowLogProcessor processor = new StreamingFlowLogProcessor(
+                new FlowLogProcessor(new HashMap<>()), new StatisticsWriter(), outputFile.toString(), 0, 50);
+
+        FutureTask<Statistics> run = new FutureTask<>(() -> processor.process(pipe));
+        Thread thread = new Thread(run);
+        thread.start();
+        try {
+            // A burst, after which the pipe stays open without more input
+            collector.write(LINE.repeat(3).getBytes(StandardCharsets.UTF_8));
+            collector.flush();
+
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (!(Files.exists(outputFile) && Files.readAllLines(outputFile).contains("Untagged,3"))
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(Files.readAllLines(outputFile).contains("Untagged,3"));
+            assertFalse(run.isDone());
+        } finally {
+            collector.close();
+        }
+
+        assertEquals(3, run.get(10, TimeUnit.SECONDS).getTagCounts().get("Untagged"));
+        Files.delete(outputFile);
+    }
+}
@@ -0,0 +1,100 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.Statistics;
+import com.flowparser.parser.LookupTableParser;
+import com.flowparser.util.SampleDataGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadFileProcessorTest {
+
+    @Test
+    void testManySmallFilesMatchBatchProcessing() throws IOException {
+        Path directory = Files.createTempDirectory("flowlogs");
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        SampleDataGenerator.generateLookupTableFile(lookupFile.toString());
+        List<Path> files = new ArrayList<>();
+        int records = 50;
+        for (int i = 0; i < 200; i++) {
+            Path file = directory.resolve("eni-" + i + ".log");
+            SampleDataGenerator.generateFlowLogFile(file.toString(), i % 7);
+            files.add(file);
+            records += i % 7;
+        }
+        // A compressed file
+        Path compressed = directory.resolve("eni-gz.log.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            out.write(SampleDataGenerator.generateFlowLogs(50).getBytes());
+        }
+        files.add(compressed);
+
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Statistics batch = new BatchFileProcessor(processor, 2).process(files);
+        // Platform threads stand in for virtual threads where the runtime has none
+        Statistics perFile = new VirtualThreadFileProcessor(processor, 8, 2, Executors::newCachedThreadPool).process(files);
+
+        deleteRecursively(directory);
+        Files.delete(lookupFile);
+
+        assertEquals(batch.getTagCounts(), perFile.getTagCounts());
+        assertEquals(batch.getPortProtocolCounts(), perFile.getPortProtocolCounts());
+        assertEquals(records, perFile.getTagCounts().values().stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testMissingFileFails() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Files.writeString(lookupFile, "dstport,protocol,tag\n");
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+        Files.delete(lookupFile);
+
+        VirtualThreadFileProcessor files = new VirtualThreadFileProcessor(processor, 1, 1, Executors::newCachedThreadPool);
+        assertThrows(IOException.class, () -> files.process(List.of(Path.of("no-such-flow-log.log"))));
+    }
+
+    @Test
+    void testVirtualThreads() throws IOException {
+        Path lookupFile = Files.createTempFile("lookup", ".csv");
+        Path flowLogFile = Files.createTempFile("flowlogs", ".log");
+        Files.writeString(lookupFile, "dstport,protocol,tag\n443,tcp,https\n");
+        Files.writeString(flowLogFile,
+                "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 443 6 25 20000 1620140761 1620140821 ACCEPT OK\n");
+        FlowLogProcessor processor = new FlowLogProcessor(new LookupTableParser().parseLookupTable(lookupFile.toString()));
+
+        try {
+            if (!VirtualThreadFileProcessor.isSupported()) {
+                assertThrows(UnsupportedOperationException.class,
+                        () -> new VirtualThreadFileProcessor(processor, 1, 1));
+            }
+            assumeTrue(VirtualThreadFileProcessor.isSupported(), "virtual threads need Java 21");
+
+            Statistics statistics = new VirtualThreadFileProcessor(processor, 1, 1)
+                    .process(List.of(flowLogFile, flowLogFile, flowLogFile));
+            assertEquals(3, statistics.getTagCounts().get("https"));
+        } finally {
+            Files.delete(lookupFile);
+            Files.delete(flowLogFile);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.flowparser.processor;
+
+import com.flowparser.model.Statistics;
+import com.flowparser.writer.StatisticsWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WindowedFlowLogProcessorTest {
+
+    // 2021-05-04T15:06:00Z
+    private static final long MINUTE = 1620140760;
+
+    private static String line(long startTime, int dstPort) {
+        return "2 123456789012 eni-0a1b2c3d 10.0.1.201 198.51.100.2 49153 " + dstPort + " 6 25 20000 "
+                + startTime + " " + (startTime + 60) + " ACCEPT OK\n";
+    }
+
+    private static Map<String, String> lookupTable() {
+        Map<String, String> lookupTable = new HashMap<>();
+        lookupTable.put("443,tcp", "sv_p2");
+        return lookupTable;
+    }
+
+    @Test
+    void testCountsPerWindow() throws IOException {
+        String input = line(MINUTE + 1, 443) + line(MINUTE + 59, 443) + line(MINUTE + 60, 80)
+                + line(MINUTE + 150, 443);
+
+        Path outputFile = Files.createTempFile("windows", ".csv");
+        WindowedFlowLogProcessor processor = new WindowedFlowLogProcessor(
+                new FlowLogProcessor(lookupTable()), new StatisticsWriter(), outputFile.toString(), 60, 0);
+        WindowedFlowLogProcessor.Summary summary = processor.process(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+
+        List<String> lines = Files.readAllLines(outputFile);
+        Files.delete(outputFile);
+
+        assertEquals(3, summary.getWindowsWritten());
+        assertEquals(0, summary.getLateRecords());
+        assertEquals(List.of(
+                "Window: 2021-05-04T15:06:00Z/2021-05-04T15:07:00Z",
+                "Tag Counts:",
+                "Tag,Count",
+                "sv_p2,2",
+                "",
+                "Port/Protocol Combination Counts:",
+                "Port,Protocol,Count",
+                "443,tcp,2",
+                "",
+                "Window: 2021-05-04T15:07:00Z/2021-05-04T15:08:00Z",
+                "Tag Counts:",
+                "Tag,Count",
+                "Untagged,1",
+                "",
+                "Port/Protocol Combination Counts:",
+                "Port,Protocol,Count",
+                "80,tcp,1",
+                "",
+                "Window: 2021-05-04T15:08:00Z/2021-05-04T15:09:00Z",
+                "Tag Counts:",
+                "Tag,Count",
+                "sv_p2,1",
+                "",
+                "Port/Protocol Combination Counts:",
+                "Port,Protocol,Count",
+                "443,tcp,1",
+                ""), lines);
+    }
+
+    @Test
+    void testLateRecordsWithinAllowedLateness() throws IOException {
+        // The second window's records arrive before a straggler of the first window
+        String input = line(MINUTE + 10, 443) + line(MINUTE + 70, 443) + line(MINUTE + 80, 443)
+                + line(MINUTE + 50, 443) + line(MINUTE + 130, 443) + line(MINUTE + 20, 443);
+
+        // With 30 seconds of lateness the straggler is counted; the last record is 110 seconds late
+        List<Long> starts = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        Path outputFile = Files.createTempFile("windows", ".csv");
+        WindowedFlowLogProcessor processor = new WindowedFlowLogProcessor(
+                new FlowLogProcessor(lookupTable()), recordingWriter(starts, counts), outputFile.toString(), 60, 30);
+        WindowedFlowLogProcessor.Summary summary = processor.process(
+                new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+        Files.delete(outputFile);
+
+        assertEquals(List.of(MINUTE, MINUTE + 60, MINUTE + 120), starts);
+        assertEquals(List.of(2, 2, 1), counts);
+        assertEquals(1, summary.getLateRecords());
+
+        // Without lateness the straggler's window was closed by the first record of the next one
+        starts.clear();
+        counts.clear();
+        processor = new WindowedFlowLogProcessor(
+                new FlowLogProcessor(lookupTable()), recordingWriter(starts, counts), outputFile.toString(), 60, 0);
+        summary = processor.process(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+        Files.delete(outputFile);
+
+        assertEquals(List.of(MINUTE, MINUTE + 60, MINUTE + 120), starts);
+        assertEquals(List.of(1, 2, 1), counts);
+        assertEquals(2, summary.getLateRecords());
+    }
+
+    @Test
+    void testClosedWindowsAreEvicted() throws IOException {
+        // Ten minutes apart over about a week, written one hourly window after another
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            input.append(line(MINUTE + i * 600L, 443));
+        }
+
+        List<Long> starts = new ArrayList<>();
+        List<Integer> counts = new ArrayList<>();
+        Path outputFile = Files.createTempFile("windows", ".csv");
+        WindowedFlowLogProcessor processor = new WindowedFlowLogProcessor(
+                new FlowLogProcessor(lookupTable()), recordingWriter(starts, counts), outputFile.toString(), 3600, 600);
+        WindowedFlowLogProcessor.Summary summary = processor.process(
+                new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)));
+        Files.delete(outputFile);
+
+        assertEquals(summary.getWindowsWritten(), starts.size());
+        assertEquals(1000, counts.stream().mapToInt(Integer::intValue).sum());
+        for (int i = 1; i < starts.size(); i++) {
+            assertEquals(starts.get(i - 1) + 3600, starts.get(i));
+        }
+    }
+
+    private static StatisticsWriter recordingWriter(List<Long> starts, List<Integer> counts) {
+        return new StatisticsWriter() {
+            @Override
+            public void writeWindow(Statistics statistics, long windowStart, long windowEnd, WritableByteChannel channel)
+                    throws IOException {
+                starts.add(windowStart);
+                counts.add(statistics.getTagCounts().getOrDefault("sv_p2", 0));
+                super.writeWindow(statistics, windowStart, windowEnd, channel);
+            }
+        };
+    }
+}
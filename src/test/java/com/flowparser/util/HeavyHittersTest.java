@@ -0,0 +1,91 @@
+package com.flowparser.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+    @Test
+    void testExactBelowCapacity() {
+        HeavyHitters hitters = new HeavyHitters(8);
+        hitters.add(1, 100);
+        hitters.add(2, 300);
+        hitters.add(3, 300);
+        hitters.add(1, 50);
+        hitters.add(4, 0);
+
+        List<HeavyHitters.Counter> top = hitters.top(10);
+        assertEquals(3, top.size());
+        // Equal weights are ordered by key
+        assertEquals(2, top.get(0).getKey());
+        assertEquals(3, top.get(1).getKey());
+        assertEquals(1, top.get(2).getKey());
+        assertEquals(150, top.get(2).getWeight());
+        assertEquals(0, top.get(2).getError());
+        assertEquals(750, hitters.totalWeight());
+    }
+
+    @Test
+    void testHeavyKeysSurviveManyDistinctKeys() {
+        // A few heavy keys hidden among a million light ones
+        HeavyHitters hitters = new HeavyHitters(64);
+        Map<Integer, Long> exact = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 1_000_000; i++) {
+            int key = i % 10 == 0 ? random.nextInt(5) : 1000 + random.nextInt(1_000_000);
+            long weight = 1 + random.nextInt(100);
+            hitters.add(key, weight);
+            exact.merge(key, weight, Long::sum);
+        }
+
+        assertEquals(64, hitters.size());
+        List<HeavyHitters.Counter> top = hitters.top(5);
+        for (HeavyHitters.Counter counter : top) {
+            assertTrue(counter.getKey() < 5, "unexpected key " + counter.getKey());
+            long actual = exact.get(counter.getKey());
+            assertTrue(counter.getWeight() >= actual);
+            assertTrue(counter.getWeight() - counter.getError() <= actual);
+        }
+    }
+
+    @Test
+    void testMergeMatchesSingleSummary() {
+        HeavyHitters single = new HeavyHitters(16);
+        HeavyHitters first = new HeavyHitters(16);
+        HeavyHitters second = new HeavyHitters(16);
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextInt(10_000);
+            single.add(key, 10);
+            (i % 2 == 0 ? first : second).add(key, 10);
+        }
+        first.merge(second);
+
+        assertEquals(single.totalWeight(), first.totalWeight());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(single.top(3).get(i).getKey(), first.top(3).get(i).getKey());
+        }
+    }
+
+    @Test
+    void testEvictedKeysCanReturn() {
+        // Churn through the table so that deletions shift probe sequences
+        HeavyHitters hitters = new HeavyHitters(4);
+        for (int round = 0; round < 1000; round++) {
+            for (int key = 0; key < 12; key++) {
+                hitters.add(key * 31 + round % 7, 1);
+            }
+            hitters.add(-1, 20);
+        }
+
+        assertEquals(4, hitters.size());
+        assertEquals(-1, hitters.top(1).get(0).getKey());
+        assertTrue(hitters.top(1).get(0).getWeight() >= 20_000);
+    }
+}
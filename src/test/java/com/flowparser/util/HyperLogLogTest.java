@@ -0,0 +1,67 @@
+package com.flowparser.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void testSmallCountsAreNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog();
+        assertEquals(0, sketch.estimate());
+        for (int i = 0; i < 100; i++) {
+            // Duplicates do not count
+            sketch.add(Hashing.hash("10.0.0." + i));
+            sketch.add(Hashing.hash("10.0.0." + i));
+        }
+        assertEquals(100, sketch.estimate(), 2);
+    }
+
+    @Test
+    void testLargeCountsWithinErrorBound() {
+        for (int precision : new int[]{10, 12, 14}) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            int distinct = 500_000;
+            for (int i = 0; i < distinct; i++) {
+                sketch.add(Hashing.hash(Ipv4.format(i * 7919)));
+            }
+            // Four standard errors
+            double bound = 4 * 1.04 / Math.sqrt(1 << precision) * distinct;
+            assertEquals(distinct, sketch.estimate(), bound, "precision " + precision);
+        }
+    }
+
+    @Test
+    void testMergeEqualsSketchOfUnion() {
+        HyperLogLog union = new HyperLogLog(8);
+        HyperLogLog first = new HyperLogLog(8);
+        HyperLogLog second = new HyperLogLog(8);
+        for (int i = 0; i < 20_000; i++) {
+            long hash = Hashing.hash("eni-" + i);
+            union.add(hash);
+            (i < 12_000 ? first : second).add(hash);
+            if (i % 3 == 0) {
+                second.add(hash);
+            }
+        }
+        first.merge(second);
+        assertEquals(union.estimate(), first.estimate());
+
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new HyperLogLog(9)));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1));
+    }
+
+    @Test
+    void testBytesAndStringsHashAlike() {
+        byte[] line = "2 eni-0a1b2c3d 10.0.1.201".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(Hashing.hash("eni-0a1b2c3d"), Hashing.hash(line, 2, 14));
+        assertEquals(Hashing.hash(line, 2, 14), Hashing.hash(ByteBuffer.allocateDirect(line.length).put(line), 2, 14));
+        assertNotEquals(Hashing.hash("10.0.1.201"), Hashing.hash("10.0.1.202"));
+        assertEquals(Hashing.NO_HASH, Hashing.hash((String) null));
+        assertNotEquals(Hashing.NO_HASH, Hashing.hash(new byte[0], 0, 0));
+    }
+}
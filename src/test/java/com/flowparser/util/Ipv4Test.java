@@ -0,0 +1,27 @@
+package com.flowparser.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Ipv4Test {
+
+    @Test
+    void testParseAndFormat() {
+        byte[] line = "x 10.0.1.201 y".getBytes(StandardCharsets.US_ASCII);
+        long address = Ipv4.parse(line, 2, 12);
+        assertEquals(0x0A0001C9L, address);
+        assertEquals(address, Ipv4.parse(ByteBuffer.wrap(line), 2, 12));
+        assertEquals(Ipv4.NONE, Ipv4.parse(ByteBuffer.wrap(line), 2, 14));
+        assertEquals("10.0.1.201", Ipv4.format((int) address));
+        assertEquals("255.255.255.255", Ipv4.format((int) Ipv4.parse("255.255.255.255")));
+        assertEquals(0, Ipv4.parse("0.0.0.0"));
+
+        for (String invalid : new String[]{"-", "256.1.1.1", "1.2.3", "1.2.3.4.5", "1..2.3", "2001:db8::1", "0001.2.3.4", null}) {
+            assertEquals(Ipv4.NONE, Ipv4.parse(invalid), invalid);
+        }
+    }
+}
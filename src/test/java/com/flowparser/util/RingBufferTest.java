@@ -0,0 +1,73 @@
+package com.flowparser.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    @Test
+    void testFifoOrderAndCapacity() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(lap * 10 + i));
+            }
+            assertFalse(ring.offer(99));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(lap * 10 + i, ring.poll());
+            }
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    void testConcurrentProducersAndConsumers() throws InterruptedException {
+        RingBuffer<Long> ring = new RingBuffer<>(16);
+        int producers = 3;
+        int consumers = 3;
+        long perProducer = 20_000;
+        AtomicLong consumedSum = new AtomicLong();
+        AtomicLong consumedCount = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                for (long value = 1; value <= perProducer; value++) {
+                    while (!ring.offer(value)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                while (consumedCount.get() < producers * perProducer) {
+                    Long value = ring.poll();
+                    if (value == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    consumedSum.addAndGet(value);
+                    consumedCount.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * perProducer, consumedCount.get());
+        assertEquals(producers * perProducer * (perProducer + 1) / 2, consumedSum.get());
+        assertNull(ring.poll());
+    }
+}
@@ -0,0 +1,45 @@
+package com.flowparser.writer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteOutputTest {
+
+    @Test
+    void testNumbers() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteOutput out = new ByteOutput(Channels.newChannel(bytes), StandardCharsets.UTF_8);
+        long[] values = {0, 7, -7, 10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE};
+        StringBuilder expected = new StringBuilder();
+        for (long value : values) {
+            out.number(value).character(';');
+            expected.append(value).append(';');
+        }
+        out.flush();
+
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testRowsAcrossBufferBoundaries() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteOutput out = new ByteOutput(Channels.newChannel(bytes), StandardCharsets.UTF_8);
+        StringBuilder expected = new StringBuilder();
+        // Rows of odd lengths, some longer than the buffer and some not ASCII
+        for (int i = 0; i < 20000; i++) {
+            String text = i % 1000 == 0 ? "x".repeat(70000) : i % 7 == 0 ? "café-" + i : "tag" + i;
+            out.text(text).character(',').number(i * 31L).newLine();
+            expected.append(text).append(',').append(i * 31L).append(System.lineSeparator());
+        }
+        out.flush();
+        out.flush();
+
+        assertArrayEquals(expected.toString().getBytes(StandardCharsets.UTF_8), bytes.toByteArray());
+    }
+}
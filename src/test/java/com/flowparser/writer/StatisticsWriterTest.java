@@ -1,12 +1,21 @@
 package com.flowparser.writer;
 
 import com.flowparser.model.Statistics;
+import com.flowparser.model.TagDictionary;
+import com.flowparser.util.Hashing;
+import com.flowparser.util.HeavyHitters;
+import com.flowparser.util.Ipv4;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -92,4 +101,221 @@ class StatisticsWriterTest {
         assertEquals("Port/Protocol Combination Counts:", lines.get(3));
         assertEquals("Port,Protocol,Count", lines.get(4));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testWriteRuleTagCounts() throws IOException {
+        TagDictionary tags = new TagDictionary();
+        int web = tags.intern("web");
+        int internal = tags.intern("internal");
+        Statistics statistics = new Statistics(tags);
+        statistics.addTag(TagDictionary.UNTAGGED);
+        statistics.addRuleTags(new int[]{web, internal}, 2);
+        statistics.addRuleTags(new int[]{internal}, 1);
+
+        Path tempFile = Files.createTempFile("stats", ".csv");
+        StatisticsWriter writer = new StatisticsWriter();
+        writer.writeStatistics(statistics, tempFile.toString());
+        List<String> lines = Files.readAllLines(tempFile);
+        writer.writeStatistics(new Statistics(tags), tempFile.toString());
+        List<String> withoutRules = Files.readAllLines(tempFile);
+        Files.delete(tempFile);
+
+        int rules = lines.indexOf("Rule Tag Counts:");
+        assertEquals("", lines.get(rules - 1));
+        assertEquals("Tag,Count", lines.get(rules + 1));
+        assertEquals("internal,2", lines.get(rules + 2));
+        assertEquals("web,1", lines.get(rules + 3));
+        assertFalse(withoutRules.contains("Rule Tag Counts:"));
+    }
+
+    @Test
+    void testWriteVolumesByBytes() throws IOException {
+        Statistics statistics = new Statistics();
+        int email = statistics.getTagDictionary().intern("email");
+        statistics.addTag(email, 10, 1000);
+        statistics.addTag(email, 7_500_000, 10L << 30);
+        statistics.addTag(0, 3, 300);
+        statistics.addPortProtocol(25, 6, 7_500_010, (10L << 30) + 1000);
+        statistics.addPortProtocol(443, 6, 3, 300);
+
+        Path tempFile = Files.createTempFile("stats", ".csv");
+        new StatisticsWriter().writeStatistics(statistics, tempFile.toString());
+        List<String> lines = Files.readAllLines(tempFile);
+        Files.delete(tempFile);
+
+        int tagVolumes = lines.indexOf("Tag Volumes:");
+        assertTrue(tagVolumes > lines.indexOf("Port/Protocol Combination Counts:"));
+        assertEquals("Tag,Packets,Bytes", lines.get(tagVolumes + 1));
+        assertEquals("email,7500010,10737419240", lines.get(tagVolumes + 2));
+        assertEquals("Untagged,3,300", lines.get(tagVolumes + 3));
+
+        int portProtocolVolumes = lines.indexOf("Port/Protocol Volumes:");
+        assertEquals("Port,Protocol,Packets,Bytes", lines.get(portProtocolVolumes + 1));
+        assertEquals("25,tcp,7500010,10737419240", lines.get(portProtocolVolumes + 2));
+        assertEquals("443,tcp,3,300", lines.get(portProtocolVolumes + 3));
+    }
+
+    @Test
+    void testWriteDistinctCounts() throws IOException {
+        TagDictionary tags = new TagDictionary();
+        int email = tags.intern("email");
+        int[] tagIds = {email, email, TagDictionary.UNTAGGED_ID, email};
+        long[] sources = {Hashing.hash("10.0.0.1"), Hashing.hash("10.0.0.2"), Hashing.hash("10.0.0.1"), Hashing.hash("10.0.0.1")};
+        long[] destinations = {Hashing.hash("10.0.1.1"), Hashing.hash("10.0.1.1"), Hashing.NO_HASH, Hashing.hash("10.0.1.1")};
+        long[] interfaces = {Hashing.hash("eni-1"), Hashing.hash("eni-2"), Hashing.hash("eni-3"), Hashing.hash("eni-3")};
+        Statistics statistics = new Statistics(tags);
+        statistics.addTags(tagIds, 0, 4);
+        statistics.addDistinct(tagIds, sources, destinations, interfaces, 0, 4);
+
+        Path tempFile = Files.createTempFile("stats", ".csv");
+        new StatisticsWriter().writeStatistics(statistics, tempFile.toString());
+        List<String> lines = Files.readAllLines(tempFile);
+        Files.delete(tempFile);
+
+        int distinct = lines.indexOf("Distinct Counts per Tag:");
+        assertEquals("Tag,Source Addresses,Destination Addresses,Interfaces", lines.get(distinct + 1));
+        assertEquals("email,2,1,3", lines.get(distinct + 2));
+        assertEquals("Untagged,1,0,1", lines.get(distinct + 3));
+        assertEquals(distinct + 4, lines.size());
+    }
+
+    @Test
+    void testWriteTopAddresses() throws IOException {
+        Statistics statistics = new Statistics();
+        long[] sources = new long[12];
+        long[] destinations = new long[12];
+        long[] bytes = new long[12];
+        for (int i = 0; i < 12; i++) {
+            sources[i] = Ipv4.parse("10.0.0." + i);
+            destinations[i] = Ipv4.parse("192.168.1.1");
+            bytes[i] = 100 * (i + 1);
+        }
+        statistics.addAddresses(sources, destinations, bytes, 0, 12);
+
+        Path tempFile = Files.createTempFile("stats", ".csv");
+        new StatisticsWriter().writeStatistics(statistics, tempFile.toString());
+        List<String> lines = Files.readAllLines(tempFile);
+        Files.delete(tempFile);
+
+        int topSources = lines.indexOf("Top Source Addresses:");
+        assertEquals("Address,Bytes", lines.get(topSources + 1));
+        assertEquals("10.0.0.11,1200", lines.get(topSources + 2));
+        assertEquals("10.0.0.2,300", lines.get(topSources + 1 + StatisticsWriter.TOP_ADDRESSES));
+        assertEquals("", lines.get(topSources + 2 + StatisticsWriter.TOP_ADDRESSES));
+
+        int topDestinations = lines.indexOf("Top Destination Addresses:");
+        assertEquals("192.168.1.1,7800", lines.get(topDestinations + 2));
+        // Distinct counts were not kept, so the section is left out
+        assertEquals(topDestinations + 3, lines.size());
+        assertFalse(lines.contains("Distinct Counts per Tag:"));
+    }
+
+    @Test
+    void testOutputMatchesStringRendering() throws IOException {
+        // Many ties, combinations that cannot be packed, rule tags and a name that is not ASCII
+        TagDictionary tags = new TagDictionary();
+        int[] ids = new int[40];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = tags.intern(i == 7 ? "caf\u00e9" : "tag" + i);
+        }
+        Random random = new Random(42);
+        Statistics statistics = new Statistics(tags);
+        int records = 5000;
+        int[] tagIds = new int[records];
+        long[] packets = new long[records];
+        long[] bytes = new long[records];
+        long[] sources = new long[records];
+        long[] destinations = new long[records];
+        long[] interfaces = new long[records];
+        for (int i = 0; i < records; i++) {
+            tagIds[i] = random.nextInt(3) == 0 ? TagDictionary.UNTAGGED_ID : ids[random.nextInt(ids.length)];
+            packets[i] = random.nextInt(4);
+            bytes[i] = random.nextInt(4) * 1000L;
+            sources[i] = Ipv4.parse("10.0." + random.nextInt(4) + "." + random.nextInt(256));
+            destinations[i] = random.nextInt(10) == 0 ? Ipv4.NONE : Ipv4.parse("192.168.1." + random.nextInt(256));
+            interfaces[i] = Hashing.hash("eni-" + random.nextInt(50));
+            int port = random.nextInt(20) == 0 ? 70000 + random.nextInt(3) : random.nextInt(30);
+            statistics.addPortProtocol(port, new int[]{6, 17, 1, 47}[random.nextInt(4)], packets[i], bytes[i]);
+            if (random.nextInt(10) == 0) {
+                statistics.addPortProtocol(random.nextInt(30), "gre");
+            }
+            statistics.addRuleTags(new int[]{ids[random.nextInt(5)], ids[5 + random.nextInt(5)]}, random.nextInt(3));
+        }
+        statistics.addTags(tagIds, packets, bytes, 0, records);
+        statistics.addDistinct(tagIds, sources, sources, interfaces, 0, records);
+        statistics.addAddresses(sources, destinations, bytes, 0, records);
+        // An address with the high bit set
+        statistics.addAddresses(new long[]{Ipv4.parse("203.0.113.9")}, new long[]{Ipv4.NONE},
+                new long[]{1L << 40}, 0, 1);
+
+        Path tempFile = Files.createTempFile("stats", ".csv");
+        new StatisticsWriter().writeStatistics(statistics, tempFile.toString());
+        byte[] written = Files.readAllBytes(tempFile);
+        Files.delete(tempFile);
+
+        byte[] expected = render(statistics).getBytes(Charset.defaultCharset());
+        assertEquals(new String(expected, Charset.defaultCharset()), new String(written, Charset.defaultCharset()));
+        assertArrayEquals(expected, written);
+    }
+
+    @Test
+    void testSortDescendingIsStable() {
+        long[] values = {3, 1, 3, 2, 1, 3, 0, 2};
+        assertArrayEquals(new int[]{0, 2, 5, 3, 7, 1, 4, 6}, StatisticsWriter.sortDescending(values));
+        assertArrayEquals(new int[0], StatisticsWriter.sortDescending(new long[0]));
+        assertArrayEquals(new int[]{0}, StatisticsWriter.sortDescending(new long[]{Long.MIN_VALUE}));
+    }
+
+    /**
+     * Renders the output from the map views with string concatenation and stable
+     * comparator sorts.
+     */
+    private static String render(Statistics statistics) {
+        String newLine = System.lineSeparator();
+        StringBuilder out = new StringBuilder("Tag Counts:").append(newLine).append("Tag,Count").append(newLine);
+        Map<String, Integer> tagCounts = statistics.getTagCounts();
+        List<String> tags = new ArrayList<>(tagCounts.keySet());
+        tags.sort(Comparator.comparing((String tag) -> tagCounts.get(tag)).reversed());
+        tags.forEach(tag -> out.append(tag).append(',').append(tagCounts.get(tag)).append(newLine));
+        out.append(newLine).append("Port/Protocol Combination Counts:").append(newLine)
+                .append("Port,Protocol,Count").append(newLine);
+        renderCounts(out, statistics.getPortProtocolCounts());
+        out.append(newLine).append("Rule Tag Counts:").append(newLine).append("Tag,Count").append(newLine);
+        renderCounts(out, statistics.getRuleTagCounts());
+        out.append(newLine).append("Tag Volumes:").append(newLine).append("Tag,Packets,Bytes").append(newLine);
+        renderVolumes(out, statistics.getTagVolumes());
+        out.append(newLine).append("Port/Protocol Volumes:").append(newLine)
+                .append("Port,Protocol,Packets,Bytes").append(newLine);
+        renderVolumes(out, statistics.getPortProtocolVolumes());
+        out.append(newLine).append("Top Source Addresses:").append(newLine).append("Address,Bytes").append(newLine);
+        for (HeavyHitters.Counter address : statistics.getTopSourceAddresses(StatisticsWriter.TOP_ADDRESSES)) {
+            out.append(Ipv4.format(address.getKey())).append(',').append(address.getWeight()).append(newLine);
+        }
+        out.append(newLine).append("Top Destination Addresses:").append(newLine).append("Address,Bytes").append(newLine);
+        for (HeavyHitters.Counter address : statistics.getTopDestinationAddresses(StatisticsWriter.TOP_ADDRESSES)) {
+            out.append(Ipv4.format(address.getKey())).append(',').append(address.getWeight()).append(newLine);
+        }
+        out.append(newLine).append("Distinct Counts per Tag:").append(newLine)
+                .append("Tag,Source Addresses,Destination Addresses,Interfaces").append(newLine);
+        Map<String, long[]> distinct = statistics.getDistinctCounts();
+        for (String tag : tags) {
+            long[] counts = distinct.get(tag);
+            out.append(tag + "," + counts[0] + "," + counts[1] + "," + counts[2]).append(newLine);
+        }
+        return out.toString();
+    }
+
+    private static void renderCounts(StringBuilder out, Map<String, Integer> counts) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        entries.forEach(entry -> out.append(entry.getKey()).append(',').append(entry.getValue())
+                .append(System.lineSeparator()));
+    }
+
+    private static void renderVolumes(StringBuilder out, Map<String, long[]> volumes) {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(volumes.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[1]).reversed());
+        entries.forEach(entry -> out.append(entry.getKey()).append(',').append(entry.getValue()[0])
+                .append(',').append(entry.getValue()[1]).append(System.lineSeparator()));
+    }
+}